@@ -0,0 +1,106 @@
+package io.github.kakusuke.migraphe.api.common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 時刻順に並ぶ UUID（UUIDv7 形式）を生成する。
+ *
+ * <p>先頭 48 ビットに Unix エポックからのミリ秒、続く 12 ビットに同じミリ秒内の連番を入れるため、 生成した順に文字列としても
+ * {@link UUID} としても昇順に並ぶ。 B-tree インデックスへの挿入が末尾に集中し、ランダムな UUIDv4 のようにページ分割が全体に散らばらない。
+ *
+ * <p>連番の更新は CAS で行い、乱数部分は {@link ThreadLocalRandom} から取るため、 複数スレッドから同時に呼び出してもロックを取らない。
+ * 1ミリ秒に 4096 個を超えて生成した場合は、時刻部分を先に進めて順序を保つ。
+ */
+public final class TimeOrderedUuid {
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final long VERSION_7 = 0x7000L;
+    private static final long VARIANT_RFC4122 = 0x8000_0000_0000_0000L;
+    private static final long RANDOM_MASK = 0x3FFF_FFFF_FFFF_FFFFL;
+
+    /** 最後に払い出した (ミリ秒 << 12 | 連番)。 */
+    private static final AtomicLong LAST_STATE = new AtomicLong();
+
+    private TimeOrderedUuid() {}
+
+    /**
+     * 新しい UUID を生成する。
+     *
+     * @return 直前に生成したものより大きい UUID
+     */
+    public static UUID next() {
+        long state = nextState(System.currentTimeMillis());
+        long millis = state >>> SEQUENCE_BITS;
+        long sequence = state & SEQUENCE_MASK;
+
+        long mostSigBits = (millis << 16) | VERSION_7 | sequence;
+        long leastSigBits =
+                VARIANT_RFC4122 | (ThreadLocalRandom.current().nextLong() & RANDOM_MASK);
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * 新しい UUID を文字列表現で生成する。
+     *
+     * @return 小文字 16 進数の UUID 文字列
+     */
+    public static String nextString() {
+        return next().toString();
+    }
+
+    /**
+     * 時刻と名前から決まる UUID を生成する。 同じ時刻と名前からは常に同じ UUID を返し、時刻部分は {@link #next()} と同じ
+     * 形式のため、他の UUID とも時刻順に並ぶ。
+     *
+     * @param millis Unix エポックからのミリ秒
+     * @param name UUID を決める名前
+     * @return UUIDv7 形式の UUID
+     */
+    public static UUID derive(long millis, String name) {
+        ByteBuffer hash;
+        try {
+            hash =
+                    ByteBuffer.wrap(
+                            MessageDigest.getInstance("SHA-256")
+                                    .digest(name.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        long mostSigBits = (millis << 16) | VERSION_7 | (hash.getLong() & SEQUENCE_MASK);
+        long leastSigBits = VARIANT_RFC4122 | (hash.getLong() & RANDOM_MASK);
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * UUID に埋め込まれた生成時刻を返す。
+     *
+     * @param uuid このクラスで生成した UUID
+     * @return Unix エポックからのミリ秒
+     * @throws IllegalArgumentException UUIDv7 でない場合
+     */
+    public static long timestampMillis(UUID uuid) {
+        if (uuid.version() != 7) {
+            throw new IllegalArgumentException("Not a version 7 UUID: " + uuid);
+        }
+        return uuid.getMostSignificantBits() >>> 16;
+    }
+
+    private static long nextState(long nowMillis) {
+        long candidate = nowMillis << SEQUENCE_BITS;
+        while (true) {
+            long last = LAST_STATE.get();
+            // 時計が進んでいなければ（または戻っていれば）直前の値の次を使う
+            long next = candidate > last ? candidate : last + 1;
+            if (LAST_STATE.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package io.github.kakusuke.migraphe.api.environment;
+
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * 接続先のデータベースをテンプレートとして、使い捨てのデータベースを複製できる Environment のためのインターフェース。
+ *
+ * <p>テストのシャードごとにマイグレーションを実行し直す代わりに、マイグレーションを1度だけ適用したデータベースを
+ * ファイル単位でコピーする。 複製には、この環境の実行履歴も同じIDのまま記録し、複製先を指すように設定を変えても
+ * 適用済みのノードを再実行しないようにする。
+ */
+public interface DatabaseCloning {
+
+    /**
+     * このデータベースの複製を作成する。 同じ名前の複製が既にある場合は作り直す。
+     *
+     * <p>履歴はこのデータベースに保存されていることがあり、読み出し中の接続があると複製できないため、history は複製した後に
+     * 1度だけ開き、読み終えたら閉じる。
+     *
+     * @param name 複製のデータベース名
+     * @param history 複製に記録する実行履歴を開く処理
+     * @return 複製への接続先（PostgreSQL では JDBC URL）
+     * @throws RuntimeException 名前が不正な場合、同じ名前の複製でないデータベースがある場合、複製に失敗した場合
+     */
+    String createClone(String name, Supplier<? extends Stream<ExecutionRecord>> history);
+
+    /**
+     * このデータベースから作成した複製の名前を返す。
+     *
+     * @return 複製のデータベース名（名前順）
+     * @throws RuntimeException 読み取りに失敗した場合
+     */
+    List<String> clones();
+
+    /**
+     * 複製を削除する。 接続中のセッションは切断する。
+     *
+     * @param name 複製のデータベース名
+     * @throws RuntimeException このデータベースの複製でない場合、削除に失敗した場合
+     */
+    void dropClone(String name);
+}
@@ -0,0 +1,20 @@
+package io.github.kakusuke.migraphe.api.environment;
+
+import java.time.Duration;
+
+/**
+ * 接続先のレプリカの遅延を返せる Environment のためのインターフェース。
+ *
+ * <p>重いマイグレーションを続けて実行するとレプリカの遅延が広がるため、実行側はノードの間やバックフィルの範囲の間で
+ * 遅延を確認し、閾値を超えている間は新しい作業を始めない。
+ */
+public interface ReplicationLag {
+
+    /**
+     * 接続先のレプリカの遅延のうち最大のものを返す。
+     *
+     * @return 遅延（レプリカがない場合や追いついている場合は {@link Duration#ZERO}）
+     * @throws RuntimeException 遅延の取得に失敗した場合
+     */
+    Duration replicationLag();
+}
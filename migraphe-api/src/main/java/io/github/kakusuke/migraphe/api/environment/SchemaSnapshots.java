@@ -0,0 +1,37 @@
+package io.github.kakusuke.migraphe.api.environment;
+
+/**
+ * スキーマのスナップショット（ベースライン）に対応する Environment のためのインターフェース。
+ *
+ * <p>あるノードまでを適用した環境のスキーマを SQL として取り出し、空の環境で実行して同じスキーマを作る。 数千のノードを
+ * 最初から実行し直す代わりに、新しく作った CI やローカルの環境をすぐに使える状態にするために使う。 スナップショットには
+ * データ、所有者、権限を含めない。 migraphe 自身が接続先に作るテーブル（履歴など）も含めない。
+ */
+public interface SchemaSnapshots {
+
+    /**
+     * 接続先の現在のスキーマを、空のデータベースで実行すると同じスキーマを作る SQL として返す。
+     *
+     * <p>スナップショットで再現できないオブジェクトがある場合は、一部だけのスキーマを返さずに失敗する。
+     *
+     * @return スキーマを作る SQL
+     * @throws RuntimeException スキーマの読み取りに失敗した場合、再現できないオブジェクトがある場合
+     */
+    String captureSchema();
+
+    /**
+     * 接続先に、migraphe 自身のもの以外のテーブル・ビュー・シーケンス・関数がないかどうかを返す。
+     *
+     * @return 空であれば true
+     * @throws RuntimeException 接続先の読み取りに失敗した場合
+     */
+    boolean isSchemaEmpty();
+
+    /**
+     * {@link #captureSchema()} で取り出した SQL を実行する。 全体が適用されるか、何も適用されないかのどちらかになる。
+     *
+     * @param schema スキーマを作る SQL
+     * @throws RuntimeException SQL の実行に失敗した場合
+     */
+    void applySchema(String schema);
+}
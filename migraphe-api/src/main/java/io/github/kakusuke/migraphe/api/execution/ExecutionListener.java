@@ -20,6 +20,13 @@ public interface ExecutionListener {
     /** ノード実行成功時に呼ばれる。 */
     void onNodeSucceeded(MigrationNode node, ExecutionDirection direction, long durationMs);
 
+    /**
+     * 実行中のノードが進捗を報告したときに呼ばれる。 タスクの監視用のスレッドから呼ばれる場合がある。
+     *
+     * <p>デフォルトでは何もしない。
+     */
+    default void onNodeProgress(MigrationNode node, ExecutionDirection direction, String message) {}
+
     /** ノードスキップ時に呼ばれる。 */
     void onNodeSkipped(MigrationNode node, ExecutionDirection direction, String reason);
 
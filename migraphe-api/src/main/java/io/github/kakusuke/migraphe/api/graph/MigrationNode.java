@@ -29,6 +29,16 @@ public interface MigrationNode {
     /** Down マイグレーション（ロールバック） ロールバック非対応の場合は null */
     @Nullable Task downTask();
 
+    /**
+     * タスクの内容のハッシュ。
+     *
+     * <p>グラフのフィンガープリントに含め、内容が変わったことを検出するために使う。 同じ内容であれば常に同じ値を返すこと。
+     * null の場合はノードID と依存関係だけでフィンガープリントを求める。
+     */
+    default @Nullable String contentHash() {
+        return null;
+    }
+
     /** 依存関係がないか（ルートノードか） */
     default boolean hasNoDependencies() {
         return dependencies().isEmpty();
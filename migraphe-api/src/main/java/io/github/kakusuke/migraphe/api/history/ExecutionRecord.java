@@ -1,11 +1,11 @@
 package io.github.kakusuke.migraphe.api.history;
 
+import io.github.kakusuke.migraphe.api.common.TimeOrderedUuid;
 import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
 import io.github.kakusuke.migraphe.api.graph.NodeId;
 import io.github.kakusuke.migraphe.api.task.ExecutionDirection;
 import java.time.Instant;
 import java.util.Objects;
-import java.util.UUID;
 import org.jspecify.annotations.Nullable;
 
 /**
@@ -14,7 +14,7 @@ import org.jspecify.annotations.Nullable;
  * <p>UP実行時には、シリアライズされたDownTaskを含む。 これにより、後でロールバックが可能になる。
  */
 public record ExecutionRecord(
-        String id, // 実行記録の一意ID
+        String id, // 実行記録の一意ID（時刻順の UUID）
         NodeId nodeId, // 実行されたノードのID
         EnvironmentId environmentId, // 実行環境
         ExecutionDirection direction, // UP or DOWN
@@ -52,7 +52,7 @@ public record ExecutionRecord(
             @Nullable String serializedDownTask,
             long durationMs) {
         return new ExecutionRecord(
-                UUID.randomUUID().toString(),
+                TimeOrderedUuid.nextString(),
                 nodeId,
                 environmentId,
                 ExecutionDirection.UP,
@@ -68,7 +68,7 @@ public record ExecutionRecord(
     public static ExecutionRecord downSuccess(
             NodeId nodeId, EnvironmentId environmentId, String description, long durationMs) {
         return new ExecutionRecord(
-                UUID.randomUUID().toString(),
+                TimeOrderedUuid.nextString(),
                 nodeId,
                 environmentId,
                 ExecutionDirection.DOWN,
@@ -88,7 +88,7 @@ public record ExecutionRecord(
             String description,
             String errorMessage) {
         return new ExecutionRecord(
-                UUID.randomUUID().toString(),
+                TimeOrderedUuid.nextString(),
                 nodeId,
                 environmentId,
                 direction,
@@ -104,7 +104,7 @@ public record ExecutionRecord(
     public static ExecutionRecord skipped(
             NodeId nodeId, EnvironmentId environmentId, String description, String reason) {
         return new ExecutionRecord(
-                UUID.randomUUID().toString(),
+                TimeOrderedUuid.nextString(),
                 nodeId,
                 environmentId,
                 ExecutionDirection.UP, // スキップは通常UP方向
@@ -0,0 +1,31 @@
+package io.github.kakusuke.migraphe.api.history;
+
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 環境ごとに、全ノードを適用し終えたグラフのフィンガープリントを保存する HistoryRepository のためのインターフェース。
+ *
+ * <p>保存されたフィンガープリントが現在のグラフと一致する環境は、ノードごとに履歴を問い合わせなくても 実行するノードがないと判断できる。
+ * 実装は、DOWN 方向のレコードを記録した環境や履歴を取り込んだ環境のフィンガープリントを破棄し、 適用済みでなくなったノードがあるのに一致と判断しないようにすること。
+ */
+public interface GraphFingerprintStore {
+
+    /**
+     * 保存されているフィンガープリントを1度の問い合わせで読み出す。
+     *
+     * <p>履歴のスキーマがまだ作成されていない場合は、例外を投げずに空のマップを返す。
+     *
+     * @param environmentIds 対象の環境
+     * @return 環境ID → フィンガープリント（保存されていない環境は含まない）
+     */
+    Map<EnvironmentId, String> findFingerprints(Collection<EnvironmentId> environmentIds);
+
+    /**
+     * 全ノードを適用し終えたグラフのフィンガープリントを保存する。 既に保存されている環境は上書きする。
+     *
+     * @param fingerprints 環境ID → フィンガープリント
+     */
+    void saveFingerprints(Map<EnvironmentId, String> fingerprints);
+}
@@ -0,0 +1,23 @@
+package io.github.kakusuke.migraphe.api.history;
+
+import java.util.List;
+
+/**
+ * 実行履歴の集計に対応する HistoryRepository のためのインターフェース。
+ *
+ * <p>集計の対象は UP 方向の成功・失敗レコードで、スキップされたレコードは含まない。 データベースに履歴を保存する実装は、
+ * レコードを読み出さずにデータベース側で集計することが期待される。
+ */
+public interface HistoryAnalytics {
+
+    /**
+     * 条件に一致するレコードを、ノードごとに集計する。
+     *
+     * <p>{@link HistoryQuery#from()} と {@link HistoryQuery#until()} の両方が指定されている場合は、
+     * 期間の前半と後半の平均実行時間を比べた傾向（{@link NodeDurationStats#trend()}）も求める。
+     *
+     * @param query 集計対象の条件
+     * @return ノードごとの集計結果（ノードID順）
+     */
+    List<NodeDurationStats> durationStats(HistoryQuery query);
+}
@@ -0,0 +1,22 @@
+package io.github.kakusuke.migraphe.api.history;
+
+import java.util.Iterator;
+
+/**
+ * 大量の実行記録の一括取り込みに対応する HistoryRepository のためのインターフェース。
+ *
+ * <p>別の環境からエクスポートした履歴を取り込む場合に使う。 {@link HistoryRepository#record} を1件ずつ呼び出す代わりに、
+ * データベースの一括ロード機能を使って取り込むことが期待される。
+ */
+public interface HistoryBulkImport {
+
+    /**
+     * 実行記録を一括で取り込む。
+     *
+     * <p>既に同じIDのレコードがある場合はそのレコードを取り込まない。 取り込みは全件成功するか、全件取り込まれないかのどちらかになる。
+     *
+     * @param records 取り込む実行記録（先頭から順に1度だけ読み出される）
+     * @return 取り込んだ件数
+     */
+    long importRecords(Iterator<ExecutionRecord> records);
+}
@@ -0,0 +1,34 @@
+package io.github.kakusuke.migraphe.api.history;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * キーセットページネーションの位置。 レコードは (executedAt, id) の順に並べられ、カーソルはページの最後のレコードを指す。
+ *
+ * @param executedAt 最後に読んだレコードの実行日時
+ * @param id 最後に読んだレコードの ID
+ */
+public record HistoryCursor(Instant executedAt, String id) {
+
+    /** ページネーションで使うレコードの並び順。 */
+    public static final Comparator<ExecutionRecord> ORDER =
+            Comparator.comparing(ExecutionRecord::executedAt).thenComparing(ExecutionRecord::id);
+
+    public HistoryCursor {
+        Objects.requireNonNull(executedAt, "executedAt must not be null");
+        Objects.requireNonNull(id, "id must not be null");
+    }
+
+    /** 指定されたレコードの位置を指すカーソルを作成する。 */
+    public static HistoryCursor of(ExecutionRecord record) {
+        return new HistoryCursor(record.executedAt(), record.id());
+    }
+
+    /** レコードがこのカーソルより後ろにあるかどうかを判定する。 */
+    public boolean precedes(ExecutionRecord record) {
+        int cmp = record.executedAt().compareTo(executedAt);
+        return cmp > 0 || (cmp == 0 && record.id().compareTo(id) > 0);
+    }
+}
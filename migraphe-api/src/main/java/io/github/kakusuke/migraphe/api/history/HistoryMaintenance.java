@@ -0,0 +1,30 @@
+package io.github.kakusuke.migraphe.api.history;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * 履歴の保守（コンパクション・アーカイブ）に対応する HistoryRepository のためのインターフェース。
+ *
+ * <p>どちらの操作も、(環境, ノード) ごとの最新レコードは必ず残す。 実行済み判定は最新レコードで行われるため、保守によって判定結果が変わることはない。
+ */
+public interface HistoryMaintenance {
+
+    /**
+     * (環境, ノード) ごとに最新 {@code keepLatest} 件だけを残し、それより古いレコードを削除する。
+     *
+     * @param keepLatest 残すレコード数（1以上）
+     * @return 削除したレコード数
+     */
+    long compact(int keepLatest);
+
+    /**
+     * {@code before} より前に実行されたレコードをファイルに書き出してから削除する。
+     *
+     * @param before この日時より前のレコードが対象
+     * @param outputDir 書き出し先ディレクトリ
+     * @return 書き出したファイルのリスト
+     */
+    List<Path> archive(Instant before, Path outputDir);
+}
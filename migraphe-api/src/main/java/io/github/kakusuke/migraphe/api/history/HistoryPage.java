@@ -0,0 +1,36 @@
+package io.github.kakusuke.migraphe.api.history;
+
+import java.util.List;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * 履歴の1ページ分の読み出し結果。
+ *
+ * @param records このページのレコード（(executedAt, id) の順）
+ * @param next 次のページを読むためのカーソル（最後のページの場合は null）
+ */
+public record HistoryPage(List<ExecutionRecord> records, @Nullable HistoryCursor next) {
+
+    public HistoryPage {
+        records = List.copyOf(records);
+    }
+
+    /**
+     * 最大 limit + 1 件読み出したレコードからページを作成する。 limit 件を超えていれば次のページがあるものとみなす。
+     *
+     * @param fetched (executedAt, id) の順に並んだ、最大 limit + 1 件のレコード
+     * @param limit 1ページの最大件数
+     */
+    public static HistoryPage of(List<ExecutionRecord> fetched, int limit) {
+        if (fetched.size() <= limit) {
+            return new HistoryPage(fetched, null);
+        }
+        List<ExecutionRecord> records = fetched.subList(0, limit);
+        return new HistoryPage(records, HistoryCursor.of(records.get(limit - 1)));
+    }
+
+    /** 次のページがあるかどうか。 */
+    public boolean hasNext() {
+        return next != null;
+    }
+}
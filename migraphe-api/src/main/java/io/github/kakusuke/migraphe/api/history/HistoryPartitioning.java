@@ -0,0 +1,17 @@
+package io.github.kakusuke.migraphe.api.history;
+
+import java.util.List;
+
+/** 履歴を実行日時による範囲パーティションで管理できる HistoryRepository のためのインターフェース。 */
+public interface HistoryPartitioning {
+
+    /**
+     * 履歴をパーティション化し、当月から {@code monthsAhead} か月先までのパーティションを用意する。
+     *
+     * <p>未パーティションの履歴は既存レコードを保ったままパーティション化する。 既にパーティション化されている場合は、不足しているパーティションだけを作成する。
+     *
+     * @param monthsAhead 当月より先に作成しておく月数
+     * @return 新たに作成したパーティション名のリスト
+     */
+    List<String> ensurePartitions(int monthsAhead);
+}
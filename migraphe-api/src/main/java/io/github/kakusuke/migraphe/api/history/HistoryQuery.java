@@ -0,0 +1,73 @@
+package io.github.kakusuke.migraphe.api.history;
+
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Set;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * 履歴を読み出すときの絞り込み条件。
+ *
+ * @param environmentId 対象の環境
+ * @param from この日時以降に実行されたレコードに絞る（null の場合は制限なし）
+ * @param until この日時より前に実行されたレコードに絞る（null の場合は制限なし）
+ * @param nodeIds 対象のノード（空の場合は全ノード）
+ */
+public record HistoryQuery(
+        EnvironmentId environmentId,
+        @Nullable Instant from,
+        @Nullable Instant until,
+        Set<NodeId> nodeIds) {
+
+    public HistoryQuery {
+        Objects.requireNonNull(environmentId, "environmentId must not be null");
+        nodeIds = Set.copyOf(Objects.requireNonNull(nodeIds, "nodeIds must not be null"));
+        if (from != null && until != null && !from.isBefore(until)) {
+            throw new IllegalArgumentException("from must be before until");
+        }
+    }
+
+    /** 指定された環境の全レコードを対象とする条件を作成する。 */
+    public static HistoryQuery forEnvironment(EnvironmentId environmentId) {
+        return new HistoryQuery(environmentId, null, null, Set.of());
+    }
+
+    /** 開始日時（この日時を含む）を指定した条件を返す。 */
+    public HistoryQuery from(Instant from) {
+        return new HistoryQuery(environmentId, from, until, nodeIds);
+    }
+
+    /** 終了日時（この日時を含まない）を指定した条件を返す。 */
+    public HistoryQuery until(Instant until) {
+        return new HistoryQuery(environmentId, from, until, nodeIds);
+    }
+
+    /** 対象のノードを指定した条件を返す。 */
+    public HistoryQuery nodes(Collection<NodeId> nodeIds) {
+        return new HistoryQuery(environmentId, from, until, Set.copyOf(nodeIds));
+    }
+
+    /**
+     * 期間の中間の日時を返す。 集計で期間の前半と後半を比べるときに使う。
+     *
+     * @return 開始日時と終了日時の中間（どちらかが未指定の場合は null）
+     */
+    public @Nullable Instant midpoint() {
+        if (from == null || until == null) {
+            return null;
+        }
+        return from.plus(Duration.between(from, until).dividedBy(2));
+    }
+
+    /** レコードがこの条件に一致するかどうかを判定する。 */
+    public boolean matches(ExecutionRecord record) {
+        return record.environmentId().equals(environmentId)
+                && (from == null || !record.executedAt().isBefore(from))
+                && (until == null || record.executedAt().isBefore(until))
+                && (nodeIds.isEmpty() || nodeIds.contains(record.nodeId()));
+    }
+}
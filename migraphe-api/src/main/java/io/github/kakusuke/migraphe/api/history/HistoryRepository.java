@@ -3,6 +3,7 @@ package io.github.kakusuke.migraphe.api.history;
 import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
 import io.github.kakusuke.migraphe.api.graph.NodeId;
 import java.util.List;
+import java.util.stream.Stream;
 import org.jspecify.annotations.Nullable;
 
 /**
@@ -29,4 +30,50 @@ public interface HistoryRepository {
 
     /** 指定された環境の全ての実行記録を取得する。 */
     List<ExecutionRecord> allRecords(EnvironmentId environmentId);
+
+    /**
+     * 指定された環境で、指定されたノードの最新の実行記録に保存された DOWN タスクを取得する。
+     *
+     * <p>実装は DOWN タスクの内容を履歴レコードとは別に保存し、 {@link #findLatestRecord} が返すレコードの {@link
+     * ExecutionRecord#serializedDownTask()} を省略してもよい。 DOWN タスクの内容が必要な場合はこのメソッドを使うこと。
+     *
+     * @return DOWN タスクの内容（記録がない場合、または DOWN タスクがない場合は null）
+     */
+    default @Nullable String findSerializedDownTask(NodeId nodeId, EnvironmentId environmentId) {
+        ExecutionRecord latest = findLatestRecord(nodeId, environmentId);
+        return latest != null ? latest.serializedDownTask() : null;
+    }
+
+    /**
+     * 条件に一致する実行記録を (executedAt, id) の順に逐次読み出す。
+     *
+     * <p>返される Stream は読み出し用のリソースを保持していることがあるため、 try-with-resources で必ずクローズすること。
+     * 履歴のエクスポートや複製に使われるため、 {@link #findLatestRecord} と異なり DOWN タスクの内容を省略してはならない。
+     * デフォルト実装は {@link #allRecords} を絞り込む。 大量の履歴を扱う実装は、全件をメモリに読み込まないようにオーバーライドする。
+     */
+    default Stream<ExecutionRecord> streamRecords(HistoryQuery query) {
+        return allRecords(query.environmentId()).stream()
+                .filter(query::matches)
+                .sorted(HistoryCursor.ORDER);
+    }
+
+    /**
+     * 条件に一致する実行記録を、カーソルの後ろから最大 limit 件読み出す。
+     *
+     * @param query 絞り込み条件
+     * @param after 前のページの {@link HistoryPage#next()}（最初のページの場合は null）
+     * @param limit 1ページの最大件数（1以上）
+     */
+    default HistoryPage findPage(HistoryQuery query, @Nullable HistoryCursor after, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+        try (Stream<ExecutionRecord> records = streamRecords(query)) {
+            List<ExecutionRecord> page =
+                    records.filter(r -> after == null || after.precedes(r))
+                            .limit(limit + 1L)
+                            .toList();
+            return HistoryPage.of(page, limit);
+        }
+    }
 }
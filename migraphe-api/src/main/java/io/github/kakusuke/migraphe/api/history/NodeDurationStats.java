@@ -0,0 +1,60 @@
+package io.github.kakusuke.migraphe.api.history;
+
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import java.util.Objects;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * 1つのノードの実行時間の集計結果。
+ *
+ * <p>パーセンタイルは成功した実行の実行時間から線形補間で求める（PostgreSQL の {@code percentile_cont} と同じ）。
+ * 成功した実行がない場合、実行時間の値は 0 になる。
+ *
+ * @param nodeId ノードID
+ * @param environmentId 環境ID
+ * @param count 実行回数（成功と失敗の合計）
+ * @param failureCount 失敗回数
+ * @param p50Ms 実行時間の中央値（ミリ秒）
+ * @param p95Ms 実行時間の95パーセンタイル（ミリ秒）
+ * @param maxMs 実行時間の最大値（ミリ秒）
+ * @param trend 期間の前半に対する後半の平均実行時間の変化率（例: 0.25 は 25% 遅くなった）。 求められない場合は null
+ */
+public record NodeDurationStats(
+        NodeId nodeId,
+        EnvironmentId environmentId,
+        long count,
+        long failureCount,
+        double p50Ms,
+        double p95Ms,
+        long maxMs,
+        @Nullable Double trend) {
+
+    public NodeDurationStats {
+        Objects.requireNonNull(nodeId, "nodeId must not be null");
+        Objects.requireNonNull(environmentId, "environmentId must not be null");
+        if (failureCount > count) {
+            throw new IllegalArgumentException("failureCount must not exceed count");
+        }
+    }
+
+    /** 失敗率（0.0〜1.0）を返す。 */
+    public double failureRate() {
+        return count == 0 ? 0.0 : (double) failureCount / count;
+    }
+
+    /**
+     * 前半と後半の平均実行時間から傾向を求める。
+     *
+     * @param earlierAverage 期間の前半の平均実行時間（null の場合は前半に実行がない）
+     * @param recentAverage 期間の後半の平均実行時間（null の場合は後半に実行がない）
+     * @return 変化率（どちらかがない場合や前半の平均が 0 の場合は null）
+     */
+    public static @Nullable Double trendOf(
+            @Nullable Double earlierAverage, @Nullable Double recentAverage) {
+        if (earlierAverage == null || recentAverage == null || earlierAverage == 0.0) {
+            return null;
+        }
+        return (recentAverage - earlierAverage) / earlierAverage;
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.kakusuke.migraphe.api.history;
+
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import java.time.Duration;
+import java.util.Collection;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * 複数のランナーで1つのグラフを分担して実行するための、ノードのリース（実行権）を管理するインターフェース。
+ *
+ * <p>同じ実行 ID を使うランナー同士で、各ノードを実行するランナーが1つだけになるよう調整する。 リースは期限付きで、
+ * 実行中のランナーは定期的に {@link #renew} で延長する。 延長されずに期限が切れたリースは、停止したランナーのものとみなされ、
+ * 他のランナーが取得し直せる。
+ *
+ * <p>どのノードが実行可能かは呼び出し側が履歴（{@link HistoryRepository#executedNodes}）から判断する。
+ */
+public interface NodeLeaseRepository {
+
+    /**
+     * 実行対象のノードを登録する。 既に登録されているノードはそのまま残す。
+     *
+     * @param runId 実行 ID（同じ実行に参加するランナーで共通）
+     * @param nodeIds 実行対象のノード
+     */
+    void registerNodes(String runId, Collection<NodeId> nodeIds);
+
+    /**
+     * 候補のうち、誰も実行していないノード（または期限切れのノード）を1つ取得する。
+     *
+     * @param runId 実行 ID
+     * @param owner ランナーの ID
+     * @param candidates 依存先が全て実行済みのノード
+     * @param leaseDuration リースの有効期間
+     * @return 取得したノード（取得できるノードがない場合は null）
+     */
+    @Nullable NodeId tryClaim(
+            String runId, String owner, Collection<NodeId> candidates, Duration leaseDuration);
+
+    /**
+     * 保持しているリースの期限を延長する。
+     *
+     * @return 延長できた場合は true（期限切れで他のランナーに取得されていた場合は false）
+     */
+    boolean renew(String runId, String owner, NodeId nodeId, Duration leaseDuration);
+
+    /** ノードの実行が成功したことを記録し、リースを解放する。 */
+    void complete(String runId, String owner, NodeId nodeId);
+
+    /** ノードの実行が失敗したことを記録し、リースを解放する。 失敗したノードは再取得されない。 */
+    void fail(String runId, String owner, NodeId nodeId);
+
+    /** 指定された実行で失敗したノードがあるかどうか。 */
+    boolean hasFailures(String runId);
+}
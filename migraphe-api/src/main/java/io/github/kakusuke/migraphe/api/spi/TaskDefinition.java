@@ -16,6 +16,14 @@ import java.util.Optional;
  */
 public interface TaskDefinition<T> {
 
+    /**
+     * タスクファイルのあるディレクトリの絶対パスを表すプロパティ名。
+     *
+     * <p>ローダーがタスクファイルごとにデフォルト値として設定する。 タスク定義から外部ファイルを相対パスで参照する場合に、
+     * サブタイプでこの名前のプロパティをマッピングして基準ディレクトリとして使う。
+     */
+    String TASK_DIR = "task_dir";
+
     /** タスク名 */
     String name();
 
@@ -28,8 +36,13 @@ public interface TaskDefinition<T> {
     /** 依存するタスクIDのリスト（オプション） */
     Optional<List<String>> dependencies();
 
-    /** UP マイグレーション定義 */
-    T up();
+    /**
+     * UP マイグレーション定義。
+     *
+     * <p>プラグインが up 以外のプロパティでも UP を指定できる場合は省略できる。 どれも指定されていない場合にエラーにするのは、
+     * プラグインの責任。
+     */
+    Optional<T> up();
 
     /** DOWN マイグレーション定義（オプション） */
     Optional<T> down();
@@ -0,0 +1,23 @@
+package io.github.kakusuke.migraphe.api.task;
+
+import java.util.List;
+
+/**
+ * 実行せずに影響を見積もれるタスクのためのインターフェース。
+ *
+ * <p>{@code up --dry-run} で、未実行のノードの UP タスクがこのインターフェースを実装していれば、見積もった影響を
+ * 実行計画と一緒に表示する。 見積もりのために接続先のデータベースを読み取ってもよいが、変更してはならない。
+ *
+ * <p>{@code up --dry-run --explain} では {@link ImpactOptions#explain()} が true になる。 対応するタスクは
+ * データを変更するステートメントの実行計画から、処理する行数とコストも見積もる。
+ */
+public interface ImpactAnalyzer {
+
+    /**
+     * タスクを実行した場合の影響を見積もる。
+     *
+     * @param options 見積もりの指定
+     * @return 見積もった影響（なければ空のリスト）
+     */
+    List<ImpactFinding> analyzeImpact(ImpactOptions options);
+}
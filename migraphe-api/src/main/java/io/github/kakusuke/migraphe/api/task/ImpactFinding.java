@@ -0,0 +1,25 @@
+package io.github.kakusuke.migraphe.api.task;
+
+import java.util.Objects;
+
+/**
+ * dry-run で見積もったタスクの影響の1項目。
+ *
+ * @param highImpact 本番のトラフィックを止めるおそれがあり、実行の時間帯を考え直すべき場合は true
+ * @param message 影響の説明（対象のステートメントやテーブルの大きさなど）
+ */
+public record ImpactFinding(boolean highImpact, String message) {
+    public ImpactFinding {
+        Objects.requireNonNull(message, "message must not be null");
+    }
+
+    /** 参考として表示する影響を作成する。 */
+    public static ImpactFinding of(String message) {
+        return new ImpactFinding(false, message);
+    }
+
+    /** 影響が大きいことを示す項目を作成する。 */
+    public static ImpactFinding high(String message) {
+        return new ImpactFinding(true, message);
+    }
+}
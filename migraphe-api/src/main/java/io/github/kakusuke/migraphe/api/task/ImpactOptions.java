@@ -0,0 +1,41 @@
+package io.github.kakusuke.migraphe.api.task;
+
+/**
+ * dry-run で影響を見積もるときの指定。
+ *
+ * @param explain DML の実行計画（EXPLAIN）から、処理する行数とコストも見積もる場合は true
+ * @param maxRows 影響が大きいとみなす、1ノードの見積もり行数の合計
+ * @param maxCost 影響が大きいとみなす、1ノードの見積もりコストの合計
+ */
+public record ImpactOptions(boolean explain, long maxRows, double maxCost) {
+
+    /** 影響が大きいとみなす見積もり行数の既定値。 */
+    public static final long DEFAULT_MAX_ROWS = 1_000_000L;
+
+    /** 影響が大きいとみなす見積もりコストの既定値。 */
+    public static final double DEFAULT_MAX_COST = 1_000_000.0;
+
+    public ImpactOptions {
+        if (maxRows < 0) {
+            throw new IllegalArgumentException("maxRows must not be negative: " + maxRows);
+        }
+        if (!(maxCost >= 0)) {
+            throw new IllegalArgumentException("maxCost must not be negative: " + maxCost);
+        }
+    }
+
+    /** ロックだけを見積もる既定の指定を作成する。 */
+    public static ImpactOptions defaults() {
+        return new ImpactOptions(false, DEFAULT_MAX_ROWS, DEFAULT_MAX_COST);
+    }
+
+    /**
+     * DML の実行計画も見積もる指定を作成する。
+     *
+     * @param maxRows 影響が大きいとみなす見積もり行数
+     * @param maxCost 影響が大きいとみなす見積もりコスト
+     */
+    public static ImpactOptions explain(long maxRows, double maxCost) {
+        return new ImpactOptions(true, maxRows, maxCost);
+    }
+}
@@ -16,6 +16,19 @@ public interface Task {
      */
     Result<TaskResult, String> execute();
 
+    /**
+     * 実行側からの情報を受け取ってタスクを実行する。
+     *
+     * <p>デフォルトでは {@link #execute()} を呼ぶ。 マイグレーションと同じトランザクションで履歴を記録できる実装や、
+     * 実行の間 {@link TaskExecutionContext#session} で接続を使い回す実装はオーバーライドする。
+     *
+     * @param context 実行側から渡される情報
+     * @return 実行結果（成功時はシリアライズされたDownTaskを含む）
+     */
+    default Result<TaskResult, String> execute(TaskExecutionContext context) {
+        return execute();
+    }
+
     /** タスクの説明 */
     String description();
 }
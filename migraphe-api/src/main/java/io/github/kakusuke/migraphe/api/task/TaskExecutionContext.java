@@ -0,0 +1,77 @@
+package io.github.kakusuke.migraphe.api.task;
+
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.api.history.HistoryRepository;
+import java.util.function.Supplier;
+
+/**
+ * タスクの実行時に実行側から渡される情報。
+ *
+ * <p>履歴の保存先とタスクの接続先が同じデータベースの場合、タスクは自身のトランザクション内で履歴を記録できる。 その場合は {@link
+ * #successRecord} で作成したレコードをマイグレーションと同じトランザクションで書き込み、 コミットに成功したら {@link
+ * #markRecorded} を呼ぶ。 呼ばなかった場合は、実行側がタスクの完了後に履歴を記録する。
+ *
+ * <p>{@link #session} で取得したセッションは1回の実行（up / down）の間、後続のタスクでも使い回される。
+ */
+public interface TaskExecutionContext {
+
+    /** 実行側が履歴の記録に使うリポジトリ。 */
+    HistoryRepository historyRepository();
+
+    /**
+     * このタスクの成功記録を作成する。
+     *
+     * @param result タスクの実行結果
+     * @param durationMs 実行時間（ミリ秒）
+     * @return 記録するレコード
+     */
+    ExecutionRecord successRecord(TaskResult result, long durationMs);
+
+    /** 成功記録をタスク側で記録済みであることを実行側に伝える。 */
+    void markRecorded();
+
+    /**
+     * 実行の間、同じキーのタスクで共有するセッションを取得する。
+     *
+     * <p>キーに対して初めて呼ばれたときに opener でセッションを開き、以降は同じインスタンスを返す。 セッションは実行の終わりに
+     * 実行側が閉じるため、タスクが閉じてはならない。 前のタスクが変更したセッションの状態を次のタスクに持ち越さないようにするのは、
+     * セッションの実装の責任。
+     *
+     * @param key セッションを共有する単位（接続先ごとなど）
+     * @param type セッションの型
+     * @param opener セッションを開く処理
+     * @return セッション
+     */
+    <S extends AutoCloseable> S session(String key, Class<S> type, Supplier<? extends S> opener);
+
+    /**
+     * 実行中のタスクの進捗を実行側に伝える。 インデックスの作成など時間のかかるタスクが呼び出す。
+     *
+     * <p>タスクが進捗を監視するスレッドから呼び出してもよい。 デフォルトでは何もしない。
+     *
+     * @param message 進捗を表すメッセージ
+     */
+    default void progress(String message) {}
+
+    /**
+     * 実行側が新しい作業を止めている間（レプリカの遅延が閾値を超えている間など）待つ。 バックフィルなど多くの作業を
+     * 順に行うタスクが、作業の区切りで呼び出す。
+     *
+     * <p>トランザクションを開いたまま呼び出してはならない。 デフォルトでは何もしない。
+     *
+     * @throws RuntimeException 遅延の確認に失敗した場合
+     */
+    default void throttle() {}
+
+    /**
+     * 実行側がこのタスクを前後のタスクと1つのトランザクションにまとめているかどうか。
+     *
+     * <p>{@link TransactionGroupable} を実装したタスクにだけ true を渡す。 true の場合、タスクはコミットしてはならない。
+     * デフォルトでは false。
+     *
+     * @return グループの中で実行する場合は true
+     */
+    default boolean inTransactionGroup() {
+        return false;
+    }
+}
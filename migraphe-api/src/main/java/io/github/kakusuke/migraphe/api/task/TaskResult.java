@@ -3,12 +3,21 @@ package io.github.kakusuke.migraphe.api.task;
 import java.util.Objects;
 import org.jspecify.annotations.Nullable;
 
-/** タスク実行結果。 UP実行時にはシリアライズされたDownTaskを含む。 */
-public record TaskResult(String message, @Nullable String serializedDownTask) {
+/**
+ * タスク実行結果。 UP実行時にはシリアライズされたDownTaskを含む。
+ *
+ * <p>{@code detail} は読み込んだ行数などの実行結果の要約で、指定した場合は履歴の説明にノード名と一緒に残る。
+ */
+public record TaskResult(
+        String message, @Nullable String serializedDownTask, @Nullable String detail) {
     public TaskResult {
         Objects.requireNonNull(message, "message must not be null");
     }
 
+    public TaskResult(String message, @Nullable String serializedDownTask) {
+        this(message, serializedDownTask, null);
+    }
+
     /** Down Task なしの結果を作成（DOWN実行時やロールバック非対応の場合） */
     public static TaskResult withoutDownTask(String message) {
         return new TaskResult(message, null);
@@ -19,4 +28,9 @@ public record TaskResult(String message, @Nullable String serializedDownTask) {
         Objects.requireNonNull(serializedDownTask, "serializedDownTask must not be null");
         return new TaskResult(message, serializedDownTask);
     }
+
+    /** 履歴に残す実行結果の要約を付けた結果を返す。 */
+    public TaskResult withDetail(@Nullable String detail) {
+        return new TaskResult(message, serializedDownTask, detail);
+    }
 }
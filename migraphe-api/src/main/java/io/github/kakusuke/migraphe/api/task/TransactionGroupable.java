@@ -0,0 +1,33 @@
+package io.github.kakusuke.migraphe.api.task;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * 同じ接続先の連続したタスクと、1つのトランザクションにまとめて実行できるタスクのためのインターフェース。
+ *
+ * <p>実行側でトランザクションのまとめが有効な場合、同じ {@link #transactionGroupKey()} を返す連続したタスクを1つの
+ * グループとして実行する。 グループの中では {@link TaskExecutionContext#inTransactionGroup()} が true になり、タスクは
+ * 自分のセーブポイントの中で実行してコミットしない。 失敗した場合はセーブポイントまでロールバックしてから失敗を返す。
+ * 実行側はグループの終わりに、最後に成功したタスクの {@link #commitTransactionGroup} でトランザクションをコミットする。
+ * 失敗したタスクはコミットに使わず、成功したタスクがない場合はコミットしない。
+ *
+ * <p>グループの中で {@link TaskExecutionContext#markRecorded()} を呼んだタスクの成功記録は、グループのトランザクションと
+ * 一緒にコミットされるものとみなす。 呼ばなかったタスクの成功記録は、実行側がコミットの後に記録する。
+ */
+public interface TransactionGroupable {
+
+    /**
+     * まとめられるトランザクションの単位（接続先など）。
+     *
+     * @return 同じ値を返すタスクを1つのトランザクションにまとめる。 まとめられない場合（autocommit など）は null
+     */
+    @Nullable String transactionGroupKey();
+
+    /**
+     * グループのトランザクションをコミットする。
+     *
+     * @param context グループの最後に成功したタスクの実行コンテキスト
+     * @throws RuntimeException コミットに失敗した場合（グループのタスクの変更はすべて取り消される）
+     */
+    void commitTransactionGroup(TaskExecutionContext context);
+}
@@ -1,14 +1,32 @@
 package io.github.kakusuke.migraphe.cli;
 
 import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.task.ImpactOptions;
+import io.github.kakusuke.migraphe.cli.command.BaselineApplyCommand;
+import io.github.kakusuke.migraphe.cli.command.BaselineCreateCommand;
+import io.github.kakusuke.migraphe.cli.command.CloneCreateCommand;
+import io.github.kakusuke.migraphe.cli.command.CloneDropCommand;
 import io.github.kakusuke.migraphe.cli.command.Command;
 import io.github.kakusuke.migraphe.cli.command.DownCommand;
+import io.github.kakusuke.migraphe.cli.command.HistoryArchiveCommand;
+import io.github.kakusuke.migraphe.cli.command.HistoryCompactCommand;
+import io.github.kakusuke.migraphe.cli.command.HistoryExportCommand;
+import io.github.kakusuke.migraphe.cli.command.HistoryImportCommand;
+import io.github.kakusuke.migraphe.cli.command.HistoryPartitionCommand;
+import io.github.kakusuke.migraphe.cli.command.HistoryStatsCommand;
 import io.github.kakusuke.migraphe.cli.command.StatusCommand;
 import io.github.kakusuke.migraphe.cli.command.UpCommand;
+import io.github.kakusuke.migraphe.cli.command.UpOptions;
 import io.github.kakusuke.migraphe.cli.command.ValidateCommand;
+import io.github.kakusuke.migraphe.core.execution.ReplicationThrottle;
 import io.github.kakusuke.migraphe.core.plugin.PluginRegistry;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.Arrays;
 import java.util.List;
 import org.jspecify.annotations.Nullable;
@@ -84,25 +102,110 @@ public class Main {
             case "up" -> createUpCommand(args, context);
             case "status" -> new StatusCommand(context);
             case "down" -> createDownCommand(args, context);
+            case "history" -> createHistoryCommand(args, context);
+            case "baseline" -> createBaselineCommand(args, context);
+            case "clone" -> createCloneCommand(args, context);
             default -> null;
         };
     }
 
     /** up コマンドを生成する。 */
-    private static Command createUpCommand(String[] args, ExecutionContext context) {
+    private static @Nullable Command createUpCommand(String[] args, ExecutionContext context) {
         List<String> argList = Arrays.asList(args);
         boolean skipConfirm = argList.contains("-y");
         boolean dryRun = argList.contains("--dry-run");
+        String runId = optionValue(argList, "--distributed");
+        if (argList.contains("--distributed") && runId == null) {
+            System.err.println("Error: --distributed requires a run ID");
+            System.err.println("Usage: migraphe up [-y] [--distributed <run-id>] [<id>]");
+            return null;
+        }
+        boolean explain = argList.contains("--explain");
+        String maxRows = optionValue(argList, "--explain-max-rows");
+        String maxCost = optionValue(argList, "--explain-max-cost");
+        if ((explain || maxRows != null || maxCost != null) && !dryRun) {
+            System.err.println("Error: --explain requires --dry-run");
+            System.err.println(
+                    "Usage: migraphe up --dry-run --explain [--explain-max-rows <n>]"
+                            + " [--explain-max-cost <n>] [<id>]");
+            return null;
+        }
+        ImpactOptions impactOptions;
+        try {
+            impactOptions =
+                    explain
+                            ? ImpactOptions.explain(
+                                    maxRows != null
+                                            ? Long.parseLong(maxRows)
+                                            : ImpactOptions.DEFAULT_MAX_ROWS,
+                                    maxCost != null
+                                            ? Double.parseDouble(maxCost)
+                                            : ImpactOptions.DEFAULT_MAX_COST)
+                            : ImpactOptions.defaults();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: Invalid option value: " + e.getMessage());
+            return null;
+        }
+
+        String groupSize = optionValue(argList, "--group-transactions");
+        int transactionGroupSize;
+        try {
+            transactionGroupSize = groupSize != null ? Integer.parseInt(groupSize) : 1;
+        } catch (NumberFormatException e) {
+            System.err.println("Error: Invalid option value: " + e.getMessage());
+            return null;
+        }
+        if (transactionGroupSize < 1) {
+            System.err.println("Error: --group-transactions must be a positive number");
+            return null;
+        }
+        if (transactionGroupSize > 1 && runId != null) {
+            System.err.println("Error: --group-transactions cannot be used with --distributed");
+            return null;
+        }
+
+        String maxLag = optionValue(argList, "--max-replication-lag");
+        if (argList.contains("--max-replication-lag") && maxLag == null) {
+            System.err.println("Error: --max-replication-lag requires a number of seconds");
+            return null;
+        }
+        ReplicationThrottle throttle;
+        try {
+            throttle =
+                    maxLag != null
+                            ? ReplicationThrottle.of(Duration.ofSeconds(Long.parseLong(maxLag)))
+                            : null;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: Invalid option value: " + e.getMessage());
+            return null;
+        }
 
-        // ID引数を取得（up, -y, --dry-run 以外の最初の引数）
+        // ID引数を取得（up, -y, --dry-run, --explain, 値を取るオプションとその値以外の最初の引数）
         String targetId =
                 argList.stream()
-                        .filter(a -> !a.equals("up") && !a.equals("-y") && !a.equals("--dry-run"))
+                        .filter(
+                                a ->
+                                        !a.equals("up")
+                                                && !a.equals("-y")
+                                                && !a.equals("--dry-run")
+                                                && !a.equals("--explain")
+                                                && !a.equals("--explain-max-rows")
+                                                && !a.equals("--explain-max-cost")
+                                                && !a.equals("--group-transactions")
+                                                && !a.equals("--distributed")
+                                                && !a.equals("--max-replication-lag")
+                                                && !a.equals(runId)
+                                                && !a.equals(maxRows)
+                                                && !a.equals(maxCost)
+                                                && !a.equals(groupSize)
+                                                && !a.equals(maxLag))
                         .findFirst()
                         .orElse(null);
 
         NodeId nodeId = targetId != null ? NodeId.of(targetId) : null;
-        return new UpCommand(context, nodeId, skipConfirm, dryRun);
+        UpOptions options =
+                new UpOptions(dryRun, impactOptions, transactionGroupSize, runId, throttle);
+        return new UpCommand(context, nodeId, skipConfirm, options);
     }
 
     /** down コマンドを生成する。 */
@@ -135,6 +238,176 @@ public class Main {
         return new DownCommand(context, targetVersion, allMigrations, skipConfirm, dryRun);
     }
 
+    /** history サブコマンドを生成する。 */
+    private static @Nullable Command createHistoryCommand(String[] args, ExecutionContext context) {
+        List<String> argList = Arrays.asList(args);
+        String subcommand = args.length > 1 ? args[1] : "";
+
+        try {
+            switch (subcommand) {
+                case "compact" -> {
+                    String keep = optionValue(argList, "--keep");
+                    int keepLatest =
+                            keep != null
+                                    ? Integer.parseInt(keep)
+                                    : HistoryCompactCommand.DEFAULT_KEEP;
+                    return new HistoryCompactCommand(context, keepLatest);
+                }
+                case "partition" -> {
+                    String ahead = optionValue(argList, "--months-ahead");
+                    int monthsAhead =
+                            ahead != null
+                                    ? Integer.parseInt(ahead)
+                                    : HistoryPartitionCommand.DEFAULT_MONTHS_AHEAD;
+                    return new HistoryPartitionCommand(context, monthsAhead);
+                }
+                case "archive" -> {
+                    String before = optionValue(argList, "--before");
+                    if (before == null) {
+                        System.err.println("Error: --before is required for 'history archive'");
+                        System.err.println(
+                                "Usage: migraphe history archive --before <yyyy-MM-dd>"
+                                        + " [--output <dir>]");
+                        return null;
+                    }
+                    String output = optionValue(argList, "--output");
+                    Instant cutoff =
+                            LocalDate.parse(before)
+                                    .atStartOfDay(ZoneId.systemDefault())
+                                    .toInstant();
+                    Path outputDir =
+                            Paths.get(
+                                    output != null
+                                            ? output
+                                            : HistoryArchiveCommand.DEFAULT_OUTPUT_DIR);
+                    return new HistoryArchiveCommand(context, cutoff, outputDir);
+                }
+                case "stats" -> {
+                    String daysOption = optionValue(argList, "--days");
+                    int days =
+                            daysOption != null
+                                    ? Integer.parseInt(daysOption)
+                                    : HistoryStatsCommand.DEFAULT_DAYS;
+                    String format = optionValue(argList, "--format");
+                    return new HistoryStatsCommand(
+                            context,
+                            days,
+                            format != null ? format : HistoryStatsCommand.DEFAULT_FORMAT);
+                }
+                case "export" -> {
+                    String output = optionValue(argList, "--output");
+                    if (output == null) {
+                        System.err.println("Error: --output is required for 'history export'");
+                        System.err.println(
+                                "Usage: migraphe history export --output <file>"
+                                        + " [--target <name>]");
+                        return null;
+                    }
+                    return new HistoryExportCommand(
+                            context, Paths.get(output), optionValue(argList, "--target"));
+                }
+                case "import" -> {
+                    String input = optionValue(argList, "--input");
+                    if (input == null) {
+                        System.err.println("Error: --input is required for 'history import'");
+                        System.err.println(
+                                "Usage: migraphe history import --input <file>"
+                                        + " [--target <name>]");
+                        return null;
+                    }
+                    return new HistoryImportCommand(
+                            context, Paths.get(input), optionValue(argList, "--target"));
+                }
+                default -> {
+                    System.err.println("Error: Unknown history subcommand: " + subcommand);
+                    return null;
+                }
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            System.err.println("Error: Invalid option value: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** baseline サブコマンドを生成する。 */
+    private static @Nullable Command createBaselineCommand(
+            String[] args, ExecutionContext context) {
+        List<String> argList = Arrays.asList(args);
+        String subcommand = args.length > 1 ? args[1] : "";
+
+        switch (subcommand) {
+            case "create" -> {
+                String output = optionValue(argList, "--output");
+                if (args.length < 3 || args[2].startsWith("--")) {
+                    System.err.println("Error: Node ID is required for 'baseline create'");
+                    System.err.println(
+                            "Usage: migraphe baseline create <id> [--output <file>]");
+                    return null;
+                }
+                return new BaselineCreateCommand(
+                        context, NodeId.of(args[2]), output != null ? Paths.get(output) : null);
+            }
+            case "apply" -> {
+                String input = optionValue(argList, "--input");
+                if (input == null) {
+                    System.err.println("Error: --input is required for 'baseline apply'");
+                    System.err.println("Usage: migraphe baseline apply --input <file>");
+                    return null;
+                }
+                return new BaselineApplyCommand(context, Paths.get(input));
+            }
+            default -> {
+                System.err.println("Error: Unknown baseline subcommand: " + subcommand);
+                return null;
+            }
+        }
+    }
+
+    /** clone サブコマンドを生成する。 */
+    private static @Nullable Command createCloneCommand(String[] args, ExecutionContext context) {
+        List<String> argList = Arrays.asList(args);
+        String subcommand = args.length > 1 ? args[1] : "";
+        if (!subcommand.equals("create") && !subcommand.equals("drop")) {
+            System.err.println("Error: Unknown clone subcommand: " + subcommand);
+            return null;
+        }
+        if (args.length < 3 || args[2].startsWith("--")) {
+            System.err.println("Error: Target is required for 'clone " + subcommand + "'");
+            System.err.println(
+                    "Usage: migraphe clone create <target> --count <n> [--prefix <name>]");
+            System.err.println("       migraphe clone drop <target> [--prefix <name>]");
+            return null;
+        }
+        String target = args[2];
+        String prefix = optionValue(argList, "--prefix");
+
+        if (subcommand.equals("drop")) {
+            return new CloneDropCommand(context, target, prefix);
+        }
+        String count = optionValue(argList, "--count");
+        if (count == null) {
+            System.err.println("Error: --count is required for 'clone create'");
+            System.err.println(
+                    "Usage: migraphe clone create <target> --count <n> [--prefix <name>]");
+            return null;
+        }
+        try {
+            return new CloneCreateCommand(context, target, Integer.parseInt(count), prefix);
+        } catch (NumberFormatException e) {
+            System.err.println("Error: Invalid option value: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** "--name value" 形式のオプション値を取得する。 */
+    private static @Nullable String optionValue(List<String> argList, String name) {
+        int index = argList.indexOf(name);
+        if (index < 0 || index + 1 >= argList.size()) {
+            return null;
+        }
+        return argList.get(index + 1);
+    }
+
     /** 使用方法を表示する。 */
     private static void printUsage() {
         System.out.println("Migraphe - Database Migration Tool");
@@ -145,6 +418,11 @@ public class Main {
         System.out.println("  up [-y] [--dry-run] [<id>]          Execute migrations");
         System.out.println("  down [-y] [--dry-run] [--all | <v>] Rollback migrations");
         System.out.println("  status                              Show migration status");
+        System.out.println("  history <subcommand>                Maintain execution history");
+        System.out.println(
+                "  baseline <subcommand>               Create or apply schema baselines");
+        System.out.println(
+                "  clone <subcommand>                  Clone a migrated target for test shards");
         System.out.println(
                 "  validate                            Validate configuration (offline)");
         System.out.println();
@@ -152,6 +430,18 @@ public class Main {
         System.out.println("  <id>        Execute migrations up to and including <id>");
         System.out.println("  -y          Skip confirmation prompt");
         System.out.println("  --dry-run   Show plan without executing");
+        System.out.println(
+                "  --explain   With --dry-run, estimate rows and cost of DML using EXPLAIN");
+        System.out.println(
+                "  --explain-max-rows <n>  Flag nodes whose DML is estimated to touch over n rows");
+        System.out.println(
+                "  --explain-max-cost <n>  Flag nodes whose DML is estimated to cost over n");
+        System.out.println(
+                "  --group-transactions <n>  Run up to n consecutive nodes in one transaction");
+        System.out.println(
+                "  --distributed <run-id>  Share the graph with other runners using <run-id>");
+        System.out.println(
+                "  --max-replication-lag <s>  Wait before each node while replica lag exceeds s");
         System.out.println();
         System.out.println("Down options:");
         System.out.println("  <version>   Rollback migrations that depend on <version>");
@@ -159,5 +449,30 @@ public class Main {
         System.out.println("  -y          Skip confirmation prompt");
         System.out.println("  --dry-run   Show plan without executing");
         System.out.println();
+        System.out.println("History subcommands:");
+        System.out.println(
+                "  compact [--keep <n>]                Keep the latest n records per node");
+        System.out.println("  partition [--months-ahead <n>]      Partition history by month");
+        System.out.println(
+                "  archive --before <date> [--output <dir>]  Archive and remove old records");
+        System.out.println(
+                "  stats [--days <n>] [--format table|json]  Show duration percentiles and trends");
+        System.out.println(
+                "  export --output <file> [--target <name>]  Export history to a binary file");
+        System.out.println(
+                "  import --input <file> [--target <name>]   Import history, remapping to <name>");
+        System.out.println();
+        System.out.println("Baseline subcommands:");
+        System.out.println(
+                "  create <id> [--output <file>]       Write the schema at <id> to a file");
+        System.out.println(
+                "  apply --input <file>                Create the schema on an empty target");
+        System.out.println();
+        System.out.println("Clone subcommands:");
+        System.out.println(
+                "  create <target> --count <n> [--prefix <name>]  Migrate once, clone n times");
+        System.out.println(
+                "  drop <target> [--prefix <name>]                Drop the clones of <target>");
+        System.out.println();
     }
 }
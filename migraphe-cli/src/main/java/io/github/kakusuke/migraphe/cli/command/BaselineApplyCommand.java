@@ -0,0 +1,65 @@
+package io.github.kakusuke.migraphe.cli.command;
+
+import io.github.kakusuke.migraphe.api.history.HistoryRepository;
+import io.github.kakusuke.migraphe.cli.ExecutionContext;
+import io.github.kakusuke.migraphe.cli.factory.HistoryRepositoryFactory;
+import io.github.kakusuke.migraphe.core.baseline.Baseline;
+import io.github.kakusuke.migraphe.core.baseline.BaselineService;
+import java.nio.file.Path;
+
+/** ベースラインを空のターゲットに適用し、含まれるノードを適用済みとして記録するコマンド。 */
+public class BaselineApplyCommand implements Command {
+
+    private final ExecutionContext context;
+    private final Path input;
+
+    /**
+     * @param input ベースラインのファイル（プロジェクトディレクトリからの相対パス）
+     */
+    public BaselineApplyCommand(ExecutionContext context, Path input) {
+        this.context = context;
+        this.input = input;
+    }
+
+    @Override
+    public int execute() {
+        try {
+            HistoryRepository historyRepo = getHistoryRepository();
+            try {
+                historyRepo.initialize();
+
+                Baseline baseline = Baseline.read(context.baseDir().resolve(input));
+                int applied = new BaselineService(context.graph(), historyRepo).apply(baseline);
+                if (applied == 0) {
+                    System.out.println(
+                            "Baseline at "
+                                    + baseline.node().value()
+                                    + " is already applied to target "
+                                    + baseline.target());
+                } else {
+                    System.out.println(
+                            "Applied baseline at "
+                                    + baseline.node().value()
+                                    + " to target "
+                                    + baseline.target()
+                                    + ": marked "
+                                    + applied
+                                    + " node(s) as applied");
+                }
+                return 0;
+            } finally {
+                HistoryRepositoryFactory.close(historyRepo);
+            }
+        } catch (Exception e) {
+            System.err.println("Baseline apply failed: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        }
+    }
+
+    /** history セクションの設定に従って HistoryRepository を取得する。 */
+    private HistoryRepository getHistoryRepository() {
+        return new HistoryRepositoryFactory(context.pluginRegistry())
+                .createRepository(context.baseDir(), context.config(), context.environments());
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.kakusuke.migraphe.cli.command;
+
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.HistoryRepository;
+import io.github.kakusuke.migraphe.cli.ExecutionContext;
+import io.github.kakusuke.migraphe.cli.factory.HistoryRepositoryFactory;
+import io.github.kakusuke.migraphe.core.baseline.Baseline;
+import io.github.kakusuke.migraphe.core.baseline.BaselineService;
+import java.nio.file.Path;
+import org.jspecify.annotations.Nullable;
+
+/** ノードまでを適用したターゲットのスキーマを、ベースラインとしてファイルに書き出すコマンド。 */
+public class BaselineCreateCommand implements Command {
+
+    /** 出力先を指定しない場合のディレクトリ。 ファイル名は {@code <ターゲット名>.sql}。 */
+    public static final String DEFAULT_OUTPUT_DIR = "baselines";
+
+    private final ExecutionContext context;
+    private final NodeId nodeId;
+    private final @Nullable Path output;
+
+    /**
+     * @param nodeId ベースラインにするノード
+     * @param output 出力先のファイル（プロジェクトディレクトリからの相対パス、null の場合は
+     *     {@code baselines/<ターゲット名>.sql}）
+     */
+    public BaselineCreateCommand(ExecutionContext context, NodeId nodeId, @Nullable Path output) {
+        this.context = context;
+        this.nodeId = nodeId;
+        this.output = output;
+    }
+
+    @Override
+    public int execute() {
+        try {
+            HistoryRepository historyRepo = getHistoryRepository();
+            try {
+                historyRepo.initialize();
+
+                Baseline baseline =
+                        new BaselineService(context.graph(), historyRepo).capture(nodeId);
+                Path file =
+                        context.baseDir()
+                                .resolve(
+                                        output != null
+                                                ? output
+                                                : Path.of(
+                                                        DEFAULT_OUTPUT_DIR,
+                                                        baseline.target() + ".sql"));
+                baseline.write(file);
+                System.out.println(
+                        "Captured baseline at "
+                                + nodeId.value()
+                                + " for target "
+                                + baseline.target()
+                                + ": "
+                                + baseline.nodes().size()
+                                + " node(s), written to "
+                                + file);
+                return 0;
+            } finally {
+                HistoryRepositoryFactory.close(historyRepo);
+            }
+        } catch (Exception e) {
+            System.err.println("Baseline creation failed: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        }
+    }
+
+    /** history セクションの設定に従って HistoryRepository を取得する。 */
+    private HistoryRepository getHistoryRepository() {
+        return new HistoryRepositoryFactory(context.pluginRegistry())
+                .createRepository(context.baseDir(), context.config(), context.environments());
+    }
+}
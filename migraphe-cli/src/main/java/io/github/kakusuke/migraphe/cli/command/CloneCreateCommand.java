@@ -0,0 +1,124 @@
+package io.github.kakusuke.migraphe.cli.command;
+
+import io.github.kakusuke.migraphe.api.environment.DatabaseCloning;
+import io.github.kakusuke.migraphe.api.environment.Environment;
+import io.github.kakusuke.migraphe.api.graph.MigrationNode;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.HistoryQuery;
+import io.github.kakusuke.migraphe.api.history.HistoryRepository;
+import io.github.kakusuke.migraphe.cli.ExecutionContext;
+import io.github.kakusuke.migraphe.cli.factory.HistoryRepositoryFactory;
+import io.github.kakusuke.migraphe.cli.listener.ConsoleExecutionListener;
+import io.github.kakusuke.migraphe.cli.util.AnsiColor;
+import io.github.kakusuke.migraphe.core.execution.ExecutionResult;
+import io.github.kakusuke.migraphe.core.execution.MigrationExecutor;
+import java.util.HashSet;
+import java.util.Set;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * ターゲットのデータベースをテンプレートとしてマイグレーションを1度だけ適用し、使い捨てのデータベースを複製するコマンド。
+ *
+ * <p>複製の名前は {@code <prefix>_1} から {@code <prefix>_<count>}。 複製にはターゲットの実行履歴も記録する。
+ */
+public class CloneCreateCommand implements Command {
+
+    private final ExecutionContext context;
+    private final String target;
+    private final int count;
+    private final String prefix;
+
+    /**
+     * @param target テンプレートにするターゲット
+     * @param count 作成する複製の数
+     * @param prefix 複製の名前の接頭辞（null の場合は {@code <target>_clone}）
+     */
+    public CloneCreateCommand(
+            ExecutionContext context, String target, int count, @Nullable String prefix) {
+        this.context = context;
+        this.target = target;
+        this.count = count;
+        this.prefix = prefix != null ? prefix : target + "_clone";
+    }
+
+    @Override
+    public int execute() {
+        try {
+            if (count < 1) {
+                System.err.println("Error: --count must be at least 1");
+                return 1;
+            }
+            Environment environment = context.environments().get(target);
+            if (environment == null) {
+                System.err.println("Error: Unknown target: " + target);
+                return 1;
+            }
+            if (!(environment instanceof DatabaseCloning cloning)) {
+                System.err.println("Error: Target " + target + " does not support cloning.");
+                return 1;
+            }
+
+            HistoryRepository historyRepo = getHistoryRepository();
+            try {
+                historyRepo.initialize();
+
+                // 1. テンプレートのマイグレーションを1度だけ適用する
+                if (!migrateTemplate(environment, historyRepo)) {
+                    return 1;
+                }
+
+                // 2. テンプレートを複製し、履歴も揃える
+                for (int i = 1; i <= count; i++) {
+                    String name = prefix + "_" + i;
+                    // 履歴がテンプレートにある場合に備え、履歴は複製した後に読み出す
+                    String url =
+                            cloning.createClone(
+                                    name,
+                                    () ->
+                                            historyRepo.streamRecords(
+                                                    HistoryQuery.forEnvironment(
+                                                            environment.id())));
+                    System.out.println("Created clone " + name + ": " + url);
+                }
+                return 0;
+            } finally {
+                HistoryRepositoryFactory.close(historyRepo);
+            }
+        } catch (Exception e) {
+            System.err.println("Clone failed: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        }
+    }
+
+    /** ターゲットのノードと、その未実行の依存ノードを実行する。 */
+    private boolean migrateTemplate(Environment environment, HistoryRepository historyRepo) {
+        MigrationExecutor executor =
+                new MigrationExecutor(
+                        context.graph(),
+                        historyRepo,
+                        new ConsoleExecutionListener(AnsiColor.isColorEnabled()));
+        Set<NodeId> targetNodes = new HashSet<>();
+        for (MigrationNode node : context.graph().allNodes()) {
+            if (node.environment().id().equals(environment.id())) {
+                targetNodes.addAll(executor.determineTargetNodes(node.id()));
+            }
+        }
+        if (targetNodes.isEmpty()) {
+            System.out.println("Template target " + target + " is up to date.");
+            return true;
+        }
+
+        System.out.println("Migrating template target " + target + "...");
+        System.out.println();
+        ExecutionResult result = executor.execute(targetNodes);
+        System.out.println();
+        return result.success();
+    }
+
+    /** history セクションの設定に従って HistoryRepository を取得する。 */
+    private HistoryRepository getHistoryRepository() {
+        return new HistoryRepositoryFactory(context.pluginRegistry())
+                .createRepository(context.baseDir(), context.config(), context.environments());
+    }
+}
@@ -0,0 +1,59 @@
+package io.github.kakusuke.migraphe.cli.command;
+
+import io.github.kakusuke.migraphe.api.environment.DatabaseCloning;
+import io.github.kakusuke.migraphe.api.environment.Environment;
+import io.github.kakusuke.migraphe.cli.ExecutionContext;
+import java.util.List;
+import org.jspecify.annotations.Nullable;
+
+/** {@code clone create} で作成した複製を削除するコマンド。 */
+public class CloneDropCommand implements Command {
+
+    private final ExecutionContext context;
+    private final String target;
+    private final @Nullable String prefix;
+
+    /**
+     * @param target テンプレートにしたターゲット
+     * @param prefix 削除する複製の名前の接頭辞（null の場合はターゲットの全ての複製を削除する）
+     */
+    public CloneDropCommand(ExecutionContext context, String target, @Nullable String prefix) {
+        this.context = context;
+        this.target = target;
+        this.prefix = prefix;
+    }
+
+    @Override
+    public int execute() {
+        try {
+            Environment environment = context.environments().get(target);
+            if (environment == null) {
+                System.err.println("Error: Unknown target: " + target);
+                return 1;
+            }
+            if (!(environment instanceof DatabaseCloning cloning)) {
+                System.err.println("Error: Target " + target + " does not support cloning.");
+                return 1;
+            }
+
+            List<String> clones =
+                    cloning.clones().stream()
+                            .filter(name -> prefix == null || name.startsWith(prefix + "_"))
+                            .toList();
+            if (clones.isEmpty()) {
+                System.out.println("No clones of target " + target + " to drop.");
+                return 0;
+            }
+            for (String name : clones) {
+                cloning.dropClone(name);
+                System.out.println("Dropped clone " + name);
+            }
+            return 0;
+
+        } catch (Exception e) {
+            System.err.println("Clone drop failed: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        }
+    }
+}
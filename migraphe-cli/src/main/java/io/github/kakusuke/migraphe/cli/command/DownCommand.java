@@ -1,11 +1,10 @@
 package io.github.kakusuke.migraphe.cli.command;
 
-import io.github.kakusuke.migraphe.api.environment.Environment;
 import io.github.kakusuke.migraphe.api.graph.MigrationNode;
 import io.github.kakusuke.migraphe.api.graph.NodeId;
 import io.github.kakusuke.migraphe.api.history.HistoryRepository;
-import io.github.kakusuke.migraphe.api.spi.MigraphePlugin;
 import io.github.kakusuke.migraphe.cli.ExecutionContext;
+import io.github.kakusuke.migraphe.cli.factory.HistoryRepositoryFactory;
 import io.github.kakusuke.migraphe.cli.listener.ConsoleExecutionListener;
 import io.github.kakusuke.migraphe.cli.util.AnsiColor;
 import io.github.kakusuke.migraphe.core.execution.ExecutionResult;
@@ -15,7 +14,6 @@ import io.github.kakusuke.migraphe.core.graph.ExecutionLevel;
 import io.github.kakusuke.migraphe.core.graph.ExecutionPlan;
 import io.github.kakusuke.migraphe.core.graph.NodeLineInfo;
 import io.github.kakusuke.migraphe.core.graph.TopologicalSort;
-import io.github.kakusuke.migraphe.core.history.InMemoryHistoryRepository;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -87,48 +85,51 @@ public class DownCommand implements Command {
 
             // 2. HistoryRepository を取得
             HistoryRepository historyRepo = getHistoryRepository();
-            historyRepo.initialize();
+            try {
+                historyRepo.initialize();
 
-            // 3. Executor と Listener を作成
-            ConsoleExecutionListener listener = new ConsoleExecutionListener(colorEnabled);
-            RollbackExecutor executor =
-                    new RollbackExecutor(context.graph(), historyRepo, listener);
+                // 3. Executor と Listener を作成
+                ConsoleExecutionListener listener = new ConsoleExecutionListener(colorEnabled);
+                RollbackExecutor executor =
+                        new RollbackExecutor(context.graph(), historyRepo, listener);
 
-            // 4. ロールバック対象ノードを決定
-            Set<NodeId> targetNodes =
-                    executor.determineRollbackTargets(targetVersion, allMigrations);
+                // 4. ロールバック対象ノードを決定
+                Set<NodeId> targetNodes =
+                        executor.determineRollbackTargets(targetVersion, allMigrations);
 
-            if (targetNodes.isEmpty()) {
-                System.out.println("No migrations to rollback.");
-                return 0;
-            }
-
-            // 5. 逆順実行プラン生成してグラフ表示
-            ExecutionPlan plan =
-                    TopologicalSort.createReverseExecutionPlanFor(context.graph(), targetNodes);
-            displayRollbackPlan(plan, historyRepo);
+                if (targetNodes.isEmpty()) {
+                    System.out.println("No migrations to rollback.");
+                    return 0;
+                }
 
-            // 6. dry-run の場合はここで終了
-            if (dryRun) {
-                System.out.println();
-                System.out.println("No changes made (dry run).");
-                return 0;
-            }
+                // 5. 逆順実行プラン生成してグラフ表示
+                ExecutionPlan plan =
+                        TopologicalSort.createReverseExecutionPlanFor(context.graph(), targetNodes);
+                displayRollbackPlan(plan, historyRepo);
 
-            // 7. 確認プロンプト（-y でスキップ）
-            if (!skipConfirmation && !confirmRollback()) {
-                System.out.println("Rollback cancelled.");
-                return 0;
-            }
+                // 6. dry-run の場合はここで終了
+                if (dryRun) {
+                    System.out.println();
+                    System.out.println("No changes made (dry run).");
+                    return 0;
+                }
 
-            // 8. ロールバック実行
-            System.out.println();
-            System.out.println("Executing rollback...");
-            System.out.println();
+                // 7. 確認プロンプト（-y でスキップ）
+                if (!skipConfirmation && !confirmRollback()) {
+                    System.out.println("Rollback cancelled.");
+                    return 0;
+                }
 
-            ExecutionResult result = executor.execute(targetNodes);
-            return result.success() ? 0 : 1;
+                // 8. ロールバック実行
+                System.out.println();
+                System.out.println("Executing rollback...");
+                System.out.println();
 
+                ExecutionResult result = executor.execute(targetNodes);
+                return result.success() ? 0 : 1;
+            } finally {
+                HistoryRepositoryFactory.close(historyRepo);
+            }
         } catch (Exception e) {
             System.err.println("Rollback failed: " + e.getMessage());
             e.printStackTrace();
@@ -203,27 +204,9 @@ public class DownCommand implements Command {
         }
     }
 
-    /** HistoryRepository をプラグイン経由で取得する。 */
+    /** history セクションの設定に従って HistoryRepository を取得する。 */
     private HistoryRepository getHistoryRepository() {
-        String historyTarget =
-                context.config()
-                        .getConfigMapping(
-                                io.github.kakusuke.migraphe.core.config.ProjectConfig.class)
-                        .history()
-                        .target();
-
-        Environment historyEnv = context.environments().get(historyTarget);
-
-        if (historyEnv == null) {
-            System.out.println(
-                    "Warning: History target not found. Using in-memory history repository.");
-            return new InMemoryHistoryRepository();
-        }
-
-        String type = context.config().getValue("target." + historyTarget + ".type", String.class);
-
-        MigraphePlugin<?> plugin = context.pluginRegistry().getRequiredPlugin(type);
-
-        return plugin.historyRepositoryProvider().createRepository(historyEnv);
+        return new HistoryRepositoryFactory(context.pluginRegistry())
+                .createRepository(context.baseDir(), context.config(), context.environments());
     }
 }
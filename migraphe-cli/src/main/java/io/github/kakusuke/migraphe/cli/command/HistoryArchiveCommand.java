@@ -0,0 +1,65 @@
+package io.github.kakusuke.migraphe.cli.command;
+
+import io.github.kakusuke.migraphe.api.history.HistoryMaintenance;
+import io.github.kakusuke.migraphe.api.history.HistoryRepository;
+import io.github.kakusuke.migraphe.cli.ExecutionContext;
+import io.github.kakusuke.migraphe.cli.factory.HistoryRepositoryFactory;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+/** 指定日時より古い履歴をファイルに書き出して削除するコマンド。 */
+public class HistoryArchiveCommand implements Command {
+
+    /** --output 未指定時の書き出し先（プロジェクトディレクトリからの相対パス）。 */
+    public static final String DEFAULT_OUTPUT_DIR = "history-archive";
+
+    private final ExecutionContext context;
+    private final Instant before;
+    private final Path outputDir;
+
+    public HistoryArchiveCommand(ExecutionContext context, Instant before, Path outputDir) {
+        this.context = context;
+        this.before = before;
+        this.outputDir = outputDir;
+    }
+
+    @Override
+    public int execute() {
+        try {
+            HistoryRepository historyRepo = getHistoryRepository();
+            try {
+                historyRepo.initialize();
+
+                if (!(historyRepo instanceof HistoryMaintenance maintenance)) {
+                    System.err.println(
+                            "Error: The configured history store does not support archiving.");
+                    return 1;
+                }
+
+                List<Path> files =
+                        maintenance.archive(before, context.baseDir().resolve(outputDir));
+                if (files.isEmpty()) {
+                    System.out.println("No history records to archive.");
+                } else {
+                    for (Path file : files) {
+                        System.out.println("Archived: " + file);
+                    }
+                }
+                return 0;
+            } finally {
+                HistoryRepositoryFactory.close(historyRepo);
+            }
+        } catch (Exception e) {
+            System.err.println("History archive failed: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        }
+    }
+
+    /** history セクションの設定に従って HistoryRepository を取得する。 */
+    private HistoryRepository getHistoryRepository() {
+        return new HistoryRepositoryFactory(context.pluginRegistry())
+                .createRepository(context.baseDir(), context.config(), context.environments());
+    }
+}
@@ -0,0 +1,65 @@
+package io.github.kakusuke.migraphe.cli.command;
+
+import io.github.kakusuke.migraphe.api.history.HistoryMaintenance;
+import io.github.kakusuke.migraphe.api.history.HistoryRepository;
+import io.github.kakusuke.migraphe.cli.ExecutionContext;
+import io.github.kakusuke.migraphe.cli.factory.HistoryRepositoryFactory;
+
+/** ノードごとに最新 N 件だけを残して履歴を削除するコマンド。 */
+public class HistoryCompactCommand implements Command {
+
+    /** --keep 未指定時に残すレコード数。 */
+    public static final int DEFAULT_KEEP = 10;
+
+    private final ExecutionContext context;
+    private final int keepLatest;
+
+    public HistoryCompactCommand(ExecutionContext context, int keepLatest) {
+        this.context = context;
+        this.keepLatest = keepLatest;
+    }
+
+    @Override
+    public int execute() {
+        try {
+            if (keepLatest < 1) {
+                System.err.println("Error: --keep must be a positive number");
+                return 1;
+            }
+
+            HistoryRepository historyRepo = getHistoryRepository();
+            try {
+                historyRepo.initialize();
+
+                if (!(historyRepo instanceof HistoryMaintenance maintenance)) {
+                    System.err.println(
+                            "Error: The configured history store does not support compaction.");
+                    return 1;
+                }
+
+                long removed = maintenance.compact(keepLatest);
+                System.out.println(
+                        "Compacted history: removed "
+                                + removed
+                                + " record"
+                                + (removed == 1 ? "" : "s")
+                                + ", keeping the latest "
+                                + keepLatest
+                                + " per node.");
+                return 0;
+            } finally {
+                HistoryRepositoryFactory.close(historyRepo);
+            }
+        } catch (Exception e) {
+            System.err.println("History compaction failed: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        }
+    }
+
+    /** history セクションの設定に従って HistoryRepository を取得する。 */
+    private HistoryRepository getHistoryRepository() {
+        return new HistoryRepositoryFactory(context.pluginRegistry())
+                .createRepository(context.baseDir(), context.config(), context.environments());
+    }
+}
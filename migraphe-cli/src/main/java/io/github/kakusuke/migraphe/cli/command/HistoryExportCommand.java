@@ -0,0 +1,77 @@
+package io.github.kakusuke.migraphe.cli.command;
+
+import io.github.kakusuke.migraphe.api.environment.Environment;
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.api.history.HistoryQuery;
+import io.github.kakusuke.migraphe.api.history.HistoryRepository;
+import io.github.kakusuke.migraphe.cli.ExecutionContext;
+import io.github.kakusuke.migraphe.cli.factory.HistoryRepositoryFactory;
+import io.github.kakusuke.migraphe.core.history.HistoryExportWriter;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import org.jspecify.annotations.Nullable;
+
+/** 実行履歴をエクスポートファイルに書き出すコマンド。 */
+public class HistoryExportCommand implements Command {
+
+    private final ExecutionContext context;
+    private final Path output;
+    private final @Nullable String target;
+
+    /**
+     * @param output 書き出し先（プロジェクトディレクトリからの相対パス）
+     * @param target 書き出すターゲット名（null の場合は全ターゲット）
+     */
+    public HistoryExportCommand(ExecutionContext context, Path output, @Nullable String target) {
+        this.context = context;
+        this.output = output;
+        this.target = target;
+    }
+
+    @Override
+    public int execute() {
+        try {
+            Map<String, Environment> environments = new TreeMap<>(context.environments());
+            if (target != null) {
+                Environment environment = environments.get(target);
+                if (environment == null) {
+                    System.err.println("Error: Unknown target: " + target);
+                    return 1;
+                }
+                environments = Map.of(target, environment);
+            }
+
+            HistoryRepository historyRepo = getHistoryRepository();
+            try {
+                historyRepo.initialize();
+
+                Path file = context.baseDir().resolve(output);
+                try (HistoryExportWriter writer = HistoryExportWriter.create(file)) {
+                    for (Environment environment : environments.values()) {
+                        try (Stream<ExecutionRecord> records =
+                                historyRepo.streamRecords(
+                                        HistoryQuery.forEnvironment(environment.id()))) {
+                            records.forEach(writer::write);
+                        }
+                    }
+                    System.out.println("Exported " + writer.count() + " record(s) to " + file);
+                }
+                return 0;
+            } finally {
+                HistoryRepositoryFactory.close(historyRepo);
+            }
+        } catch (Exception e) {
+            System.err.println("History export failed: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        }
+    }
+
+    /** history セクションの設定に従って HistoryRepository を取得する。 */
+    private HistoryRepository getHistoryRepository() {
+        return new HistoryRepositoryFactory(context.pluginRegistry())
+                .createRepository(context.baseDir(), context.config(), context.environments());
+    }
+}
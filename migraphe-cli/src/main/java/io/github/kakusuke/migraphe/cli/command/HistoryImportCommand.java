@@ -0,0 +1,112 @@
+package io.github.kakusuke.migraphe.cli.command;
+
+import io.github.kakusuke.migraphe.api.environment.Environment;
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.api.history.HistoryBulkImport;
+import io.github.kakusuke.migraphe.api.history.HistoryQuery;
+import io.github.kakusuke.migraphe.api.history.HistoryRepository;
+import io.github.kakusuke.migraphe.cli.ExecutionContext;
+import io.github.kakusuke.migraphe.cli.factory.HistoryRepositoryFactory;
+import io.github.kakusuke.migraphe.core.history.HistoryExportReader;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.jspecify.annotations.Nullable;
+
+/** エクスポートファイルから実行履歴を取り込むコマンド。 */
+public class HistoryImportCommand implements Command {
+
+    private final ExecutionContext context;
+    private final Path input;
+    private final @Nullable String target;
+
+    /**
+     * @param input エクスポートファイル（プロジェクトディレクトリからの相対パス）
+     * @param target 全レコードをこのターゲットの履歴として取り込む（null の場合はファイルの環境IDのまま）
+     */
+    public HistoryImportCommand(ExecutionContext context, Path input, @Nullable String target) {
+        this.context = context;
+        this.input = input;
+        this.target = target;
+    }
+
+    @Override
+    public int execute() {
+        try {
+            EnvironmentId environmentOverride = null;
+            if (target != null) {
+                Environment environment = context.environments().get(target);
+                if (environment == null) {
+                    System.err.println("Error: Unknown target: " + target);
+                    return 1;
+                }
+                environmentOverride = environment.id();
+            }
+
+            HistoryRepository historyRepo = getHistoryRepository();
+            try {
+                historyRepo.initialize();
+
+                Path file = context.baseDir().resolve(input);
+                try (HistoryExportReader reader =
+                        HistoryExportReader.open(file, environmentOverride)) {
+                    long imported =
+                            historyRepo instanceof HistoryBulkImport bulkImport
+                                    ? bulkImport.importRecords(reader)
+                                    : recordEach(historyRepo, reader);
+                    long skipped = reader.count() - imported;
+                    System.out.println(
+                            "Imported "
+                                    + imported
+                                    + " record(s) from "
+                                    + file
+                                    + (skipped > 0 ? " (" + skipped + " already present)" : ""));
+                }
+                return 0;
+            } finally {
+                HistoryRepositoryFactory.close(historyRepo);
+            }
+        } catch (Exception e) {
+            System.err.println("History import failed: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        }
+    }
+
+    /** 一括取り込みに対応していない保存先では、既にないIDのレコードだけを1件ずつ記録する。 */
+    private static long recordEach(
+            HistoryRepository historyRepo, Iterator<ExecutionRecord> records) {
+        Map<EnvironmentId, Set<String>> existingIds = new HashMap<>();
+        long imported = 0;
+        while (records.hasNext()) {
+            ExecutionRecord record = records.next();
+            Set<String> ids =
+                    existingIds.computeIfAbsent(
+                            record.environmentId(), id -> existingIds(historyRepo, id));
+            if (ids.add(record.id())) {
+                historyRepo.record(record);
+                imported++;
+            }
+        }
+        return imported;
+    }
+
+    private static Set<String> existingIds(
+            HistoryRepository historyRepo, EnvironmentId environmentId) {
+        try (Stream<ExecutionRecord> records =
+                historyRepo.streamRecords(HistoryQuery.forEnvironment(environmentId))) {
+            return records.map(ExecutionRecord::id).collect(Collectors.toSet());
+        }
+    }
+
+    /** history セクションの設定に従って HistoryRepository を取得する。 */
+    private HistoryRepository getHistoryRepository() {
+        return new HistoryRepositoryFactory(context.pluginRegistry())
+                .createRepository(context.baseDir(), context.config(), context.environments());
+    }
+}
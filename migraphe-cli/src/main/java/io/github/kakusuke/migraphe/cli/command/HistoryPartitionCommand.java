@@ -0,0 +1,65 @@
+package io.github.kakusuke.migraphe.cli.command;
+
+import io.github.kakusuke.migraphe.api.history.HistoryPartitioning;
+import io.github.kakusuke.migraphe.api.history.HistoryRepository;
+import io.github.kakusuke.migraphe.cli.ExecutionContext;
+import io.github.kakusuke.migraphe.cli.factory.HistoryRepositoryFactory;
+import java.util.List;
+
+/** 履歴を月単位の範囲パーティションに分割し、今後のパーティションを用意するコマンド。 */
+public class HistoryPartitionCommand implements Command {
+
+    /** --months-ahead 未指定時に先行して作成する月数。 */
+    public static final int DEFAULT_MONTHS_AHEAD = 3;
+
+    private final ExecutionContext context;
+    private final int monthsAhead;
+
+    public HistoryPartitionCommand(ExecutionContext context, int monthsAhead) {
+        this.context = context;
+        this.monthsAhead = monthsAhead;
+    }
+
+    @Override
+    public int execute() {
+        try {
+            if (monthsAhead < 0) {
+                System.err.println("Error: --months-ahead must not be negative");
+                return 1;
+            }
+
+            HistoryRepository historyRepo = getHistoryRepository();
+            try {
+                historyRepo.initialize();
+
+                if (!(historyRepo instanceof HistoryPartitioning partitioning)) {
+                    System.err.println(
+                            "Error: The configured history store does not support partitioning.");
+                    return 1;
+                }
+
+                List<String> created = partitioning.ensurePartitions(monthsAhead);
+                if (created.isEmpty()) {
+                    System.out.println("History partitions are up to date.");
+                } else {
+                    for (String partition : created) {
+                        System.out.println("Created partition: " + partition);
+                    }
+                }
+                return 0;
+            } finally {
+                HistoryRepositoryFactory.close(historyRepo);
+            }
+        } catch (Exception e) {
+            System.err.println("History partitioning failed: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        }
+    }
+
+    /** history セクションの設定に従って HistoryRepository を取得する。 */
+    private HistoryRepository getHistoryRepository() {
+        return new HistoryRepositoryFactory(context.pluginRegistry())
+                .createRepository(context.baseDir(), context.config(), context.environments());
+    }
+}
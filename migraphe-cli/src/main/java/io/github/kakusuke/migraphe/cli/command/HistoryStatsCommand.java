@@ -0,0 +1,227 @@
+package io.github.kakusuke.migraphe.cli.command;
+
+import io.github.kakusuke.migraphe.api.environment.Environment;
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.api.history.HistoryAnalytics;
+import io.github.kakusuke.migraphe.api.history.HistoryQuery;
+import io.github.kakusuke.migraphe.api.history.HistoryRepository;
+import io.github.kakusuke.migraphe.api.history.NodeDurationStats;
+import io.github.kakusuke.migraphe.cli.ExecutionContext;
+import io.github.kakusuke.migraphe.cli.factory.HistoryRepositoryFactory;
+import io.github.kakusuke.migraphe.core.history.DurationStatsCollector;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import org.jspecify.annotations.Nullable;
+
+/** ノードごとの実行時間のパーセンタイル・失敗率・傾向を表示するコマンド。 */
+public class HistoryStatsCommand implements Command {
+
+    /** --days 未指定時の集計期間（日）。 */
+    public static final int DEFAULT_DAYS = 30;
+
+    /** --format 未指定時の出力形式。 */
+    public static final String DEFAULT_FORMAT = "table";
+
+    private final ExecutionContext context;
+    private final int days;
+    private final String format;
+
+    public HistoryStatsCommand(ExecutionContext context, int days, String format) {
+        this.context = context;
+        this.days = days;
+        this.format = format;
+    }
+
+    @Override
+    public int execute() {
+        try {
+            if (days < 1) {
+                System.err.println("Error: --days must be a positive number");
+                return 1;
+            }
+            if (!format.equals("table") && !format.equals("json")) {
+                System.err.println("Error: --format must be 'table' or 'json'");
+                return 1;
+            }
+
+            HistoryRepository historyRepo = getHistoryRepository();
+            try {
+                historyRepo.initialize();
+
+                Instant until = Instant.now();
+                Instant from = until.minus(Duration.ofDays(days));
+
+                // ターゲット名順に集計する
+                Map<String, List<NodeDurationStats>> statsByTarget = new TreeMap<>();
+                for (Map.Entry<String, Environment> entry : context.environments().entrySet()) {
+                    HistoryQuery query =
+                            HistoryQuery.forEnvironment(entry.getValue().id())
+                                    .from(from)
+                                    .until(until);
+                    statsByTarget.put(entry.getKey(), durationStats(historyRepo, query));
+                }
+
+                if (format.equals("json")) {
+                    System.out.println(toJson(statsByTarget));
+                } else {
+                    printTable(statsByTarget);
+                }
+                return 0;
+            } finally {
+                HistoryRepositoryFactory.close(historyRepo);
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to get history statistics: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        }
+    }
+
+    /** 集計に対応していない履歴の保存先では、レコードを1度だけ読み出して集計する。 */
+    private static List<NodeDurationStats> durationStats(
+            HistoryRepository historyRepo, HistoryQuery query) {
+        if (historyRepo instanceof HistoryAnalytics analytics) {
+            return analytics.durationStats(query);
+        }
+        try (Stream<ExecutionRecord> records = historyRepo.streamRecords(query)) {
+            return DurationStatsCollector.collect(records, query);
+        }
+    }
+
+    private void printTable(Map<String, List<NodeDurationStats>> statsByTarget) {
+        String title = "History Statistics (last " + days + " day" + (days == 1 ? "" : "s") + ")";
+        System.out.println(title);
+        System.out.println("=".repeat(title.length()));
+        System.out.println();
+
+        List<String[]> rows = new ArrayList<>();
+        rows.add(new String[] {"TARGET", "NODE", "RUNS", "FAIL%", "P50", "P95", "MAX", "TREND"});
+        statsByTarget.forEach(
+                (target, stats) -> {
+                    for (NodeDurationStats s : stats) {
+                        rows.add(
+                                new String[] {
+                                    target,
+                                    s.nodeId().value(),
+                                    String.valueOf(s.count()),
+                                    String.format(Locale.ROOT, "%.1f%%", s.failureRate() * 100),
+                                    formatDuration(s.p50Ms()),
+                                    formatDuration(s.p95Ms()),
+                                    formatDuration(s.maxMs()),
+                                    formatTrend(s.trend())
+                                });
+                    }
+                });
+
+        if (rows.size() == 1) {
+            System.out.println("No executions recorded in this period.");
+            return;
+        }
+
+        int[] widths = new int[rows.get(0).length];
+        for (String[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                widths[i] = Math.max(widths[i], row[i].length());
+            }
+        }
+        for (String[] row : rows) {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    line.append("  ");
+                }
+                // ターゲットとノードは左寄せ、数値は右寄せ
+                String cell =
+                        i < 2
+                                ? String.format("%-" + widths[i] + "s", row[i])
+                                : String.format("%" + widths[i] + "s", row[i]);
+                line.append(cell);
+            }
+            System.out.println(line.toString().stripTrailing());
+        }
+    }
+
+    private String toJson(Map<String, List<NodeDurationStats>> statsByTarget) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"days\":").append(days).append(",\"nodes\":[");
+        boolean first = true;
+        for (Map.Entry<String, List<NodeDurationStats>> entry : statsByTarget.entrySet()) {
+            for (NodeDurationStats s : entry.getValue()) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                Double trend = s.trend();
+                json.append("{\"target\":")
+                        .append(jsonString(entry.getKey()))
+                        .append(",\"node\":")
+                        .append(jsonString(s.nodeId().value()))
+                        .append(",\"count\":")
+                        .append(s.count())
+                        .append(",\"failures\":")
+                        .append(s.failureCount())
+                        .append(",\"failureRate\":")
+                        .append(s.failureRate())
+                        .append(",\"p50Ms\":")
+                        .append(s.p50Ms())
+                        .append(",\"p95Ms\":")
+                        .append(s.p95Ms())
+                        .append(",\"maxMs\":")
+                        .append(s.maxMs())
+                        .append(",\"trend\":")
+                        .append(trend != null ? trend.toString() : "null")
+                        .append('}');
+            }
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder escaped = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> escaped.append("\\\"");
+                case '\\' -> escaped.append("\\\\");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                case '\t' -> escaped.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        escaped.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        escaped.append(c);
+                    }
+                }
+            }
+        }
+        return escaped.append('"').toString();
+    }
+
+    /** 所要時間をフォーマットする。 */
+    private static String formatDuration(double durationMs) {
+        if (durationMs >= 1000) {
+            return String.format(Locale.ROOT, "%.1fs", durationMs / 1000.0);
+        }
+        return Math.round(durationMs) + "ms";
+    }
+
+    /** 傾向を符号付きの百分率でフォーマットする。 */
+    private static String formatTrend(@Nullable Double trend) {
+        if (trend == null) {
+            return "-";
+        }
+        return String.format(Locale.ROOT, "%+.0f%%", trend * 100);
+    }
+
+    /** history セクションの設定に従って HistoryRepository を取得する。 */
+    private HistoryRepository getHistoryRepository() {
+        return new HistoryRepositoryFactory(context.pluginRegistry())
+                .createRepository(context.baseDir(), context.config(), context.environments());
+    }
+}
@@ -1,14 +1,12 @@
 package io.github.kakusuke.migraphe.cli.command;
 
-import io.github.kakusuke.migraphe.api.environment.Environment;
 import io.github.kakusuke.migraphe.api.graph.MigrationNode;
 import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
 import io.github.kakusuke.migraphe.api.history.HistoryRepository;
-import io.github.kakusuke.migraphe.api.spi.MigraphePlugin;
 import io.github.kakusuke.migraphe.cli.ExecutionContext;
+import io.github.kakusuke.migraphe.cli.factory.HistoryRepositoryFactory;
 import io.github.kakusuke.migraphe.core.graph.ExecutionGraphView;
 import io.github.kakusuke.migraphe.core.graph.NodeLineInfo;
-import io.github.kakusuke.migraphe.core.history.InMemoryHistoryRepository;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
@@ -36,84 +34,87 @@ public class StatusCommand implements Command {
 
             // HistoryRepository を取得
             HistoryRepository historyRepo = getHistoryRepository();
-            historyRepo.initialize();
+            try {
+                historyRepo.initialize();
 
-            // トポロジカル順序のノードリスト（context.nodes() は既にソート済み）
-            List<MigrationNode> sortedNodes = new ArrayList<>(context.nodes());
+                // トポロジカル順序のノードリスト（context.nodes() は既にソート済み）
+                List<MigrationNode> sortedNodes = new ArrayList<>(context.nodes());
 
-            // グラフをレンダリング
-            ExecutionGraphView graphView = new ExecutionGraphView(sortedNodes, false);
-            List<NodeLineInfo> lines = graphView.lines();
+                // グラフをレンダリング
+                ExecutionGraphView graphView = new ExecutionGraphView(sortedNodes, false);
+                List<NodeLineInfo> lines = graphView.lines();
 
-            int executedCount = 0;
-            int pendingCount = 0;
+                int executedCount = 0;
+                int pendingCount = 0;
 
-            for (int i = 0; i < lines.size(); i++) {
-                NodeLineInfo info = lines.get(i);
-                MigrationNode node = info.node();
-                boolean executed = historyRepo.wasExecuted(node.id(), node.environment().id());
+                for (int i = 0; i < lines.size(); i++) {
+                    NodeLineInfo info = lines.get(i);
+                    MigrationNode node = info.node();
+                    boolean executed = historyRepo.wasExecuted(node.id(), node.environment().id());
 
-                // マージ行があれば表示
-                if (info.mergeLine() != null) {
-                    System.out.println(info.mergeLine());
-                }
+                    // マージ行があれば表示
+                    if (info.mergeLine() != null) {
+                        System.out.println(info.mergeLine());
+                    }
 
-                // ノード行を表示（実行情報も同じ行に）
-                String status = executed ? "[✓]" : "[ ]";
-                StringBuilder nodeLineBuilder = new StringBuilder();
-                nodeLineBuilder
-                        .append(info.graphPrefix())
-                        .append(" ")
-                        .append(status)
-                        .append(" ")
-                        .append(node.id().value())
-                        .append(" - ")
-                        .append(node.name());
-
-                if (executed) {
-                    executedCount++;
-                    // 実行済みノードには実行日時と所要時間を同じ行に表示
-                    ExecutionRecord record =
-                            historyRepo.findLatestRecord(node.id(), node.environment().id());
-                    if (record != null) {
-                        nodeLineBuilder
-                                .append(" (")
-                                .append(formatDuration(record.durationMs()))
-                                .append(", ")
-                                .append(formatDateTime(record.executedAt()))
-                                .append(")");
+                    // ノード行を表示（実行情報も同じ行に）
+                    String status = executed ? "[✓]" : "[ ]";
+                    StringBuilder nodeLineBuilder = new StringBuilder();
+                    nodeLineBuilder
+                            .append(info.graphPrefix())
+                            .append(" ")
+                            .append(status)
+                            .append(" ")
+                            .append(node.id().value())
+                            .append(" - ")
+                            .append(node.name());
+
+                    if (executed) {
+                        executedCount++;
+                        // 実行済みノードには実行日時と所要時間を同じ行に表示
+                        ExecutionRecord record =
+                                historyRepo.findLatestRecord(node.id(), node.environment().id());
+                        if (record != null) {
+                            nodeLineBuilder
+                                    .append(" (")
+                                    .append(formatDuration(record.durationMs()))
+                                    .append(", ")
+                                    .append(formatDateTime(record.executedAt()))
+                                    .append(")");
+                        }
+                    } else {
+                        pendingCount++;
                     }
-                } else {
-                    pendingCount++;
-                }
 
-                System.out.println(nodeLineBuilder);
+                    System.out.println(nodeLineBuilder);
 
-                // 分岐行を表示（複数の子がある場合）
-                if (info.branchLine() != null) {
-                    System.out.println(info.branchLine());
-                }
+                    // 分岐行を表示（複数の子がある場合）
+                    if (info.branchLine() != null) {
+                        System.out.println(info.branchLine());
+                    }
 
-                // 接続線を表示
-                if (info.connectorLine() != null) {
-                    System.out.println(info.connectorLine());
+                    // 接続線を表示
+                    if (info.connectorLine() != null) {
+                        System.out.println(info.connectorLine());
+                    }
                 }
-            }
-
-            System.out.println();
-
-            // サマリー
-            int total = executedCount + pendingCount;
-            System.out.println(
-                    "Summary: Total: "
-                            + total
-                            + " | Executed: "
-                            + executedCount
-                            + " | Pending: "
-                            + pendingCount);
-
-            return 0; // 成功
 
+                System.out.println();
+
+                // サマリー
+                int total = executedCount + pendingCount;
+                System.out.println(
+                        "Summary: Total: "
+                                + total
+                                + " | Executed: "
+                                + executedCount
+                                + " | Pending: "
+                                + pendingCount);
+
+                return 0; // 成功
+            } finally {
+                HistoryRepositoryFactory.close(historyRepo);
+            }
         } catch (Exception e) {
             System.err.println("Failed to get migration status: " + e.getMessage());
             e.printStackTrace();
@@ -134,31 +135,9 @@ public class StatusCommand implements Command {
         return durationMs + "ms";
     }
 
-    /** HistoryRepository をプラグイン経由で取得する。 */
+    /** history セクションの設定に従って HistoryRepository を取得する。 */
     private HistoryRepository getHistoryRepository() {
-        // プロジェクト設定から history.target を取得
-        String historyTarget =
-                context.config()
-                        .getConfigMapping(
-                                io.github.kakusuke.migraphe.core.config.ProjectConfig.class)
-                        .history()
-                        .target();
-
-        Environment historyEnv = context.environments().get(historyTarget);
-
-        if (historyEnv == null) {
-            // フォールバック: InMemoryHistoryRepository を使用
-            System.out.println(
-                    "Warning: History target not found. Using in-memory history repository.");
-            return new InMemoryHistoryRepository();
-        }
-
-        // history.target の type を取得してプラグインを特定
-        String type = context.config().getValue("target." + historyTarget + ".type", String.class);
-
-        MigraphePlugin<?> plugin = context.pluginRegistry().getRequiredPlugin(type);
-
-        // プラグインの HistoryRepositoryProvider で HistoryRepository を生成
-        return plugin.historyRepositoryProvider().createRepository(historyEnv);
+        return new HistoryRepositoryFactory(context.pluginRegistry())
+                .createRepository(context.baseDir(), context.config(), context.environments());
     }
 }
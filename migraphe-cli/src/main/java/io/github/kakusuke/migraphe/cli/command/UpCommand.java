@@ -1,26 +1,35 @@
 package io.github.kakusuke.migraphe.cli.command;
 
-import io.github.kakusuke.migraphe.api.environment.Environment;
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
 import io.github.kakusuke.migraphe.api.graph.MigrationNode;
 import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.GraphFingerprintStore;
 import io.github.kakusuke.migraphe.api.history.HistoryRepository;
-import io.github.kakusuke.migraphe.api.spi.MigraphePlugin;
+import io.github.kakusuke.migraphe.api.history.NodeLeaseRepository;
+import io.github.kakusuke.migraphe.api.task.ImpactAnalyzer;
+import io.github.kakusuke.migraphe.api.task.ImpactFinding;
+import io.github.kakusuke.migraphe.api.task.ImpactOptions;
 import io.github.kakusuke.migraphe.cli.ExecutionContext;
+import io.github.kakusuke.migraphe.cli.factory.HistoryRepositoryFactory;
 import io.github.kakusuke.migraphe.cli.listener.ConsoleExecutionListener;
 import io.github.kakusuke.migraphe.cli.util.AnsiColor;
+import io.github.kakusuke.migraphe.core.execution.DistributedMigrationExecutor;
+import io.github.kakusuke.migraphe.core.execution.DistributedOptions;
 import io.github.kakusuke.migraphe.core.execution.ExecutionResult;
 import io.github.kakusuke.migraphe.core.execution.MigrationExecutor;
 import io.github.kakusuke.migraphe.core.graph.ExecutionGraphView;
 import io.github.kakusuke.migraphe.core.graph.ExecutionLevel;
 import io.github.kakusuke.migraphe.core.graph.ExecutionPlan;
+import io.github.kakusuke.migraphe.core.graph.GraphFingerprint;
 import io.github.kakusuke.migraphe.core.graph.NodeLineInfo;
 import io.github.kakusuke.migraphe.core.graph.TopologicalSort;
-import io.github.kakusuke.migraphe.core.history.InMemoryHistoryRepository;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
 import org.jspecify.annotations.Nullable;
@@ -31,20 +40,20 @@ public class UpCommand implements Command {
     private final ExecutionContext context;
     private final @Nullable NodeId targetId;
     private final boolean skipConfirmation;
-    private final boolean dryRun;
+    private final UpOptions options;
     private final InputStream inputStream;
     private final boolean colorEnabled;
 
     public UpCommand(ExecutionContext context) {
-        this(context, null, false, false, System.in, AnsiColor.isColorEnabled());
+        this(context, null, false, UpOptions.defaults());
     }
 
     public UpCommand(
             ExecutionContext context,
             @Nullable NodeId targetId,
             boolean skipConfirmation,
-            boolean dryRun) {
-        this(context, targetId, skipConfirmation, dryRun, System.in, AnsiColor.isColorEnabled());
+            UpOptions options) {
+        this(context, targetId, skipConfirmation, options, System.in, AnsiColor.isColorEnabled());
     }
 
     /** テスト用コンストラクタ。 */
@@ -52,13 +61,13 @@ public class UpCommand implements Command {
             ExecutionContext context,
             @Nullable NodeId targetId,
             boolean skipConfirmation,
-            boolean dryRun,
+            UpOptions options,
             InputStream inputStream,
             boolean colorEnabled) {
         this.context = context;
         this.targetId = targetId;
         this.skipConfirmation = skipConfirmation;
-        this.dryRun = dryRun;
+        this.options = options;
         this.inputStream = inputStream;
         this.colorEnabled = colorEnabled;
     }
@@ -74,47 +83,87 @@ public class UpCommand implements Command {
 
             // 2. HistoryRepository を取得
             HistoryRepository historyRepo = getHistoryRepository();
-            historyRepo.initialize();
-
-            // 3. Executor と Listener を作成
-            ConsoleExecutionListener listener = new ConsoleExecutionListener(colorEnabled);
-            MigrationExecutor executor =
-                    new MigrationExecutor(context.graph(), historyRepo, listener);
-
-            // 4. 実行対象ノードを決定
-            Set<NodeId> targetNodes = executor.determineTargetNodes(targetId);
-
-            if (targetNodes.isEmpty()) {
-                System.out.println("No migrations to execute. All migrations are up to date.");
-                return 0;
-            }
-
-            // 5. ExecutionPlan を生成してグラフ表示
-            ExecutionPlan plan =
-                    TopologicalSort.createExecutionPlanFor(context.graph(), targetNodes);
-            displayMigrationGraph(plan, historyRepo);
-
-            // 6. dry-run の場合はここで終了
-            if (dryRun) {
+            try {
+                String distributedRunId = options.distributedRunId();
+                if (distributedRunId != null && !(historyRepo instanceof NodeLeaseRepository)) {
+                    System.err.println(
+                            "Error: The configured history store does not support distributed"
+                                    + " execution.");
+                    return 1;
+                }
+
+                // 前回全ノードを適用したときからグラフが変わっていなければ、履歴を1度問い合わせるだけで終了する
+                Map<EnvironmentId, String> fingerprints = GraphFingerprint.compute(context.graph());
+                if (matchesRecordedFingerprints(historyRepo, fingerprints)) {
+                    System.out.println("No migrations to execute. All migrations are up to date.");
+                    return 0;
+                }
+
+                historyRepo.initialize();
+
+                // 3. Executor と Listener を作成
+                ConsoleExecutionListener listener = new ConsoleExecutionListener(colorEnabled);
+                MigrationExecutor executor =
+                        new MigrationExecutor(
+                                context.graph(),
+                                historyRepo,
+                                listener,
+                                options.transactionGroupSize(),
+                                options.throttle());
+
+                // 4. 実行対象ノードを決定
+                Set<NodeId> targetNodes = executor.determineTargetNodes(targetId);
+
+                if (targetNodes.isEmpty()) {
+                    if (targetId == null && !options.dryRun()) {
+                        saveFingerprints(historyRepo, fingerprints);
+                    }
+                    System.out.println("No migrations to execute. All migrations are up to date.");
+                    return 0;
+                }
+
+                // 5. ExecutionPlan を生成してグラフ表示
+                ExecutionPlan plan =
+                        TopologicalSort.createExecutionPlanFor(context.graph(), targetNodes);
+                displayMigrationGraph(plan, historyRepo);
+
+                // 6. dry-run の場合はここで終了
+                if (options.dryRun()) {
+                    System.out.println();
+                    System.out.println("No changes made (dry run).");
+                    return 0;
+                }
+
+                // 7. 確認プロンプト（-y でスキップ）
+                if (!skipConfirmation && !confirmExecution()) {
+                    System.out.println("Migration cancelled.");
+                    return 0;
+                }
+
+                // 8. マイグレーション実行
+                System.out.println();
+                System.out.println("Executing migrations...");
                 System.out.println();
-                System.out.println("No changes made (dry run).");
-                return 0;
-            }
 
-            // 7. 確認プロンプト（-y でスキップ）
-            if (!skipConfirmation && !confirmExecution()) {
-                System.out.println("Migration cancelled.");
-                return 0;
+                ExecutionResult result =
+                        historyRepo instanceof NodeLeaseRepository leases
+                                        && distributedRunId != null
+                                ? new DistributedMigrationExecutor(
+                                                context.graph(),
+                                                historyRepo,
+                                                leases,
+                                                listener,
+                                                DistributedOptions.of(distributedRunId),
+                                                options.throttle())
+                                        .execute(targetNodes)
+                                : executor.execute(targetNodes);
+                if (result.success() && targetId == null) {
+                    saveFingerprints(historyRepo, fingerprints);
+                }
+                return result.success() ? 0 : 1;
+            } finally {
+                HistoryRepositoryFactory.close(historyRepo);
             }
-
-            // 8. マイグレーション実行
-            System.out.println();
-            System.out.println("Executing migrations...");
-            System.out.println();
-
-            ExecutionResult result = executor.execute(targetNodes);
-            return result.success() ? 0 : 1;
-
         } catch (Exception e) {
             System.err.println("Migration failed: " + e.getMessage());
             e.printStackTrace();
@@ -122,10 +171,27 @@ public class UpCommand implements Command {
         }
     }
 
+    /** 保存されているフィンガープリントが、全ての環境で現在のグラフと一致するかどうか。 */
+    private static boolean matchesRecordedFingerprints(
+            HistoryRepository historyRepo, Map<EnvironmentId, String> fingerprints) {
+        if (!(historyRepo instanceof GraphFingerprintStore store) || fingerprints.isEmpty()) {
+            return false;
+        }
+        return store.findFingerprints(fingerprints.keySet()).equals(fingerprints);
+    }
+
+    /** 全ノードを適用し終えたグラフのフィンガープリントを保存する。 */
+    private static void saveFingerprints(
+            HistoryRepository historyRepo, Map<EnvironmentId, String> fingerprints) {
+        if (historyRepo instanceof GraphFingerprintStore store) {
+            store.saveFingerprints(fingerprints);
+        }
+    }
+
     /** マイグレーショングラフを表示する。 */
     private void displayMigrationGraph(ExecutionPlan plan, HistoryRepository historyRepo) {
-        String prefix = dryRun ? "[DRY RUN] " : "";
-        String verb = dryRun ? "would be" : "will be";
+        String prefix = options.dryRun() ? "[DRY RUN] " : "";
+        String verb = options.dryRun() ? "would be" : "will be";
 
         System.out.println();
         System.out.println(prefix + "Migrations to execute:");
@@ -141,6 +207,9 @@ public class UpCommand implements Command {
         ExecutionGraphView graphView = new ExecutionGraphView(sortedNodes, false);
         List<NodeLineInfo> lines = graphView.lines();
 
+        // dry-run では、未実行のノードについて実行した場合の影響を見積もる
+        Map<NodeId, List<ImpactFinding>> impacts = new LinkedHashMap<>();
+
         for (NodeLineInfo info : lines) {
             MigrationNode node = info.node();
             boolean executed = historyRepo.wasExecuted(node.id(), node.environment().id());
@@ -150,6 +219,14 @@ public class UpCommand implements Command {
                 System.out.println(info.mergeLine());
             }
 
+            List<ImpactFinding> findings =
+                    options.dryRun() && !executed
+                            ? analyzeImpact(node, options.impactOptions())
+                            : List.of();
+            if (!findings.isEmpty()) {
+                impacts.put(node.id(), findings);
+            }
+
             // ノード行
             String status = executed ? "[✓]" : "[ ]";
             String line =
@@ -160,6 +237,9 @@ public class UpCommand implements Command {
                             + node.id().value()
                             + " - "
                             + node.name();
+            if (findings.stream().anyMatch(ImpactFinding::highImpact)) {
+                line += " " + AnsiColor.colorize("[high impact]", AnsiColor.RED, colorEnabled);
+            }
             System.out.println(line);
 
             // 分岐行
@@ -177,6 +257,60 @@ public class UpCommand implements Command {
         int total = plan.totalNodes();
         System.out.println(
                 total + " migration" + (total == 1 ? "" : "s") + " " + verb + " executed.");
+
+        if (!impacts.isEmpty()) {
+            displayImpacts(impacts);
+        }
+    }
+
+    /** UP タスクが影響の見積もりに対応していれば見積もる。 見積もりに失敗しても dry-run は続ける。 */
+    private static List<ImpactFinding> analyzeImpact(MigrationNode node, ImpactOptions options) {
+        if (!(node.upTask() instanceof ImpactAnalyzer analyzer)) {
+            return List.of();
+        }
+        try {
+            return analyzer.analyzeImpact(options);
+        } catch (RuntimeException e) {
+            return List.of(ImpactFinding.of("Impact analysis failed: " + e.getMessage()));
+        }
+    }
+
+    /** 見積もった影響をノードごとに表示する。 影響が大きいものには ! を付ける。 */
+    private void displayImpacts(Map<NodeId, List<ImpactFinding>> impacts) {
+        System.out.println();
+        System.out.println("Impact analysis:");
+        int highImpactNodes = 0;
+        for (Map.Entry<NodeId, List<ImpactFinding>> entry : impacts.entrySet()) {
+            System.out.println("  " + entry.getKey().value());
+            boolean high = false;
+            for (ImpactFinding finding : entry.getValue()) {
+                if (finding.highImpact()) {
+                    high = true;
+                    System.out.println(
+                            "    ! "
+                                    + AnsiColor.colorize(
+                                            finding.message(), AnsiColor.RED, colorEnabled));
+                } else {
+                    System.out.println("      " + finding.message());
+                }
+            }
+            if (high) {
+                highImpactNodes++;
+            }
+        }
+        if (highImpactNodes > 0) {
+            System.out.println();
+            System.out.println(
+                    AnsiColor.colorize(
+                            highImpactNodes
+                                    + " high-impact migration"
+                                    + (highImpactNodes == 1 ? "" : "s")
+                                    + " found. Consider running "
+                                    + (highImpactNodes == 1 ? "it" : "them")
+                                    + " outside peak hours.",
+                            AnsiColor.YELLOW,
+                            colorEnabled));
+        }
     }
 
     /** 確認プロンプトを表示する。 */
@@ -189,31 +323,9 @@ public class UpCommand implements Command {
         }
     }
 
-    /** HistoryRepository をプラグイン経由で取得する。 */
+    /** history セクションの設定に従って HistoryRepository を取得する。 */
     private HistoryRepository getHistoryRepository() {
-        // プロジェクト設定から history.target を取得
-        String historyTarget =
-                context.config()
-                        .getConfigMapping(
-                                io.github.kakusuke.migraphe.core.config.ProjectConfig.class)
-                        .history()
-                        .target();
-
-        Environment historyEnv = context.environments().get(historyTarget);
-
-        if (historyEnv == null) {
-            // フォールバック: InMemoryHistoryRepository を使用
-            System.out.println(
-                    "Warning: History target not found. Using in-memory history repository.");
-            return new InMemoryHistoryRepository();
-        }
-
-        // history.target の type を取得してプラグインを特定
-        String type = context.config().getValue("target." + historyTarget + ".type", String.class);
-
-        MigraphePlugin<?> plugin = context.pluginRegistry().getRequiredPlugin(type);
-
-        // プラグインの HistoryRepositoryProvider で HistoryRepository を生成
-        return plugin.historyRepositoryProvider().createRepository(historyEnv);
+        return new HistoryRepositoryFactory(context.pluginRegistry())
+                .createRepository(context.baseDir(), context.config(), context.environments());
     }
 }
@@ -0,0 +1,45 @@
+package io.github.kakusuke.migraphe.cli.command;
+
+import io.github.kakusuke.migraphe.api.task.ImpactOptions;
+import io.github.kakusuke.migraphe.core.execution.ReplicationThrottle;
+import java.util.Objects;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * up コマンドの実行方法の指定。
+ *
+ * @param dryRun 実行せずに、実行されるノードと影響の見積もりだけを表示する場合は true
+ * @param impactOptions dry-run で影響を見積もるときの指定
+ * @param transactionGroupSize 同じ接続先の連続したノードを1つのトランザクションにまとめる最大数（1 ならまとめない）
+ * @param distributedRunId 分散実行の実行 ID（null の場合は単独で実行する）
+ * @param throttle ノードの実行前にレプリカの遅延を確認する指定（null の場合は確認しない）
+ */
+public record UpOptions(
+        boolean dryRun,
+        ImpactOptions impactOptions,
+        int transactionGroupSize,
+        @Nullable String distributedRunId,
+        @Nullable ReplicationThrottle throttle) {
+
+    public UpOptions {
+        Objects.requireNonNull(impactOptions, "impactOptions must not be null");
+        if (transactionGroupSize < 1) {
+            throw new IllegalArgumentException(
+                    "transactionGroupSize must be positive: " + transactionGroupSize);
+        }
+    }
+
+    /** 1ノードずつ単独で実行する既定の指定を作成する。 */
+    public static UpOptions defaults() {
+        return new UpOptions(false, ImpactOptions.defaults(), 1, null, null);
+    }
+
+    /**
+     * dry-run の指定を作成する。
+     *
+     * @param impactOptions 影響を見積もるときの指定
+     */
+    public static UpOptions dryRun(ImpactOptions impactOptions) {
+        return new UpOptions(true, impactOptions, 1, null, null);
+    }
+}
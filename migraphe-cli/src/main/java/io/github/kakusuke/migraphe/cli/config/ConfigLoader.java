@@ -250,10 +250,13 @@ public class ConfigLoader {
 
             // 4. プラグインの TaskDefinition クラスでマッピング
             // 注: YamlConfigSource を再作成（SmallRyeConfig はソースを使い切る）
+            // 外部ファイルの相対パスを解決できるよう、タスクファイルのディレクトリを渡す
             YamlConfigSource taskSource2 = new YamlConfigSource(taskFile.toUri().toURL());
+            Path taskDir = taskFile.toAbsolutePath().normalize().getParent();
             SmallRyeConfig taskConfig =
                     new SmallRyeConfigBuilder()
                             .withSources(taskSource2)
+                            .withDefaultValue(TaskDefinition.TASK_DIR, String.valueOf(taskDir))
                             .withMapping(plugin.taskDefinitionClass())
                             .withValidateUnknown(false)
                             .build();
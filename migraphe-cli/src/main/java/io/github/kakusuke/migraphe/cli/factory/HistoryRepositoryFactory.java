@@ -0,0 +1,105 @@
+package io.github.kakusuke.migraphe.cli.factory;
+
+import io.github.kakusuke.migraphe.api.environment.Environment;
+import io.github.kakusuke.migraphe.api.history.HistoryRepository;
+import io.github.kakusuke.migraphe.api.spi.MigraphePlugin;
+import io.github.kakusuke.migraphe.core.config.ConfigurationException;
+import io.github.kakusuke.migraphe.core.config.ProjectConfig;
+import io.github.kakusuke.migraphe.core.history.FileHistoryRepository;
+import io.github.kakusuke.migraphe.core.history.FsyncPolicy;
+import io.github.kakusuke.migraphe.core.history.InMemoryHistoryRepository;
+import io.github.kakusuke.migraphe.core.plugin.PluginRegistry;
+import io.smallrye.config.SmallRyeConfig;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * プロジェクト設定の history セクションから HistoryRepository を生成するファクトリ。
+ *
+ * <ul>
+ *   <li>history.type: file → {@link FileHistoryRepository}
+ *   <li>history.target → ターゲットのプラグインが提供する HistoryRepository
+ *   <li>ターゲットが見つからない場合 → {@link InMemoryHistoryRepository}（警告を表示）
+ * </ul>
+ */
+public class HistoryRepositoryFactory {
+
+    /** history.type で指定するファイル履歴ストアの種類名。 */
+    public static final String FILE_TYPE = "file";
+
+    /** history.path 未指定時のファイル履歴ストアのパス（プロジェクトディレクトリからの相対パス）。 */
+    public static final String DEFAULT_FILE_PATH = ".migraphe/history.log";
+
+    private final PluginRegistry pluginRegistry;
+
+    public HistoryRepositoryFactory(PluginRegistry pluginRegistry) {
+        this.pluginRegistry = pluginRegistry;
+    }
+
+    /**
+     * HistoryRepository を生成する。
+     *
+     * @param baseDir プロジェクトのベースディレクトリ
+     * @param config MicroProfile Config
+     * @param environments ターゲットID → Environment のマップ
+     * @return HistoryRepository（未初期化）
+     * @throws ConfigurationException history セクションが不正な場合
+     */
+    public HistoryRepository createRepository(
+            Path baseDir, SmallRyeConfig config, Map<String, Environment> environments) {
+        ProjectConfig.HistorySection history =
+                config.getConfigMapping(ProjectConfig.class).history();
+
+        // 1. ファイル履歴ストア
+        String type = history.type().orElse(null);
+        if (type != null) {
+            if (!FILE_TYPE.equals(type)) {
+                throw new ConfigurationException("Unknown history type: " + type);
+            }
+            return createFileRepository(baseDir, history);
+        }
+
+        // 2. ターゲットのプラグインが提供する履歴ストア
+        String historyTarget = history.target().orElse(null);
+        Environment historyEnv = historyTarget != null ? environments.get(historyTarget) : null;
+
+        if (historyTarget == null || historyEnv == null) {
+            // フォールバック: InMemoryHistoryRepository を使用
+            System.out.println(
+                    "Warning: History target not found. Using in-memory history repository.");
+            return new InMemoryHistoryRepository();
+        }
+
+        // history.target の type を取得してプラグインを特定
+        String targetType = config.getValue("target." + historyTarget + ".type", String.class);
+        MigraphePlugin<?> plugin = pluginRegistry.getRequiredPlugin(targetType);
+
+        // プラグインの HistoryRepositoryProvider で HistoryRepository を生成
+        return plugin.historyRepositoryProvider().createRepository(historyEnv);
+    }
+
+    /**
+     * 生成した HistoryRepository がファイルなどの資源を持っていれば閉じる。 ファイル履歴ストアでは、最後の記録を
+     * ディスクに書き出してからファイルのロックを解放する。
+     *
+     * @param repository {@link #createRepository} で生成した HistoryRepository
+     * @throws Exception 閉じるのに失敗した場合
+     */
+    public static void close(HistoryRepository repository) throws Exception {
+        if (repository instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private FileHistoryRepository createFileRepository(
+            Path baseDir, ProjectConfig.HistorySection history) {
+        Path path = baseDir.resolve(history.path().orElse(DEFAULT_FILE_PATH));
+        try {
+            FsyncPolicy fsyncPolicy =
+                    history.fsync().map(FsyncPolicy::fromValue).orElse(FsyncPolicy.ALWAYS);
+            return FileHistoryRepository.create(path, fsyncPolicy);
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationException("Invalid history configuration: " + e.getMessage(), e);
+        }
+    }
+}
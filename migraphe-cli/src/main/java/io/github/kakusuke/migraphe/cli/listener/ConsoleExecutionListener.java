@@ -32,6 +32,12 @@ public final class ConsoleExecutionListener implements ExecutionListener {
         printResult("OK", node.id().value(), node.name(), durationMs, null);
     }
 
+    @Override
+    public void onNodeProgress(MigrationNode node, ExecutionDirection direction, String message) {
+        String status = colorEnabled ? AnsiColor.cyan("[....]") : "[....] ";
+        System.out.println(status + " " + node.id().value() + " - " + message);
+    }
+
     @Override
     public void onNodeSkipped(MigrationNode node, ExecutionDirection direction, String reason) {
         printResult("SKIP", node.id().value(), node.name(), null, reason);
@@ -82,7 +82,7 @@ class DownCommandTest {
         ExecutionContext context = ExecutionContext.load(tempDir, pluginRegistry);
 
         // まず UP を実行
-        UpCommand upCommand = new UpCommand(context, null, true, false);
+        UpCommand upCommand = new UpCommand(context, null, true, UpOptions.defaults());
         upCommand.execute();
 
         // 出力をリセット
@@ -107,7 +107,7 @@ class DownCommandTest {
         ExecutionContext context = ExecutionContext.load(tempDir, pluginRegistry);
 
         // UP を実行
-        UpCommand upCommand = new UpCommand(context, null, true, false);
+        UpCommand upCommand = new UpCommand(context, null, true, UpOptions.defaults());
         upCommand.execute();
 
         outputStream.reset();
@@ -138,7 +138,7 @@ class DownCommandTest {
         createTestProject(tempDir);
         ExecutionContext context = ExecutionContext.load(tempDir, pluginRegistry);
 
-        UpCommand upCommand = new UpCommand(context, null, true, false);
+        UpCommand upCommand = new UpCommand(context, null, true, UpOptions.defaults());
         upCommand.execute();
 
         outputStream.reset();
@@ -164,7 +164,7 @@ class DownCommandTest {
         createTestProject(tempDir);
         ExecutionContext context = ExecutionContext.load(tempDir, pluginRegistry);
 
-        UpCommand upCommand = new UpCommand(context, null, true, false);
+        UpCommand upCommand = new UpCommand(context, null, true, UpOptions.defaults());
         upCommand.execute();
 
         outputStream.reset();
@@ -186,7 +186,7 @@ class DownCommandTest {
         createTestProject(tempDir);
         ExecutionContext context = ExecutionContext.load(tempDir, pluginRegistry);
 
-        UpCommand upCommand = new UpCommand(context, null, true, false);
+        UpCommand upCommand = new UpCommand(context, null, true, UpOptions.defaults());
         upCommand.execute();
 
         outputStream.reset();
@@ -217,7 +217,7 @@ class DownCommandTest {
         createTestProject(tempDir);
         ExecutionContext context = ExecutionContext.load(tempDir, pluginRegistry);
 
-        UpCommand upCommand = new UpCommand(context, null, true, false);
+        UpCommand upCommand = new UpCommand(context, null, true, UpOptions.defaults());
         upCommand.execute();
 
         outputStream.reset();
@@ -239,7 +239,7 @@ class DownCommandTest {
         createTestProject(tempDir);
         ExecutionContext context = ExecutionContext.load(tempDir, pluginRegistry);
 
-        UpCommand upCommand = new UpCommand(context, null, true, false);
+        UpCommand upCommand = new UpCommand(context, null, true, UpOptions.defaults());
         upCommand.execute();
 
         outputStream.reset();
@@ -275,7 +275,7 @@ class DownCommandTest {
         createTestProject(tempDir);
         ExecutionContext context = ExecutionContext.load(tempDir, pluginRegistry);
 
-        UpCommand upCommand = new UpCommand(context, null, true, false);
+        UpCommand upCommand = new UpCommand(context, null, true, UpOptions.defaults());
         upCommand.execute();
 
         outputStream.reset();
@@ -339,7 +339,7 @@ class DownCommandTest {
         createTestProject(tempDir);
         ExecutionContext context = ExecutionContext.load(tempDir, pluginRegistry);
 
-        UpCommand upCommand = new UpCommand(context, null, true, false);
+        UpCommand upCommand = new UpCommand(context, null, true, UpOptions.defaults());
         upCommand.execute();
 
         outputStream.reset();
@@ -375,7 +375,7 @@ class DownCommandTest {
         createTestProject(tempDir);
         ExecutionContext context = ExecutionContext.load(tempDir, pluginRegistry);
 
-        UpCommand upCommand = new UpCommand(context, null, true, false);
+        UpCommand upCommand = new UpCommand(context, null, true, UpOptions.defaults());
         upCommand.execute();
 
         outputStream.reset();
@@ -398,7 +398,7 @@ class DownCommandTest {
         ExecutionContext context = ExecutionContext.load(tempDir, pluginRegistry);
 
         // 1回目の UP
-        UpCommand upCommand1 = new UpCommand(context, null, true, false);
+        UpCommand upCommand1 = new UpCommand(context, null, true, UpOptions.defaults());
         upCommand1.execute();
 
         outputStream.reset();
@@ -411,7 +411,7 @@ class DownCommandTest {
         outputStream.reset();
 
         // When: 再度 UP を実行
-        UpCommand upCommand2 = new UpCommand(context, null, true, false);
+        UpCommand upCommand2 = new UpCommand(context, null, true, UpOptions.defaults());
         int exitCode = upCommand2.execute();
 
         // Then: UP が成功し、テーブルが再作成される
@@ -0,0 +1,44 @@
+package io.github.kakusuke.migraphe.cli.command;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** ファイル履歴ストアを使うテスト用のプロジェクトを作成する。 */
+final class FileHistoryProjects {
+
+    private FileHistoryProjects() {}
+
+    /**
+     * history.type: file のプロジェクトを作成する。
+     *
+     * @param baseDir プロジェクトディレクトリ（なければ作成する）
+     * @param targets 作成する PostgreSQL ターゲットの名前
+     * @return baseDir
+     */
+    static Path create(Path baseDir, String... targets) throws IOException {
+        String projectYaml =
+                """
+                project:
+                  name: test-project
+                history:
+                  type: file
+                """;
+        Files.createDirectories(baseDir);
+        Files.writeString(baseDir.resolve("migraphe.yaml"), projectYaml);
+
+        Path targetsDir = baseDir.resolve("targets");
+        Files.createDirectories(targetsDir);
+        String targetYaml =
+                """
+                type: postgresql
+                jdbc_url: jdbc:postgresql://localhost:5432/db1
+                username: user
+                password: pass
+                """;
+        for (String target : targets) {
+            Files.writeString(targetsDir.resolve(target + ".yaml"), targetYaml);
+        }
+        return baseDir;
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.kakusuke.migraphe.cli.command;
+
+import static org.assertj.core.api.Assertions.*;
+
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.cli.ExecutionContext;
+import io.github.kakusuke.migraphe.core.history.FileHistoryRepository;
+import io.github.kakusuke.migraphe.core.plugin.PluginRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@SuppressWarnings("NullAway.Init")
+class HistoryCompactCommandTest {
+
+    @TempDir Path tempDir;
+
+    private final EnvironmentId envId = EnvironmentId.of("db1");
+    private final NodeId node1 = NodeId.of("db1/001_create_users");
+
+    private PluginRegistry pluginRegistry;
+    private ByteArrayOutputStream outputStream;
+    private PrintStream originalOut;
+
+    @BeforeEach
+    void setUp() {
+        pluginRegistry = new PluginRegistry();
+        pluginRegistry.loadFromClasspath();
+
+        // 標準出力をキャプチャ
+        outputStream = new ByteArrayOutputStream();
+        originalOut = System.out;
+        System.setOut(new PrintStream(outputStream));
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    @Test
+    void shouldCompactFileHistory() throws IOException {
+        // Given: 同じノードの履歴が5件ある
+        FileHistoryProjects.create(tempDir);
+        Path historyFile = tempDir.resolve(".migraphe/history.log");
+        try (FileHistoryRepository repository = FileHistoryRepository.create(historyFile)) {
+            repository.initialize();
+            for (int i = 0; i < 5; i++) {
+                repository.record(ExecutionRecord.upSuccess(node1, envId, "Create", null, i));
+            }
+        }
+        ExecutionContext context = ExecutionContext.load(tempDir, pluginRegistry);
+
+        // When
+        int exitCode = new HistoryCompactCommand(context, 2).execute();
+
+        // Then
+        assertThat(exitCode).isEqualTo(0);
+        assertThat(outputStream.toString()).contains("removed 3 records");
+    }
+
+    @Test
+    void shouldRejectNonPositiveKeep() throws IOException {
+        // Given
+        FileHistoryProjects.create(tempDir);
+        ExecutionContext context = ExecutionContext.load(tempDir, pluginRegistry);
+
+        // When
+        int exitCode = new HistoryCompactCommand(context, 0).execute();
+
+        // Then
+        assertThat(exitCode).isEqualTo(1);
+    }
+}
@@ -0,0 +1,137 @@
+package io.github.kakusuke.migraphe.cli.command;
+
+import static org.assertj.core.api.Assertions.*;
+
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.cli.ExecutionContext;
+import io.github.kakusuke.migraphe.core.history.FileHistoryRepository;
+import io.github.kakusuke.migraphe.core.plugin.PluginRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@SuppressWarnings("NullAway.Init")
+class HistoryImportCommandTest {
+
+    @TempDir Path tempDir;
+
+    private final EnvironmentId prodEnvId = EnvironmentId.of("prod");
+    private final EnvironmentId stagingEnvId = EnvironmentId.of("staging");
+    private final NodeId node1 = NodeId.of("db1/001_create_users");
+
+    private PluginRegistry pluginRegistry;
+    private ByteArrayOutputStream outputStream;
+    private PrintStream originalOut;
+
+    @BeforeEach
+    void setUp() {
+        pluginRegistry = new PluginRegistry();
+        pluginRegistry.loadFromClasspath();
+
+        // 標準出力をキャプチャ
+        outputStream = new ByteArrayOutputStream();
+        originalOut = System.out;
+        System.setOut(new PrintStream(outputStream));
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    @Test
+    void shouldExportAndImportWithEnvironmentRemap() throws IOException {
+        // Given: 本番の履歴をエクスポートする
+        Path prodDir = FileHistoryProjects.create(tempDir.resolve("prod"), "prod");
+        record(prodDir, ExecutionRecord.upSuccess(node1, prodEnvId, "Create", "DROP;", 10));
+        ExecutionContext prodContext = ExecutionContext.load(prodDir, pluginRegistry);
+        Path exportFile = tempDir.resolve("history.mghx");
+        assertThat(new HistoryExportCommand(prodContext, exportFile, null).execute()).isZero();
+
+        // When: ステージングのターゲットとして2回取り込む
+        Path stagingDir = FileHistoryProjects.create(tempDir.resolve("staging"), "staging");
+        ExecutionContext stagingContext = ExecutionContext.load(stagingDir, pluginRegistry);
+        int first = new HistoryImportCommand(stagingContext, exportFile, "staging").execute();
+        int second = new HistoryImportCommand(stagingContext, exportFile, "staging").execute();
+
+        // Then
+        assertThat(first).isZero();
+        assertThat(second).isZero();
+        assertThat(outputStream.toString())
+                .contains("Exported 1 record(s)")
+                .contains("Imported 1 record(s)")
+                .contains("Imported 0 record(s)")
+                .contains("(1 already present)");
+        List<ExecutionRecord> imported = readAll(stagingDir, stagingEnvId);
+        assertThat(imported).hasSize(1);
+        assertThat(imported.get(0).nodeId()).isEqualTo(node1);
+        assertThat(imported.get(0).serializedDownTask()).isEqualTo("DROP;");
+    }
+
+    @Test
+    void shouldImportIntoStoreThatAlreadyHoldsSourceEnvironment() throws IOException {
+        // Given: 本番とステージングが同じ履歴を共有し、本番の履歴だけがある
+        Path baseDir = FileHistoryProjects.create(tempDir, "prod", "staging");
+        ExecutionRecord prodRecord =
+                ExecutionRecord.upSuccess(node1, prodEnvId, "Create", "DROP;", 10);
+        record(baseDir, prodRecord);
+        ExecutionContext context = ExecutionContext.load(baseDir, pluginRegistry);
+        Path exportFile = tempDir.resolve("history.mghx");
+        assertThat(new HistoryExportCommand(context, exportFile, "prod").execute()).isZero();
+
+        // When: 本番の履歴をステージングの履歴として2回取り込む
+        int first = new HistoryImportCommand(context, exportFile, "staging").execute();
+        int second = new HistoryImportCommand(context, exportFile, "staging").execute();
+
+        // Then
+        assertThat(first).isZero();
+        assertThat(second).isZero();
+        assertThat(outputStream.toString())
+                .contains("Imported 1 record(s)")
+                .contains("Imported 0 record(s)");
+        assertThat(readAll(baseDir, prodEnvId)).containsExactly(prodRecord);
+        List<ExecutionRecord> staging = readAll(baseDir, stagingEnvId);
+        assertThat(staging).hasSize(1);
+        assertThat(staging.get(0).id()).isNotEqualTo(prodRecord.id());
+        assertThat(staging.get(0).nodeId()).isEqualTo(node1);
+    }
+
+    @Test
+    void shouldRejectUnknownTarget() throws IOException {
+        // Given
+        Path baseDir = FileHistoryProjects.create(tempDir, "staging");
+        ExecutionContext context = ExecutionContext.load(baseDir, pluginRegistry);
+
+        // When
+        int exitCode =
+                new HistoryImportCommand(context, tempDir.resolve("history.mghx"), "unknown")
+                        .execute();
+
+        // Then
+        assertThat(exitCode).isEqualTo(1);
+    }
+
+    private static void record(Path baseDir, ExecutionRecord record) {
+        try (FileHistoryRepository repository =
+                FileHistoryRepository.create(baseDir.resolve(".migraphe/history.log"))) {
+            repository.initialize();
+            repository.record(record);
+        }
+    }
+
+    private static List<ExecutionRecord> readAll(Path baseDir, EnvironmentId environmentId) {
+        try (FileHistoryRepository repository =
+                FileHistoryRepository.create(baseDir.resolve(".migraphe/history.log"))) {
+            repository.initialize();
+            return repository.allRecords(environmentId);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package io.github.kakusuke.migraphe.cli.command;
+
+import static org.assertj.core.api.Assertions.*;
+
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.cli.ExecutionContext;
+import io.github.kakusuke.migraphe.core.history.FileHistoryRepository;
+import io.github.kakusuke.migraphe.core.plugin.PluginRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@SuppressWarnings("NullAway.Init")
+class HistoryStatsCommandTest {
+
+    @TempDir Path tempDir;
+
+    private final EnvironmentId envId = EnvironmentId.of("db1");
+    private final NodeId node1 = NodeId.of("db1/001_create_users");
+
+    private PluginRegistry pluginRegistry;
+    private ByteArrayOutputStream outputStream;
+    private PrintStream originalOut;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        pluginRegistry = new PluginRegistry();
+        pluginRegistry.loadFromClasspath();
+        FileHistoryProjects.create(tempDir, "db1");
+
+        // 標準出力をキャプチャ
+        outputStream = new ByteArrayOutputStream();
+        originalOut = System.out;
+        System.setOut(new PrintStream(outputStream));
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    @Test
+    void shouldPrintStatsTable() {
+        // Given
+        recordDurations(10, 20, 30);
+        ExecutionContext context = ExecutionContext.load(tempDir, pluginRegistry);
+
+        // When
+        int exitCode = new HistoryStatsCommand(context, 30, "table").execute();
+
+        // Then
+        assertThat(exitCode).isEqualTo(0);
+        assertThat(outputStream.toString())
+                .contains("History Statistics (last 30 days)")
+                .contains("TARGET")
+                .containsPattern(
+                        "db1\\s+db1/001_create_users\\s+3\\s+0\\.0%\\s+20ms\\s+29ms\\s+30ms");
+    }
+
+    @Test
+    void shouldPrintStatsAsJson() {
+        // Given
+        recordDurations(10, 20, 30);
+        ExecutionContext context = ExecutionContext.load(tempDir, pluginRegistry);
+
+        // When
+        int exitCode = new HistoryStatsCommand(context, 7, "json").execute();
+
+        // Then
+        assertThat(exitCode).isEqualTo(0);
+        assertThat(outputStream.toString().trim())
+                .startsWith("{\"days\":7,\"nodes\":[")
+                .contains("\"target\":\"db1\"")
+                .contains("\"node\":\"db1/001_create_users\"")
+                .contains("\"count\":3")
+                .contains("\"p50Ms\":20.0")
+                .contains("\"maxMs\":30");
+    }
+
+    @Test
+    void shouldRejectUnknownFormat() {
+        // Given
+        ExecutionContext context = ExecutionContext.load(tempDir, pluginRegistry);
+
+        // When
+        int exitCode = new HistoryStatsCommand(context, 30, "xml").execute();
+
+        // Then
+        assertThat(exitCode).isEqualTo(1);
+    }
+
+    private void recordDurations(long... durations) {
+        Path historyFile = tempDir.resolve(".migraphe/history.log");
+        try (FileHistoryRepository repository = FileHistoryRepository.create(historyFile)) {
+            repository.initialize();
+            for (long duration : durations) {
+                repository.record(
+                        ExecutionRecord.upSuccess(node1, envId, "Create", null, duration));
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import static org.assertj.core.api.Assertions.*;
 
 import io.github.kakusuke.migraphe.api.environment.Environment;
 import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.task.ImpactOptions;
 import io.github.kakusuke.migraphe.cli.ExecutionContext;
 import io.github.kakusuke.migraphe.core.plugin.PluginRegistry;
 import io.github.kakusuke.migraphe.postgresql.PostgreSQLEnvironment;
@@ -89,7 +90,12 @@ class UpCommandTest {
         // skipConfirmation=true で自動実行
         UpCommand command =
                 new UpCommand(
-                        context, null, true, false, new ByteArrayInputStream(new byte[0]), false);
+                        context,
+                        null,
+                        true,
+                        UpOptions.defaults(),
+                        new ByteArrayInputStream(new byte[0]),
+                        false);
 
         // When: UP コマンドを実行
         int exitCode = command.execute();
@@ -112,14 +118,24 @@ class UpCommandTest {
         // 最初の実行
         UpCommand command1 =
                 new UpCommand(
-                        context, null, true, false, new ByteArrayInputStream(new byte[0]), false);
+                        context,
+                        null,
+                        true,
+                        UpOptions.defaults(),
+                        new ByteArrayInputStream(new byte[0]),
+                        false);
         command1.execute();
 
         // When: 2回目の実行
         outputStream.reset();
         UpCommand command2 =
                 new UpCommand(
-                        context, null, true, false, new ByteArrayInputStream(new byte[0]), false);
+                        context,
+                        null,
+                        true,
+                        UpOptions.defaults(),
+                        new ByteArrayInputStream(new byte[0]),
+                        false);
         int exitCode = command2.execute();
 
         // Then: スキップされる
@@ -136,7 +152,12 @@ class UpCommandTest {
         ExecutionContext context = ExecutionContext.load(tempDir, pluginRegistry);
         UpCommand command =
                 new UpCommand(
-                        context, null, true, false, new ByteArrayInputStream(new byte[0]), false);
+                        context,
+                        null,
+                        true,
+                        UpOptions.defaults(),
+                        new ByteArrayInputStream(new byte[0]),
+                        false);
 
         // When: 実行
         int exitCode = command.execute();
@@ -153,7 +174,12 @@ class UpCommandTest {
         ExecutionContext context = ExecutionContext.load(tempDir, pluginRegistry);
         UpCommand command =
                 new UpCommand(
-                        context, null, true, false, new ByteArrayInputStream(new byte[0]), false);
+                        context,
+                        null,
+                        true,
+                        UpOptions.defaults(),
+                        new ByteArrayInputStream(new byte[0]),
+                        false);
 
         // When: 実行
         command.execute();
@@ -175,7 +201,7 @@ class UpCommandTest {
                         context,
                         null,
                         true,
-                        true, // dryRun
+                        UpOptions.dryRun(ImpactOptions.defaults()),
                         new ByteArrayInputStream(new byte[0]),
                         false);
 
@@ -190,6 +216,83 @@ class UpCommandTest {
         assertThat(output).doesNotContain("Executing migrations");
     }
 
+    @Test
+    void shouldDisplayLockImpactInDryRun() throws IOException {
+        // Given: CREATE INDEX（CONCURRENTLY なし）は書き込みを止める SHARE ロックを取る
+        createTestProject(tempDir);
+
+        ExecutionContext context = ExecutionContext.load(tempDir, pluginRegistry);
+        UpCommand command =
+                new UpCommand(
+                        context,
+                        null,
+                        true,
+                        UpOptions.dryRun(ImpactOptions.defaults()),
+                        new ByteArrayInputStream(new byte[0]),
+                        false);
+
+        // When
+        int exitCode = command.execute();
+
+        // Then: 未実行のノードごとにロックの見積もりが表示される
+        assertThat(exitCode).isEqualTo(0);
+        String output = outputStream.toString(StandardCharsets.UTF_8);
+        assertThat(output).contains("Impact analysis:");
+        assertThat(output)
+                .contains(
+                        "  test-db/002_add_index\n"
+                                + "      SHARE on users, scans table (not yet created):"
+                                + " CREATE INDEX idx_users_name ON users(name)");
+        assertThat(output).doesNotContain("high impact");
+    }
+
+    @Test
+    void shouldDisplayDmlEstimatesInDryRunWithExplain() throws IOException {
+        // Given: users テーブルを作成済みで、全行を更新するマイグレーションが未実行
+        createTestProject(tempDir);
+        ExecutionContext context = ExecutionContext.load(tempDir, pluginRegistry);
+        new UpCommand(
+                        context,
+                        null,
+                        true,
+                        UpOptions.defaults(),
+                        new ByteArrayInputStream(new byte[0]),
+                        false)
+                .execute();
+        Files.writeString(
+                tempDir.resolve("tasks").resolve("test-db").resolve("003_update_names.yaml"),
+                """
+                name: Update names
+                target: test-db
+                dependencies:
+                  - test-db/002_add_index
+                up: UPDATE users SET name = upper(name);
+                """);
+        outputStream.reset();
+
+        context = ExecutionContext.load(tempDir, pluginRegistry);
+        UpCommand command =
+                new UpCommand(
+                        context,
+                        null,
+                        true,
+                        UpOptions.dryRun(ImpactOptions.explain(0, 1e9)),
+                        new ByteArrayInputStream(new byte[0]),
+                        false);
+
+        // When
+        int exitCode = command.execute();
+
+        // Then: 行数のしきい値を超えるノードに印が付き、EXPLAIN の見積もりが表示される
+        assertThat(exitCode).isEqualTo(0);
+        String output = outputStream.toString(StandardCharsets.UTF_8);
+        assertThat(output).contains("test-db/003_update_names - Update names [high impact]");
+        assertThat(output)
+                .contains(
+                        ", seq scan on users (rows over 0): UPDATE users SET name = upper(name)");
+        assertThat(output).contains("1 high-impact migration found.");
+    }
+
     @Test
     void shouldExecuteOnlyTargetAndDependencies() throws IOException {
         // Given: 3つのマイグレーション V001 <- V002 <- V003
@@ -203,7 +306,7 @@ class UpCommandTest {
                         context,
                         NodeId.of("test-db/002_add_index"),
                         true,
-                        false,
+                        UpOptions.defaults(),
                         new ByteArrayInputStream(new byte[0]),
                         false);
 
@@ -231,7 +334,7 @@ class UpCommandTest {
         UpCommand command =
                 new UpCommand(
                         context, null, false, // 確認プロンプトを表示
-                        false, input, false);
+                        UpOptions.defaults(), input, false);
 
         // When: 実行
         int exitCode = command.execute();
@@ -253,7 +356,7 @@ class UpCommandTest {
         UpCommand command =
                 new UpCommand(
                         context, null, false, // 確認プロンプトを表示
-                        false, input, false);
+                        UpOptions.defaults(), input, false);
 
         // When: 実行
         int exitCode = command.execute();
@@ -276,7 +379,7 @@ class UpCommandTest {
                         context,
                         NodeId.of("non-existent-target"),
                         true,
-                        false,
+                        UpOptions.defaults(),
                         new ByteArrayInputStream(new byte[0]),
                         false);
 
@@ -307,7 +410,7 @@ class UpCommandTest {
                         context,
                         null,
                         true,
-                        false,
+                        UpOptions.defaults(),
                         new ByteArrayInputStream(new byte[0]),
                         true); // colorEnabled
 
@@ -0,0 +1,178 @@
+package io.github.kakusuke.migraphe.cli.factory;
+
+import static org.assertj.core.api.Assertions.*;
+
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.api.history.HistoryRepository;
+import io.github.kakusuke.migraphe.core.config.ConfigurationException;
+import io.github.kakusuke.migraphe.core.config.ProjectConfig;
+import io.github.kakusuke.migraphe.core.history.FileHistoryRepository;
+import io.github.kakusuke.migraphe.core.history.InMemoryHistoryRepository;
+import io.github.kakusuke.migraphe.core.plugin.PluginRegistry;
+import io.smallrye.config.SmallRyeConfig;
+import io.smallrye.config.SmallRyeConfigBuilder;
+import java.nio.file.Path;
+import java.util.Map;
+import org.eclipse.microprofile.config.spi.ConfigSource;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HistoryRepositoryFactoryTest {
+
+    @TempDir Path tempDir;
+
+    private HistoryRepositoryFactory factory;
+
+    @BeforeEach
+    void setUp() {
+        PluginRegistry pluginRegistry = new PluginRegistry();
+        pluginRegistry.loadFromClasspath();
+        factory = new HistoryRepositoryFactory(pluginRegistry);
+    }
+
+    @Test
+    void shouldCreateFileRepositoryWithDefaultPath() {
+        // Given
+        SmallRyeConfig config = config(Map.of("project.name", "test", "history.type", "file"));
+
+        // When
+        HistoryRepository repository = factory.createRepository(tempDir, config, Map.of());
+
+        // Then
+        assertThat(repository).isInstanceOf(FileHistoryRepository.class);
+        assertThat(((FileHistoryRepository) repository).path())
+                .isEqualTo(tempDir.resolve(".migraphe/history.log"));
+    }
+
+    @Test
+    void shouldResolveFilePathAgainstBaseDir() {
+        // Given
+        SmallRyeConfig config =
+                config(
+                        Map.of(
+                                "project.name", "test",
+                                "history.type", "file",
+                                "history.path", "state/history.log",
+                                "history.fsync", "never"));
+
+        // When
+        HistoryRepository repository = factory.createRepository(tempDir, config, Map.of());
+
+        // Then
+        assertThat(((FileHistoryRepository) repository).path())
+                .isEqualTo(tempDir.resolve("state/history.log"));
+    }
+
+    @Test
+    void shouldFlushAndReleaseFileRepositoryOnClose() throws Exception {
+        // Given: 定期的に fsync するファイル履歴ストアに1件記録する
+        SmallRyeConfig config =
+                config(
+                        Map.of(
+                                "project.name", "test",
+                                "history.type", "file",
+                                "history.fsync", "periodic"));
+        HistoryRepository repository = factory.createRepository(tempDir, config, Map.of());
+        repository.initialize();
+        repository.record(
+                ExecutionRecord.upSuccess(
+                        NodeId.of("db1/a"), EnvironmentId.of("db1"), "a", null, 1));
+
+        // When
+        HistoryRepositoryFactory.close(repository);
+
+        // Then: ロックが解放され、同じファイルを開き直して記録を読める
+        try (FileHistoryRepository reopened =
+                FileHistoryRepository.create(tempDir.resolve(".migraphe/history.log"))) {
+            reopened.initialize();
+            assertThat(reopened.wasExecuted(NodeId.of("db1/a"), EnvironmentId.of("db1")))
+                    .isTrue();
+        }
+    }
+
+    @Test
+    void shouldIgnoreCloseForRepositoryWithoutResources() {
+        // When & Then
+        assertThatCode(() -> HistoryRepositoryFactory.close(new InMemoryHistoryRepository()))
+                .doesNotThrowAnyException();
+    }
+
+    @Test
+    void shouldRejectInvalidFsyncPolicy() {
+        // Given
+        SmallRyeConfig config =
+                config(
+                        Map.of(
+                                "project.name", "test",
+                                "history.type", "file",
+                                "history.fsync", "sometimes"));
+
+        // When & Then
+        assertThatThrownBy(() -> factory.createRepository(tempDir, config, Map.of()))
+                .isInstanceOf(ConfigurationException.class)
+                .hasMessageContaining("sometimes");
+    }
+
+    @Test
+    void shouldRejectUnknownHistoryType() {
+        // Given
+        SmallRyeConfig config = config(Map.of("project.name", "test", "history.type", "redis"));
+
+        // When & Then
+        assertThatThrownBy(() -> factory.createRepository(tempDir, config, Map.of()))
+                .isInstanceOf(ConfigurationException.class)
+                .hasMessageContaining("redis");
+    }
+
+    @Test
+    void shouldFallBackToInMemoryWhenTargetIsMissing() {
+        // Given
+        SmallRyeConfig config =
+                config(Map.of("project.name", "test", "history.target", "missing"));
+
+        // When
+        HistoryRepository repository = factory.createRepository(tempDir, config, Map.of());
+
+        // Then
+        assertThat(repository).isInstanceOf(InMemoryHistoryRepository.class);
+    }
+
+    private static SmallRyeConfig config(Map<String, String> properties) {
+        return new SmallRyeConfigBuilder()
+                .withSources(new TestConfigSource(properties))
+                .withMapping(ProjectConfig.class)
+                .build();
+    }
+
+    private static class TestConfigSource implements ConfigSource {
+        private final Map<String, String> properties;
+
+        TestConfigSource(Map<String, String> properties) {
+            this.properties = properties;
+        }
+
+        @Override
+        public Map<String, String> getProperties() {
+            return properties;
+        }
+
+        @Override
+        public @Nullable String getValue(String propertyName) {
+            return properties.get(propertyName);
+        }
+
+        @Override
+        public String getName() {
+            return "TestConfigSource";
+        }
+
+        @Override
+        public java.util.Set<String> getPropertyNames() {
+            return properties.keySet();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package io.github.kakusuke.migraphe.core.baseline;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * あるノードまでを適用したターゲットのスキーマのスナップショット。
+ *
+ * <p>ファイルは SQL で、先頭のコメントにベースラインのノード、ターゲット、含まれるノードとその content hash を書く。
+ *
+ * <pre>{@code
+ * -- migraphe baseline
+ * -- node: db1/120_add_orders_index
+ * -- target: db1
+ * -- covers: db1/001_create_users 3f2a...
+ * -- covers: db1/120_add_orders_index -
+ * --
+ * CREATE TABLE public.users (...);
+ * }</pre>
+ *
+ * <p>content hash がないノードは {@code -} と書く。
+ *
+ * @param node ベースラインを作成したノード
+ * @param target ベースラインのターゲット名
+ * @param nodes スキーマに含まれるノード（依存関係順）
+ * @param schema スキーマを作る SQL
+ */
+public record Baseline(NodeId node, String target, List<CoveredNode> nodes, String schema) {
+
+    private static final String MAGIC = "-- migraphe baseline";
+    private static final String NODE = "-- node: ";
+    private static final String TARGET = "-- target: ";
+    private static final String COVERS = "-- covers: ";
+    private static final String END = "--";
+    private static final String NO_HASH = "-";
+
+    /**
+     * スキーマに含まれるノード。
+     *
+     * @param id ノード ID
+     * @param contentHash スナップショットを作成したときのノードの content hash（ない場合は null）
+     */
+    public record CoveredNode(NodeId id, @Nullable String contentHash) {
+        public CoveredNode {
+            Objects.requireNonNull(id, "id must not be null");
+        }
+    }
+
+    public Baseline {
+        Objects.requireNonNull(node, "node must not be null");
+        Objects.requireNonNull(target, "target must not be null");
+        Objects.requireNonNull(schema, "schema must not be null");
+        nodes = List.copyOf(nodes);
+    }
+
+    /**
+     * ファイルに書き出す。 既にある場合は上書きする。
+     *
+     * @param file 書き出し先
+     * @throws BaselineException 書き出しに失敗した場合
+     */
+    public void write(Path file) {
+        StringBuilder content = new StringBuilder();
+        content.append(MAGIC).append('\n');
+        content.append(NODE).append(node.value()).append('\n');
+        content.append(TARGET).append(target).append('\n');
+        for (CoveredNode covered : nodes) {
+            content.append(COVERS)
+                    .append(covered.id().value())
+                    .append(' ')
+                    .append(covered.contentHash() != null ? covered.contentHash() : NO_HASH)
+                    .append('\n');
+        }
+        content.append(END).append('\n');
+        content.append(schema);
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.writeString(file, content, UTF_8);
+        } catch (IOException e) {
+            throw new BaselineException("Failed to write baseline: " + file, e);
+        }
+    }
+
+    /**
+     * ファイルから読み込む。
+     *
+     * @param file ベースラインのファイル
+     * @return ベースライン
+     * @throws BaselineException 読み込みに失敗した場合や、ベースラインのファイルでない場合
+     */
+    public static Baseline read(Path file) {
+        String content;
+        try {
+            content = Files.readString(file, UTF_8);
+        } catch (IOException e) {
+            throw new BaselineException("Failed to read baseline: " + file, e);
+        }
+
+        NodeId node = null;
+        String target = null;
+        List<CoveredNode> nodes = new ArrayList<>();
+        int offset = 0;
+        boolean first = true;
+        while (true) {
+            int end = content.indexOf('\n', offset);
+            if (end < 0) {
+                throw new BaselineException("Baseline header is not terminated: " + file);
+            }
+            String line = content.substring(offset, end);
+            offset = end + 1;
+            if (first) {
+                if (!line.equals(MAGIC)) {
+                    throw new BaselineException("Not a migraphe baseline: " + file);
+                }
+                first = false;
+            } else if (line.equals(END)) {
+                break;
+            } else if (line.startsWith(NODE)) {
+                node = NodeId.of(line.substring(NODE.length()));
+            } else if (line.startsWith(TARGET)) {
+                target = line.substring(TARGET.length());
+            } else if (line.startsWith(COVERS)) {
+                // ノード ID は空白を含みうるため、最後の空白で分ける
+                String entry = line.substring(COVERS.length());
+                int space = entry.lastIndexOf(' ');
+                if (space < 0) {
+                    throw new BaselineException("Invalid baseline line in " + file + ": " + line);
+                }
+                String hash = entry.substring(space + 1);
+                nodes.add(
+                        new CoveredNode(
+                                NodeId.of(entry.substring(0, space)),
+                                hash.equals(NO_HASH) ? null : hash));
+            } else {
+                throw new BaselineException("Invalid baseline line in " + file + ": " + line);
+            }
+        }
+        if (node == null || target == null) {
+            throw new BaselineException("Baseline has no node or target: " + file);
+        }
+        return new Baseline(node, target, nodes, content.substring(offset));
+    }
+}
@@ -0,0 +1,13 @@
+package io.github.kakusuke.migraphe.core.baseline;
+
+/** ベースラインを作成・適用できない場合の例外。 */
+public class BaselineException extends RuntimeException {
+
+    public BaselineException(String message) {
+        super(message);
+    }
+
+    public BaselineException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
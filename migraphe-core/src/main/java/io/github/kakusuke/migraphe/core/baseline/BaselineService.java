@@ -0,0 +1,252 @@
+package io.github.kakusuke.migraphe.core.baseline;
+
+import io.github.kakusuke.migraphe.api.environment.Environment;
+import io.github.kakusuke.migraphe.api.environment.SchemaSnapshots;
+import io.github.kakusuke.migraphe.api.graph.MigrationNode;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.api.history.HistoryBulkImport;
+import io.github.kakusuke.migraphe.api.history.HistoryRepository;
+import io.github.kakusuke.migraphe.core.graph.ExecutionLevel;
+import io.github.kakusuke.migraphe.core.graph.MigrationGraph;
+import io.github.kakusuke.migraphe.core.graph.TopologicalSort;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * ベースラインを作成・適用するサービス。
+ *
+ * <p>ベースラインが含むのは、指定したノードと、同じターゲットにあるその祖先のノード。 作成するときは、ターゲットに適用済みの
+ * ノードがちょうどそれらであることを確認してからスキーマを取り出す。 適用するときは、グラフのノードがベースラインを作ったとき
+ * から変わっていないこと（content hash が同じこと）と、ターゲットが空であることを確認してからスキーマを作り、含まれるノードを
+ * 適用済みとして履歴に記録する。
+ */
+public final class BaselineService {
+
+    private final MigrationGraph graph;
+    private final HistoryRepository historyRepository;
+
+    public BaselineService(MigrationGraph graph, HistoryRepository historyRepository) {
+        this.graph = graph;
+        this.historyRepository = historyRepository;
+    }
+
+    /**
+     * 指定したノードまでを適用したターゲットから、ベースラインを作成する。
+     *
+     * @param nodeId ベースラインにするノード
+     * @return ベースライン
+     * @throws BaselineException ノードが存在しない場合、ターゲットがベースラインに対応していない場合、
+     *     ターゲットの適用済みのノードがベースラインに含まれるノードと一致しない場合、
+     *     ターゲットのスキーマを取り出せない場合
+     */
+    public Baseline capture(NodeId nodeId) {
+        MigrationNode node = findNode(nodeId);
+        Environment environment = node.environment();
+        SchemaSnapshots snapshots = snapshotsOf(environment);
+
+        List<MigrationNode> covered = coveredNodes(node);
+        Set<NodeId> coveredIds = ids(covered);
+        Set<NodeId> executed = new HashSet<>(historyRepository.executedNodes(environment.id()));
+
+        List<String> missing = new ArrayList<>();
+        for (MigrationNode coveredNode : covered) {
+            if (!executed.contains(coveredNode.id())) {
+                missing.add(coveredNode.id().value());
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new BaselineException(
+                    "Target "
+                            + environment.name()
+                            + " has not applied node(s) required by the baseline: "
+                            + String.join(", ", missing));
+        }
+        List<String> extra =
+                executed.stream()
+                        .filter(id -> !coveredIds.contains(id))
+                        .map(NodeId::value)
+                        .sorted()
+                        .toList();
+        if (!extra.isEmpty()) {
+            throw new BaselineException(
+                    "Target "
+                            + environment.name()
+                            + " has applied node(s) beyond the baseline: "
+                            + String.join(", ", extra));
+        }
+
+        List<Baseline.CoveredNode> nodes =
+                covered.stream()
+                        .map(n -> new Baseline.CoveredNode(n.id(), n.contentHash()))
+                        .toList();
+        String schema;
+        try {
+            schema = snapshots.captureSchema();
+        } catch (RuntimeException e) {
+            throw new BaselineException(
+                    "Failed to capture schema of target "
+                            + environment.name()
+                            + ": "
+                            + e.getMessage(),
+                    e);
+        }
+        return new Baseline(nodeId, environment.name(), nodes, schema);
+    }
+
+    /**
+     * ベースラインを空のターゲットに適用し、含まれるノードを適用済みとして記録する。
+     *
+     * @param baseline 適用するベースライン
+     * @return 適用済みとして記録したノードの数（ターゲットに既に適用されていた場合は 0）
+     * @throws BaselineException ベースラインが現在のグラフと一致しない場合、ターゲットがベースラインに対応していない
+     *     場合、ターゲットが空でない場合
+     */
+    public int apply(Baseline baseline) {
+        MigrationNode node = findNode(baseline.node());
+        Environment environment = node.environment();
+        if (!environment.name().equals(baseline.target())) {
+            throw new BaselineException(
+                    "Baseline was captured for target "
+                            + baseline.target()
+                            + " but node "
+                            + node.id().value()
+                            + " now belongs to target "
+                            + environment.name());
+        }
+        SchemaSnapshots snapshots = snapshotsOf(environment);
+
+        List<MigrationNode> covered = coveredNodes(node);
+        verifyUnchanged(baseline, covered);
+
+        Set<NodeId> coveredIds = ids(covered);
+        Set<NodeId> executed = new HashSet<>(historyRepository.executedNodes(environment.id()));
+        if (executed.equals(coveredIds)) {
+            return 0;
+        }
+        if (!executed.isEmpty()) {
+            throw new BaselineException(
+                    "Target "
+                            + environment.name()
+                            + " already has migration history; a baseline can only be applied to"
+                            + " a fresh target");
+        }
+        if (!snapshots.isSchemaEmpty()) {
+            throw new BaselineException(
+                    "Target "
+                            + environment.name()
+                            + " is not empty; a baseline can only be applied to a fresh target");
+        }
+
+        snapshots.applySchema(baseline.schema());
+
+        String suffix = " (baseline " + baseline.node().value() + ")";
+        List<ExecutionRecord> records =
+                covered.stream()
+                        .map(
+                                n ->
+                                        ExecutionRecord.upSuccess(
+                                                n.id(),
+                                                environment.id(),
+                                                n.name() + suffix,
+                                                null,
+                                                0))
+                        .toList();
+        if (historyRepository instanceof HistoryBulkImport bulkImport) {
+            bulkImport.importRecords(records.iterator());
+        } else {
+            records.forEach(historyRepository::record);
+        }
+        return records.size();
+    }
+
+    private MigrationNode findNode(NodeId nodeId) {
+        return graph.getNode(nodeId)
+                .orElseThrow(() -> new BaselineException("Node not found: " + nodeId.value()));
+    }
+
+    private static SchemaSnapshots snapshotsOf(Environment environment) {
+        if (environment instanceof SchemaSnapshots snapshots) {
+            return snapshots;
+        }
+        throw new BaselineException(
+                "Target " + environment.name() + " does not support baselines");
+    }
+
+    /** ノードと、同じターゲットにあるその祖先を依存関係順に返す。 同じレベルのノードは ID 順。 */
+    private List<MigrationNode> coveredNodes(MigrationNode node) {
+        Set<NodeId> ids = new LinkedHashSet<>();
+        ids.add(node.id());
+        for (NodeId dependency : graph.getAllDependencies(node.id())) {
+            graph.getNode(dependency)
+                    .filter(n -> n.environment().id().equals(node.environment().id()))
+                    .ifPresent(n -> ids.add(n.id()));
+        }
+
+        List<MigrationNode> ordered = new ArrayList<>();
+        for (ExecutionLevel level : TopologicalSort.createExecutionPlanFor(graph, ids).levels()) {
+            level.nodes().stream()
+                    .sorted(Comparator.comparing(n -> n.id().value()))
+                    .forEach(ordered::add);
+        }
+        return ordered;
+    }
+
+    /** ベースラインを作ったときから、含まれるノードの集合とその内容が変わっていないことを確認する。 */
+    private static void verifyUnchanged(Baseline baseline, List<MigrationNode> covered) {
+        Set<NodeId> expected =
+                baseline.nodes().stream()
+                        .map(Baseline.CoveredNode::id)
+                        .collect(Collectors.toSet());
+        Set<NodeId> actual = ids(covered);
+        if (!expected.equals(actual)) {
+            List<String> added =
+                    actual.stream()
+                            .filter(id -> !expected.contains(id))
+                            .map(NodeId::value)
+                            .sorted()
+                            .toList();
+            List<String> removed =
+                    expected.stream()
+                            .filter(id -> !actual.contains(id))
+                            .map(NodeId::value)
+                            .sorted()
+                            .toList();
+            throw new BaselineException(
+                    "Baseline does not match the current graph"
+                            + (added.isEmpty() ? "" : "; added: " + String.join(", ", added))
+                            + (removed.isEmpty()
+                                    ? ""
+                                    : "; removed: " + String.join(", ", removed)));
+        }
+
+        List<String> changed = new ArrayList<>();
+        for (Baseline.CoveredNode coveredNode : baseline.nodes()) {
+            MigrationNode current =
+                    covered.stream()
+                            .filter(n -> n.id().equals(coveredNode.id()))
+                            .findFirst()
+                            .orElseThrow();
+            String hash = current.contentHash();
+            if (hash != null
+                    && coveredNode.contentHash() != null
+                    && !hash.equals(coveredNode.contentHash())) {
+                changed.add(coveredNode.id().value());
+            }
+        }
+        if (!changed.isEmpty()) {
+            throw new BaselineException(
+                    "Node(s) changed since the baseline was captured: "
+                            + String.join(", ", changed));
+        }
+    }
+
+    private static Set<NodeId> ids(List<MigrationNode> nodes) {
+        return nodes.stream().map(MigrationNode::id).collect(Collectors.toSet());
+    }
+}
@@ -1,6 +1,7 @@
 package io.github.kakusuke.migraphe.core.config;
 
 import io.smallrye.config.ConfigMapping;
+import java.util.Optional;
 
 /**
  * プロジェクト全体の設定。
@@ -36,11 +37,34 @@ public interface ProjectConfig {
 
     /** 履歴管理設定。 */
     interface HistorySection {
+        /**
+         * 履歴ストアの種類。
+         *
+         * <p>"file" を指定するとローカルファイルに履歴を保存する。未指定の場合は target のプラグインを使用する。
+         *
+         * @return 履歴ストアの種類
+         */
+        Optional<String> type();
+
         /**
          * 履歴を保存するターゲットID。
          *
          * @return ターゲットID
          */
-        String target();
+        Optional<String> target();
+
+        /**
+         * ファイル履歴ストアのパス（type が "file" の場合のみ使用）。
+         *
+         * @return プロジェクトディレクトリからの相対パス
+         */
+        Optional<String> path();
+
+        /**
+         * ファイル履歴ストアの fsync ポリシー（always / periodic / never）。
+         *
+         * @return fsync ポリシー
+         */
+        Optional<String> fsync();
     }
 }
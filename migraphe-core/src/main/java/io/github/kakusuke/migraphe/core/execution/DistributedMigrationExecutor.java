@@ -0,0 +1,234 @@
+package io.github.kakusuke.migraphe.core.execution;
+
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.execution.ExecutionListener;
+import io.github.kakusuke.migraphe.api.execution.ExecutionSummary;
+import io.github.kakusuke.migraphe.api.graph.MigrationNode;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.HistoryRepository;
+import io.github.kakusuke.migraphe.api.history.NodeLeaseRepository;
+import io.github.kakusuke.migraphe.api.task.ExecutionDirection;
+import io.github.kakusuke.migraphe.core.graph.MigrationGraph;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * 複数のランナーで1つのグラフを分担して UP マイグレーションを実行するサービス。
+ *
+ * <p>各ランナーは同じ実行 ID で対象ノードを登録し、依存先が全て実行済みになったノードのリースを {@link
+ * NodeLeaseRepository} から1つずつ取得して実行する。 依存先が実行済みかどうかは履歴の成功記録で判断するため、
+ * 他のランナーが実行したノードの結果もそのまま使われる。 実行中はリースを定期的に延長し、停止したランナーのノードは
+ * リースの期限切れ後に他のランナーが実行し直す。 延長に失敗した（延長が例外を投げた、または他のランナーに取得されていた）
+ * ノードは、同じノードを他のランナーが実行している可能性があるため、実行が成功していても失敗として扱う。
+ *
+ * <p>いずれかのランナーでノードが失敗すると、全てのランナーが新しいノードの取得をやめて失敗として終了する。
+ */
+public final class DistributedMigrationExecutor {
+
+    private final MigrationGraph graph;
+    private final HistoryRepository historyRepository;
+    private final NodeLeaseRepository leaseRepository;
+    private final ExecutionListener listener;
+    private final DistributedOptions options;
+    private final MigrationExecutor nodeRunner;
+
+    public DistributedMigrationExecutor(
+            MigrationGraph graph,
+            HistoryRepository historyRepository,
+            NodeLeaseRepository leaseRepository,
+            ExecutionListener listener,
+            DistributedOptions options) {
+        this(graph, historyRepository, leaseRepository, listener, options, null);
+    }
+
+    /**
+     * レプリカの遅延による一時停止を指定して作成する。
+     *
+     * @param throttle レプリカの遅延が閾値を超えている間、新しいノードを始めない（null なら止めない）
+     */
+    public DistributedMigrationExecutor(
+            MigrationGraph graph,
+            HistoryRepository historyRepository,
+            NodeLeaseRepository leaseRepository,
+            ExecutionListener listener,
+            DistributedOptions options,
+            @Nullable ReplicationThrottle throttle) {
+        this.graph = Objects.requireNonNull(graph, "graph must not be null");
+        this.historyRepository =
+                Objects.requireNonNull(historyRepository, "historyRepository must not be null");
+        this.leaseRepository =
+                Objects.requireNonNull(leaseRepository, "leaseRepository must not be null");
+        this.listener = Objects.requireNonNull(listener, "listener must not be null");
+        this.options = Objects.requireNonNull(options, "options must not be null");
+        this.nodeRunner = new MigrationExecutor(graph, historyRepository, listener, 1, throttle);
+    }
+
+    /**
+     * 対象ノードが全て実行済みになるか、いずれかのノードが失敗するまで実行する。
+     *
+     * @param targetNodes 実行対象ノード（全てのランナーで同じ集合を渡す）
+     * @return 実行結果（executedCount はこのランナーが実行した数、skippedCount は他のランナーが実行した数）
+     */
+    public ExecutionResult execute(Set<NodeId> targetNodes) {
+        String runId = options.runId();
+        String runnerId = options.runnerId();
+        int totalNodes = targetNodes.size();
+        Set<NodeId> executedByThisRunner = new HashSet<>();
+
+        leaseRepository.registerNodes(runId, targetNodes);
+
+        ScheduledExecutorService renewer =
+                Executors.newSingleThreadScheduledExecutor(
+                        r -> {
+                            Thread thread = new Thread(r, "migraphe-lease-renewer");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        try {
+            while (true) {
+                if (leaseRepository.hasFailures(runId)) {
+                    return complete(false, totalNodes, executedByThisRunner.size());
+                }
+
+                Set<NodeId> executed = executedNodes(targetNodes);
+                List<NodeId> ready = readyNodes(targetNodes, executed);
+                if (ready.isEmpty() && executed.containsAll(targetNodes)) {
+                    return complete(true, totalNodes, executedByThisRunner.size());
+                }
+
+                NodeId claimed =
+                        leaseRepository.tryClaim(runId, runnerId, ready, options.leaseDuration());
+                if (claimed == null) {
+                    // 他のランナーが依存先を実行中
+                    Thread.sleep(options.pollInterval().toMillis());
+                    continue;
+                }
+
+                MigrationNode node = graph.getNode(claimed).orElseThrow();
+                // リースの取得までの間に他のランナーが実行を終えている場合がある
+                if (historyRepository.wasExecuted(node.id(), node.environment().id())) {
+                    leaseRepository.complete(runId, runnerId, claimed);
+                    continue;
+                }
+
+                if (runWithLease(node, renewer)) {
+                    executedByThisRunner.add(claimed);
+                    leaseRepository.complete(runId, runnerId, claimed);
+                } else {
+                    leaseRepository.fail(runId, runnerId, claimed);
+                    return complete(false, totalNodes, executedByThisRunner.size());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return complete(false, totalNodes, executedByThisRunner.size());
+        } finally {
+            renewer.shutdownNow();
+            nodeRunner.closeSessions();
+        }
+    }
+
+    /**
+     * リースを延長しながらノードを実行する。
+     *
+     * @return ノードが成功し、実行中ずっとリースを保持していた場合は true
+     */
+    private boolean runWithLease(MigrationNode node, ScheduledExecutorService renewer) {
+        long renewIntervalMillis = Math.max(1, options.leaseDuration().toMillis() / 3);
+        AtomicBoolean leaseLost = new AtomicBoolean();
+        ScheduledFuture<?> renewal =
+                renewer.scheduleAtFixedRate(
+                        () -> renewLease(node, leaseLost),
+                        renewIntervalMillis,
+                        renewIntervalMillis,
+                        TimeUnit.MILLISECONDS);
+        boolean succeeded;
+        try {
+            succeeded = nodeRunner.runNode(node);
+        } finally {
+            renewal.cancel(false);
+        }
+        if (leaseLost.get()) {
+            listener.onNodeFailed(
+                    node,
+                    ExecutionDirection.UP,
+                    null,
+                    "Lost the lease on "
+                            + node.id().value()
+                            + " while running it; another runner may have run it as well");
+            return false;
+        }
+        return succeeded;
+    }
+
+    /**
+     * リースを延長する。 例外を投げるとスケジューラーが以降の延長をやめてしまうため、ここで受け止めて、延長できなかった
+     * ことを leaseLost に記録する。
+     */
+    private void renewLease(MigrationNode node, AtomicBoolean leaseLost) {
+        if (leaseLost.get()) {
+            return;
+        }
+        try {
+            if (!leaseRepository.renew(
+                    options.runId(), options.runnerId(), node.id(), options.leaseDuration())) {
+                leaseLost.set(true);
+            }
+        } catch (RuntimeException e) {
+            leaseLost.set(true);
+        }
+    }
+
+    /** 対象ノードとその依存先のうち、履歴上で成功実行済みのノードを取得する。 */
+    private Set<NodeId> executedNodes(Set<NodeId> targetNodes) {
+        Set<EnvironmentId> environments = new HashSet<>();
+        for (NodeId id : targetNodes) {
+            graph.getNode(id).ifPresent(node -> environments.add(node.environment().id()));
+            for (NodeId dependency : graph.getDependencies(id)) {
+                graph.getNode(dependency)
+                        .ifPresent(node -> environments.add(node.environment().id()));
+            }
+        }
+
+        Set<NodeId> executed = new HashSet<>();
+        for (EnvironmentId environmentId : environments) {
+            executed.addAll(historyRepository.executedNodes(environmentId));
+        }
+        return executed;
+    }
+
+    /** 未実行で、依存先が全て実行済みのノードを ID 順に取得する。 */
+    private List<NodeId> readyNodes(Set<NodeId> targetNodes, Set<NodeId> executed) {
+        Set<NodeId> ready = new TreeSet<>(Comparator.comparing(NodeId::value));
+        for (NodeId id : targetNodes) {
+            if (!executed.contains(id) && executed.containsAll(graph.getDependencies(id))) {
+                ready.add(id);
+            }
+        }
+        return new ArrayList<>(ready);
+    }
+
+    private ExecutionResult complete(boolean success, int totalNodes, int executedCount) {
+        // このランナーが実行していないノードは他のランナーが実行したものとして数える
+        int skippedCount = success ? totalNodes - executedCount : 0;
+        ExecutionSummary summary =
+                success
+                        ? ExecutionSummary.success(
+                                ExecutionDirection.UP, totalNodes, executedCount, skippedCount)
+                        : ExecutionSummary.failure(
+                                ExecutionDirection.UP, totalNodes, executedCount, skippedCount);
+        listener.onCompleted(summary);
+        return success ? ExecutionResult.success(summary) : ExecutionResult.failure(summary);
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.kakusuke.migraphe.core.execution;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * 分散実行の設定。
+ *
+ * @param runId 実行 ID（同じ実行に参加する全てのランナーで共通の値）
+ * @param runnerId このランナーの ID（ランナーごとに一意の値）
+ * @param leaseDuration ノードのリースの有効期間。 これより長く延長されないリースは停止したランナーのものとみなす
+ * @param pollInterval 実行可能なノードがないときに待つ間隔
+ */
+public record DistributedOptions(
+        String runId, String runnerId, Duration leaseDuration, Duration pollInterval) {
+
+    /** リースの有効期間のデフォルト値。 */
+    public static final Duration DEFAULT_LEASE_DURATION = Duration.ofSeconds(60);
+
+    /** 待機間隔のデフォルト値。 */
+    public static final Duration DEFAULT_POLL_INTERVAL = Duration.ofSeconds(1);
+
+    public DistributedOptions {
+        Objects.requireNonNull(runId, "runId must not be null");
+        Objects.requireNonNull(runnerId, "runnerId must not be null");
+        Objects.requireNonNull(leaseDuration, "leaseDuration must not be null");
+        Objects.requireNonNull(pollInterval, "pollInterval must not be null");
+        if (runId.isBlank()) {
+            throw new IllegalArgumentException("runId must not be blank");
+        }
+        if (leaseDuration.isNegative() || leaseDuration.isZero()) {
+            throw new IllegalArgumentException("leaseDuration must be positive: " + leaseDuration);
+        }
+    }
+
+    /** デフォルトの設定で、ホスト名とプロセス ID からランナー ID を生成する。 */
+    public static DistributedOptions of(String runId) {
+        return new DistributedOptions(
+                runId, defaultRunnerId(), DEFAULT_LEASE_DURATION, DEFAULT_POLL_INTERVAL);
+    }
+
+    private static String defaultRunnerId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "localhost";
+        }
+        return host
+                + "-"
+                + ProcessHandle.current().pid()
+                + "-"
+                + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
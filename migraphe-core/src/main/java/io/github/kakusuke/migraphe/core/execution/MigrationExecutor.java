@@ -11,7 +11,9 @@ import io.github.kakusuke.migraphe.api.history.HistoryRepository;
 import io.github.kakusuke.migraphe.api.task.ExecutionDirection;
 import io.github.kakusuke.migraphe.api.task.SqlContentProvider;
 import io.github.kakusuke.migraphe.api.task.Task;
+import io.github.kakusuke.migraphe.api.task.TaskExecutionContext;
 import io.github.kakusuke.migraphe.api.task.TaskResult;
+import io.github.kakusuke.migraphe.api.task.TransactionGroupable;
 import io.github.kakusuke.migraphe.core.graph.ExecutionLevel;
 import io.github.kakusuke.migraphe.core.graph.ExecutionPlan;
 import io.github.kakusuke.migraphe.core.graph.MigrationGraph;
@@ -23,18 +25,71 @@ import java.util.Set;
 import java.util.stream.Collectors;
 import org.jspecify.annotations.Nullable;
 
-/** UP マイグレーションを実行するサービス。 */
+/**
+ * UP マイグレーションを実行するサービス。
+ *
+ * <p>transactionGroupSize に 2 以上を指定すると、{@link TransactionGroupable} を実装し、同じ接続先を返す連続したノードを
+ * 最大その数まで1つのトランザクションにまとめて実行する。 接続・BEGIN・COMMIT（とその WAL のフラッシュ）をノードごとに
+ * 払わずに済む。 ノードはそれぞれのセーブポイントの中で実行し、失敗したノードはそのセーブポイントまでロールバックして、
+ * それより前のノードはコミットする。 成功の通知と履歴の記録は、トランザクションのコミットの後に行う。
+ *
+ * <p>{@link ReplicationThrottle} を指定すると、ノード（まとめる場合はグループ）を始める前と、タスクが
+ * {@link TaskExecutionContext#throttle()} を呼んだときに、ターゲットのレプリカの遅延が閾値以下になるまで待つ。
+ */
 public final class MigrationExecutor {
 
     private final MigrationGraph graph;
     private final HistoryRepository historyRepository;
     private final ExecutionListener listener;
 
+    /** 1つのトランザクションにまとめる連続したノードの最大数（1 ならまとめない）。 */
+    private final int transactionGroupSize;
+
+    /** レプリカの遅延が閾値を超えている間、新しい作業を止める（null なら止めない）。 */
+    private final @Nullable ReplicationThrottle throttle;
+
+    /** 実行の間、タスクが共有するセッション（同じ接続先への接続など）。 */
+    private final RunSessions sessions = new RunSessions();
+
     public MigrationExecutor(
             MigrationGraph graph, HistoryRepository historyRepository, ExecutionListener listener) {
+        this(graph, historyRepository, listener, 1);
+    }
+
+    /**
+     * トランザクションのまとめを指定して作成する。
+     *
+     * @param transactionGroupSize 同じ接続先の連続したノードを1つのトランザクションにまとめる最大数（1 ならまとめない）
+     */
+    public MigrationExecutor(
+            MigrationGraph graph,
+            HistoryRepository historyRepository,
+            ExecutionListener listener,
+            int transactionGroupSize) {
+        this(graph, historyRepository, listener, transactionGroupSize, null);
+    }
+
+    /**
+     * トランザクションのまとめとレプリカの遅延による一時停止を指定して作成する。
+     *
+     * @param transactionGroupSize 同じ接続先の連続したノードを1つのトランザクションにまとめる最大数（1 ならまとめない）
+     * @param throttle レプリカの遅延が閾値を超えている間、新しい作業を止める（null なら止めない）
+     */
+    public MigrationExecutor(
+            MigrationGraph graph,
+            HistoryRepository historyRepository,
+            ExecutionListener listener,
+            int transactionGroupSize,
+            @Nullable ReplicationThrottle throttle) {
+        if (transactionGroupSize < 1) {
+            throw new IllegalArgumentException(
+                    "transactionGroupSize must be positive: " + transactionGroupSize);
+        }
         this.graph = graph;
         this.historyRepository = historyRepository;
         this.listener = listener;
+        this.transactionGroupSize = transactionGroupSize;
+        this.throttle = throttle;
     }
 
     /**
@@ -103,83 +158,82 @@ public final class MigrationExecutor {
      * @return 実行結果
      */
     public ExecutionResult execute(Set<NodeId> targetNodes) {
-        ExecutionPlan plan = TopologicalSort.createExecutionPlanFor(graph, targetNodes);
+        try {
+            return executePlan(TopologicalSort.createExecutionPlanFor(graph, targetNodes));
+        } finally {
+            closeSessions();
+        }
+    }
+
+    private ExecutionResult executePlan(ExecutionPlan plan) {
 
         int totalNodes = plan.totalNodes();
         int executedCount = 0;
         int skippedCount = 0;
+        TransactionGroup group = null;
 
         for (ExecutionLevel level : plan.levels()) {
             for (MigrationNode node : level.nodes()) {
+                boolean executed =
+                        historyRepository.wasExecuted(node.id(), node.environment().id());
+                String key = executed ? null : transactionGroupKey(node);
+
+                // まとめられないノードの前、接続先が変わるとき、最大数に達したときにグループをコミットする
+                if (group != null
+                        && (key == null
+                                || !key.equals(group.key)
+                                || group.members.size() >= transactionGroupSize)) {
+                    if (!commitGroup(group)) {
+                        return failure(totalNodes, executedCount, skippedCount);
+                    }
+                    executedCount += group.members.size();
+                    group = null;
+                }
+
                 // 既に実行済みかチェック
-                if (historyRepository.wasExecuted(node.id(), node.environment().id())) {
+                if (executed) {
                     listener.onNodeSkipped(node, ExecutionDirection.UP, "already executed");
                     skippedCount++;
                     continue;
                 }
 
-                // 実行開始を通知
-                listener.onNodeStarted(node, ExecutionDirection.UP);
-
-                // 実行
-                long startTime = System.currentTimeMillis();
-                Result<TaskResult, String> result = node.upTask().execute();
-                long duration = System.currentTimeMillis() - startTime;
-
-                if (result.isOk()) {
-                    // 成功
-                    listener.onNodeSucceeded(node, ExecutionDirection.UP, duration);
-
-                    // 実行記録を保存
-                    TaskResult taskResult = result.value();
-                    String serializedDownTask =
-                            taskResult != null ? taskResult.serializedDownTask() : null;
-
-                    ExecutionRecord record =
-                            ExecutionRecord.upSuccess(
-                                    node.id(),
-                                    node.environment().id(),
-                                    node.name(),
-                                    serializedDownTask,
-                                    duration);
-                    historyRepository.record(record);
+                if (key != null) {
+                    if (group == null) {
+                        String error = awaitThrottle(node);
+                        if (error != null) {
+                            reportFailure(node, error);
+                            return failure(totalNodes, executedCount, skippedCount);
+                        }
+                        group = new TransactionGroup(key);
+                    }
+                    String error = runNodeInGroup(node, group);
+                    if (error == null) {
+                        continue;
+                    }
+                    // 失敗したノードはセーブポイントまで戻してあるため、それより前のノードはコミットする
+                    if (commitGroup(group)) {
+                        executedCount += group.members.size();
+                    }
+                    reportFailure(node, error);
+                    return failure(totalNodes, executedCount, skippedCount);
+                }
 
+                if (runNode(node)) {
                     executedCount++;
                 } else {
-                    // 失敗
-                    String errorMsg = result.error();
-                    String sqlContent = null;
-                    Task upTask = node.upTask();
-                    if (upTask instanceof SqlContentProvider sqlProvider) {
-                        sqlContent = sqlProvider.sqlContent();
-                    }
-
-                    listener.onNodeFailed(
-                            node,
-                            ExecutionDirection.UP,
-                            sqlContent,
-                            errorMsg != null ? errorMsg : "Unknown error");
-
-                    // 失敗記録を保存
-                    ExecutionRecord failureRecord =
-                            ExecutionRecord.failure(
-                                    node.id(),
-                                    node.environment().id(),
-                                    ExecutionDirection.UP,
-                                    node.name(),
-                                    errorMsg != null ? errorMsg : "Unknown error");
-                    historyRepository.record(failureRecord);
-
                     // 失敗時はサマリーを作成して返す
-                    ExecutionSummary summary =
-                            ExecutionSummary.failure(
-                                    ExecutionDirection.UP, totalNodes, executedCount, skippedCount);
-                    listener.onCompleted(summary);
-                    return ExecutionResult.failure(summary);
+                    return failure(totalNodes, executedCount, skippedCount);
                 }
             }
         }
 
+        if (group != null) {
+            if (!commitGroup(group)) {
+                return failure(totalNodes, executedCount, skippedCount);
+            }
+            executedCount += group.members.size();
+        }
+
         // 成功サマリーを作成
         ExecutionSummary summary =
                 ExecutionSummary.success(
@@ -187,4 +241,206 @@ public final class MigrationExecutor {
         listener.onCompleted(summary);
         return ExecutionResult.success(summary);
     }
+
+    private ExecutionResult failure(int totalNodes, int executedCount, int skippedCount) {
+        ExecutionSummary summary =
+                ExecutionSummary.failure(
+                        ExecutionDirection.UP, totalNodes, executedCount, skippedCount);
+        listener.onCompleted(summary);
+        return ExecutionResult.failure(summary);
+    }
+
+    /**
+     * 1つのノードの UP タスクを実行し、結果を通知して履歴に記録する。
+     *
+     * <p>タスクがマイグレーションと同じトランザクションで成功記録を書き込んだ場合は、改めて記録しない。
+     *
+     * @return 成功した場合は true
+     */
+    boolean runNode(MigrationNode node) {
+        String throttleError = awaitThrottle(node);
+        if (throttleError != null) {
+            reportFailure(node, throttleError);
+            return false;
+        }
+
+        // 実行開始を通知
+        listener.onNodeStarted(node, ExecutionDirection.UP);
+
+        // 実行（タスクが同じトランザクションで履歴を記録できるよう、コンテキストを渡す）
+        NodeExecutionContext context =
+                new NodeExecutionContext(
+                        node,
+                        historyRepository,
+                        ExecutionDirection.UP,
+                        sessions,
+                        listener,
+                        false,
+                        throttle);
+        long startTime = System.currentTimeMillis();
+        Result<TaskResult, String> result = node.upTask().execute(context);
+        long duration = System.currentTimeMillis() - startTime;
+
+        if (result.isOk()) {
+            recordSuccess(node, context, result.value(), duration);
+            return true;
+        }
+
+        String errorMsg = result.error();
+        reportFailure(node, errorMsg != null ? errorMsg : "Unknown error");
+        return false;
+    }
+
+    /**
+     * スロットルを指定している場合、ノードのターゲットのレプリカの遅延が閾値以下になるまで待つ。
+     *
+     * @return 遅延の確認に失敗した場合はエラーメッセージ、それ以外は null
+     */
+    private @Nullable String awaitThrottle(MigrationNode node) {
+        if (throttle == null) {
+            return null;
+        }
+        try {
+            throttle.await(
+                    node.environment(),
+                    message -> listener.onNodeProgress(node, ExecutionDirection.UP, message));
+            return null;
+        } catch (RuntimeException e) {
+            return "Failed to check replication lag: " + e.getMessage();
+        }
+    }
+
+    /** まとめを有効にしていて、ノードの UP タスクがまとめられる場合は、その単位を返す。 */
+    private @Nullable String transactionGroupKey(MigrationNode node) {
+        if (transactionGroupSize > 1 && node.upTask() instanceof TransactionGroupable groupable) {
+            return groupable.transactionGroupKey();
+        }
+        return null;
+    }
+
+    /**
+     * グループのトランザクションの中でノードの UP タスクを実行する。 成功の通知と履歴の記録はコミットの後に行う。
+     *
+     * @return 失敗した場合はエラーメッセージ、成功した場合は null
+     */
+    private @Nullable String runNodeInGroup(MigrationNode node, TransactionGroup group) {
+        listener.onNodeStarted(node, ExecutionDirection.UP);
+
+        NodeExecutionContext context =
+                new NodeExecutionContext(
+                        node, historyRepository, ExecutionDirection.UP, sessions, listener, true);
+        long startTime = System.currentTimeMillis();
+        Result<TaskResult, String> result = node.upTask().execute(context);
+        long duration = System.currentTimeMillis() - startTime;
+
+        if (result.isOk()) {
+            // 契約どおり、最後に成功したタスクでコミットする
+            group.committer = (TransactionGroupable) node.upTask();
+            group.committerContext = context;
+            group.members.add(new GroupMember(node, context, result.value(), duration));
+            return null;
+        }
+        String errorMsg = result.error();
+        return errorMsg != null ? errorMsg : "Unknown error";
+    }
+
+    /**
+     * グループのトランザクションをコミットし、成功したノードを通知して履歴に記録する。
+     *
+     * @return コミットに成功した場合は true
+     */
+    private boolean commitGroup(TransactionGroup group) {
+        TransactionGroupable committer = group.committer;
+        TaskExecutionContext committerContext = group.committerContext;
+        if (committer == null || committerContext == null) {
+            return true;
+        }
+        try {
+            committer.commitTransactionGroup(committerContext);
+        } catch (RuntimeException e) {
+            // グループのノードはすべて取り消されたため、最初のノードの失敗として記録する
+            if (!group.members.isEmpty()) {
+                reportFailure(
+                        group.members.get(0).node(),
+                        "Failed to commit transaction group: " + e.getMessage());
+            }
+            return false;
+        }
+        for (GroupMember member : group.members) {
+            recordSuccess(member.node(), member.context(), member.result(), member.durationMs());
+        }
+        return true;
+    }
+
+    /** 成功を通知し、タスク側で記録していなければ成功記録を保存する。 */
+    private void recordSuccess(
+            MigrationNode node,
+            NodeExecutionContext context,
+            @Nullable TaskResult taskResult,
+            long duration) {
+        listener.onNodeSucceeded(node, ExecutionDirection.UP, duration);
+        if (context.recorded()) {
+            return;
+        }
+
+        // 実行記録を保存
+        String serializedDownTask = taskResult != null ? taskResult.serializedDownTask() : null;
+
+        ExecutionRecord record =
+                ExecutionRecord.upSuccess(
+                        node.id(),
+                        node.environment().id(),
+                        NodeExecutionContext.recordDescription(node, taskResult),
+                        serializedDownTask,
+                        duration);
+        historyRepository.record(record);
+    }
+
+    /** 失敗を通知し、失敗記録を保存する。 */
+    private void reportFailure(MigrationNode node, String errorMsg) {
+        String sqlContent = null;
+        Task upTask = node.upTask();
+        if (upTask instanceof SqlContentProvider sqlProvider) {
+            sqlContent = sqlProvider.sqlContent();
+        }
+
+        listener.onNodeFailed(node, ExecutionDirection.UP, sqlContent, errorMsg);
+
+        // 失敗記録を保存
+        ExecutionRecord failureRecord =
+                ExecutionRecord.failure(
+                        node.id(),
+                        node.environment().id(),
+                        ExecutionDirection.UP,
+                        node.name(),
+                        errorMsg);
+        historyRepository.record(failureRecord);
+    }
+
+    /** グループのトランザクションでコミットを待っている、成功したノード。 */
+    private record GroupMember(
+            MigrationNode node,
+            NodeExecutionContext context,
+            @Nullable TaskResult result,
+            long durationMs) {}
+
+    /** 1つのトランザクションにまとめて実行しているノード。 */
+    private static final class TransactionGroup {
+        private final String key;
+        private final List<GroupMember> members = new ArrayList<>();
+
+        /** 最後に成功したタスクとそのコンテキスト。 グループのコミットに使う（失敗したタスクでは更新しない）。 */
+        private @Nullable TransactionGroupable committer;
+
+        private @Nullable TaskExecutionContext committerContext;
+
+        TransactionGroup(String key) {
+            this.key = key;
+        }
+    }
+
+    /** 実行の間に開いたセッションを閉じる。 */
+    void closeSessions() {
+        sessions.close();
+    }
 }
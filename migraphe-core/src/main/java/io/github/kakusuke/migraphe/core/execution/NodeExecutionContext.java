@@ -0,0 +1,121 @@
+package io.github.kakusuke.migraphe.core.execution;
+
+import io.github.kakusuke.migraphe.api.execution.ExecutionListener;
+import io.github.kakusuke.migraphe.api.graph.MigrationNode;
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.api.history.HistoryRepository;
+import io.github.kakusuke.migraphe.api.task.ExecutionDirection;
+import io.github.kakusuke.migraphe.api.task.TaskExecutionContext;
+import io.github.kakusuke.migraphe.api.task.TaskResult;
+import java.util.Objects;
+import java.util.function.Supplier;
+import org.jspecify.annotations.Nullable;
+
+/** 1つのノードの UP / DOWN タスクに渡す TaskExecutionContext。 */
+final class NodeExecutionContext implements TaskExecutionContext {
+
+    private final MigrationNode node;
+    private final HistoryRepository historyRepository;
+    private final ExecutionDirection direction;
+    private final RunSessions sessions;
+    private final ExecutionListener listener;
+    private final boolean inTransactionGroup;
+    private final @Nullable ReplicationThrottle throttle;
+    private volatile boolean recorded;
+
+    NodeExecutionContext(
+            MigrationNode node,
+            HistoryRepository historyRepository,
+            ExecutionDirection direction,
+            RunSessions sessions,
+            ExecutionListener listener) {
+        this(node, historyRepository, direction, sessions, listener, false);
+    }
+
+    NodeExecutionContext(
+            MigrationNode node,
+            HistoryRepository historyRepository,
+            ExecutionDirection direction,
+            RunSessions sessions,
+            ExecutionListener listener,
+            boolean inTransactionGroup) {
+        this(node, historyRepository, direction, sessions, listener, inTransactionGroup, null);
+    }
+
+    NodeExecutionContext(
+            MigrationNode node,
+            HistoryRepository historyRepository,
+            ExecutionDirection direction,
+            RunSessions sessions,
+            ExecutionListener listener,
+            boolean inTransactionGroup,
+            @Nullable ReplicationThrottle throttle) {
+        this.node = Objects.requireNonNull(node, "node must not be null");
+        this.historyRepository =
+                Objects.requireNonNull(historyRepository, "historyRepository must not be null");
+        this.direction = Objects.requireNonNull(direction, "direction must not be null");
+        this.sessions = Objects.requireNonNull(sessions, "sessions must not be null");
+        this.listener = Objects.requireNonNull(listener, "listener must not be null");
+        this.inTransactionGroup = inTransactionGroup;
+        this.throttle = throttle;
+    }
+
+    @Override
+    public HistoryRepository historyRepository() {
+        return historyRepository;
+    }
+
+    @Override
+    public ExecutionRecord successRecord(TaskResult result, long durationMs) {
+        if (direction == ExecutionDirection.DOWN) {
+            return ExecutionRecord.downSuccess(
+                    node.id(), node.environment().id(), node.name(), durationMs);
+        }
+        return ExecutionRecord.upSuccess(
+                node.id(),
+                node.environment().id(),
+                recordDescription(node, result),
+                result.serializedDownTask(),
+                durationMs);
+    }
+
+    /** 履歴に残す説明。 タスクが実行結果の要約を返した場合は、ノード名の後に付ける。 */
+    static String recordDescription(MigrationNode node, @Nullable TaskResult result) {
+        String detail = result != null ? result.detail() : null;
+        return detail != null ? node.name() + " (" + detail + ")" : node.name();
+    }
+
+    @Override
+    public void markRecorded() {
+        recorded = true;
+    }
+
+    @Override
+    public <S extends AutoCloseable> S session(
+            String key, Class<S> type, Supplier<? extends S> opener) {
+        return sessions.get(key, type, opener);
+    }
+
+    @Override
+    public void progress(String message) {
+        listener.onNodeProgress(node, direction, message);
+    }
+
+    /** グループのトランザクションを開いている間は待たない。 */
+    @Override
+    public void throttle() {
+        if (throttle != null && !inTransactionGroup) {
+            throttle.await(node.environment(), this::progress);
+        }
+    }
+
+    @Override
+    public boolean inTransactionGroup() {
+        return inTransactionGroup;
+    }
+
+    /** タスク側で成功記録を記録済みかどうか。 */
+    boolean recorded() {
+        return recorded;
+    }
+}
@@ -0,0 +1,114 @@
+package io.github.kakusuke.migraphe.core.execution;
+
+import io.github.kakusuke.migraphe.api.environment.Environment;
+import io.github.kakusuke.migraphe.api.environment.ReplicationLag;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Consumer;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * レプリカの遅延が閾値を超えている間、新しい作業を止める。
+ *
+ * <p>実行側はノードを実行する前に、タスクはバックフィルの範囲の間などで {@link #await} を呼ぶ。 遅延はターゲットごとに
+ * {@link Probe} で取得し、閾値以下になるまで pollInterval ごとに取得し直す。 デフォルトの Probe は {@link ReplicationLag} を
+ * 実装したターゲットの遅延を返し、それ以外のターゲットでは待たない。
+ */
+public final class ReplicationThrottle {
+
+    /** 遅延を取得し直す間隔のデフォルト値。 */
+    public static final Duration DEFAULT_POLL_INTERVAL = Duration.ofSeconds(5);
+
+    /** ターゲットのレプリカの遅延を取得する。 */
+    @FunctionalInterface
+    public interface Probe {
+
+        /**
+         * ターゲットのレプリカの遅延を返す。
+         *
+         * @param environment ターゲット
+         * @return 遅延（取得できないターゲットでは null）
+         * @throws RuntimeException 遅延の取得に失敗した場合
+         */
+        @Nullable Duration lag(Environment environment);
+    }
+
+    /** {@link ReplicationLag} を実装したターゲットの遅延を返す Probe。 */
+    public static final Probe ENVIRONMENT_PROBE =
+            environment ->
+                    environment instanceof ReplicationLag replication
+                            ? replication.replicationLag()
+                            : null;
+
+    private final Duration maxLag;
+    private final Duration pollInterval;
+    private final Probe probe;
+
+    /**
+     * @param maxLag 新しい作業を始めてよい遅延の最大値
+     * @param pollInterval 遅延を取得し直す間隔
+     * @param probe 遅延の取得方法
+     */
+    public ReplicationThrottle(Duration maxLag, Duration pollInterval, Probe probe) {
+        this.maxLag = Objects.requireNonNull(maxLag, "maxLag must not be null");
+        this.pollInterval = Objects.requireNonNull(pollInterval, "pollInterval must not be null");
+        this.probe = Objects.requireNonNull(probe, "probe must not be null");
+        if (maxLag.isNegative()) {
+            throw new IllegalArgumentException("maxLag must not be negative: " + maxLag);
+        }
+        if (pollInterval.isNegative()) {
+            throw new IllegalArgumentException(
+                    "pollInterval must not be negative: " + pollInterval);
+        }
+    }
+
+    /** デフォルトの間隔と Probe で作成する。 */
+    public static ReplicationThrottle of(Duration maxLag) {
+        return new ReplicationThrottle(maxLag, DEFAULT_POLL_INTERVAL, ENVIRONMENT_PROBE);
+    }
+
+    public Duration maxLag() {
+        return maxLag;
+    }
+
+    /**
+     * ターゲットのレプリカの遅延が閾値以下になるまで待つ。 閾値を超えている間は、取得するたびに progress に通知する。
+     *
+     * @param environment ターゲット
+     * @param progress 待っている間の通知先
+     * @return 待った回数（待たなかった場合は 0）
+     * @throws RuntimeException 遅延の取得に失敗した場合、待っている間に割り込まれた場合
+     */
+    public int await(Environment environment, Consumer<String> progress) {
+        int waits = 0;
+        while (true) {
+            Duration lag = probe.lag(environment);
+            if (lag == null || lag.compareTo(maxLag) <= 0) {
+                return waits;
+            }
+            progress.accept(
+                    "replication lag "
+                            + format(lag)
+                            + " exceeds "
+                            + format(maxLag)
+                            + ", waiting "
+                            + format(pollInterval));
+            try {
+                Thread.sleep(pollInterval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for replication lag", e);
+            }
+            waits++;
+        }
+    }
+
+    /** 秒単位で表示する（秒の端数がある場合は小数点以下1桁まで）。 */
+    static String format(Duration duration) {
+        long millis = duration.toMillis();
+        return millis % 1000 == 0
+                ? millis / 1000 + "s"
+                : String.format(Locale.ROOT, "%.1fs", millis / 1000.0);
+    }
+}
@@ -30,6 +30,9 @@ public final class RollbackExecutor {
     private final HistoryRepository historyRepository;
     private final ExecutionListener listener;
 
+    /** 実行の間、タスクが共有するセッション（同じ接続先への接続など）。 */
+    private final RunSessions sessions = new RunSessions();
+
     public RollbackExecutor(
             MigrationGraph graph, HistoryRepository historyRepository, ExecutionListener listener) {
         this.graph = graph;
@@ -114,8 +117,15 @@ public final class RollbackExecutor {
      * @return 実行結果
      */
     public ExecutionResult execute(Set<NodeId> targetNodes) {
-        // 逆順の実行プランを生成
-        ExecutionPlan plan = TopologicalSort.createReverseExecutionPlanFor(graph, targetNodes);
+        try {
+            // 逆順の実行プランを生成
+            return executePlan(TopologicalSort.createReverseExecutionPlanFor(graph, targetNodes));
+        } finally {
+            sessions.close();
+        }
+    }
+
+    private ExecutionResult executePlan(ExecutionPlan plan) {
 
         int totalNodes = plan.totalNodes();
         int executedCount = 0;
@@ -142,19 +152,28 @@ public final class RollbackExecutor {
                 listener.onNodeStarted(node, ExecutionDirection.DOWN);
 
                 // 実行
+                NodeExecutionContext context =
+                        new NodeExecutionContext(
+                                node,
+                                historyRepository,
+                                ExecutionDirection.DOWN,
+                                sessions,
+                                listener);
                 long startTime = System.currentTimeMillis();
-                Result<TaskResult, String> result = downTask.execute();
+                Result<TaskResult, String> result = downTask.execute(context);
                 long duration = System.currentTimeMillis() - startTime;
 
                 if (result.isOk()) {
                     // 成功
                     listener.onNodeSucceeded(node, ExecutionDirection.DOWN, duration);
 
-                    // ロールバック記録を保存
-                    ExecutionRecord record =
-                            ExecutionRecord.downSuccess(
-                                    node.id(), node.environment().id(), node.name(), duration);
-                    historyRepository.record(record);
+                    // ロールバック記録を保存（タスク側で記録済みの場合を除く）
+                    if (!context.recorded()) {
+                        ExecutionRecord record =
+                                ExecutionRecord.downSuccess(
+                                        node.id(), node.environment().id(), node.name(), duration);
+                        historyRepository.record(record);
+                    }
 
                     executedCount++;
                 } else {
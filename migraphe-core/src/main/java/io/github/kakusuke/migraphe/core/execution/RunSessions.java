@@ -0,0 +1,48 @@
+package io.github.kakusuke.migraphe.core.execution;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * 1回の実行の間、タスクが共有するセッションを保持する。
+ *
+ * <p>セッションはキーごとに初めて要求されたときに開き、{@link #close()} で開いた順と逆に閉じる。 閉じた後に要求された場合は
+ * 新しく開き直す。
+ */
+final class RunSessions implements AutoCloseable {
+
+    private final Map<String, AutoCloseable> sessions = new LinkedHashMap<>();
+
+    synchronized <S extends AutoCloseable> S get(
+            String key, Class<S> type, Supplier<? extends S> opener) {
+        Objects.requireNonNull(key, "key must not be null");
+        AutoCloseable session = sessions.get(key);
+        if (session == null) {
+            session = Objects.requireNonNull(opener.get(), "opener must not return null");
+            sessions.put(key, session);
+        }
+        if (!type.isInstance(session)) {
+            throw new IllegalStateException(
+                    "Session '" + key + "' is not a " + type.getName() + ": " + session);
+        }
+        return type.cast(session);
+    }
+
+    /** 開いている全てのセッションを閉じる。 閉じるのに失敗したセッションは無視する（実行結果には影響させない）。 */
+    @Override
+    public synchronized void close() {
+        List<AutoCloseable> opened = new ArrayList<>(sessions.values());
+        sessions.clear();
+        for (int i = opened.size() - 1; i >= 0; i--) {
+            try {
+                opened.get(i).close();
+            } catch (Exception e) {
+                // 実行は既に終わっているため、後始末の失敗で結果を変えない
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package io.github.kakusuke.migraphe.core.graph;
+
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.graph.MigrationNode;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * グラフのフィンガープリントを環境ごとに求める。
+ *
+ * <p>フィンガープリントは、環境に属するノードの ID・内容のハッシュ・依存先をノードID順に並べた SHA-256 ハッシュで、
+ * ノードの追加・削除・内容の変更・依存関係の変更のいずれでも値が変わる。 ノードの読み込み順には依存しない。
+ */
+public final class GraphFingerprint {
+
+    /** 計算方法を変えた場合に古いフィンガープリントと一致しないよう、先頭に含める版数。 */
+    private static final String VERSION = "v1";
+
+    private GraphFingerprint() {}
+
+    /**
+     * 環境ごとのフィンガープリントを求める。
+     *
+     * @param graph マイグレーショングラフ
+     * @return 環境ID → フィンガープリント（ノードがない環境は含まない）
+     */
+    public static Map<EnvironmentId, String> compute(MigrationGraph graph) {
+        Objects.requireNonNull(graph, "graph must not be null");
+
+        Map<EnvironmentId, List<MigrationNode>> nodesByEnvironment =
+                graph.allNodes().stream()
+                        .collect(Collectors.groupingBy(node -> node.environment().id()));
+
+        Map<EnvironmentId, String> fingerprints = new HashMap<>();
+        nodesByEnvironment.forEach(
+                (environmentId, nodes) -> fingerprints.put(environmentId, digest(nodes)));
+        return fingerprints;
+    }
+
+    private static String digest(List<MigrationNode> nodes) {
+        MessageDigest digest = sha256();
+        update(digest, VERSION);
+        nodes.stream()
+                .sorted(Comparator.comparing(node -> node.id().value()))
+                .forEach(
+                        node -> {
+                            update(digest, node.id().value());
+                            String contentHash = node.contentHash();
+                            update(digest, contentHash != null ? contentHash : "");
+                            node.dependencies().stream()
+                                    .map(NodeId::value)
+                                    .sorted()
+                                    .forEach(dependency -> update(digest, dependency));
+                            // ノードの区切り（依存先の個数が違うノードを取り違えないため）
+                            update(digest, "");
+                        });
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /** 値を長さ付きで追加する（区切り文字を含む値でも境界がずれないようにする）。 */
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(
+                new byte[] {
+                    (byte) (bytes.length >>> 24),
+                    (byte) (bytes.length >>> 16),
+                    (byte) (bytes.length >>> 8),
+                    (byte) bytes.length
+                });
+        digest.update(bytes);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 は全ての Java 実装で利用可能
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package io.github.kakusuke.migraphe.core.history;
+
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.api.history.ExecutionStatus;
+import io.github.kakusuke.migraphe.api.history.HistoryQuery;
+import io.github.kakusuke.migraphe.api.history.NodeDurationStats;
+import io.github.kakusuke.migraphe.api.task.ExecutionDirection;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * 履歴レコードを1度だけ走査して、ノードごとの実行時間を集計する。
+ *
+ * <p>データベース側で集計できないメモリ内・ファイルの履歴で {@link
+ * io.github.kakusuke.migraphe.api.history.HistoryAnalytics} を実装するために使う。 パーセンタイルを正確に求めるため、
+ * 成功した実行の実行時間だけはノードごとに保持する。
+ */
+public final class DurationStatsCollector {
+
+    private final HistoryQuery query;
+    private final @Nullable Instant midpoint;
+    private final Map<NodeId, NodeAccumulator> byNode =
+            new TreeMap<>(Comparator.comparing(NodeId::value));
+
+    public DurationStatsCollector(HistoryQuery query) {
+        this.query = Objects.requireNonNull(query, "query must not be null");
+        this.midpoint = query.midpoint();
+    }
+
+    /**
+     * レコードのストリームを集計する。
+     *
+     * @param records 集計するレコード（条件に一致しないものは無視する）
+     * @param query 集計対象の条件
+     * @return ノードごとの集計結果（ノードID順）
+     */
+    public static List<NodeDurationStats> collect(
+            Stream<ExecutionRecord> records, HistoryQuery query) {
+        DurationStatsCollector collector = new DurationStatsCollector(query);
+        records.forEach(collector::accept);
+        return collector.result();
+    }
+
+    /** レコードを1件集計に加える。 */
+    public void accept(ExecutionRecord record) {
+        if (record.direction() != ExecutionDirection.UP
+                || record.status() == ExecutionStatus.SKIPPED
+                || !query.matches(record)) {
+            return;
+        }
+        byNode.computeIfAbsent(record.nodeId(), k -> new NodeAccumulator()).add(record);
+    }
+
+    /** これまでに加えたレコードの集計結果を返す。 */
+    public List<NodeDurationStats> result() {
+        List<NodeDurationStats> stats = new ArrayList<>();
+        byNode.forEach((nodeId, acc) -> stats.add(acc.toStats(nodeId, query)));
+        return stats;
+    }
+
+    /**
+     * ソート済みの値から線形補間でパーセンタイルを求める（PostgreSQL の {@code percentile_cont} と同じ）。
+     *
+     * @param sorted 昇順にソートされた値
+     * @param length 先頭から使う値の数（1以上）
+     * @param fraction 0.0〜1.0
+     */
+    static double percentile(long[] sorted, int length, double fraction) {
+        double position = fraction * (length - 1);
+        int lower = (int) Math.floor(position);
+        int upper = (int) Math.ceil(position);
+        return sorted[lower] + (position - lower) * (sorted[upper] - sorted[lower]);
+    }
+
+    /** 1つのノードの集計途中の値。 */
+    private final class NodeAccumulator {
+
+        private long count;
+        private long failureCount;
+        private long[] durations = new long[8];
+        private int successCount;
+        private long earlierSum;
+        private long earlierCount;
+        private long recentSum;
+        private long recentCount;
+
+        void add(ExecutionRecord record) {
+            count++;
+            if (record.status() == ExecutionStatus.FAILURE) {
+                failureCount++;
+                return;
+            }
+
+            if (successCount == durations.length) {
+                durations = Arrays.copyOf(durations, durations.length * 2);
+            }
+            durations[successCount++] = record.durationMs();
+
+            if (midpoint != null) {
+                if (record.executedAt().isBefore(midpoint)) {
+                    earlierSum += record.durationMs();
+                    earlierCount++;
+                } else {
+                    recentSum += record.durationMs();
+                    recentCount++;
+                }
+            }
+        }
+
+        NodeDurationStats toStats(NodeId nodeId, HistoryQuery query) {
+            double p50 = 0;
+            double p95 = 0;
+            long max = 0;
+            if (successCount > 0) {
+                Arrays.sort(durations, 0, successCount);
+                p50 = percentile(durations, successCount, 0.5);
+                p95 = percentile(durations, successCount, 0.95);
+                max = durations[successCount - 1];
+            }
+            Double trend =
+                    NodeDurationStats.trendOf(
+                            earlierCount > 0 ? (double) earlierSum / earlierCount : null,
+                            recentCount > 0 ? (double) recentSum / recentCount : null);
+            return new NodeDurationStats(
+                    nodeId, query.environmentId(), count, failureCount, p50, p95, max, trend);
+        }
+    }
+}
@@ -0,0 +1,828 @@
+package io.github.kakusuke.migraphe.core.history;
+
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.api.history.ExecutionStatus;
+import io.github.kakusuke.migraphe.api.history.HistoryAnalytics;
+import io.github.kakusuke.migraphe.api.history.HistoryMaintenance;
+import io.github.kakusuke.migraphe.api.history.HistoryQuery;
+import io.github.kakusuke.migraphe.api.history.HistoryRepository;
+import io.github.kakusuke.migraphe.api.history.NodeDurationStats;
+import io.github.kakusuke.migraphe.api.history.NodeLeaseRepository;
+import io.github.kakusuke.migraphe.api.task.ExecutionDirection;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * ローカルファイルにマイグレーション履歴を永続化する実装。
+ *
+ * <p>履歴は追記専用のバイナリログとして保存される。起動時（{@link #initialize()}）にログを mmap で先頭から走査し、
+ * (環境, ノード) ごとの最新レコードの索引をメモリ上に再構築する。{@link #wasExecuted} と {@link #executedNodes}
+ * は索引のみで応答し、{@link #findLatestRecord} は索引が指すオフセットから1レコードだけを読み込む。
+ *
+ * <p>クラッシュなどで末尾に書きかけのフレームが残っている場合は、CRC32 で検出して切り詰める。 末尾より前のフレームが壊れている
+ * 場合はファイルに手を加えず、 {@link HistoryStorageException} を投げる。 同一ノードのレコードが保持件数を超えて蓄積すると、
+ * 古いレコードを取り除くコンパクションを自動で行う。
+ *
+ * <p>ログファイルはプロセス単位で排他ロックされる。 そのためノードのリースもプロセス内でのみ管理し（{@link
+ * LocalNodeLeaseRepository}）、分散実行はローカルでの動作確認用となる。
+ */
+public final class FileHistoryRepository
+        implements HistoryRepository,
+                HistoryMaintenance,
+                HistoryAnalytics,
+                NodeLeaseRepository,
+                AutoCloseable {
+
+    /** ノードごとに保持するレコード数のデフォルト値。 */
+    public static final int DEFAULT_RETAIN_PER_NODE = 100;
+
+    private static final int MAGIC = 0x4D47484C; // "MGHL"
+    private static final byte FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 5;
+
+    /** mmap で一度にマップする最大サイズ。 */
+    private static final long SCAN_WINDOW_SIZE = 64L * 1024 * 1024;
+
+    /** 1レコードとして許容する最大ペイロード長（破損検出用）。 */
+    private static final int MAX_PAYLOAD_SIZE = 64 * 1024 * 1024;
+
+    /** 保持件数を超えたレコードがこの件数に達したらコンパクションを行う。 */
+    private static final int COMPACTION_THRESHOLD = 1000;
+
+    private static final long PERIODIC_FSYNC_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final DateTimeFormatter ARCHIVE_NAME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+
+    private final Path path;
+    private final FsyncPolicy fsyncPolicy;
+    private final int retainPerNode;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LocalNodeLeaseRepository leases = new LocalNodeLeaseRepository();
+
+    private volatile Map<NodeKey, IndexEntry> latestIndex = new ConcurrentHashMap<>();
+    private @Nullable FileChannel channel;
+    private @Nullable FileLock fileLock;
+    private long writePosition;
+    private long excessRecords;
+    private long lastSyncNanos;
+
+    private FileHistoryRepository(Path path, FsyncPolicy fsyncPolicy, int retainPerNode) {
+        this.path = Objects.requireNonNull(path, "path must not be null");
+        this.fsyncPolicy = Objects.requireNonNull(fsyncPolicy, "fsyncPolicy must not be null");
+        if (retainPerNode < 1) {
+            throw new IllegalArgumentException("retainPerNode must be positive: " + retainPerNode);
+        }
+        this.retainPerNode = retainPerNode;
+    }
+
+    /** 記録ごとに fsync するファイル履歴ストアを作成する。 */
+    public static FileHistoryRepository create(Path path) {
+        return create(path, FsyncPolicy.ALWAYS);
+    }
+
+    /** 指定した fsync ポリシーでファイル履歴ストアを作成する。 */
+    public static FileHistoryRepository create(Path path, FsyncPolicy fsyncPolicy) {
+        return create(path, fsyncPolicy, DEFAULT_RETAIN_PER_NODE);
+    }
+
+    /**
+     * fsync ポリシーとノードごとの保持件数を指定してファイル履歴ストアを作成する。
+     *
+     * @param path ログファイルのパス
+     * @param fsyncPolicy fsync ポリシー
+     * @param retainPerNode 自動コンパクションで (環境, ノード) ごとに残すレコード数
+     * @return FileHistoryRepository
+     */
+    public static FileHistoryRepository create(
+            Path path, FsyncPolicy fsyncPolicy, int retainPerNode) {
+        return new FileHistoryRepository(path, fsyncPolicy, retainPerNode);
+    }
+
+    /** ログファイルのパスを返す。 */
+    public Path path() {
+        return path;
+    }
+
+    @Override
+    public void initialize() {
+        lock.writeLock().lock();
+        try {
+            if (channel != null) {
+                return;
+            }
+
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+
+            FileChannel opened =
+                    FileChannel.open(
+                            path,
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.READ,
+                            StandardOpenOption.WRITE);
+            try {
+                FileLock acquired = acquireLock(opened);
+                if (opened.size() == 0) {
+                    writeHeader(opened);
+                } else {
+                    verifyHeader(opened);
+                }
+
+                // 索引を再構築し、書きかけの末尾フレームがあれば切り詰める
+                Map<NodeKey, IndexEntry> rebuilt = new ConcurrentHashMap<>();
+                excessRecords = 0;
+                long validEnd =
+                        scan(opened, opened.size(), (r, offset) -> index(rebuilt, r, offset));
+                if (validEnd < opened.size()) {
+                    opened.truncate(validEnd);
+                    opened.force(true);
+                }
+
+                this.latestIndex = rebuilt;
+                this.writePosition = validEnd;
+                this.fileLock = acquired;
+                this.channel = opened;
+                this.lastSyncNanos = System.nanoTime();
+            } catch (IOException | RuntimeException e) {
+                opened.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new HistoryStorageException("Failed to open history file: " + path, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void record(ExecutionRecord record) {
+        Objects.requireNonNull(record, "record must not be null");
+
+        lock.writeLock().lock();
+        try {
+            FileChannel ch = requireOpen();
+            long offset = writePosition;
+            try {
+                writePosition =
+                        offset + writeFully(ch, HistoryLogCodec.encodeFrame(record), offset);
+            } catch (IOException e) {
+                // 書きかけのフレームを残さないよう、追記前の位置まで戻す
+                ch.truncate(offset);
+                throw e;
+            }
+            syncIfRequired(ch);
+            index(latestIndex, record, offset);
+
+            if (excessRecords >= COMPACTION_THRESHOLD) {
+                compactQuietly();
+            }
+        } catch (IOException e) {
+            throw new HistoryStorageException("Failed to append history record: " + path, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean wasExecuted(NodeId nodeId, EnvironmentId environmentId) {
+        Objects.requireNonNull(nodeId, "nodeId must not be null");
+        Objects.requireNonNull(environmentId, "environmentId must not be null");
+
+        IndexEntry entry = latestIndex.get(new NodeKey(environmentId, nodeId));
+        return entry != null && entry.isExecuted();
+    }
+
+    @Override
+    public List<NodeId> executedNodes(EnvironmentId environmentId) {
+        Objects.requireNonNull(environmentId, "environmentId must not be null");
+
+        List<NodeId> result = new ArrayList<>();
+        for (Map.Entry<NodeKey, IndexEntry> e : latestIndex.entrySet()) {
+            if (e.getKey().environmentId().equals(environmentId) && e.getValue().isExecuted()) {
+                result.add(e.getKey().nodeId());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public @Nullable ExecutionRecord findLatestRecord(NodeId nodeId, EnvironmentId environmentId) {
+        Objects.requireNonNull(nodeId, "nodeId must not be null");
+        Objects.requireNonNull(environmentId, "environmentId must not be null");
+
+        lock.readLock().lock();
+        try {
+            IndexEntry entry = latestIndex.get(new NodeKey(environmentId, nodeId));
+            if (entry == null) {
+                return null;
+            }
+            return readAt(requireOpen(), entry.offset());
+        } catch (IOException e) {
+            throw new HistoryStorageException("Failed to read history record: " + path, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ExecutionRecord> allRecords(EnvironmentId environmentId) {
+        Objects.requireNonNull(environmentId, "environmentId must not be null");
+
+        lock.readLock().lock();
+        try {
+            List<ExecutionRecord> result = new ArrayList<>();
+            scan(
+                    requireOpen(),
+                    writePosition,
+                    (r, offset) -> {
+                        if (r.environmentId().equals(environmentId)) {
+                            result.add(r);
+                        }
+                    });
+            return List.copyOf(result);
+        } catch (IOException e) {
+            throw new HistoryStorageException("Failed to read history file: " + path, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** ログを1度だけ走査して集計する。 レコードの一覧は作らない。 */
+    @Override
+    public List<NodeDurationStats> durationStats(HistoryQuery query) {
+        Objects.requireNonNull(query, "query must not be null");
+
+        lock.readLock().lock();
+        try {
+            DurationStatsCollector collector = new DurationStatsCollector(query);
+            scan(requireOpen(), writePosition, (r, offset) -> collector.accept(r));
+            return collector.result();
+        } catch (IOException e) {
+            throw new HistoryStorageException("Failed to read history file: " + path, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * (環境, ノード) ごとに最新 {@code keepLatest} 件だけを残してログを書き直す。
+     *
+     * <p>新しいログは一時ファイルに書き出してから置き換えるため、途中で失敗しても元のログは残る。
+     */
+    @Override
+    public long compact(int keepLatest) {
+        if (keepLatest < 1) {
+            throw new IllegalArgumentException("keepLatest must be positive: " + keepLatest);
+        }
+
+        lock.writeLock().lock();
+        try {
+            return compactLocked(keepLatest);
+        } catch (IOException e) {
+            throw new HistoryStorageException("Failed to compact history file: " + path, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@code before} より前のレコードを、同じ形式の別ファイルに書き出してからログから取り除く。
+     *
+     * <p>書き出したファイルは {@link #create(Path)} でそのまま開いて参照できる。
+     */
+    @Override
+    public List<Path> archive(Instant before, Path outputDir) {
+        Objects.requireNonNull(before, "before must not be null");
+        Objects.requireNonNull(outputDir, "outputDir must not be null");
+
+        lock.writeLock().lock();
+        try {
+            Files.createDirectories(outputDir);
+            Path archivePath =
+                    outputDir.resolve(
+                            "history-before-" + ARCHIVE_NAME_FORMAT.format(before) + ".log");
+
+            // 最新レコードは索引のオフセットで識別できる
+            Set<Long> latestOffsets = new HashSet<>();
+            for (IndexEntry entry : latestIndex.values()) {
+                latestOffsets.add(entry.offset());
+            }
+
+            long removed =
+                    rewriteLocked(
+                            (r, offset) ->
+                                    r.executedAt().isBefore(before)
+                                            && !latestOffsets.contains(offset),
+                            archivePath);
+            return removed == 0 ? List.of() : List.of(archivePath);
+        } catch (IOException e) {
+            throw new HistoryStorageException("Failed to archive history file: " + path, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void registerNodes(String runId, Collection<NodeId> nodeIds) {
+        leases.registerNodes(runId, nodeIds);
+    }
+
+    @Override
+    public @Nullable NodeId tryClaim(
+            String runId, String owner, Collection<NodeId> candidates, Duration leaseDuration) {
+        return leases.tryClaim(runId, owner, candidates, leaseDuration);
+    }
+
+    @Override
+    public boolean renew(String runId, String owner, NodeId nodeId, Duration leaseDuration) {
+        return leases.renew(runId, owner, nodeId, leaseDuration);
+    }
+
+    @Override
+    public void complete(String runId, String owner, NodeId nodeId) {
+        leases.complete(runId, owner, nodeId);
+    }
+
+    @Override
+    public void fail(String runId, String owner, NodeId nodeId) {
+        leases.fail(runId, owner, nodeId);
+    }
+
+    @Override
+    public boolean hasFailures(String runId) {
+        return leases.hasFailures(runId);
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            FileChannel ch = channel;
+            if (ch == null) {
+                return;
+            }
+            try {
+                if (fsyncPolicy != FsyncPolicy.NEVER) {
+                    ch.force(false);
+                }
+                FileLock held = fileLock;
+                if (held != null) {
+                    held.release();
+                }
+            } finally {
+                channel = null;
+                fileLock = null;
+                ch.close();
+            }
+        } catch (IOException e) {
+            throw new HistoryStorageException("Failed to close history file: " + path, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 記録後の自動コンパクションを行う。 記録したレコードは既に永続化されているため、失敗しても記録は失敗させず、警告を出力する。
+     * 保持件数を超えたレコード数はそのまま残るため、次の記録で再試行される。
+     */
+    private void compactQuietly() {
+        try {
+            compactLocked(retainPerNode);
+        } catch (IOException | HistoryStorageException e) {
+            System.err.println(
+                    "Warning: Failed to compact history file " + path + ": " + e.getMessage());
+        }
+    }
+
+    private long compactLocked(int retain) throws IOException {
+        Set<NodeKey> overRetained = new HashSet<>();
+        for (Map.Entry<NodeKey, IndexEntry> e : latestIndex.entrySet()) {
+            if (e.getValue().recordCount() > retain) {
+                overRetained.add(e.getKey());
+            }
+        }
+        if (overRetained.isEmpty()) {
+            return 0;
+        }
+
+        // ログの順序と実行日時が一致するとは限らない（取り込んだ履歴、時計のずれ）ため、索引と同じ順序
+        // （実行日時、同時刻なら後から追記した方）で新しいものから retain 件を残す
+        Map<NodeKey, List<RecordPosition>> positions = new HashMap<>();
+        scan(
+                requireOpen(),
+                writePosition,
+                (r, offset) -> {
+                    NodeKey key = NodeKey.of(r);
+                    if (overRetained.contains(key)) {
+                        positions
+                                .computeIfAbsent(key, k -> new ArrayList<>())
+                                .add(new RecordPosition(r.executedAt(), offset));
+                    }
+                });
+        Set<Long> toRemove = new HashSet<>();
+        for (List<RecordPosition> list : positions.values()) {
+            list.sort(RecordPosition.NEWEST_FIRST);
+            for (int i = retain; i < list.size(); i++) {
+                toRemove.add(list.get(i).offset());
+            }
+        }
+
+        return rewriteLocked((r, offset) -> toRemove.contains(offset), null);
+    }
+
+    /**
+     * {@code filter} が true を返すレコードを取り除いてログを書き直す。
+     *
+     * <p>取り除いたレコードを書き出す場合、ログを置き換える前にアーカイブのファイルとディレクトリを fsync する。
+     * 置き換える前に失敗した場合や、取り除くレコードがなかった場合はアーカイブのファイルを削除する。
+     *
+     * @param filter 取り除くレコードを判定する
+     * @param archivePath 取り除いたレコードの書き出し先（null の場合は破棄）。 既に存在する場合は失敗する
+     * @return 取り除いたレコード数
+     */
+    private long rewriteLocked(RemovalFilter filter, @Nullable Path archivePath)
+            throws IOException {
+        FileChannel current = requireOpen();
+        Path tempPath = path.resolveSibling(path.getFileName() + ".compact");
+        FileChannel rewritten =
+                FileChannel.open(
+                        tempPath,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+        @Nullable FileChannel archive = null;
+        boolean replaced = false;
+        try {
+            if (archivePath != null) {
+                archive =
+                        FileChannel.open(
+                                archivePath,
+                                StandardOpenOption.CREATE_NEW,
+                                StandardOpenOption.READ,
+                                StandardOpenOption.WRITE);
+                writeHeader(archive);
+            }
+            FileChannel removedSink = archive;
+            writeHeader(rewritten);
+            long[] position = {FILE_HEADER_SIZE};
+            long[] sinkPosition = {FILE_HEADER_SIZE};
+            long[] removed = {0};
+            scan(
+                    current,
+                    writePosition,
+                    (r, offset) -> {
+                        if (filter.shouldRemove(r, offset)) {
+                            removed[0]++;
+                            if (removedSink != null) {
+                                sinkPosition[0] +=
+                                        writeFully(
+                                                removedSink,
+                                                HistoryLogCodec.encodeFrame(r),
+                                                sinkPosition[0]);
+                            }
+                            return;
+                        }
+                        position[0] +=
+                                writeFully(rewritten, HistoryLogCodec.encodeFrame(r), position[0]);
+                    });
+
+            if (removed[0] == 0) {
+                rewritten.close();
+                Files.deleteIfExists(tempPath);
+                discardArchive(archive, archivePath);
+                return 0;
+            }
+            rewritten.force(true);
+
+            // 取り除いたレコードがログからもアーカイブからも失われないよう、置き換える前に永続化する
+            if (archive != null && archivePath != null) {
+                archive.force(true);
+                archive.close();
+                forceDirectory(archivePath.toAbsolutePath().getParent());
+            }
+
+            // 置き換え前に新しいファイルをロックしておき、他プロセスの割り込みを防ぐ
+            FileLock newLock = acquireLock(rewritten);
+            Files.move(
+                    tempPath,
+                    path,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            replaced = true;
+
+            FileLock oldLock = fileLock;
+            if (oldLock != null) {
+                oldLock.release();
+            }
+            current.close();
+
+            Map<NodeKey, IndexEntry> rebuilt = new ConcurrentHashMap<>();
+            excessRecords = 0;
+            writePosition = scan(rewritten, position[0], (r, offset) -> index(rebuilt, r, offset));
+            latestIndex = rebuilt;
+            channel = rewritten;
+            fileLock = newLock;
+            return removed[0];
+        } catch (IOException | RuntimeException e) {
+            rewritten.close();
+            Files.deleteIfExists(tempPath);
+            if (!replaced) {
+                // 部分的なアーカイブが残ると、同じ名前での次のアーカイブが失敗する
+                discardArchive(archive, archivePath);
+            }
+            throw e;
+        }
+    }
+
+    /** 作成したアーカイブのファイルを閉じて削除する。 */
+    private static void discardArchive(@Nullable FileChannel archive, @Nullable Path archivePath)
+            throws IOException {
+        if (archive != null && archivePath != null) {
+            archive.close();
+            Files.deleteIfExists(archivePath);
+        }
+    }
+
+    /** ファイルの作成や置き換えを永続化するため、ディレクトリを fsync する。 */
+    private static void forceDirectory(@Nullable Path dir) throws IOException {
+        if (dir == null) {
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (AccessDeniedException e) {
+            // Windows ではディレクトリを開けないため、ディレクトリの fsync を省略する
+        }
+    }
+
+    /** レコードを索引に反映する。書き込みロック下、または初期化中にのみ呼び出す。 */
+    private void index(Map<NodeKey, IndexEntry> index, ExecutionRecord record, long offset) {
+        NodeKey key = NodeKey.of(record);
+        IndexEntry existing = index.get(key);
+        int count = existing == null ? 1 : existing.recordCount() + 1;
+        if (count > retainPerNode) {
+            excessRecords++;
+        }
+
+        // 同時刻の場合は後から追記されたレコードを最新とみなす
+        if (existing == null || !record.executedAt().isBefore(existing.executedAt())) {
+            index.put(
+                    key,
+                    new IndexEntry(
+                            offset,
+                            record.direction(),
+                            record.status(),
+                            record.executedAt(),
+                            count));
+        } else {
+            index.put(key, existing.withRecordCount(count));
+        }
+    }
+
+    /**
+     * ヘッダー直後から {@code limit} までのフレームを mmap で順に走査する。
+     *
+     * <p>{@code limit} まで届く末尾のフレームだけを書きかけとみなす。 それより前のフレームが壊れている場合は、切り詰めると
+     * 後ろの正しいレコードまで失うため、 {@link HistoryStorageException} を投げる。
+     *
+     * @return 最後に正しく読めたフレームの終端位置
+     * @throws HistoryStorageException 末尾以外のフレームが壊れている場合
+     */
+    private static long scan(FileChannel ch, long limit, FrameVisitor visitor) throws IOException {
+        long position = FILE_HEADER_SIZE;
+        long requiredWindow = SCAN_WINDOW_SIZE;
+
+        while (position + HistoryLogCodec.FRAME_HEADER_SIZE <= limit) {
+            long windowSize = Math.min(requiredWindow, limit - position);
+            MappedByteBuffer window = ch.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+            requiredWindow = SCAN_WINDOW_SIZE;
+
+            while (window.remaining() >= HistoryLogCodec.FRAME_HEADER_SIZE) {
+                int start = window.position();
+                int length = window.getInt();
+                int crc = window.getInt();
+                long frameStart = position + start;
+                long frameSize = HistoryLogCodec.FRAME_HEADER_SIZE + (long) length;
+                if (length < 0 || length > MAX_PAYLOAD_SIZE) {
+                    throw corrupted(frameStart);
+                }
+                if (frameStart + frameSize > limit) {
+                    // 書きかけのフレーム
+                    return frameStart;
+                }
+                if (length > window.remaining()) {
+                    // フレームがウィンドウをまたぐので、フレーム先頭からマップし直す
+                    window.position(start);
+                    requiredWindow = Math.max(SCAN_WINDOW_SIZE, frameSize);
+                    break;
+                }
+
+                ByteBuffer payload = window.slice(window.position(), length);
+                if (!HistoryLogCodec.verify(payload, crc)) {
+                    if (frameStart + frameSize == limit) {
+                        // 末尾のフレームだけが壊れている場合は、書き込み中に中断されたものとみなす
+                        return frameStart;
+                    }
+                    throw corrupted(frameStart);
+                }
+                visitor.visit(decode(payload, frameStart), frameStart);
+                window.position(window.position() + length);
+            }
+
+            if (window.position() == 0 && requiredWindow == SCAN_WINDOW_SIZE) {
+                // ウィンドウ内にフレームヘッダーすら収まらない（末尾の断片）
+                return position;
+            }
+            position += window.position();
+        }
+        return position;
+    }
+
+    private static HistoryStorageException corrupted(long offset) {
+        return new HistoryStorageException("Corrupted history frame at offset " + offset);
+    }
+
+    private static ExecutionRecord decode(ByteBuffer payload, long offset) {
+        try {
+            return HistoryLogCodec.decodePayload(payload);
+        } catch (IllegalStateException | IllegalArgumentException | BufferUnderflowException e) {
+            throw new HistoryStorageException(
+                    "Corrupted history record at offset " + offset, e);
+        }
+    }
+
+    private static ExecutionRecord readAt(FileChannel ch, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HistoryLogCodec.FRAME_HEADER_SIZE);
+        readFully(ch, header, offset);
+        header.flip();
+        int length = header.getInt();
+
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(ch, payload, offset + HistoryLogCodec.FRAME_HEADER_SIZE);
+        payload.flip();
+        return decode(payload, offset);
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buffer, long position)
+            throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            int read = ch.read(buffer, current);
+            if (read < 0) {
+                throw new IOException("Unexpected end of history file at offset " + current);
+            }
+            current += read;
+        }
+    }
+
+    private static int writeFully(FileChannel ch, ByteBuffer buffer, long position)
+            throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += ch.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private static void writeHeader(FileChannel ch) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.put(FORMAT_VERSION);
+        header.flip();
+        writeFully(ch, header, 0);
+        ch.force(true);
+    }
+
+    private void verifyHeader(FileChannel ch) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        if (ch.size() < FILE_HEADER_SIZE) {
+            throw new HistoryStorageException("Not a migraphe history file: " + path);
+        }
+        readFully(ch, header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            throw new HistoryStorageException("Not a migraphe history file: " + path);
+        }
+        byte version = header.get();
+        if (version != FORMAT_VERSION) {
+            throw new HistoryStorageException(
+                    "Unsupported history file version " + version + ": " + path);
+        }
+    }
+
+    private FileLock acquireLock(FileChannel ch) throws IOException {
+        FileLock acquired;
+        try {
+            acquired = ch.tryLock();
+        } catch (OverlappingFileLockException e) {
+            acquired = null;
+        }
+        if (acquired == null) {
+            throw new HistoryStorageException("History file is locked by another process: " + path);
+        }
+        return acquired;
+    }
+
+    private void syncIfRequired(FileChannel ch) throws IOException {
+        switch (fsyncPolicy) {
+            case ALWAYS -> ch.force(false);
+            case PERIODIC -> {
+                long now = System.nanoTime();
+                if (now - lastSyncNanos >= PERIODIC_FSYNC_INTERVAL_NANOS) {
+                    ch.force(false);
+                    lastSyncNanos = now;
+                }
+            }
+            case NEVER -> {
+                // OS のページキャッシュに任せる
+            }
+        }
+    }
+
+    private FileChannel requireOpen() {
+        FileChannel ch = channel;
+        if (ch == null) {
+            throw new IllegalStateException("History file is not open. Call initialize() first.");
+        }
+        return ch;
+    }
+
+    /** 走査中の各フレームを受け取るコールバック。 */
+    @FunctionalInterface
+    private interface FrameVisitor {
+        void visit(ExecutionRecord record, long offset) throws IOException;
+    }
+
+    /** 書き直し時に取り除くレコードを判定する。 */
+    @FunctionalInterface
+    private interface RemovalFilter {
+        boolean shouldRemove(ExecutionRecord record, long offset);
+    }
+
+    /** 索引のキー。 */
+    private record NodeKey(EnvironmentId environmentId, NodeId nodeId) {
+        static NodeKey of(ExecutionRecord record) {
+            return new NodeKey(record.environmentId(), record.nodeId());
+        }
+    }
+
+    /** コンパクションで残すレコードを選ぶための、レコードの実行日時と位置。 */
+    private record RecordPosition(Instant executedAt, long offset) {
+
+        /** 索引が最新とみなす順序の逆順。 */
+        static final Comparator<RecordPosition> NEWEST_FIRST =
+                Comparator.comparing(RecordPosition::executedAt)
+                        .thenComparingLong(RecordPosition::offset)
+                        .reversed();
+    }
+
+    /** (環境, ノード) ごとの最新レコードの位置と状態。 */
+    private record IndexEntry(
+            long offset,
+            ExecutionDirection direction,
+            ExecutionStatus status,
+            Instant executedAt,
+            int recordCount) {
+
+        boolean isExecuted() {
+            return direction == ExecutionDirection.UP && status == ExecutionStatus.SUCCESS;
+        }
+
+        IndexEntry withRecordCount(int count) {
+            return new IndexEntry(offset, direction, status, executedAt, count);
+        }
+    }
+}
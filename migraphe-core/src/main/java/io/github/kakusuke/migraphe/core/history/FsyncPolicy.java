@@ -0,0 +1,31 @@
+package io.github.kakusuke.migraphe.core.history;
+
+import java.util.Locale;
+
+/** ファイル履歴ストアがディスクへ同期（fsync）するタイミング。 */
+public enum FsyncPolicy {
+    /** 記録ごとに同期する。最も安全だが最も遅い。 */
+    ALWAYS,
+
+    /** 一定間隔ごと、およびクローズ時に同期する。 */
+    PERIODIC,
+
+    /** 明示的に同期せず、OS に任せる。 */
+    NEVER;
+
+    /**
+     * 設定値から FsyncPolicy を解決する（大文字小文字は区別しない）。
+     *
+     * @param value 設定値（例: "always"）
+     * @return FsyncPolicy
+     * @throws IllegalArgumentException 未知の値の場合
+     */
+    public static FsyncPolicy fromValue(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                    "Unknown fsync policy: " + value + " (expected always, periodic or never)", e);
+        }
+    }
+}
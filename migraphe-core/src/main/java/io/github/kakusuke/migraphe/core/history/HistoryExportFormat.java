@@ -0,0 +1,128 @@
+package io.github.kakusuke.migraphe.core.history;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * 履歴のエクスポートファイルの形式。
+ *
+ * <p>ファイル全体を gzip で圧縮し、先頭にマジックナンバーとバージョンを置く。 その後に次のエントリが並ぶ。
+ *
+ * <ul>
+ *   <li>{@code 'N' 文字列}: ノードIDの辞書に追加する（番号は追加順に 0 から振る）
+ *   <li>{@code 'E' 文字列}: 環境IDの辞書に追加する
+ *   <li>{@code 'R' 長さ ペイロード}: 1レコード。 ノードIDと環境IDは辞書の番号で表す
+ *   <li>{@code '.' 件数}: ファイルの終端。 途中で切れたファイルを検出するためにレコード件数を持つ
+ * </ul>
+ *
+ * <p>辞書のエントリは初めて使うレコードの直前に書き出すため、 全体を読み込まずに先頭から順に読み書きできる。
+ * 長さと番号は可変長整数（7ビットずつ、下位から）で表す。 レコードIDは正規形の UUID 文字列であれば 16 バイトの2進数で、
+ * それ以外は文字列のまま書き出す。
+ */
+final class HistoryExportFormat {
+
+    static final byte[] MAGIC = {'M', 'G', 'H', 'X'};
+    static final int VERSION = 1;
+
+    static final byte NODE_ENTRY = 'N';
+    static final byte ENVIRONMENT_ENTRY = 'E';
+    static final byte RECORD_ENTRY = 'R';
+    static final byte END_ENTRY = '.';
+
+    private static final byte STRING_ID = 0;
+    private static final byte UUID_ID = 1;
+
+    private HistoryExportFormat() {}
+
+    static void writeId(DataOutput out, String id) throws IOException {
+        UUID uuid = parseCanonicalUuid(id);
+        if (uuid != null) {
+            out.writeByte(UUID_ID);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else {
+            out.writeByte(STRING_ID);
+            writeString(out, id);
+        }
+    }
+
+    static String readId(DataInput in) throws IOException {
+        byte type = in.readByte();
+        return switch (type) {
+            case UUID_ID -> new UUID(in.readLong(), in.readLong()).toString();
+            case STRING_ID -> readString(in);
+            default -> throw new IOException("Unknown id type: " + type);
+        };
+    }
+
+    /** 読み戻したときに同じ文字列になる UUID の場合だけ値を返す。 */
+    private static @Nullable UUID parseCanonicalUuid(String id) {
+        if (id.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(id);
+            return uuid.toString().equals(id) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            out.writeByte((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        out.writeByte((int) remaining);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Value out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeNullableString(DataOutput out, @Nullable String value) throws IOException {
+        if (value == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            writeString(out, value);
+        }
+    }
+
+    static @Nullable String readNullableString(DataInput in) throws IOException {
+        return in.readBoolean() ? readString(in) : null;
+    }
+}
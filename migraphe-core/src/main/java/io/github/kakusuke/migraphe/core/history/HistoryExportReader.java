@@ -0,0 +1,205 @@
+package io.github.kakusuke.migraphe.core.history;
+
+import io.github.kakusuke.migraphe.api.common.TimeOrderedUuid;
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.api.history.ExecutionStatus;
+import io.github.kakusuke.migraphe.api.task.ExecutionDirection;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.zip.GZIPInputStream;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * {@link HistoryExportWriter} で書き出したファイルからレコードを順に読み出す。
+ *
+ * <p>環境IDを置き換える場合は、レコードのIDも元のIDと置き換え先の環境から決まるIDに置き換える。 元の環境と同じ履歴の
+ * 保存先に取り込んでも元のレコードとIDが重ならず、同じファイルを2回取り込んでも同じIDになるため重複しない。
+ * ファイルが途中で切れている場合や、終端に記録された件数と読み出した件数が一致しない場合は {@link HistoryStorageException}
+ * を投げる。
+ */
+public final class HistoryExportReader implements Iterator<ExecutionRecord>, AutoCloseable {
+
+    private final DataInputStream in;
+    private final @Nullable EnvironmentId environmentOverride;
+    private final List<NodeId> nodes = new ArrayList<>();
+    private final List<EnvironmentId> environments = new ArrayList<>();
+    private @Nullable ExecutionRecord next;
+    private long count;
+    private boolean finished;
+
+    private HistoryExportReader(InputStream in, @Nullable EnvironmentId environmentOverride)
+            throws IOException {
+        this.in =
+                new DataInputStream(
+                        new BufferedInputStream(new GZIPInputStream(in, 1 << 16), 1 << 16));
+        this.environmentOverride = environmentOverride;
+
+        byte[] magic = new byte[HistoryExportFormat.MAGIC.length];
+        this.in.readFully(magic);
+        if (!Arrays.equals(magic, HistoryExportFormat.MAGIC)) {
+            throw new HistoryStorageException("Not a migraphe history export file");
+        }
+        int version = this.in.readUnsignedByte();
+        if (version != HistoryExportFormat.VERSION) {
+            throw new HistoryStorageException("Unsupported export file version: " + version);
+        }
+    }
+
+    /**
+     * エクスポートファイルを開く。
+     *
+     * @param file エクスポートファイル
+     * @param environmentOverride 全レコードの環境IDをこの値に置き換える（null の場合はそのまま）
+     * @return リーダー
+     */
+    public static HistoryExportReader open(Path file, @Nullable EnvironmentId environmentOverride) {
+        Objects.requireNonNull(file, "file must not be null");
+        InputStream stream = null;
+        try {
+            stream = Files.newInputStream(file);
+            return new HistoryExportReader(stream, environmentOverride);
+        } catch (IOException e) {
+            closeQuietly(stream);
+            throw new HistoryStorageException("Failed to open export file: " + file, e);
+        } catch (RuntimeException e) {
+            closeQuietly(stream);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            next = readNext();
+        }
+        return next != null;
+    }
+
+    @Override
+    public ExecutionRecord next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ExecutionRecord record = Objects.requireNonNull(next);
+        next = null;
+        return record;
+    }
+
+    /** これまでに読み出したレコード数。 */
+    public long count() {
+        return count;
+    }
+
+    @Override
+    public void close() {
+        try {
+            in.close();
+        } catch (IOException e) {
+            throw new HistoryStorageException("Failed to close export file", e);
+        }
+    }
+
+    private @Nullable ExecutionRecord readNext() {
+        try {
+            while (true) {
+                byte entryType = in.readByte();
+                switch (entryType) {
+                    case HistoryExportFormat.NODE_ENTRY ->
+                            nodes.add(NodeId.of(HistoryExportFormat.readString(in)));
+                    case HistoryExportFormat.ENVIRONMENT_ENTRY ->
+                            environments.add(EnvironmentId.of(HistoryExportFormat.readString(in)));
+                    case HistoryExportFormat.RECORD_ENTRY -> {
+                        byte[] payload = new byte[HistoryExportFormat.readVarInt(in)];
+                        in.readFully(payload);
+                        count++;
+                        return decodeRecord(
+                                new DataInputStream(new ByteArrayInputStream(payload)));
+                    }
+                    case HistoryExportFormat.END_ENTRY -> {
+                        long expected = HistoryExportFormat.readVarLong(in);
+                        if (expected != count) {
+                            throw new HistoryStorageException(
+                                    "Export file has " + count + " records, expected " + expected);
+                        }
+                        finished = true;
+                        return null;
+                    }
+                    default ->
+                            throw new HistoryStorageException(
+                                    "Corrupted export file: unknown entry " + entryType);
+                }
+            }
+        } catch (EOFException e) {
+            throw new HistoryStorageException("Export file is truncated", e);
+        } catch (IOException e) {
+            throw new HistoryStorageException("Failed to read export file", e);
+        }
+    }
+
+    private ExecutionRecord decodeRecord(DataInputStream payload) throws IOException {
+        String id = HistoryExportFormat.readId(payload);
+        NodeId nodeId = lookup(nodes, HistoryExportFormat.readVarInt(payload));
+        EnvironmentId environmentId = lookup(environments, HistoryExportFormat.readVarInt(payload));
+        ExecutionDirection direction = HistoryLogCodec.decodeDirection(payload.readByte());
+        ExecutionStatus status = HistoryLogCodec.decodeStatus(payload.readByte());
+        Instant executedAt = Instant.ofEpochSecond(payload.readLong(), payload.readInt());
+        String description = HistoryExportFormat.readString(payload);
+        String serializedDownTask = HistoryExportFormat.readNullableString(payload);
+        long durationMs = HistoryExportFormat.readVarLong(payload);
+        String errorMessage = HistoryExportFormat.readNullableString(payload);
+
+        if (environmentOverride != null && !environmentOverride.equals(environmentId)) {
+            id = remappedId(id, executedAt, environmentOverride);
+            environmentId = environmentOverride;
+        }
+        return new ExecutionRecord(
+                id,
+                nodeId,
+                environmentId,
+                direction,
+                status,
+                executedAt,
+                description,
+                serializedDownTask,
+                durationMs,
+                errorMessage);
+    }
+
+    /** 別の環境に取り込むレコードのID。 元のIDと取り込み先の環境から決まり、実行日時の順に並ぶ。 */
+    static String remappedId(String id, Instant executedAt, EnvironmentId environmentId) {
+        return TimeOrderedUuid.derive(executedAt.toEpochMilli(), id + "\n" + environmentId.value())
+                .toString();
+    }
+
+    private static <T> T lookup(List<T> dictionary, int index) {
+        if (index >= dictionary.size()) {
+            throw new HistoryStorageException("Corrupted export file: unknown reference " + index);
+        }
+        return dictionary.get(index);
+    }
+
+    private static void closeQuietly(@Nullable InputStream stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+                // 元の例外を優先する
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package io.github.kakusuke.migraphe.core.history;
+
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 履歴をエクスポートファイルに書き出す。
+ *
+ * <p>レコードは受け取った順に1件ずつ書き出すため、件数に関わらずメモリ使用量は辞書の大きさだけで済む。 ファイル形式は {@link
+ * HistoryExportFormat} を参照。 {@link #close()} で終端を書き出すまでファイルは完成しない。
+ */
+public final class HistoryExportWriter implements AutoCloseable {
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> nodeIndex = new HashMap<>();
+    private final Map<String, Integer> environmentIndex = new HashMap<>();
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(256);
+    private final DataOutputStream recordOut = new DataOutputStream(recordBuffer);
+    private long count;
+    private boolean closed;
+
+    private HistoryExportWriter(OutputStream out) throws IOException {
+        this.out =
+                new DataOutputStream(
+                        new BufferedOutputStream(new GZIPOutputStream(out, 1 << 16), 1 << 16));
+        this.out.write(HistoryExportFormat.MAGIC);
+        this.out.writeByte(HistoryExportFormat.VERSION);
+    }
+
+    /**
+     * エクスポートファイルを作成する。 既にある場合は上書きする。
+     *
+     * @param file 書き出し先
+     * @return ライター
+     */
+    public static HistoryExportWriter create(Path file) {
+        Objects.requireNonNull(file, "file must not be null");
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            return new HistoryExportWriter(Files.newOutputStream(file));
+        } catch (IOException e) {
+            throw new HistoryStorageException("Failed to create export file: " + file, e);
+        }
+    }
+
+    /** レコードを1件書き出す。 */
+    public void write(ExecutionRecord record) {
+        Objects.requireNonNull(record, "record must not be null");
+        try {
+            int nodeRef =
+                    reference(nodeIndex, HistoryExportFormat.NODE_ENTRY, record.nodeId().value());
+            int environmentRef =
+                    reference(
+                            environmentIndex,
+                            HistoryExportFormat.ENVIRONMENT_ENTRY,
+                            record.environmentId().value());
+
+            recordBuffer.reset();
+            HistoryExportFormat.writeId(recordOut, record.id());
+            HistoryExportFormat.writeVarLong(recordOut, nodeRef);
+            HistoryExportFormat.writeVarLong(recordOut, environmentRef);
+            recordOut.writeByte(HistoryLogCodec.encodeDirection(record.direction()));
+            recordOut.writeByte(HistoryLogCodec.encodeStatus(record.status()));
+            recordOut.writeLong(record.executedAt().getEpochSecond());
+            recordOut.writeInt(record.executedAt().getNano());
+            HistoryExportFormat.writeString(recordOut, record.description());
+            HistoryExportFormat.writeNullableString(recordOut, record.serializedDownTask());
+            HistoryExportFormat.writeVarLong(recordOut, record.durationMs());
+            HistoryExportFormat.writeNullableString(recordOut, record.errorMessage());
+            recordOut.flush();
+
+            out.writeByte(HistoryExportFormat.RECORD_ENTRY);
+            HistoryExportFormat.writeVarLong(out, recordBuffer.size());
+            recordBuffer.writeTo(out);
+            count++;
+        } catch (IOException e) {
+            throw new HistoryStorageException("Failed to write export file", e);
+        }
+    }
+
+    /** これまでに書き出したレコード数。 */
+    public long count() {
+        return count;
+    }
+
+    /** 終端を書き出してファイルを閉じる。 */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try (out) {
+            out.writeByte(HistoryExportFormat.END_ENTRY);
+            HistoryExportFormat.writeVarLong(out, count);
+        } catch (IOException e) {
+            throw new HistoryStorageException("Failed to finish export file", e);
+        }
+    }
+
+    /** 辞書での番号を返す。 初めての値の場合は辞書のエントリを書き出す。 */
+    private int reference(Map<String, Integer> index, byte entryType, String value)
+            throws IOException {
+        Integer existing = index.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        int assigned = index.size();
+        index.put(value, assigned);
+        out.writeByte(entryType);
+        HistoryExportFormat.writeString(out, value);
+        return assigned;
+    }
+}
@@ -0,0 +1,167 @@
+package io.github.kakusuke.migraphe.core.history;
+
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.api.history.ExecutionStatus;
+import io.github.kakusuke.migraphe.api.task.ExecutionDirection;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.zip.CRC32;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * 履歴ログのバイナリエンコーディング。
+ *
+ * <p>1レコードは {@code [int ペイロード長][int CRC32][ペイロード]} のフレームで表す。
+ */
+final class HistoryLogCodec {
+
+    /** フレームヘッダー（長さ + CRC32）のバイト数。 */
+    static final int FRAME_HEADER_SIZE = 8;
+
+    private HistoryLogCodec() {}
+
+    /** レコードをフレーム（ヘッダー付き）にエンコードする。 */
+    static ByteBuffer encodeFrame(ExecutionRecord record) {
+        byte[] payload = encodePayload(record);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + payload.length);
+        frame.putInt(payload.length);
+        frame.putInt((int) crc.getValue());
+        frame.put(payload);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * ペイロードの CRC32 を検証する。
+     *
+     * @param payload ペイロード（position から limit まで）
+     * @param expectedCrc フレームヘッダーに記録された CRC32
+     * @return 一致する場合 true
+     */
+    static boolean verify(ByteBuffer payload, int expectedCrc) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue() == expectedCrc;
+    }
+
+    /** ペイロードからレコードを復元する。 */
+    static ExecutionRecord decodePayload(ByteBuffer payload) {
+        String id = readString(payload);
+        NodeId nodeId = NodeId.of(readString(payload));
+        EnvironmentId environmentId = EnvironmentId.of(readString(payload));
+        ExecutionDirection direction = decodeDirection(payload.get());
+        ExecutionStatus status = decodeStatus(payload.get());
+        Instant executedAt = Instant.ofEpochSecond(payload.getLong(), payload.getInt());
+        String description = readString(payload);
+        String serializedDownTask = readNullableString(payload);
+        long durationMs = payload.getLong();
+        String errorMessage = readNullableString(payload);
+
+        return new ExecutionRecord(
+                id,
+                nodeId,
+                environmentId,
+                direction,
+                status,
+                executedAt,
+                description,
+                serializedDownTask,
+                durationMs,
+                errorMessage);
+    }
+
+    private static byte[] encodePayload(ExecutionRecord record) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeString(out, record.id());
+            writeString(out, record.nodeId().value());
+            writeString(out, record.environmentId().value());
+            out.writeByte(encodeDirection(record.direction()));
+            out.writeByte(encodeStatus(record.status()));
+            out.writeLong(record.executedAt().getEpochSecond());
+            out.writeInt(record.executedAt().getNano());
+            writeString(out, record.description());
+            writeNullableString(out, record.serializedDownTask());
+            out.writeLong(record.durationMs());
+            writeNullableString(out, record.errorMessage());
+        } catch (IOException e) {
+            // ByteArrayOutputStream への書き込みで IOException は発生しない
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeNullableString(DataOutputStream out, @Nullable String value)
+            throws IOException {
+        if (value == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            writeString(out, value);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalStateException("Corrupted string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static @Nullable String readNullableString(ByteBuffer buffer) {
+        return buffer.get() != 0 ? readString(buffer) : null;
+    }
+
+    // enum の ordinal に依存しないよう、固定のコードで永続化する
+
+    static byte encodeDirection(ExecutionDirection direction) {
+        return switch (direction) {
+            case UP -> 'U';
+            case DOWN -> 'D';
+        };
+    }
+
+    static ExecutionDirection decodeDirection(byte code) {
+        return switch (code) {
+            case 'U' -> ExecutionDirection.UP;
+            case 'D' -> ExecutionDirection.DOWN;
+            default -> throw new IllegalStateException("Unknown direction code: " + code);
+        };
+    }
+
+    static byte encodeStatus(ExecutionStatus status) {
+        return switch (status) {
+            case SUCCESS -> 'S';
+            case FAILURE -> 'F';
+            case SKIPPED -> 'K';
+        };
+    }
+
+    static ExecutionStatus decodeStatus(byte code) {
+        return switch (code) {
+            case 'S' -> ExecutionStatus.SUCCESS;
+            case 'F' -> ExecutionStatus.FAILURE;
+            case 'K' -> ExecutionStatus.SKIPPED;
+            default -> throw new IllegalStateException("Unknown status code: " + code);
+        };
+    }
+}
@@ -0,0 +1,13 @@
+package io.github.kakusuke.migraphe.core.history;
+
+/** 履歴ストレージの読み書きに失敗した場合の例外。 */
+public class HistoryStorageException extends RuntimeException {
+
+    public HistoryStorageException(String message) {
+        super(message);
+    }
+
+    public HistoryStorageException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
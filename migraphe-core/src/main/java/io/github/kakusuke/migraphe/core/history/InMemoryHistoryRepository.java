@@ -4,23 +4,30 @@ import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
 import io.github.kakusuke.migraphe.api.graph.NodeId;
 import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
 import io.github.kakusuke.migraphe.api.history.ExecutionStatus;
+import io.github.kakusuke.migraphe.api.history.HistoryAnalytics;
+import io.github.kakusuke.migraphe.api.history.HistoryQuery;
 import io.github.kakusuke.migraphe.api.history.HistoryRepository;
+import io.github.kakusuke.migraphe.api.history.NodeDurationStats;
 import io.github.kakusuke.migraphe.api.task.ExecutionDirection;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import org.jspecify.annotations.Nullable;
 
 /**
  * メモリ内でマイグレーション履歴を管理する実装。
  *
  * <p>複数の環境の履歴を同時に保持できる。 アプリケーション再起動時には履歴が失われる。
+ *
+ * <p>環境ごとに追記ログとノードごとの最新レコードのインデックスを持ち、{@link #wasExecuted} と {@link
+ * #findLatestRecord} は O(1) で応答する。 全ての操作はロックを取らずに複数スレッドから呼び出せる。
  */
-public final class InMemoryHistoryRepository implements HistoryRepository {
+public final class InMemoryHistoryRepository implements HistoryRepository, HistoryAnalytics {
 
-    private final Map<EnvironmentId, List<ExecutionRecord>> recordsByEnvironment;
+    private final Map<EnvironmentId, EnvironmentHistory> historyByEnvironment;
 
     public InMemoryHistoryRepository() {
-        this.recordsByEnvironment = new HashMap<>();
+        this.historyByEnvironment = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -31,8 +38,8 @@ public final class InMemoryHistoryRepository implements HistoryRepository {
     @Override
     public void record(ExecutionRecord record) {
         Objects.requireNonNull(record, "record must not be null");
-        recordsByEnvironment
-                .computeIfAbsent(record.environmentId(), k -> new ArrayList<>())
+        historyByEnvironment
+                .computeIfAbsent(record.environmentId(), k -> new EnvironmentHistory())
                 .add(record);
     }
 
@@ -41,40 +48,29 @@ public final class InMemoryHistoryRepository implements HistoryRepository {
         Objects.requireNonNull(nodeId, "nodeId must not be null");
         Objects.requireNonNull(environmentId, "environmentId must not be null");
 
-        // 最新のレコードを取得し、UP かつ SUCCESS の場合のみ実行済みとみなす
-        return getRecordsForEnvironment(environmentId).stream()
-                .filter(r -> r.nodeId().equals(nodeId))
-                .max(Comparator.comparing(ExecutionRecord::executedAt))
-                .map(
-                        r ->
-                                r.direction() == ExecutionDirection.UP
-                                        && r.status() == ExecutionStatus.SUCCESS)
-                .orElse(false);
+        // 最新のレコードが UP かつ SUCCESS の場合のみ実行済みとみなす
+        ExecutionRecord latest = findLatestRecord(nodeId, environmentId);
+        return latest != null && isExecuted(latest);
     }
 
     @Override
     public List<NodeId> executedNodes(EnvironmentId environmentId) {
         Objects.requireNonNull(environmentId, "environmentId must not be null");
 
-        // 各ノードの最新レコードが UP かつ SUCCESS のものだけを返す
-        Map<NodeId, ExecutionRecord> latestByNode = new HashMap<>();
-        for (ExecutionRecord r : getRecordsForEnvironment(environmentId)) {
-            latestByNode.merge(
-                    r.nodeId(),
-                    r,
-                    (existing, incoming) ->
-                            incoming.executedAt().isAfter(existing.executedAt())
-                                    ? incoming
-                                    : existing);
+        EnvironmentHistory history = historyByEnvironment.get(environmentId);
+        if (history == null) {
+            return List.of();
         }
 
-        return latestByNode.values().stream()
-                .filter(
-                        r ->
-                                r.direction() == ExecutionDirection.UP
-                                        && r.status() == ExecutionStatus.SUCCESS)
-                .map(ExecutionRecord::nodeId)
-                .collect(Collectors.toList());
+        // 各ノードの最新レコードが UP かつ SUCCESS のものだけを、初めて記録された順に返す
+        List<NodeId> executed = new ArrayList<>();
+        for (NodeId nodeId : history.nodeOrder) {
+            ExecutionRecord latest = history.latestByNode.get(nodeId);
+            if (latest != null && isExecuted(latest)) {
+                executed.add(nodeId);
+            }
+        }
+        return executed;
     }
 
     @Override
@@ -82,20 +78,57 @@ public final class InMemoryHistoryRepository implements HistoryRepository {
         Objects.requireNonNull(nodeId, "nodeId must not be null");
         Objects.requireNonNull(environmentId, "environmentId must not be null");
 
-        return getRecordsForEnvironment(environmentId).stream()
-                .filter(r -> r.nodeId().equals(nodeId))
-                .max(Comparator.comparing(ExecutionRecord::executedAt))
-                .orElse(null);
+        EnvironmentHistory history = historyByEnvironment.get(environmentId);
+        return history != null ? history.latestByNode.get(nodeId) : null;
     }
 
     @Override
     public List<ExecutionRecord> allRecords(EnvironmentId environmentId) {
         Objects.requireNonNull(environmentId, "environmentId must not be null");
 
-        return List.copyOf(getRecordsForEnvironment(environmentId));
+        EnvironmentHistory history = historyByEnvironment.get(environmentId);
+        return history != null ? List.copyOf(history.log) : List.of();
+    }
+
+    @Override
+    public List<NodeDurationStats> durationStats(HistoryQuery query) {
+        Objects.requireNonNull(query, "query must not be null");
+
+        EnvironmentHistory history = historyByEnvironment.get(query.environmentId());
+        if (history == null) {
+            return List.of();
+        }
+        DurationStatsCollector collector = new DurationStatsCollector(query);
+        history.log.forEach(collector::accept);
+        return collector.result();
+    }
+
+    private static boolean isExecuted(ExecutionRecord record) {
+        return record.direction() == ExecutionDirection.UP
+                && record.status() == ExecutionStatus.SUCCESS;
     }
 
-    private List<ExecutionRecord> getRecordsForEnvironment(EnvironmentId environmentId) {
-        return recordsByEnvironment.getOrDefault(environmentId, Collections.emptyList());
+    /** 1つの環境の追記ログと、ノードごとの最新レコードのインデックス。 */
+    private static final class EnvironmentHistory {
+
+        private final Queue<ExecutionRecord> log = new ConcurrentLinkedQueue<>();
+        private final Map<NodeId, ExecutionRecord> latestByNode = new ConcurrentHashMap<>();
+        private final Set<NodeId> knownNodes = ConcurrentHashMap.newKeySet();
+        private final Queue<NodeId> nodeOrder = new ConcurrentLinkedQueue<>();
+
+        void add(ExecutionRecord record) {
+            log.add(record);
+            if (knownNodes.add(record.nodeId())) {
+                nodeOrder.add(record.nodeId());
+            }
+            // 実行日時が同じ場合は後から記録されたものを最新とする
+            latestByNode.merge(
+                    record.nodeId(),
+                    record,
+                    (existing, incoming) ->
+                            incoming.executedAt().isBefore(existing.executedAt())
+                                    ? existing
+                                    : incoming);
+        }
     }
 }
@@ -0,0 +1,118 @@
+package io.github.kakusuke.migraphe.core.history;
+
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.NodeLeaseRepository;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * 1つのプロセス内でリースを管理する NodeLeaseRepository。
+ *
+ * <p>ファイルやメモリに履歴を保存する場合のためのもので、同じプロセス内の複数のランナー（スレッド）の間でだけ調整できる。
+ * 主にローカルでの動作確認やテストに使う。
+ */
+public final class LocalNodeLeaseRepository implements NodeLeaseRepository {
+
+    private final Clock clock;
+    private final Map<String, Map<NodeId, Lease>> leasesByRun = new HashMap<>();
+
+    public LocalNodeLeaseRepository() {
+        this(Clock.systemUTC());
+    }
+
+    LocalNodeLeaseRepository(Clock clock) {
+        this.clock = Objects.requireNonNull(clock, "clock must not be null");
+    }
+
+    @Override
+    public synchronized void registerNodes(String runId, Collection<NodeId> nodeIds) {
+        Map<NodeId, Lease> leases = leasesByRun.computeIfAbsent(runId, k -> new HashMap<>());
+        for (NodeId nodeId : nodeIds) {
+            leases.putIfAbsent(nodeId, Lease.PENDING);
+        }
+    }
+
+    @Override
+    public synchronized @Nullable NodeId tryClaim(
+            String runId, String owner, Collection<NodeId> candidates, Duration leaseDuration) {
+        Map<NodeId, Lease> leases = leasesByRun.getOrDefault(runId, Map.of());
+        Instant now = clock.instant();
+        for (NodeId nodeId : candidates) {
+            Lease lease = leases.get(nodeId);
+            if (lease != null && lease.claimable(now)) {
+                leases.put(nodeId, Lease.running(owner, now.plus(leaseDuration)));
+                return nodeId;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized boolean renew(
+            String runId, String owner, NodeId nodeId, Duration leaseDuration) {
+        Map<NodeId, Lease> leases = leasesByRun.getOrDefault(runId, Map.of());
+        Lease lease = leases.get(nodeId);
+        if (lease == null || !lease.heldBy(owner)) {
+            return false;
+        }
+        leases.put(nodeId, Lease.running(owner, clock.instant().plus(leaseDuration)));
+        return true;
+    }
+
+    @Override
+    public synchronized void complete(String runId, String owner, NodeId nodeId) {
+        finish(runId, owner, nodeId, Lease.DONE);
+    }
+
+    @Override
+    public synchronized void fail(String runId, String owner, NodeId nodeId) {
+        finish(runId, owner, nodeId, Lease.FAILED);
+    }
+
+    @Override
+    public synchronized boolean hasFailures(String runId) {
+        return leasesByRun.getOrDefault(runId, Map.of()).containsValue(Lease.FAILED);
+    }
+
+    private void finish(String runId, String owner, NodeId nodeId, Lease state) {
+        Map<NodeId, Lease> leases = leasesByRun.getOrDefault(runId, Map.of());
+        Lease lease = leases.get(nodeId);
+        if (lease != null && lease.heldBy(owner)) {
+            leases.put(nodeId, state);
+        }
+    }
+
+    private enum Status {
+        PENDING,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    /** ノードのリースの状態。 */
+    private record Lease(Status status, @Nullable String owner, @Nullable Instant expiresAt) {
+
+        static final Lease PENDING = new Lease(Status.PENDING, null, null);
+        static final Lease DONE = new Lease(Status.DONE, null, null);
+        static final Lease FAILED = new Lease(Status.FAILED, null, null);
+
+        static Lease running(String owner, Instant expiresAt) {
+            return new Lease(Status.RUNNING, owner, expiresAt);
+        }
+
+        boolean claimable(Instant now) {
+            return status == Status.PENDING
+                    || (status == Status.RUNNING && expiresAt != null && expiresAt.isBefore(now));
+        }
+
+        boolean heldBy(String owner) {
+            return status == Status.RUNNING && owner.equals(this.owner);
+        }
+    }
+}
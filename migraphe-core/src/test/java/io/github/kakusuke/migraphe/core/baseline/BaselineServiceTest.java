@@ -0,0 +1,385 @@
+package io.github.kakusuke.migraphe.core.baseline;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.github.kakusuke.migraphe.api.environment.Environment;
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.environment.SchemaSnapshots;
+import io.github.kakusuke.migraphe.api.graph.MigrationNode;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.api.task.Task;
+import io.github.kakusuke.migraphe.core.graph.MigrationGraph;
+import io.github.kakusuke.migraphe.core.history.InMemoryHistoryRepository;
+import io.github.kakusuke.migraphe.core.plugin.SimpleEnvironment;
+import io.github.kakusuke.migraphe.core.plugin.SimpleTask;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("BaselineService")
+class BaselineServiceTest {
+
+    @TempDir Path tempDir;
+
+    private SnapshotEnvironment db1;
+    private SnapshotEnvironment db2;
+    private MigrationGraph graph;
+    private InMemoryHistoryRepository historyRepo;
+
+    @BeforeEach
+    void setUp() {
+        db1 = new SnapshotEnvironment(EnvironmentId.of("db1"), "db1");
+        db2 = new SnapshotEnvironment(EnvironmentId.of("db2"), "db2");
+        graph = MigrationGraph.create();
+        historyRepo = new InMemoryHistoryRepository();
+        historyRepo.initialize();
+
+        // db1/a <- db1/b <- db1/c、db2/x <- db1/b
+        graph.addNode(node("db1/a", db1, "h-a"));
+        graph.addNode(node("db2/x", db2, "h-x"));
+        graph.addNode(node("db1/b", db1, "h-b", "db1/a", "db2/x"));
+        graph.addNode(node("db1/c", db1, "h-c", "db1/b"));
+    }
+
+    @Nested
+    @DisplayName("作成")
+    class Capture {
+
+        @Test
+        @DisplayName("ノードと同じターゲットの祖先を依存関係順に含む")
+        void shouldCoverNodeAndAncestorsOnSameTarget() {
+            // Given
+            markApplied(db1, "db1/a", "db1/b");
+            db1.schema = "CREATE TABLE t (id int);\n";
+
+            // When
+            Baseline baseline = new BaselineService(graph, historyRepo).capture(NodeId.of("db1/b"));
+
+            // Then
+            assertThat(baseline.node()).isEqualTo(NodeId.of("db1/b"));
+            assertThat(baseline.target()).isEqualTo("db1");
+            assertThat(baseline.nodes())
+                    .containsExactly(
+                            new Baseline.CoveredNode(NodeId.of("db1/a"), "h-a"),
+                            new Baseline.CoveredNode(NodeId.of("db1/b"), "h-b"));
+            assertThat(baseline.schema()).isEqualTo("CREATE TABLE t (id int);\n");
+        }
+
+        @Test
+        @DisplayName("含まれるノードが適用されていない場合はエラー")
+        void shouldFailWhenCoveredNodeIsNotApplied() {
+            // Given
+            markApplied(db1, "db1/a");
+
+            // When & Then
+            assertThatThrownBy(
+                            () ->
+                                    new BaselineService(graph, historyRepo)
+                                            .capture(NodeId.of("db1/b")))
+                    .isInstanceOf(BaselineException.class)
+                    .hasMessageContaining("has not applied")
+                    .hasMessageContaining("db1/b");
+        }
+
+        @Test
+        @DisplayName("ベースラインより先のノードが適用されている場合はエラー")
+        void shouldFailWhenTargetIsAheadOfBaseline() {
+            // Given
+            markApplied(db1, "db1/a", "db1/b", "db1/c");
+
+            // When & Then
+            assertThatThrownBy(
+                            () ->
+                                    new BaselineService(graph, historyRepo)
+                                            .capture(NodeId.of("db1/b")))
+                    .isInstanceOf(BaselineException.class)
+                    .hasMessageContaining("beyond the baseline")
+                    .hasMessageContaining("db1/c");
+        }
+
+        @Test
+        @DisplayName("スナップショットに対応していないターゲットはエラー")
+        void shouldFailForTargetWithoutSnapshots() {
+            // Given
+            Environment plain = SimpleEnvironment.create(EnvironmentId.of("plain"), "plain");
+            graph.addNode(node("plain/a", plain, null));
+
+            // When & Then
+            assertThatThrownBy(
+                            () ->
+                                    new BaselineService(graph, historyRepo)
+                                            .capture(NodeId.of("plain/a")))
+                    .isInstanceOf(BaselineException.class)
+                    .hasMessageContaining("does not support baselines");
+        }
+
+        @Test
+        @DisplayName("スキーマを取り出せない場合はベースラインのエラー")
+        void shouldFailWhenSchemaCannotBeCaptured() {
+            // Given
+            markApplied(db1, "db1/a", "db1/b");
+            db1.captureFailure =
+                    new IllegalStateException("Schema has object(s) a baseline cannot reproduce");
+
+            // When & Then
+            assertThatThrownBy(
+                            () ->
+                                    new BaselineService(graph, historyRepo)
+                                            .capture(NodeId.of("db1/b")))
+                    .isInstanceOf(BaselineException.class)
+                    .hasMessageContaining("db1")
+                    .hasMessageContaining("cannot reproduce")
+                    .hasCauseInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Nested
+    @DisplayName("適用")
+    class Apply {
+
+        @Test
+        @DisplayName("空のターゲットにスキーマを作り、含まれるノードを適用済みとして記録する")
+        void shouldApplySchemaAndRecordCoveredNodes() {
+            // Given
+            Baseline baseline = baselineAtB();
+
+            // When
+            int applied = new BaselineService(graph, historyRepo).apply(baseline);
+
+            // Then
+            assertThat(applied).isEqualTo(2);
+            assertThat(db1.applied).isEqualTo("CREATE TABLE t (id int);\n");
+            assertThat(historyRepo.executedNodes(db1.id()))
+                    .containsExactlyInAnyOrder(NodeId.of("db1/a"), NodeId.of("db1/b"));
+            assertThat(historyRepo.findLatestRecord(NodeId.of("db1/b"), db1.id()).description())
+                    .isEqualTo("b (baseline db1/b)");
+            assertThat(historyRepo.executedNodes(db2.id())).isEmpty();
+        }
+
+        @Test
+        @DisplayName("既に適用済みの場合は何もしない")
+        void shouldDoNothingWhenAlreadyApplied() {
+            // Given
+            Baseline baseline = baselineAtB();
+            markApplied(db1, "db1/a", "db1/b");
+
+            // When
+            int applied = new BaselineService(graph, historyRepo).apply(baseline);
+
+            // Then
+            assertThat(applied).isZero();
+            assertThat(db1.applied).isNull();
+        }
+
+        @Test
+        @DisplayName("履歴があるターゲットにはエラー")
+        void shouldFailWhenTargetHasHistory() {
+            // Given
+            Baseline baseline = baselineAtB();
+            markApplied(db1, "db1/a");
+
+            // When & Then
+            assertThatThrownBy(() -> new BaselineService(graph, historyRepo).apply(baseline))
+                    .isInstanceOf(BaselineException.class)
+                    .hasMessageContaining("already has migration history");
+            assertThat(db1.applied).isNull();
+        }
+
+        @Test
+        @DisplayName("空でないターゲットにはエラー")
+        void shouldFailWhenTargetIsNotEmpty() {
+            // Given
+            Baseline baseline = baselineAtB();
+            db1.empty = false;
+
+            // When & Then
+            assertThatThrownBy(() -> new BaselineService(graph, historyRepo).apply(baseline))
+                    .isInstanceOf(BaselineException.class)
+                    .hasMessageContaining("is not empty");
+            assertThat(db1.applied).isNull();
+        }
+
+        @Test
+        @DisplayName("作成後にノードの内容が変わった場合はエラー")
+        void shouldFailWhenCoveredNodeChanged() {
+            // Given
+            Baseline baseline =
+                    new Baseline(
+                            NodeId.of("db1/b"),
+                            "db1",
+                            List.of(
+                                    new Baseline.CoveredNode(NodeId.of("db1/a"), "old"),
+                                    new Baseline.CoveredNode(NodeId.of("db1/b"), "h-b")),
+                            "");
+
+            // When & Then
+            assertThatThrownBy(() -> new BaselineService(graph, historyRepo).apply(baseline))
+                    .isInstanceOf(BaselineException.class)
+                    .hasMessageContaining("changed since the baseline was captured")
+                    .hasMessageContaining("db1/a");
+        }
+
+        @Test
+        @DisplayName("作成後に祖先のノードが増えた場合はエラー")
+        void shouldFailWhenCoveredNodesDiffer() {
+            // Given
+            Baseline baseline =
+                    new Baseline(
+                            NodeId.of("db1/b"),
+                            "db1",
+                            List.of(new Baseline.CoveredNode(NodeId.of("db1/b"), "h-b")),
+                            "");
+
+            // When & Then
+            assertThatThrownBy(() -> new BaselineService(graph, historyRepo).apply(baseline))
+                    .isInstanceOf(BaselineException.class)
+                    .hasMessageContaining("does not match the current graph")
+                    .hasMessageContaining("added: db1/a");
+        }
+    }
+
+    @Nested
+    @DisplayName("ファイル")
+    class File {
+
+        @Test
+        @DisplayName("書き出したファイルを読み込むと同じベースラインになる")
+        void shouldRoundTripThroughFile() {
+            // Given
+            Baseline baseline =
+                    new Baseline(
+                            NodeId.of("db1/with space"),
+                            "db1",
+                            List.of(
+                                    new Baseline.CoveredNode(NodeId.of("db1/a"), "h-a"),
+                                    new Baseline.CoveredNode(NodeId.of("db1/with space"), null)),
+                            "-- comment\nCREATE TABLE t (id int);\n");
+            Path file = tempDir.resolve("baselines/db1.sql");
+
+            // When
+            baseline.write(file);
+            Baseline read = Baseline.read(file);
+
+            // Then
+            assertThat(read).isEqualTo(baseline);
+        }
+
+        @Test
+        @DisplayName("ベースラインでないファイルはエラー")
+        void shouldRejectOtherFiles() throws Exception {
+            // Given
+            Path file = tempDir.resolve("other.sql");
+            Files.writeString(file, "CREATE TABLE t (id int);\n");
+
+            // When & Then
+            assertThatThrownBy(() -> Baseline.read(file))
+                    .isInstanceOf(BaselineException.class)
+                    .hasMessageContaining("Not a migraphe baseline");
+        }
+    }
+
+    private Baseline baselineAtB() {
+        markApplied(db1, "db1/a", "db1/b");
+        db1.schema = "CREATE TABLE t (id int);\n";
+        Baseline baseline = new BaselineService(graph, historyRepo).capture(NodeId.of("db1/b"));
+        historyRepo = new InMemoryHistoryRepository();
+        historyRepo.initialize();
+        return baseline;
+    }
+
+    private void markApplied(Environment environment, String... ids) {
+        for (String id : ids) {
+            historyRepo.record(
+                    ExecutionRecord.upSuccess(NodeId.of(id), environment.id(), id, null, 1));
+        }
+    }
+
+    private static MigrationNode node(
+            String id, Environment environment, @Nullable String contentHash, String... deps) {
+        Set<NodeId> dependencies = new HashSet<>();
+        for (String dep : deps) {
+            dependencies.add(NodeId.of(dep));
+        }
+        return new HashedNode(
+                NodeId.of(id),
+                id.substring(id.indexOf('/') + 1),
+                environment,
+                Set.copyOf(dependencies),
+                SimpleTask.of("UP: " + id),
+                contentHash);
+    }
+
+    /** content hash を持つテスト用のノード。 */
+    private record HashedNode(
+            NodeId id,
+            String name,
+            Environment environment,
+            Set<NodeId> dependencies,
+            Task upTask,
+            @Nullable String contentHash)
+            implements MigrationNode {
+
+        @Override
+        public @Nullable String description() {
+            return null;
+        }
+
+        @Override
+        public @Nullable Task downTask() {
+            return null;
+        }
+    }
+
+    /** スキーマを記録するだけのテスト用の環境。 */
+    private static final class SnapshotEnvironment implements Environment, SchemaSnapshots {
+        private final EnvironmentId id;
+        private final String name;
+        String schema = "";
+        boolean empty = true;
+        @Nullable String applied;
+        @Nullable RuntimeException captureFailure;
+
+        SnapshotEnvironment(EnvironmentId id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        @Override
+        public EnvironmentId id() {
+            return id;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public String captureSchema() {
+            if (captureFailure != null) {
+                throw captureFailure;
+            }
+            return schema;
+        }
+
+        @Override
+        public boolean isSchemaEmpty() {
+            return empty;
+        }
+
+        @Override
+        public void applySchema(String schema) {
+            applied = schema;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package io.github.kakusuke.migraphe.core.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.github.kakusuke.migraphe.api.common.TimeOrderedUuid;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+class TimeOrderedUuidTest {
+
+    @Test
+    void shouldGenerateVersion7Uuid() {
+        // when
+        UUID uuid = TimeOrderedUuid.next();
+
+        // then
+        assertThat(uuid.version()).isEqualTo(7);
+        assertThat(uuid.variant()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldDeriveSameUuidFromSameTimeAndName() {
+        // when
+        UUID derived = TimeOrderedUuid.derive(1_700_000_000_000L, "record-1\nstaging");
+
+        // then
+        assertThat(derived.version()).isEqualTo(7);
+        assertThat(derived.variant()).isEqualTo(2);
+        assertThat(TimeOrderedUuid.timestampMillis(derived)).isEqualTo(1_700_000_000_000L);
+        assertThat(TimeOrderedUuid.derive(1_700_000_000_000L, "record-1\nstaging"))
+                .isEqualTo(derived);
+        assertThat(TimeOrderedUuid.derive(1_700_000_000_000L, "record-1\nprod"))
+                .isNotEqualTo(derived);
+    }
+
+    @Test
+    void shouldEmbedCurrentTimestamp() {
+        // given
+        long before = System.currentTimeMillis();
+
+        // when
+        UUID uuid = TimeOrderedUuid.next();
+
+        // then - 同一ミリ秒内の連番が溢れた場合に備えて少しだけ先を許容する
+        assertThat(TimeOrderedUuid.timestampMillis(uuid))
+                .isBetween(before, System.currentTimeMillis() + 10);
+    }
+
+    @Test
+    void shouldGenerateStrictlyIncreasingStrings() {
+        // when
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            ids.add(TimeOrderedUuid.nextString());
+        }
+
+        // then - 同じミリ秒内でも文字列として昇順に並ぶ
+        assertThat(ids).isSortedAccordingTo(String::compareTo).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void shouldGenerateUniqueIdsAcrossThreads() throws Exception {
+        // given
+        int threads = 8;
+        int perThread = 10_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        // when
+        Set<String> ids = new HashSet<>();
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(
+                        pool.submit(
+                                () -> {
+                                    List<String> generated = new ArrayList<>();
+                                    for (int i = 0; i < perThread; i++) {
+                                        generated.add(TimeOrderedUuid.nextString());
+                                    }
+                                    return generated;
+                                }));
+            }
+            for (Future<List<String>> future : futures) {
+                List<String> generated = future.get();
+                // 各スレッドから見た順序も保たれる
+                assertThat(generated).isSortedAccordingTo(String::compareTo);
+                ids.addAll(generated);
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        // then
+        assertThat(ids).hasSize(threads * perThread);
+    }
+
+    @Test
+    void shouldRejectNonVersion7UuidWhenReadingTimestamp() {
+        // when & then
+        assertThatThrownBy(() -> TimeOrderedUuid.timestampMillis(UUID.randomUUID()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Not a version 7 UUID");
+    }
+}
@@ -27,7 +27,34 @@ class ProjectConfigTest {
         ProjectConfig projectConfig = config.getConfigMapping(ProjectConfig.class);
 
         assertThat(projectConfig.project().name()).isEqualTo("my-migrations");
-        assertThat(projectConfig.history().target()).isEqualTo("history_db");
+        assertThat(projectConfig.history().target()).contains("history_db");
+        assertThat(projectConfig.history().type()).isEmpty();
+    }
+
+    @Test
+    void shouldLoadFileHistoryConfigWithoutTarget() {
+        SmallRyeConfig config =
+                new SmallRyeConfigBuilder()
+                        .withSources(
+                                new TestConfigSource(
+                                        Map.of(
+                                                "project.name",
+                                                "my-migrations",
+                                                "history.type",
+                                                "file",
+                                                "history.path",
+                                                "state/history.log",
+                                                "history.fsync",
+                                                "periodic")))
+                        .withMapping(ProjectConfig.class)
+                        .build();
+
+        ProjectConfig projectConfig = config.getConfigMapping(ProjectConfig.class);
+
+        assertThat(projectConfig.history().type()).contains("file");
+        assertThat(projectConfig.history().target()).isEmpty();
+        assertThat(projectConfig.history().path()).contains("state/history.log");
+        assertThat(projectConfig.history().fsync()).contains("periodic");
     }
 
     /** テスト用のシンプルなConfigSource実装。 */
@@ -0,0 +1,320 @@
+package io.github.kakusuke.migraphe.core.execution;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.kakusuke.migraphe.api.common.Result;
+import io.github.kakusuke.migraphe.api.environment.Environment;
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.execution.ExecutionListener;
+import io.github.kakusuke.migraphe.api.execution.ExecutionPlanInfo;
+import io.github.kakusuke.migraphe.api.execution.ExecutionSummary;
+import io.github.kakusuke.migraphe.api.graph.MigrationNode;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.NodeLeaseRepository;
+import io.github.kakusuke.migraphe.api.task.ExecutionDirection;
+import io.github.kakusuke.migraphe.api.task.Task;
+import io.github.kakusuke.migraphe.api.task.TaskResult;
+import io.github.kakusuke.migraphe.core.graph.MigrationGraph;
+import io.github.kakusuke.migraphe.core.history.InMemoryHistoryRepository;
+import io.github.kakusuke.migraphe.core.history.LocalNodeLeaseRepository;
+import io.github.kakusuke.migraphe.core.plugin.SimpleEnvironment;
+import io.github.kakusuke.migraphe.core.plugin.SimpleMigrationNode;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("DistributedMigrationExecutor")
+class DistributedMigrationExecutorTest {
+
+    private static final String RUN_ID = "run-1";
+
+    private MigrationGraph graph;
+    private InMemoryHistoryRepository historyRepo;
+    private LocalNodeLeaseRepository leaseRepo;
+    private Environment testEnv;
+    private Map<NodeId, AtomicInteger> executionCounts;
+
+    @BeforeEach
+    void setUp() {
+        graph = MigrationGraph.create();
+        historyRepo = new InMemoryHistoryRepository();
+        leaseRepo = new LocalNodeLeaseRepository();
+        testEnv = SimpleEnvironment.create(EnvironmentId.of("test"), "Test Environment");
+        executionCounts = new ConcurrentHashMap<>();
+    }
+
+    @Test
+    @DisplayName("複数のランナーで分担して全ノードを1度ずつ実行する")
+    void shouldExecuteEachNodeOnceAcrossRunners() throws Exception {
+        // Given: root に依存する10ノードと、それら全てに依存する leaf
+        graph.addNode(createNode("root", Set.of(), false));
+        Set<NodeId> middle = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            graph.addNode(createNode("mid-" + i, Set.of(NodeId.of("root")), false));
+            middle.add(NodeId.of("mid-" + i));
+        }
+        graph.addNode(createNode("leaf", middle, false));
+        Set<NodeId> targets =
+                graph.allNodes().stream().map(MigrationNode::id).collect(Collectors.toSet());
+
+        // When: 3つのランナーを同時に実行
+        List<ExecutionResult> results = runConcurrently(3, targets);
+
+        // Then
+        assertThat(results).allMatch(ExecutionResult::success);
+        assertThat(executionCounts).hasSize(targets.size());
+        assertThat(executionCounts.values()).allMatch(count -> count.get() == 1);
+        assertThat(historyRepo.executedNodes(testEnv.id()))
+                .containsExactlyInAnyOrderElementsOf(targets);
+        int executedTotal = results.stream().mapToInt(r -> r.summary().executedCount()).sum();
+        assertThat(executedTotal).isEqualTo(targets.size());
+    }
+
+    @Test
+    @DisplayName("ノードが失敗すると全てのランナーが失敗として終了する")
+    void shouldStopAllRunnersOnFailure() throws Exception {
+        // Given: root が失敗する
+        graph.addNode(createNode("root", Set.of(), true));
+        graph.addNode(createNode("child", Set.of(NodeId.of("root")), false));
+        Set<NodeId> targets = Set.of(NodeId.of("root"), NodeId.of("child"));
+
+        // When
+        List<ExecutionResult> results = runConcurrently(2, targets);
+
+        // Then
+        assertThat(results).noneMatch(ExecutionResult::success);
+        assertThat(executionCounts).doesNotContainKey(NodeId.of("child"));
+        assertThat(leaseRepo.hasFailures(RUN_ID)).isTrue();
+    }
+
+    @Test
+    @DisplayName("期限切れのリースは他のランナーが取得し直す")
+    void shouldReclaimExpiredLease() throws Exception {
+        // Given: 停止したランナーがリースを保持したまま期限切れになっている
+        graph.addNode(createNode("a", Set.of(), false));
+        Set<NodeId> targets = Set.of(NodeId.of("a"));
+        leaseRepo.registerNodes(RUN_ID, targets);
+        assertThat(leaseRepo.tryClaim(RUN_ID, "dead-runner", targets, Duration.ofMillis(1)))
+                .isEqualTo(NodeId.of("a"));
+        Thread.sleep(10);
+
+        // When
+        ExecutionResult result = newExecutor("alive-runner").execute(targets);
+
+        // Then
+        assertThat(result.success()).isTrue();
+        assertThat(executionCounts.get(NodeId.of("a")).get()).isEqualTo(1);
+        assertThat(leaseRepo.renew(RUN_ID, "dead-runner", NodeId.of("a"), Duration.ofMinutes(1)))
+                .isFalse();
+    }
+
+    @Test
+    @DisplayName("リースの延長が例外を投げた場合は、ノードが成功しても失敗として終了する")
+    void shouldFailWhenLeaseRenewalThrows() {
+        // Given: 延長のたびに例外を投げるリース
+        graph.addNode(createSlowNode("a"));
+        Set<NodeId> targets = Set.of(NodeId.of("a"));
+        NodeLeaseRepository failingLeases =
+                new RenewingLeaseRepository(
+                        leaseRepo,
+                        () -> {
+                            throw new IllegalStateException("connection reset");
+                        });
+
+        // When
+        ExecutionResult result = newShortLeaseExecutor(failingLeases).execute(targets);
+
+        // Then
+        assertThat(result.success()).isFalse();
+        assertThat(executionCounts.get(NodeId.of("a")).get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("リースを他のランナーに取られていた場合は、ノードが成功しても失敗として終了する")
+    void shouldFailWhenLeaseIsLost() {
+        // Given: 延長しようとすると他のランナーに取得されている
+        graph.addNode(createSlowNode("a"));
+        Set<NodeId> targets = Set.of(NodeId.of("a"));
+        NodeLeaseRepository stolenLeases = new RenewingLeaseRepository(leaseRepo, () -> false);
+
+        // When
+        ExecutionResult result = newShortLeaseExecutor(stolenLeases).execute(targets);
+
+        // Then
+        assertThat(result.success()).isFalse();
+        assertThat(result.summary().executedCount()).isZero();
+    }
+
+    private DistributedMigrationExecutor newShortLeaseExecutor(NodeLeaseRepository leases) {
+        DistributedOptions options =
+                new DistributedOptions(
+                        RUN_ID, "runner", Duration.ofMillis(30), Duration.ofMillis(5));
+        return new DistributedMigrationExecutor(
+                graph, historyRepo, leases, new NoOpListener(), options);
+    }
+
+    /** リースの延長（間隔は10ms）が何度か行われるだけの時間がかかるノード。 */
+    private MigrationNode createSlowNode(String id) {
+        NodeId nodeId = NodeId.of(id);
+        Task upTask =
+                new Task() {
+                    @Override
+                    public Result<TaskResult, String> execute() {
+                        executionCounts
+                                .computeIfAbsent(nodeId, k -> new AtomicInteger())
+                                .incrementAndGet();
+                        try {
+                            Thread.sleep(100);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return Result.ok(TaskResult.withoutDownTask("Executed: " + id));
+                    }
+
+                    @Override
+                    public String description() {
+                        return "UP: " + id;
+                    }
+                };
+        return SimpleMigrationNode.builder()
+                .id(nodeId)
+                .name(id)
+                .environment(testEnv)
+                .upTask(upTask)
+                .build();
+    }
+
+    private List<ExecutionResult> runConcurrently(int runners, Set<NodeId> targets)
+            throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(runners);
+        try {
+            List<Future<ExecutionResult>> futures = new ArrayList<>();
+            for (int i = 0; i < runners; i++) {
+                DistributedMigrationExecutor executor = newExecutor("runner-" + i);
+                futures.add(pool.submit(() -> executor.execute(targets)));
+            }
+            List<ExecutionResult> results = new ArrayList<>();
+            for (Future<ExecutionResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private DistributedMigrationExecutor newExecutor(String runnerId) {
+        DistributedOptions options =
+                new DistributedOptions(
+                        RUN_ID, runnerId, Duration.ofSeconds(30), Duration.ofMillis(5));
+        return new DistributedMigrationExecutor(
+                graph, historyRepo, leaseRepo, new NoOpListener(), options);
+    }
+
+    private MigrationNode createNode(String id, Set<NodeId> dependencies, boolean failing) {
+        NodeId nodeId = NodeId.of(id);
+        Task upTask =
+                new Task() {
+                    @Override
+                    public Result<TaskResult, String> execute() {
+                        executionCounts
+                                .computeIfAbsent(nodeId, k -> new AtomicInteger())
+                                .incrementAndGet();
+                        return failing
+                                ? Result.err("failed: " + id)
+                                : Result.ok(TaskResult.withoutDownTask("Executed: " + id));
+                    }
+
+                    @Override
+                    public String description() {
+                        return "UP: " + id;
+                    }
+                };
+        return SimpleMigrationNode.builder()
+                .id(nodeId)
+                .name(id)
+                .environment(testEnv)
+                .dependencies(dependencies)
+                .upTask(upTask)
+                .build();
+    }
+
+    /** 延長だけを差し替え、それ以外は委譲するリース。 */
+    private record RenewingLeaseRepository(NodeLeaseRepository delegate, BooleanSupplier renewal)
+            implements NodeLeaseRepository {
+
+        @Override
+        public void registerNodes(String runId, Collection<NodeId> nodeIds) {
+            delegate.registerNodes(runId, nodeIds);
+        }
+
+        @Override
+        public @Nullable NodeId tryClaim(
+                String runId, String owner, Collection<NodeId> candidates, Duration leaseDuration) {
+            return delegate.tryClaim(runId, owner, candidates, leaseDuration);
+        }
+
+        @Override
+        public boolean renew(String runId, String owner, NodeId nodeId, Duration leaseDuration) {
+            return renewal.getAsBoolean();
+        }
+
+        @Override
+        public void complete(String runId, String owner, NodeId nodeId) {
+            delegate.complete(runId, owner, nodeId);
+        }
+
+        @Override
+        public void fail(String runId, String owner, NodeId nodeId) {
+            delegate.fail(runId, owner, nodeId);
+        }
+
+        @Override
+        public boolean hasFailures(String runId) {
+            return delegate.hasFailures(runId);
+        }
+    }
+
+    /** 何もしない ExecutionListener（複数スレッドから呼ばれる）。 */
+    static class NoOpListener implements ExecutionListener {
+
+        @Override
+        public void onPlanCreated(ExecutionPlanInfo plan) {}
+
+        @Override
+        public void onNodeStarted(MigrationNode node, ExecutionDirection direction) {}
+
+        @Override
+        public void onNodeSucceeded(
+                MigrationNode node, ExecutionDirection direction, long durationMs) {}
+
+        @Override
+        public void onNodeSkipped(
+                MigrationNode node, ExecutionDirection direction, String reason) {}
+
+        @Override
+        public void onNodeFailed(
+                MigrationNode node,
+                ExecutionDirection direction,
+                @Nullable String sqlContent,
+                String errorMessage) {}
+
+        @Override
+        public void onCompleted(ExecutionSummary summary) {}
+    }
+}
@@ -2,6 +2,7 @@ package io.github.kakusuke.migraphe.core.execution;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import io.github.kakusuke.migraphe.api.common.Result;
 import io.github.kakusuke.migraphe.api.environment.Environment;
 import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
 import io.github.kakusuke.migraphe.api.execution.ExecutionListener;
@@ -12,12 +13,18 @@ import io.github.kakusuke.migraphe.api.graph.NodeId;
 import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
 import io.github.kakusuke.migraphe.api.task.ExecutionDirection;
 import io.github.kakusuke.migraphe.api.task.Task;
+import io.github.kakusuke.migraphe.api.task.TaskExecutionContext;
+import io.github.kakusuke.migraphe.api.task.TaskResult;
+import io.github.kakusuke.migraphe.api.task.TransactionGroupable;
 import io.github.kakusuke.migraphe.core.graph.MigrationGraph;
 import io.github.kakusuke.migraphe.core.history.InMemoryHistoryRepository;
 import io.github.kakusuke.migraphe.core.plugin.SimpleEnvironment;
 import io.github.kakusuke.migraphe.core.plugin.SimpleMigrationNode;
 import io.github.kakusuke.migraphe.core.plugin.SimpleTask;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Set;
 import org.jspecify.annotations.Nullable;
@@ -190,6 +197,498 @@ class MigrationExecutorTest {
             assertThat(listener.succeededNodes).containsExactly(NodeId.of("a"));
             assertThat(listener.completedCalled).isTrue();
         }
+
+        @Test
+        @DisplayName("タスク側で記録済みの場合は履歴を二重に記録しない")
+        void shouldNotRecordTwiceWhenTaskRecordedHistory() {
+            // Given: 渡されたコンテキストを使って自分で履歴を記録するタスク
+            Task recordingTask =
+                    new Task() {
+                        @Override
+                        public Result<TaskResult, String> execute() {
+                            throw new AssertionError("execute(context) should be called");
+                        }
+
+                        @Override
+                        public Result<TaskResult, String> execute(TaskExecutionContext context) {
+                            TaskResult result = TaskResult.withDownTask("done", "DROP");
+                            context.historyRepository().record(context.successRecord(result, 5));
+                            context.markRecorded();
+                            return Result.ok(result);
+                        }
+
+                        @Override
+                        public String description() {
+                            return "UP: a";
+                        }
+                    };
+            graph.addNode(
+                    SimpleMigrationNode.builder()
+                            .id(NodeId.of("a"))
+                            .name("Node A")
+                            .environment(testEnv)
+                            .upTask(recordingTask)
+                            .build());
+            executor = new MigrationExecutor(graph, historyRepo, listener);
+
+            // When
+            ExecutionResult result = executor.execute(Set.of(NodeId.of("a")));
+
+            // Then
+            assertThat(result.success()).isTrue();
+            assertThat(historyRepo.allRecords(testEnv.id())).hasSize(1);
+            assertThat(historyRepo.findLatestRecord(NodeId.of("a"), testEnv.id()))
+                    .satisfies(
+                            record -> {
+                                assertThat(record.description()).isEqualTo("Node A");
+                                assertThat(record.serializedDownTask()).isEqualTo("DROP");
+                            });
+        }
+
+        @Test
+        @DisplayName("タスクが返した実行結果の要約を履歴の説明に残す")
+        void shouldAppendTaskResultDetailToHistoryDescription() {
+            // Given: 読み込んだ行数を要約として返すタスク
+            Task loadTask =
+                    new Task() {
+                        @Override
+                        public Result<TaskResult, String> execute() {
+                            return Result.ok(
+                                    TaskResult.withoutDownTask("loaded")
+                                            .withDetail("42 rows copied into t"));
+                        }
+
+                        @Override
+                        public String description() {
+                            return "UP: a";
+                        }
+                    };
+            graph.addNode(
+                    SimpleMigrationNode.builder()
+                            .id(NodeId.of("a"))
+                            .name("Node A")
+                            .environment(testEnv)
+                            .upTask(loadTask)
+                            .build());
+            executor = new MigrationExecutor(graph, historyRepo, listener);
+
+            // When
+            ExecutionResult result = executor.execute(Set.of(NodeId.of("a")));
+
+            // Then
+            assertThat(result.success()).isTrue();
+            assertThat(historyRepo.findLatestRecord(NodeId.of("a"), testEnv.id()))
+                    .satisfies(
+                            record ->
+                                    assertThat(record.description())
+                                            .isEqualTo("Node A (42 rows copied into t)"));
+        }
+
+        @Test
+        @DisplayName("タスクが報告した進捗をリスナーに通知する")
+        void shouldForwardTaskProgressToListener() {
+            // Given: 実行中に進捗を2回報告するタスク
+            Task progressTask =
+                    new Task() {
+                        @Override
+                        public Result<TaskResult, String> execute() {
+                            throw new AssertionError("execute(context) should be called");
+                        }
+
+                        @Override
+                        public Result<TaskResult, String> execute(TaskExecutionContext context) {
+                            context.progress("scanning table (50%)");
+                            context.progress("scanning table (100%)");
+                            return Result.ok(TaskResult.withoutDownTask("done"));
+                        }
+
+                        @Override
+                        public String description() {
+                            return "UP: a";
+                        }
+                    };
+            graph.addNode(
+                    SimpleMigrationNode.builder()
+                            .id(NodeId.of("a"))
+                            .name("Node A")
+                            .environment(testEnv)
+                            .upTask(progressTask)
+                            .build());
+            executor = new MigrationExecutor(graph, historyRepo, listener);
+
+            // When
+            executor.execute(Set.of(NodeId.of("a")));
+
+            // Then
+            assertThat(listener.progressMessages)
+                    .containsExactly("a: scanning table (50%)", "a: scanning table (100%)");
+        }
+
+        @Test
+        @DisplayName("同じキーのセッションを後続のタスクで使い回し、実行の終わりに閉じる")
+        void shouldShareSessionAcrossTasksAndCloseAfterRun() {
+            // Given: 2つのノードが同じキーのセッションを要求する
+            List<TrackingSession> opened = new ArrayList<>();
+            List<TrackingSession> used = new ArrayList<>();
+            for (String id : List.of("a", "b")) {
+                Task task =
+                        new Task() {
+                            @Override
+                            public Result<TaskResult, String> execute() {
+                                throw new AssertionError("execute(context) should be called");
+                            }
+
+                            @Override
+                            public Result<TaskResult, String> execute(
+                                    TaskExecutionContext context) {
+                                used.add(
+                                        context.session(
+                                                "db",
+                                                TrackingSession.class,
+                                                () -> {
+                                                    TrackingSession session = new TrackingSession();
+                                                    opened.add(session);
+                                                    return session;
+                                                }));
+                                return Result.ok(TaskResult.withoutDownTask("done"));
+                            }
+
+                            @Override
+                            public String description() {
+                                return "UP: " + id;
+                            }
+                        };
+                graph.addNode(
+                        SimpleMigrationNode.builder()
+                                .id(NodeId.of(id))
+                                .name("Node " + id)
+                                .environment(testEnv)
+                                .dependencies(
+                                        id.equals("b") ? Set.of(NodeId.of("a")) : Set.of())
+                                .upTask(task)
+                                .build());
+            }
+            executor = new MigrationExecutor(graph, historyRepo, listener);
+
+            // When
+            ExecutionResult result = executor.execute(Set.of(NodeId.of("a"), NodeId.of("b")));
+
+            // Then
+            assertThat(result.success()).isTrue();
+            assertThat(opened).hasSize(1);
+            assertThat(used).hasSize(2).containsOnly(opened.get(0));
+            assertThat(opened.get(0).closed).isTrue();
+        }
+    }
+
+    @Nested
+    @DisplayName("トランザクションのまとめ")
+    class TransactionGroups {
+
+        private final List<String> log = new ArrayList<>();
+
+        @Test
+        @DisplayName("同じキーの連続したノードを最大数ずつまとめ、コミットの後に成功を記録する")
+        void shouldGroupConsecutiveNodesUpToMaximum() {
+            // Given: a <- b <- c、最大2つまでまとめる
+            addGroupNode("a", Set.of(), new GroupTask("a", log));
+            addGroupNode("b", Set.of(NodeId.of("a")), new GroupTask("b", log));
+            addGroupNode("c", Set.of(NodeId.of("b")), new GroupTask("c", log));
+            executor = new MigrationExecutor(graph, historyRepo, listener, 2);
+
+            // When
+            ExecutionResult result =
+                    executor.execute(Set.of(NodeId.of("a"), NodeId.of("b"), NodeId.of("c")));
+
+            // Then
+            assertThat(result.success()).isTrue();
+            assertThat(result.summary().executedCount()).isEqualTo(3);
+            assertThat(log)
+                    .containsExactly(
+                            "a in group", "b in group", "commit by b", "c in group", "commit by c");
+            assertThat(listener.succeededNodes)
+                    .containsExactly(NodeId.of("a"), NodeId.of("b"), NodeId.of("c"));
+            assertThat(historyRepo.allRecords(testEnv.id())).hasSize(3);
+        }
+
+        @Test
+        @DisplayName("失敗したノードより前のノードはコミットし、失敗を記録する")
+        void shouldCommitNodesBeforeFailedNode() {
+            // Given
+            addGroupNode("a", Set.of(), new GroupTask("a", log));
+            addGroupNode("b", Set.of(NodeId.of("a")), new GroupTask("b", log).failing());
+            executor = new MigrationExecutor(graph, historyRepo, listener, 10);
+
+            // When
+            ExecutionResult result = executor.execute(Set.of(NodeId.of("a"), NodeId.of("b")));
+
+            // Then
+            assertThat(result.success()).isFalse();
+            assertThat(log).containsExactly("a in group", "b in group", "commit by a");
+            assertThat(listener.succeededNodes).containsExactly(NodeId.of("a"));
+            assertThat(listener.failedNodes).containsExactly(NodeId.of("b"));
+            assertThat(historyRepo.wasExecuted(NodeId.of("a"), testEnv.id())).isTrue();
+            assertThat(historyRepo.wasExecuted(NodeId.of("b"), testEnv.id())).isFalse();
+        }
+
+        @Test
+        @DisplayName("グループの最初のノードが失敗した場合はコミットしない")
+        void shouldNotCommitWhenFirstNodeFails() {
+            // Given
+            addGroupNode("a", Set.of(), new GroupTask("a", log).failing());
+            executor = new MigrationExecutor(graph, historyRepo, listener, 10);
+
+            // When
+            ExecutionResult result = executor.execute(Set.of(NodeId.of("a")));
+
+            // Then
+            assertThat(result.success()).isFalse();
+            assertThat(log).containsExactly("a in group");
+            assertThat(listener.failedNodes).containsExactly(NodeId.of("a"));
+            assertThat(historyRepo.wasExecuted(NodeId.of("a"), testEnv.id())).isFalse();
+        }
+
+        @Test
+        @DisplayName("コミットに失敗した場合は、グループのノードを成功として記録しない")
+        void shouldNotRecordGroupWhenCommitFails() {
+            // Given
+            addGroupNode("a", Set.of(), new GroupTask("a", log));
+            addGroupNode("b", Set.of(NodeId.of("a")), new GroupTask("b", log).failingCommit());
+            executor = new MigrationExecutor(graph, historyRepo, listener, 10);
+
+            // When
+            ExecutionResult result = executor.execute(Set.of(NodeId.of("a"), NodeId.of("b")));
+
+            // Then: 最初のノードの失敗として記録する
+            assertThat(result.success()).isFalse();
+            assertThat(listener.succeededNodes).isEmpty();
+            assertThat(listener.failedNodes).containsExactly(NodeId.of("a"));
+            assertThat(historyRepo.findLatestRecord(NodeId.of("a"), testEnv.id()))
+                    .satisfies(
+                            record ->
+                                    assertThat(record.errorMessage())
+                                            .isEqualTo(
+                                                    "Failed to commit transaction group:"
+                                                            + " connection lost"));
+            assertThat(historyRepo.wasExecuted(NodeId.of("b"), testEnv.id())).isFalse();
+        }
+
+        @Test
+        @DisplayName("まとめられないノードの前でグループをコミットし、最大数が1ならまとめない")
+        void shouldCommitBeforeUngroupableNode() {
+            // Given: b はまとめられないタスク
+            addGroupNode("a", Set.of(), new GroupTask("a", log));
+            graph.addNode(createNode("b", "Node b", Set.of(NodeId.of("a"))));
+            addGroupNode("c", Set.of(NodeId.of("b")), new GroupTask("c", log));
+            executor = new MigrationExecutor(graph, historyRepo, listener, 10);
+
+            // When
+            executor.execute(Set.of(NodeId.of("a"), NodeId.of("b"), NodeId.of("c")));
+
+            // Then
+            assertThat(log)
+                    .containsExactly("a in group", "commit by a", "c in group", "commit by c");
+
+            // When: まとめない
+            log.clear();
+            historyRepo = new InMemoryHistoryRepository();
+            new MigrationExecutor(graph, historyRepo, listener)
+                    .execute(Set.of(NodeId.of("a"), NodeId.of("b"), NodeId.of("c")));
+
+            // Then
+            assertThat(log).containsExactly("a", "c");
+        }
+
+        private void addGroupNode(String id, Set<NodeId> dependencies, Task task) {
+            graph.addNode(
+                    SimpleMigrationNode.builder()
+                            .id(NodeId.of(id))
+                            .name("Node " + id)
+                            .environment(testEnv)
+                            .dependencies(dependencies)
+                            .upTask(task)
+                            .build());
+        }
+    }
+
+    @Nested
+    @DisplayName("レプリケーションの遅延による一時停止")
+    class Throttling {
+
+        private final Deque<Duration> lags = new ArrayDeque<>();
+        private final ReplicationThrottle throttle =
+                new ReplicationThrottle(
+                        Duration.ofSeconds(10),
+                        Duration.ZERO,
+                        environment -> lags.isEmpty() ? Duration.ZERO : lags.poll());
+
+        @Test
+        @DisplayName("遅延が閾値を超えている間は待ち、閾値以下になってからノードを実行する")
+        void shouldWaitUntilLagDropsBeforeRunningNode() {
+            // Given: 30s, 12.5s, 10s の順に遅延を返す
+            lags.addAll(
+                    List.of(
+                            Duration.ofSeconds(30),
+                            Duration.ofMillis(12500),
+                            Duration.ofSeconds(10)));
+            graph.addNode(createNode("a", "Node A"));
+            executor = new MigrationExecutor(graph, historyRepo, listener, 1, throttle);
+
+            // When
+            ExecutionResult result = executor.execute(Set.of(NodeId.of("a")));
+
+            // Then
+            assertThat(result.success()).isTrue();
+            assertThat(listener.progressMessages)
+                    .containsExactly(
+                            "a: replication lag 30s exceeds 10s, waiting 0s",
+                            "a: replication lag 12.5s exceeds 10s, waiting 0s");
+            assertThat(listener.succeededNodes).containsExactly(NodeId.of("a"));
+            assertThat(lags).isEmpty();
+        }
+
+        @Test
+        @DisplayName("遅延を取得できない場合はノードを実行せずに失敗にする")
+        void shouldFailNodeWhenLagCannotBeRead() {
+            // Given
+            List<String> executed = new ArrayList<>();
+            graph.addNode(
+                    SimpleMigrationNode.builder()
+                            .id(NodeId.of("a"))
+                            .name("Node A")
+                            .environment(testEnv)
+                            .upTask(new GroupTask("a", executed))
+                            .build());
+            ReplicationThrottle failing =
+                    new ReplicationThrottle(
+                            Duration.ofSeconds(10),
+                            Duration.ZERO,
+                            environment -> {
+                                throw new IllegalStateException("permission denied");
+                            });
+            executor = new MigrationExecutor(graph, historyRepo, listener, 1, failing);
+
+            // When
+            ExecutionResult result = executor.execute(Set.of(NodeId.of("a")));
+
+            // Then
+            assertThat(result.success()).isFalse();
+            assertThat(executed).isEmpty();
+            assertThat(listener.startedNodes).isEmpty();
+            assertThat(listener.failedNodes).containsExactly(NodeId.of("a"));
+            assertThat(historyRepo.allRecords(testEnv.id()))
+                    .singleElement()
+                    .satisfies(
+                            record ->
+                                    assertThat(record.errorMessage())
+                                            .contains("Failed to check replication lag")
+                                            .contains("permission denied"));
+        }
+
+        @Test
+        @DisplayName("タスクが throttle を呼ぶと、実行中でも遅延が閾値以下になるまで待つ")
+        void shouldWaitWhenTaskCallsThrottle() {
+            // Given: 実行前の確認では遅延がなく、タスクの途中で遅延が増える
+            Task batchTask =
+                    new Task() {
+                        @Override
+                        public Result<TaskResult, String> execute() {
+                            throw new AssertionError("execute(context) should be called");
+                        }
+
+                        @Override
+                        public Result<TaskResult, String> execute(TaskExecutionContext context) {
+                            lags.add(Duration.ofSeconds(60));
+                            context.throttle();
+                            return Result.ok(TaskResult.withoutDownTask("done"));
+                        }
+
+                        @Override
+                        public String description() {
+                            return "UP: a";
+                        }
+                    };
+            graph.addNode(
+                    SimpleMigrationNode.builder()
+                            .id(NodeId.of("a"))
+                            .name("Node A")
+                            .environment(testEnv)
+                            .upTask(batchTask)
+                            .build());
+            executor = new MigrationExecutor(graph, historyRepo, listener, 1, throttle);
+
+            // When
+            ExecutionResult result = executor.execute(Set.of(NodeId.of("a")));
+
+            // Then
+            assertThat(result.success()).isTrue();
+            assertThat(listener.progressMessages)
+                    .containsExactly("a: replication lag 60s exceeds 10s, waiting 0s");
+        }
+    }
+
+    /** 実行とコミットの順序を記録する、まとめられるタスク。 */
+    static class GroupTask implements Task, TransactionGroupable {
+
+        private final String id;
+        private final List<String> log;
+        private boolean fail;
+        private boolean failCommit;
+
+        GroupTask(String id, List<String> log) {
+            this.id = id;
+            this.log = log;
+        }
+
+        GroupTask failing() {
+            fail = true;
+            return this;
+        }
+
+        GroupTask failingCommit() {
+            failCommit = true;
+            return this;
+        }
+
+        @Override
+        public Result<TaskResult, String> execute() {
+            throw new AssertionError("execute(context) should be called");
+        }
+
+        @Override
+        public Result<TaskResult, String> execute(TaskExecutionContext context) {
+            log.add(context.inTransactionGroup() ? id + " in group" : id);
+            return fail ? Result.err("boom") : Result.ok(TaskResult.withoutDownTask("done"));
+        }
+
+        @Override
+        public String description() {
+            return "UP: " + id;
+        }
+
+        @Override
+        public String transactionGroupKey() {
+            return "db";
+        }
+
+        @Override
+        public void commitTransactionGroup(TaskExecutionContext context) {
+            log.add("commit by " + id);
+            if (failCommit) {
+                throw new IllegalStateException("connection lost");
+            }
+        }
+    }
+
+    /** 閉じられたかどうかを記録するセッション。 */
+    static class TrackingSession implements AutoCloseable {
+
+        boolean closed;
+
+        @Override
+        public void close() {
+            closed = true;
+        }
     }
 
     private MigrationNode createNode(String id, String name) {
@@ -215,6 +714,7 @@ class MigrationExecutorTest {
         final List<NodeId> succeededNodes = new ArrayList<>();
         final List<NodeId> skippedNodes = new ArrayList<>();
         final List<NodeId> failedNodes = new ArrayList<>();
+        final List<String> progressMessages = new ArrayList<>();
         boolean completedCalled = false;
 
         @Override
@@ -231,6 +731,12 @@ class MigrationExecutorTest {
             succeededNodes.add(node.id());
         }
 
+        @Override
+        public void onNodeProgress(
+                MigrationNode node, ExecutionDirection direction, String message) {
+            progressMessages.add(node.id().value() + ": " + message);
+        }
+
         @Override
         public void onNodeSkipped(MigrationNode node, ExecutionDirection direction, String reason) {
             skippedNodes.add(node.id());
@@ -0,0 +1,88 @@
+package io.github.kakusuke.migraphe.core.graph;
+
+import static io.github.kakusuke.migraphe.core.graph.TestHelpers.node;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.graph.MigrationNode;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.core.graph.TestHelpers.TestEnvironment;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class GraphFingerprintTest {
+
+    private final TestEnvironment db1 = new TestEnvironment("db1");
+    private final TestEnvironment db2 = new TestEnvironment("db2");
+
+    @Test
+    void shouldComputeFingerprintPerEnvironment() {
+        // given
+        MigrationGraph graph =
+                graphOf(
+                        node("a").environment(db1).contentHash("h1").build(),
+                        node("b").environment(db2).contentHash("h2").build());
+
+        // when
+        Map<EnvironmentId, String> fingerprints = GraphFingerprint.compute(graph);
+
+        // then
+        assertThat(fingerprints).containsOnlyKeys(db1.id(), db2.id());
+        assertThat(fingerprints.get(db1.id())).hasSize(64).isNotEqualTo(fingerprints.get(db2.id()));
+    }
+
+    @Test
+    void shouldNotDependOnNodeOrder() {
+        // given
+        MigrationNode a = node("a").environment(db1).contentHash("h1").build();
+        MigrationNode b = node("b").environment(db1).contentHash("h2").build();
+        MigrationNode c =
+                node("c").environment(db1).contentHash("h3").dependencies(NodeId.of("a")).build();
+
+        // when & then
+        assertThat(GraphFingerprint.compute(graphOf(a, b, c)))
+                .isEqualTo(GraphFingerprint.compute(graphOf(b, a, c)));
+    }
+
+    @Test
+    void shouldChangeOnlyForAffectedEnvironment() {
+        // given
+        MigrationNode a = node("a").environment(db1).contentHash("h1").build();
+        MigrationNode b = node("b").environment(db2).contentHash("h2").build();
+        Map<EnvironmentId, String> before = GraphFingerprint.compute(graphOf(a, b));
+
+        // when: db1 のノードの内容だけを変更
+        MigrationNode changed = node("a").environment(db1).contentHash("h1-changed").build();
+        Map<EnvironmentId, String> after = GraphFingerprint.compute(graphOf(changed, b));
+
+        // then
+        assertThat(after.get(db1.id())).isNotEqualTo(before.get(db1.id()));
+        assertThat(after.get(db2.id())).isEqualTo(before.get(db2.id()));
+    }
+
+    @Test
+    void shouldChangeWhenNodesOrDependenciesChange() {
+        // given
+        MigrationNode a = node("a").environment(db1).build();
+        MigrationNode b = node("b").environment(db1).build();
+        MigrationNode bDependsOnA =
+                node("b").environment(db1).dependencies(NodeId.of("a")).build();
+
+        // when
+        String single = GraphFingerprint.compute(graphOf(a)).get(db1.id());
+        String independent = GraphFingerprint.compute(graphOf(a, b)).get(db1.id());
+        String dependent = GraphFingerprint.compute(graphOf(a, bDependsOnA)).get(db1.id());
+
+        // then
+        assertThat(List.of(single, independent, dependent)).doesNotHaveDuplicates();
+    }
+
+    private static MigrationGraph graphOf(MigrationNode... nodes) {
+        MigrationGraph graph = MigrationGraph.create();
+        for (MigrationNode node : nodes) {
+            graph.addNode(node);
+        }
+        return graph;
+    }
+}
@@ -9,6 +9,7 @@ import io.github.kakusuke.migraphe.api.task.Task;
 import io.github.kakusuke.migraphe.api.task.TaskResult;
 import java.util.Objects;
 import java.util.Set;
+import org.jspecify.annotations.Nullable;
 
 /** テスト用ヘルパークラス */
 class TestHelpers {
@@ -59,13 +60,19 @@ class TestHelpers {
         private final String name;
         private final Environment environment;
         private final Set<NodeId> dependencies;
+        private final @Nullable String contentHash;
 
         TestMigrationNode(
-                NodeId id, String name, Environment environment, Set<NodeId> dependencies) {
+                NodeId id,
+                String name,
+                Environment environment,
+                Set<NodeId> dependencies,
+                @Nullable String contentHash) {
             this.id = id;
             this.name = name;
             this.environment = environment;
             this.dependencies = dependencies;
+            this.contentHash = contentHash;
         }
 
         @Override
@@ -103,6 +110,11 @@ class TestHelpers {
             return new TestTask("DOWN: " + name);
         }
 
+        @Override
+        public @Nullable String contentHash() {
+            return contentHash;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -126,6 +138,7 @@ class TestHelpers {
         private String name;
         private Environment environment = new TestEnvironment("test");
         private Set<NodeId> dependencies = Set.of();
+        private @Nullable String contentHash;
 
         TestNodeBuilder(NodeId id) {
             this.id = id;
@@ -147,8 +160,13 @@ class TestHelpers {
             return this;
         }
 
+        TestNodeBuilder contentHash(String contentHash) {
+            this.contentHash = contentHash;
+            return this;
+        }
+
         TestMigrationNode build() {
-            return new TestMigrationNode(id, name, environment, dependencies);
+            return new TestMigrationNode(id, name, environment, dependencies, contentHash);
         }
     }
 }
@@ -0,0 +1,107 @@
+package io.github.kakusuke.migraphe.core.history;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.api.history.ExecutionStatus;
+import io.github.kakusuke.migraphe.api.history.HistoryQuery;
+import io.github.kakusuke.migraphe.api.history.NodeDurationStats;
+import io.github.kakusuke.migraphe.api.task.ExecutionDirection;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class DurationStatsCollectorTest {
+
+    private final EnvironmentId envId = EnvironmentId.of("db1");
+    private final NodeId node1 = NodeId.of("db1/001");
+    private final NodeId node2 = NodeId.of("db1/002");
+    private final Instant base = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Test
+    void shouldComputePercentilesLikePercentileCont() {
+        // given: 10, 20, 30, 40 ms
+        Stream<ExecutionRecord> records =
+                Stream.of(
+                        record(node1, ExecutionStatus.SUCCESS, 40, 0),
+                        record(node1, ExecutionStatus.SUCCESS, 10, 1),
+                        record(node1, ExecutionStatus.SUCCESS, 30, 2),
+                        record(node1, ExecutionStatus.SUCCESS, 20, 3));
+
+        // when
+        List<NodeDurationStats> stats =
+                DurationStatsCollector.collect(records, HistoryQuery.forEnvironment(envId));
+
+        // then: 線形補間（p50 = 25, p95 = 30 + 0.85 * 10）
+        assertThat(stats).hasSize(1);
+        NodeDurationStats s = stats.get(0);
+        assertThat(s.count()).isEqualTo(4);
+        assertThat(s.p50Ms()).isEqualTo(25.0);
+        assertThat(s.p95Ms()).isCloseTo(38.5, within(1e-9));
+        assertThat(s.maxMs()).isEqualTo(40);
+        assertThat(s.trend()).isNull();
+    }
+
+    @Test
+    void shouldCountFailuresWithoutUsingTheirDurations() {
+        // given
+        Stream<ExecutionRecord> records =
+                Stream.of(
+                        record(node1, ExecutionStatus.SUCCESS, 100, 0),
+                        record(node1, ExecutionStatus.FAILURE, 0, 1),
+                        record(node1, ExecutionStatus.SKIPPED, 0, 2),
+                        record(node2, ExecutionStatus.FAILURE, 0, 3));
+
+        // when
+        List<NodeDurationStats> stats =
+                DurationStatsCollector.collect(records, HistoryQuery.forEnvironment(envId));
+
+        // then: SKIPPED は数えず、成功のないノードの実行時間は 0
+        assertThat(stats).extracting(NodeDurationStats::nodeId).containsExactly(node1, node2);
+        assertThat(stats.get(0).count()).isEqualTo(2);
+        assertThat(stats.get(0).failureRate()).isEqualTo(0.5);
+        assertThat(stats.get(0).p50Ms()).isEqualTo(100.0);
+        assertThat(stats.get(1).failureRate()).isEqualTo(1.0);
+        assertThat(stats.get(1).maxMs()).isZero();
+    }
+
+    @Test
+    void shouldComputeTrendBetweenHalvesOfWindow() {
+        // given: 前半は平均 100ms、後半は平均 150ms
+        HistoryQuery query =
+                HistoryQuery.forEnvironment(envId).from(base).until(base.plusSeconds(100));
+        Stream<ExecutionRecord> records =
+                Stream.of(
+                        record(node1, ExecutionStatus.SUCCESS, 90, 10),
+                        record(node1, ExecutionStatus.SUCCESS, 110, 20),
+                        record(node1, ExecutionStatus.SUCCESS, 150, 60),
+                        record(node1, ExecutionStatus.SUCCESS, 999, 200)); // 期間外
+
+        // when
+        List<NodeDurationStats> stats = DurationStatsCollector.collect(records, query);
+
+        // then
+        assertThat(stats.get(0).count()).isEqualTo(3);
+        assertThat(stats.get(0).trend()).isCloseTo(0.5, within(1e-9));
+    }
+
+    private ExecutionRecord record(
+            NodeId nodeId, ExecutionStatus status, long durationMs, long secondsAfterBase) {
+        return new ExecutionRecord(
+                UUID.randomUUID().toString(),
+                nodeId,
+                envId,
+                ExecutionDirection.UP,
+                status,
+                base.plusSeconds(secondsAfterBase),
+                "test",
+                null,
+                durationMs,
+                status == ExecutionStatus.FAILURE ? "failed" : null);
+    }
+}
@@ -0,0 +1,362 @@
+package io.github.kakusuke.migraphe.core.history;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.github.kakusuke.migraphe.api.common.TimeOrderedUuid;
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.api.history.ExecutionStatus;
+import io.github.kakusuke.migraphe.api.task.ExecutionDirection;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileHistoryRepositoryTest {
+
+    private final EnvironmentId envId = EnvironmentId.of("dev");
+    private final EnvironmentId stagingEnvId = EnvironmentId.of("staging");
+    private final NodeId node1 = NodeId.of("node-1");
+    private final NodeId node2 = NodeId.of("node-2");
+
+    @TempDir Path tempDir;
+
+    private Path historyFile;
+    private FileHistoryRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        historyFile = tempDir.resolve("state/history.log");
+        repository = FileHistoryRepository.create(historyFile);
+        repository.initialize();
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.close();
+    }
+
+    @Test
+    void shouldStartWithNoRecords() {
+        // when & then
+        assertThat(Files.exists(historyFile)).isTrue();
+        assertThat(repository.allRecords(envId)).isEmpty();
+        assertThat(repository.executedNodes(envId)).isEmpty();
+    }
+
+    @Test
+    void shouldRecordAndReadBackExecution() {
+        // given
+        ExecutionRecord record =
+                ExecutionRecord.upSuccess(node1, envId, "Create table", "DROP TABLE users;", 100);
+
+        // when
+        repository.record(record);
+
+        // then
+        assertThat(repository.allRecords(envId)).containsExactly(record);
+        assertThat(repository.findLatestRecord(node1, envId)).isEqualTo(record);
+        assertThat(repository.wasExecuted(node1, envId)).isTrue();
+        assertThat(repository.wasExecuted(node2, envId)).isFalse();
+    }
+
+    @Test
+    void shouldTreatRolledBackNodeAsNotExecuted() {
+        // given
+        repository.record(ExecutionRecord.upSuccess(node1, envId, "Create table", null, 100));
+        repository.record(ExecutionRecord.upSuccess(node2, envId, "Add column", null, 50));
+        ExecutionRecord down = ExecutionRecord.downSuccess(node1, envId, "Create table", 30);
+
+        // when
+        repository.record(down);
+
+        // then
+        assertThat(repository.wasExecuted(node1, envId)).isFalse();
+        assertThat(repository.executedNodes(envId)).containsExactly(node2);
+        assertThat(repository.findLatestRecord(node1, envId)).isEqualTo(down);
+    }
+
+    @Test
+    void shouldSeparateEnvironments() {
+        // given
+        ExecutionRecord devRecord = ExecutionRecord.upSuccess(node1, envId, "Dev", null, 100);
+        ExecutionRecord stagingRecord =
+                ExecutionRecord.failure(
+                        node1, stagingEnvId, ExecutionDirection.UP, "Staging", "error");
+
+        // when
+        repository.record(devRecord);
+        repository.record(stagingRecord);
+
+        // then
+        assertThat(repository.allRecords(envId)).containsExactly(devRecord);
+        assertThat(repository.allRecords(stagingEnvId)).containsExactly(stagingRecord);
+        assertThat(repository.wasExecuted(node1, stagingEnvId)).isFalse();
+    }
+
+    @Test
+    void shouldRebuildIndexOnReopen() {
+        // given
+        ExecutionRecord record1 = ExecutionRecord.upSuccess(node1, envId, "Create", null, 100);
+        ExecutionRecord record2 = ExecutionRecord.upSuccess(node2, envId, "Alter", null, 50);
+        repository.record(record1);
+        repository.record(record2);
+        repository.close();
+
+        // when
+        repository = FileHistoryRepository.create(historyFile);
+        repository.initialize();
+
+        // then
+        assertThat(repository.executedNodes(envId)).containsExactlyInAnyOrder(node1, node2);
+        assertThat(repository.findLatestRecord(node2, envId)).isEqualTo(record2);
+        assertThat(repository.allRecords(envId)).containsExactly(record1, record2);
+    }
+
+    @Test
+    void shouldTruncateTornTailOnReopen() throws IOException {
+        // given
+        ExecutionRecord record = ExecutionRecord.upSuccess(node1, envId, "Create", null, 100);
+        repository.record(record);
+        repository.close();
+        long validSize = Files.size(historyFile);
+
+        // 書きかけのフレーム（長さだけ書かれてペイロードがない）を追記する
+        try (FileChannel ch = FileChannel.open(historyFile, StandardOpenOption.APPEND)) {
+            ch.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 42, 1, 2}));
+        }
+
+        // when
+        repository = FileHistoryRepository.create(historyFile);
+        repository.initialize();
+
+        // then
+        assertThat(Files.size(historyFile)).isEqualTo(validSize);
+        assertThat(repository.allRecords(envId)).containsExactly(record);
+
+        // 切り詰め後も追記できる
+        ExecutionRecord next = ExecutionRecord.upSuccess(node2, envId, "Alter", null, 10);
+        repository.record(next);
+        assertThat(repository.allRecords(envId)).containsExactly(record, next);
+    }
+
+    @Test
+    void shouldRejectCorruptedMiddleFrameWithoutTruncating() throws IOException {
+        // given
+        repository.record(ExecutionRecord.upSuccess(node1, envId, "Create", null, 100));
+        repository.record(ExecutionRecord.upSuccess(node2, envId, "Alter", null, 50));
+        repository.close();
+
+        // 1件目のフレームのペイロード（ファイルヘッダー5バイトとフレームヘッダー8バイトの後）を書き換える
+        try (FileChannel ch = FileChannel.open(historyFile, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF}), 13);
+        }
+        byte[] corrupted = Files.readAllBytes(historyFile);
+
+        // when & then - 後ろの正しいレコードを失わないよう、切り詰めずに失敗する
+        repository = FileHistoryRepository.create(historyFile);
+        assertThatThrownBy(repository::initialize)
+                .isInstanceOf(HistoryStorageException.class)
+                .hasMessageContaining("Corrupted history frame at offset 5");
+        assertThat(Files.readAllBytes(historyFile)).isEqualTo(corrupted);
+    }
+
+    @Test
+    void shouldCompactToLatestRecordsPerNode() {
+        // given
+        for (int i = 0; i < 3; i++) {
+            repository.record(ExecutionRecord.upSuccess(node1, envId, "Create", null, i));
+            repository.record(ExecutionRecord.downSuccess(node1, envId, "Create", i));
+        }
+        ExecutionRecord latest = ExecutionRecord.upSuccess(node1, envId, "Create", null, 99);
+        repository.record(latest);
+        repository.record(ExecutionRecord.upSuccess(node2, envId, "Alter", null, 10));
+
+        // when
+        long removed = repository.compact(2);
+
+        // then
+        assertThat(removed).isEqualTo(5);
+        assertThat(repository.allRecords(envId)).hasSize(3);
+        assertThat(repository.findLatestRecord(node1, envId)).isEqualTo(latest);
+        assertThat(repository.executedNodes(envId)).containsExactlyInAnyOrder(node1, node2);
+    }
+
+    @Test
+    void shouldKeepRecordingWhenAutoCompactionFails() throws IOException {
+        // given: コンパクション用の一時ファイルを作れないようにする
+        Path file = tempDir.resolve("auto-compact.log");
+        Path compactTemp = tempDir.resolve("auto-compact.log.compact");
+        Files.createDirectories(compactTemp);
+
+        try (FileHistoryRepository store =
+                FileHistoryRepository.create(file, FsyncPolicy.NEVER, 1)) {
+            store.initialize();
+
+            // when - 保持件数を超えたレコードが自動コンパクションのしきい値に達するまで記録する
+            for (int i = 0; i <= 1000; i++) {
+                store.record(ExecutionRecord.upSuccess(node1, envId, "Create", null, i));
+            }
+
+            // then - 記録は失敗せず、次の記録でコンパクションが再試行される
+            assertThat(store.allRecords(envId)).hasSize(1001);
+            Files.delete(compactTemp);
+            store.record(ExecutionRecord.upSuccess(node1, envId, "Create", null, 1001));
+            assertThat(store.allRecords(envId)).hasSize(1);
+            assertThat(store.findLatestRecord(node1, envId).durationMs()).isEqualTo(1001);
+        }
+    }
+
+    @Test
+    void shouldKeepLatestRecordByExecutedAtWhenLogIsOutOfOrder() {
+        // given: 最新の UP の後に、それより古い DOWN を取り込んだ履歴
+        Instant now = Instant.parse("2026-01-10T00:00:00Z");
+        ExecutionRecord latest = recordAt(ExecutionDirection.UP, now);
+        repository.record(latest);
+        repository.record(recordAt(ExecutionDirection.DOWN, now.minusSeconds(60)));
+        repository.record(recordAt(ExecutionDirection.DOWN, now.minusSeconds(120)));
+        assertThat(repository.wasExecuted(node1, envId)).isTrue();
+
+        // when
+        long removed = repository.compact(1);
+
+        // then
+        assertThat(removed).isEqualTo(2);
+        assertThat(repository.allRecords(envId)).containsExactly(latest);
+        assertThat(repository.wasExecuted(node1, envId)).isTrue();
+    }
+
+    @Test
+    void shouldKeepCompactedLogAfterReopen() {
+        // given
+        for (int i = 0; i < 5; i++) {
+            repository.record(ExecutionRecord.upSuccess(node1, envId, "Create", null, i));
+        }
+        repository.compact(1);
+        repository.close();
+
+        // when
+        repository = FileHistoryRepository.create(historyFile);
+        repository.initialize();
+
+        // then
+        assertThat(repository.allRecords(envId)).hasSize(1);
+        assertThat(repository.findLatestRecord(node1, envId).durationMs()).isEqualTo(4);
+    }
+
+    @Test
+    void shouldArchiveOldRecordsButKeepLatestPerNode() {
+        // given
+        ExecutionRecord old1 = ExecutionRecord.upSuccess(node1, envId, "Create", null, 1);
+        ExecutionRecord old2 = ExecutionRecord.downSuccess(node1, envId, "Create", 2);
+        ExecutionRecord onlyRecord = ExecutionRecord.upSuccess(node2, envId, "Alter", null, 3);
+        repository.record(old1);
+        repository.record(old2);
+        repository.record(onlyRecord);
+        Instant cutoff = Instant.now().plusSeconds(60);
+        Path archiveDir = tempDir.resolve("archive");
+
+        // when
+        List<Path> files = repository.archive(cutoff, archiveDir);
+
+        // then: 各ノードの最新レコードは残る
+        assertThat(repository.allRecords(envId)).containsExactly(old2, onlyRecord);
+        assertThat(repository.wasExecuted(node2, envId)).isTrue();
+        assertThat(files).hasSize(1);
+
+        // アーカイブは同じ形式で読み込める
+        FileHistoryRepository archived = FileHistoryRepository.create(files.get(0));
+        archived.initialize();
+        assertThat(archived.allRecords(envId)).containsExactly(old1);
+        archived.close();
+    }
+
+    @Test
+    void shouldNotCreateArchiveWhenNothingToArchive() {
+        // given
+        repository.record(ExecutionRecord.upSuccess(node1, envId, "Create", null, 1));
+
+        // when
+        List<Path> files =
+                repository.archive(Instant.now().plusSeconds(60), tempDir.resolve("archive"));
+
+        // then
+        assertThat(files).isEmpty();
+        assertThat(repository.allRecords(envId)).hasSize(1);
+    }
+
+    @Test
+    void shouldRejectSecondOpenWhileLocked() {
+        // given
+        FileHistoryRepository other = FileHistoryRepository.create(historyFile);
+
+        // when & then
+        assertThatThrownBy(other::initialize)
+                .isInstanceOf(HistoryStorageException.class)
+                .hasMessageContaining("locked");
+    }
+
+    @Test
+    void shouldRejectForeignFile() throws IOException {
+        // given
+        Path foreign = tempDir.resolve("foreign.log");
+        Files.writeString(foreign, "not a history file");
+        FileHistoryRepository other = FileHistoryRepository.create(foreign);
+
+        // when & then
+        assertThatThrownBy(other::initialize)
+                .isInstanceOf(HistoryStorageException.class)
+                .hasMessageContaining("Not a migraphe history file");
+    }
+
+    @Test
+    void shouldSupportAllFsyncPolicies() {
+        for (FsyncPolicy policy : FsyncPolicy.values()) {
+            // given
+            Path file = tempDir.resolve(policy.name() + ".log");
+            FileHistoryRepository repo = FileHistoryRepository.create(file, policy);
+            repo.initialize();
+
+            // when
+            repo.record(ExecutionRecord.upSuccess(node1, envId, "Create", null, 1));
+            repo.close();
+
+            // then
+            FileHistoryRepository reopened = FileHistoryRepository.create(file, policy);
+            reopened.initialize();
+            assertThat(reopened.wasExecuted(node1, envId)).isTrue();
+            reopened.close();
+        }
+    }
+
+    @Test
+    void shouldParseFsyncPolicyCaseInsensitively() {
+        assertThat(FsyncPolicy.fromValue("Periodic")).isEqualTo(FsyncPolicy.PERIODIC);
+        assertThatThrownBy(() -> FsyncPolicy.fromValue("sometimes"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private ExecutionRecord recordAt(ExecutionDirection direction, Instant executedAt) {
+        return new ExecutionRecord(
+                TimeOrderedUuid.nextString(),
+                node1,
+                envId,
+                direction,
+                ExecutionStatus.SUCCESS,
+                executedAt,
+                "Create",
+                null,
+                1,
+                null);
+    }
+}
@@ -0,0 +1,173 @@
+package io.github.kakusuke.migraphe.core.history;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.github.kakusuke.migraphe.api.common.TimeOrderedUuid;
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.api.task.ExecutionDirection;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HistoryExportReaderTest {
+
+    private final EnvironmentId prodEnvId = EnvironmentId.of("prod");
+    private final EnvironmentId stagingEnvId = EnvironmentId.of("staging");
+    private final NodeId node1 = NodeId.of("node-1");
+    private final NodeId node2 = NodeId.of("node-2");
+
+    @TempDir Path tempDir;
+
+    @Test
+    void shouldRoundTripRecords() {
+        // given
+        List<ExecutionRecord> records =
+                List.of(
+                        ExecutionRecord.upSuccess(node1, prodEnvId, "Create", "DROP TABLE t;", 12),
+                        ExecutionRecord.failure(
+                                node2, prodEnvId, ExecutionDirection.UP, "Alter", "syntax error"),
+                        ExecutionRecord.skipped(node2, prodEnvId, "Alter", "already applied"),
+                        ExecutionRecord.downSuccess(node1, stagingEnvId, "Rollback", 3));
+        Path file = export(records);
+
+        // when
+        List<ExecutionRecord> imported = readAll(file, null);
+
+        // then
+        assertThat(imported).containsExactlyElementsOf(records);
+    }
+
+    @Test
+    void shouldRemapEnvironmentId() {
+        // given
+        Path file =
+                export(
+                        List.of(
+                                ExecutionRecord.upSuccess(node1, prodEnvId, "Create", null, 1),
+                                ExecutionRecord.upSuccess(node2, prodEnvId, "Alter", null, 2)));
+
+        // when
+        List<ExecutionRecord> imported = readAll(file, stagingEnvId);
+
+        // then
+        assertThat(imported).extracting(ExecutionRecord::environmentId).containsOnly(stagingEnvId);
+        assertThat(imported).extracting(ExecutionRecord::nodeId).containsExactly(node1, node2);
+    }
+
+    @Test
+    void shouldGiveRemappedRecordsNewButStableIds() {
+        // given
+        ExecutionRecord prodRecord = ExecutionRecord.upSuccess(node1, prodEnvId, "Create", null, 1);
+        Path file = export(List.of(prodRecord));
+
+        // when
+        ExecutionRecord remapped = readAll(file, stagingEnvId).get(0);
+        ExecutionRecord remappedAgain = readAll(file, stagingEnvId).get(0);
+        ExecutionRecord sameEnvironment = readAll(file, prodEnvId).get(0);
+
+        // then - 元の環境と同じ保存先に取り込んでも重ならず、取り込み直しても同じIDになる
+        assertThat(remapped.id()).isNotEqualTo(prodRecord.id());
+        assertThat(remappedAgain.id()).isEqualTo(remapped.id());
+        assertThat(TimeOrderedUuid.timestampMillis(UUID.fromString(remapped.id())))
+                .isEqualTo(prodRecord.executedAt().toEpochMilli());
+        assertThat(sameEnvironment).isEqualTo(prodRecord);
+    }
+
+    @Test
+    void shouldWriteEachIdOnlyOnce() throws IOException {
+        // given
+        List<ExecutionRecord> records = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            records.add(ExecutionRecord.upSuccess(node1, prodEnvId, "Create", null, i));
+        }
+
+        // when
+        byte[] content = decompress(export(records));
+
+        // then - ノードIDと環境IDは辞書に1度だけ書き出される
+        assertThat(occurrences(content, "node-1")).isEqualTo(1);
+        assertThat(occurrences(content, "prod")).isEqualTo(1);
+        assertThat(readAll(export(records), null)).hasSize(1_000);
+    }
+
+    @Test
+    void shouldRejectTruncatedFile() throws IOException {
+        // given: 終端のエントリが失われたファイル
+        Path file = export(List.of(ExecutionRecord.upSuccess(node1, prodEnvId, "Create", null, 1)));
+        byte[] content = decompress(file);
+        Path truncated = tempDir.resolve("truncated.mghx");
+        compress(truncated, Arrays.copyOf(content, content.length - 2));
+
+        // when & then
+        assertThatThrownBy(() -> readAll(truncated, null))
+                .isInstanceOf(HistoryStorageException.class)
+                .hasMessageContaining("truncated");
+    }
+
+    @Test
+    void shouldRejectUnknownFile() throws IOException {
+        // given
+        Path file = tempDir.resolve("other.gz");
+        compress(file, "not an export".getBytes(StandardCharsets.UTF_8));
+
+        // when & then
+        assertThatThrownBy(() -> HistoryExportReader.open(file, null))
+                .isInstanceOf(HistoryStorageException.class)
+                .hasMessageContaining("Not a migraphe history export file");
+    }
+
+    private Path export(List<ExecutionRecord> records) {
+        Path file = tempDir.resolve("export-" + System.nanoTime() + ".mghx");
+        try (HistoryExportWriter writer = HistoryExportWriter.create(file)) {
+            records.forEach(writer::write);
+        }
+        return file;
+    }
+
+    private static List<ExecutionRecord> readAll(Path file, @Nullable EnvironmentId override) {
+        List<ExecutionRecord> records = new ArrayList<>();
+        try (HistoryExportReader reader = HistoryExportReader.open(file, override)) {
+            reader.forEachRemaining(records::add);
+        }
+        return records;
+    }
+
+    private static byte[] decompress(Path file) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static void compress(Path file, byte[] content) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(content);
+        }
+        Files.write(file, buffer.toByteArray());
+    }
+
+    private static int occurrences(byte[] content, String value) {
+        String text = new String(content, StandardCharsets.ISO_8859_1);
+        int count = 0;
+        for (int i = text.indexOf(value); i >= 0; i = text.indexOf(value, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -5,9 +5,16 @@ import static org.assertj.core.api.Assertions.assertThat;
 import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
 import io.github.kakusuke.migraphe.api.graph.NodeId;
 import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.api.history.ExecutionStatus;
+import io.github.kakusuke.migraphe.api.history.HistoryPage;
+import io.github.kakusuke.migraphe.api.history.HistoryQuery;
 import io.github.kakusuke.migraphe.api.history.HistoryRepository;
 import io.github.kakusuke.migraphe.api.task.ExecutionDirection;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -160,4 +167,83 @@ class InMemoryHistoryRepositoryTest {
         // then
         assertThat(latest).isNull();
     }
+
+    @Test
+    void shouldTreatLaterRecordAsLatestWhenExecutedAtIsEqual() {
+        // given - 同じ実行日時で UP の後に DOWN が記録された
+        ExecutionRecord up = ExecutionRecord.upSuccess(node1, envId, "Create", null, 10);
+        ExecutionRecord down =
+                new ExecutionRecord(
+                        "down-1",
+                        node1,
+                        envId,
+                        ExecutionDirection.DOWN,
+                        ExecutionStatus.SUCCESS,
+                        up.executedAt(),
+                        "Create",
+                        null,
+                        5,
+                        null);
+        repository.record(up);
+        repository.record(down);
+
+        // then
+        assertThat(repository.findLatestRecord(node1, envId)).isEqualTo(down);
+        assertThat(repository.wasExecuted(node1, envId)).isFalse();
+    }
+
+    @Test
+    void shouldRecordConcurrently() throws Exception {
+        // given
+        int threads = 8;
+        int recordsPerThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // when - スレッドごとに別のノードを記録する
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                NodeId nodeId = NodeId.of("node-" + t);
+                futures.add(
+                        executor.submit(
+                                () -> {
+                                    for (int i = 0; i < recordsPerThread; i++) {
+                                        repository.record(
+                                                ExecutionRecord.upSuccess(
+                                                        nodeId, envId, "Create", null, i));
+                                        repository.wasExecuted(nodeId, envId);
+                                    }
+                                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // then
+        assertThat(repository.allRecords(envId)).hasSize(threads * recordsPerThread);
+        assertThat(repository.executedNodes(envId)).hasSize(threads);
+    }
+
+    @Test
+    void shouldPaginateFilteredRecords() {
+        // given
+        for (int i = 0; i < 5; i++) {
+            repository.record(ExecutionRecord.upSuccess(node1, envId, "Create", null, i));
+            repository.record(ExecutionRecord.upSuccess(node2, envId, "Alter", null, i));
+        }
+        HistoryQuery query = HistoryQuery.forEnvironment(envId).nodes(List.of(node1));
+
+        // when
+        HistoryPage first = repository.findPage(query, null, 3);
+        HistoryPage second = repository.findPage(query, first.next(), 3);
+
+        // then
+        assertThat(first.records()).hasSize(3).allMatch(r -> r.nodeId().equals(node1));
+        assertThat(first.hasNext()).isTrue();
+        assertThat(second.records()).hasSize(2).doesNotContainAnyElementsOf(first.records());
+        assertThat(second.hasNext()).isFalse();
+    }
 }
@@ -0,0 +1,254 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * 整数のキーの範囲ごとに分けて SQL を実行するバックフィルの UP マイグレーション。
+ *
+ * <p>テーブルのキーの最小値から最大値までを batchSize ずつの範囲に分け、範囲ごとに {@code :start}（含む）と
+ * {@code :end}（含まない）をバインドして SQL を実行し、コミットする。 1つのトランザクションで全行を更新する場合と違い、
+ * ロックは範囲ごとにすぐ解放され、WAL やレプリケーションの遅延も範囲ごとに分散する。 範囲の間に sleep を挟んで負荷を抑えられる。
+ *
+ * <p>範囲は実行開始時の最大キーまでで、実行中に追加された行は対象にならない。 SQL はチェックポイントより後から再実行される
+ * ことがあるため、{@code WHERE new_col IS NULL} のように何度実行しても同じ結果になるように書く。
+ *
+ * @param table 対象のテーブル（スキーマ修飾可）
+ * @param key 範囲に分けるキーの列（整数型）
+ * @param sql 範囲ごとに実行する SQL（{@code :start} と {@code :end} を含む）
+ * @param batchSize 1回の範囲に含めるキーの数
+ * @param sleep 範囲の間に待つ時間
+ */
+record Backfill(String table, String key, String sql, int batchSize, Duration sleep)
+        implements SqlSource {
+
+    /** 範囲の境界のプレースホルダー。 {@code ::} によるキャストには一致しない。 */
+    private static final Pattern PLACEHOLDER = Pattern.compile("(?<![:\\w]):(start|end)\\b");
+
+    Backfill {
+        Objects.requireNonNull(table, "table must not be null");
+        Objects.requireNonNull(key, "key must not be null");
+        Objects.requireNonNull(sql, "sql must not be null");
+        Objects.requireNonNull(sleep, "sleep must not be null");
+        if (!SqlIdentifiers.isQualifiedIdentifier(table)) {
+            throw new PostgreSQLException("Invalid backfill table name: " + table);
+        }
+        if (!SqlIdentifiers.isIdentifier(key)) {
+            throw new PostgreSQLException("Invalid backfill key column: " + key);
+        }
+        List<String> placeholders = placeholders(sql);
+        if (!placeholders.contains("start") || !placeholders.contains("end")) {
+            throw new PostgreSQLException("Backfill sql must contain both :start and :end");
+        }
+        if (batchSize < 1) {
+            throw new PostgreSQLException("Backfill batch_size must be positive: " + batchSize);
+        }
+        if (sleep.isNegative()) {
+            throw new PostgreSQLException("Backfill sleep must not be negative: " + sleep);
+        }
+    }
+
+    /** バッチのコミットの前後で呼ばれる、チェックポイントの保存先。 */
+    interface Checkpoint {
+
+        /** バッチと同じトランザクションの中で、コミットの直前に呼ばれる。 */
+        default void beforeCommit(Connection conn, long lastKey) throws SQLException {}
+
+        /** バッチのコミットの後に呼ばれる。 */
+        default void afterCommit(long lastKey) throws SQLException {}
+    }
+
+    /** チェックポイントを残さずに、全範囲を実行する。 */
+    @Override
+    public @Nullable String execute(Connection conn, boolean autocommit, int batchSize)
+            throws SQLException {
+        return run(conn, null, new Checkpoint() {}, message -> {}, () -> {});
+    }
+
+    /**
+     * lastKey の次のキーから最大キーまでを範囲ごとに実行する。 範囲ごとにコミットするため、接続の autocommit は無効にする。
+     *
+     * @param conn 実行する接続
+     * @param lastKey 前回の実行で処理済みの最後のキー、最初から実行する場合は null
+     * @param checkpoint 範囲ごとに処理済みの最後のキーを保存する先
+     * @param progress 範囲ごとの進捗の通知先
+     * @param throttle 2つ目以降の範囲の前に呼ぶ。 実行側が新しい作業を止めている間（レプリカの遅延が大きい間など）戻らない
+     * @return 更新した行数と範囲の数
+     * @throws SQLException 範囲の実行に失敗した場合、throttle が失敗した場合（それまでの範囲はコミット済み）
+     */
+    String run(
+            Connection conn,
+            @Nullable Long lastKey,
+            Checkpoint checkpoint,
+            Consumer<String> progress,
+            Runnable throttle)
+            throws SQLException {
+        conn.setAutoCommit(false);
+        long[] bounds = bounds(conn);
+        conn.commit();
+        if (bounds == null) {
+            return "0 rows in 0 batches (table " + table + " is empty)";
+        }
+        long min = bounds[0];
+        long max = bounds[1];
+        long start = lastKey != null ? Math.max(min, lastKey + 1) : min;
+        String resumed = lastKey != null ? ", resumed after key " + lastKey : "";
+
+        List<String> placeholders = placeholders(sql);
+        String jdbcSql = PLACEHOLDER.matcher(sql).replaceAll("?");
+        long rows = 0;
+        int batches = 0;
+        try (PreparedStatement ps = conn.prepareStatement(jdbcSql)) {
+            // max が Long.MAX_VALUE でも溢れないよう、最後の範囲は max を含めたところで止める
+            while (start <= max) {
+                if (batches > 0 && !sleep.isZero()) {
+                    pause(start);
+                }
+                if (batches > 0) {
+                    awaitThrottle(throttle, start);
+                }
+                long end = max - start < batchSize ? max : start + batchSize - 1;
+                for (int i = 0; i < placeholders.size(); i++) {
+                    // :end は範囲に含まないため、処理する最後のキーの次を渡す
+                    ps.setLong(i + 1, placeholders.get(i).equals("start") ? start : end + 1);
+                }
+                try {
+                    ps.execute();
+                    rows += Math.max(0, ps.getUpdateCount());
+                    checkpoint.beforeCommit(conn, end);
+                    conn.commit();
+                } catch (SQLException e) {
+                    rollbackQuietly(conn);
+                    throw new SQLException(
+                            "Batch of keys " + start + "-" + end + " failed: " + e.getMessage(),
+                            e.getSQLState(),
+                            e);
+                }
+                checkpoint.afterCommit(end);
+                batches++;
+                progress.accept(progressMessage(batches, end, min, max, rows));
+                if (end == max) {
+                    break;
+                }
+                start = end + 1;
+            }
+        }
+        return rows + " rows in " + batches + " batches (keys " + min + "-" + max + resumed + ")";
+    }
+
+    /**
+     * 1つの範囲の SQL を、プレースホルダーをキーの値に置き換えて返す。 EXPLAIN で範囲ごとの見積もりを得るために使う。
+     *
+     * @param start 範囲の最初のキー
+     * @param end 範囲の最後のキー
+     * @return 範囲の SQL
+     */
+    String bind(long start, long end) {
+        Matcher matcher = PLACEHOLDER.matcher(sql);
+        StringBuilder sb = new StringBuilder();
+        while (matcher.find()) {
+            long value = matcher.group(1).equals("start") ? start : end + 1;
+            // 負の値は直前の - と合わせてコメントにならないよう括弧で囲む
+            matcher.appendReplacement(sb, value < 0 ? "(" + value + ")" : Long.toString(value));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    /** チェックポイントを比較するためのハッシュ。 バッチサイズと sleep を変えても、途中から再開できる。 */
+    String checkpointHash() {
+        return PostgreSQLDownTaskStore.hash(fingerprint().getBytes(UTF_8));
+    }
+
+    @Override
+    public String fingerprint() {
+        return table + '\0' + key + '\0' + sql;
+    }
+
+    @Override
+    public String text() {
+        return "-- backfill " + table + " by " + key + " in batches of " + batchSize + "\n" + sql;
+    }
+
+    static String progressMessage(int batches, long lastKey, long min, long max, long rows) {
+        double ratio = max == min ? 1.0 : (double) (lastKey - min) / ((double) max - min);
+        return String.format(
+                Locale.ROOT,
+                "batch %d: keys up to %d of %d (%.0f%%), %d rows",
+                batches,
+                lastKey,
+                max,
+                ratio * 100,
+                rows);
+    }
+
+    /**
+     * キーの最小値と最大値を返す。
+     *
+     * @return 最小値と最大値、テーブルが空の場合は null
+     */
+    long @Nullable [] bounds(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs =
+                        stmt.executeQuery(
+                                "SELECT min(" + key + "), max(" + key + ") FROM " + table)) {
+            rs.next();
+            long min = rs.getLong(1);
+            if (rs.wasNull()) {
+                return null;
+            }
+            return new long[] {min, rs.getLong(2)};
+        }
+    }
+
+    private void pause(long nextKey) throws SQLException {
+        try {
+            Thread.sleep(sleep);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Backfill interrupted before key " + nextKey, e);
+        }
+    }
+
+    /** 失敗した場合も、チェックポイントから再開できるように SQLException として返す。 */
+    private static void awaitThrottle(Runnable throttle, long nextKey) throws SQLException {
+        try {
+            throttle.run();
+        } catch (RuntimeException e) {
+            throw new SQLException(
+                    "Backfill paused before key " + nextKey + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    /** SQL に現れる順のプレースホルダーの名前。 */
+    private static List<String> placeholders(String sql) {
+        List<String> names = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER.matcher(sql);
+        while (matcher.find()) {
+            names.add(matcher.group(1));
+        }
+        return names;
+    }
+
+    private static void rollbackQuietly(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException rollbackEx) {
+            // rollback failed, ignore
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import org.jspecify.annotations.Nullable;
+import org.postgresql.PGConnection;
+
+/**
+ * データファイルを COPY ... FROM STDIN でテーブルに流し込む UP マイグレーション。
+ *
+ * <p>ファイルはメモリに読み込まず、CopyManager にストリームとして渡す。 チェックサムの確認は {@link SqlFile} と同じで、
+ * トランザクションモードではファイルが変更されていればコミットせずに失敗する。
+ *
+ * @param table 読み込み先のテーブル（スキーマ修飾可）
+ * @param columns 読み込む列（空なら全列）
+ * @param format データファイルの形式
+ * @param header 先頭行がヘッダーかどうか（CSV のみ）
+ * @param truncate 読み込む前にテーブルを TRUNCATE するかどうか
+ * @param file データファイル
+ */
+record CopyLoad(
+        String table,
+        List<String> columns,
+        Format format,
+        boolean header,
+        boolean truncate,
+        SqlFile file)
+        implements SqlSource {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** データファイルの形式。 COPY の FORMAT オプションに対応する。 */
+    enum Format {
+        CSV,
+        TEXT,
+        BINARY;
+
+        /**
+         * 設定値から形式を求める。
+         *
+         * @param value csv, text, binary のいずれか（大文字小文字を区別しない）
+         * @return 形式
+         * @throws PostgreSQLException 未知の形式の場合
+         */
+        static Format parse(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new PostgreSQLException(
+                        "Unknown COPY format: " + value + " (expected csv, text or binary)");
+            }
+        }
+    }
+
+    CopyLoad {
+        Objects.requireNonNull(table, "table must not be null");
+        Objects.requireNonNull(format, "format must not be null");
+        Objects.requireNonNull(file, "file must not be null");
+        columns = List.copyOf(columns);
+        if (!SqlIdentifiers.isQualifiedIdentifier(table)) {
+            throw new PostgreSQLException("Invalid COPY table name: " + table);
+        }
+        for (String column : columns) {
+            if (!SqlIdentifiers.isIdentifier(column)) {
+                throw new PostgreSQLException("Invalid COPY column name: " + column);
+            }
+        }
+        if (header && format != Format.CSV) {
+            throw new PostgreSQLException("COPY header is only supported for csv format");
+        }
+    }
+
+    /**
+     * データファイルのチェックサムを求めて COPY のマイグレーションを作成する。
+     *
+     * @param table 読み込み先のテーブル
+     * @param columns 読み込む列（空なら全列）
+     * @param format データファイルの形式
+     * @param header 先頭行がヘッダーかどうか
+     * @param truncate 読み込む前にテーブルを TRUNCATE するかどうか
+     * @param path データファイルのパス
+     * @return COPY のマイグレーション
+     * @throws IOException ファイルの読み込みに失敗した場合
+     */
+    static CopyLoad of(
+            String table,
+            List<String> columns,
+            Format format,
+            boolean header,
+            boolean truncate,
+            Path path)
+            throws IOException {
+        return new CopyLoad(table, columns, format, header, truncate, SqlFile.load(path));
+    }
+
+    /** 実行する COPY 文。 */
+    String copySql() {
+        StringBuilder sql = new StringBuilder("COPY ").append(table);
+        if (!columns.isEmpty()) {
+            sql.append(" (").append(String.join(", ", columns)).append(')');
+        }
+        sql.append(" FROM STDIN WITH (FORMAT ").append(format.name().toLowerCase(Locale.ROOT));
+        if (header) {
+            sql.append(", HEADER true");
+        }
+        return sql.append(')').toString();
+    }
+
+    /**
+     * TRUNCATE（指定時）と COPY を実行する。 autocommit モードではそれぞれが個別にコミットされる。
+     *
+     * @return 読み込んだ行数とスループット
+     */
+    @Override
+    public @Nullable String execute(Connection conn, boolean autocommit, int batchSize)
+            throws SQLException, IOException {
+        long startNanos = System.nanoTime();
+        if (truncate) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("TRUNCATE " + table);
+            }
+        }
+        long rows;
+        try (InputStream in = file.openStream()) {
+            rows = conn.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql(), in, BUFFER_SIZE);
+        }
+        long elapsedMs = Math.max(1, (System.nanoTime() - startNanos) / 1_000_000);
+        return rows + " rows copied into " + table + " (" + rows * 1000 / elapsedMs + " rows/s)";
+    }
+
+    /** COPY 文とデータファイルのチェックサム。 TRUNCATE の有無も結果に影響するため含める。 */
+    @Override
+    public String fingerprint() {
+        return statements() + file.fingerprint();
+    }
+
+    @Override
+    public String text() {
+        return statements() + file.text();
+    }
+
+    private String statements() {
+        return (truncate ? "TRUNCATE " + table + ";\n" : "") + copySql() + ";\n";
+    }
+}
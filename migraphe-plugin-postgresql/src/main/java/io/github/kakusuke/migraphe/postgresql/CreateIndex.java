@@ -0,0 +1,174 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Objects;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * {@code CREATE INDEX CONCURRENTLY} でインデックスを作成する UP マイグレーション。
+ *
+ * <p>CONCURRENTLY での作成はテーブルへの書き込みを止めないが、トランザクション内では実行できず、 失敗すると INVALID
+ * なインデックスが残る。 作成の前後で同じ名前の INVALID なインデックスを探して削除するため、失敗したタスクをそのまま再実行できる。
+ *
+ * @param name インデックス名（スキーマ修飾なし、テーブルと同じスキーマに作成される）
+ * @param table 対象のテーブル（スキーマ修飾可）
+ * @param columns インデックスのキー（列名または式、並び順の指定を含めてよい）
+ * @param unique 一意インデックスにするかどうか
+ * @param method インデックスの種類（btree, gin など）、null ならデフォルト
+ * @param where 部分インデックスの条件、null なら全行
+ */
+record CreateIndex(
+        String name,
+        String table,
+        List<String> columns,
+        boolean unique,
+        @Nullable String method,
+        @Nullable String where)
+        implements SqlSource {
+
+    CreateIndex {
+        Objects.requireNonNull(name, "name must not be null");
+        Objects.requireNonNull(table, "table must not be null");
+        columns = List.copyOf(columns);
+        if (!SqlIdentifiers.isIdentifier(name)) {
+            throw new PostgreSQLException("Invalid index name: " + name);
+        }
+        if (!SqlIdentifiers.isQualifiedIdentifier(table)) {
+            throw new PostgreSQLException("Invalid index table name: " + table);
+        }
+        if (columns.isEmpty()) {
+            throw new PostgreSQLException("Index " + name + " must have at least one column");
+        }
+        if (method != null && !SqlIdentifiers.isIdentifier(method)) {
+            throw new PostgreSQLException("Invalid index method: " + method);
+        }
+    }
+
+    /** 実行する CREATE INDEX 文。 */
+    String createSql() {
+        StringBuilder sql = new StringBuilder("CREATE ");
+        if (unique) {
+            sql.append("UNIQUE ");
+        }
+        sql.append("INDEX CONCURRENTLY ").append(name).append(" ON ").append(table);
+        if (method != null) {
+            sql.append(" USING ").append(method);
+        }
+        sql.append(" (").append(String.join(", ", columns)).append(')');
+        if (where != null) {
+            sql.append(" WHERE ").append(where);
+        }
+        return sql.toString();
+    }
+
+    /** インデックスを削除する DOWN SQL。 テーブルがスキーマ修飾されていれば、インデックス名も同じスキーマで修飾する。 */
+    String dropSql() {
+        int dot = schemaSeparator(table);
+        String qualifiedName = dot < 0 ? name : table.substring(0, dot + 1) + name;
+        return "DROP INDEX CONCURRENTLY IF EXISTS " + qualifiedName + ";";
+    }
+
+    /**
+     * 残っている INVALID なインデックスを削除してから、インデックスを作成する。 作成に失敗した場合も、残った INVALID
+     * なインデックスを削除してから例外を投げる。 接続は autocommit モードでなければならない。
+     *
+     * @return 作成したインデックスの大きさ
+     */
+    @Override
+    public @Nullable String execute(Connection conn, boolean autocommit, int batchSize)
+            throws SQLException {
+        String leftover = dropIfInvalid(conn);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(createSql());
+        } catch (SQLException e) {
+            String dropped;
+            try {
+                dropped = dropIfInvalid(conn);
+            } catch (SQLException dropEx) {
+                e.addSuppressed(dropEx);
+                throw e;
+            }
+            if (dropped == null) {
+                throw e;
+            }
+            throw new SQLException(
+                    e.getMessage() + " (dropped INVALID index " + dropped + ")",
+                    e.getSQLState(),
+                    e);
+        }
+        String detail = "index " + name + " built (" + indexSize(conn) + ")";
+        return leftover != null ? detail + ", replaced INVALID index " + leftover : detail;
+    }
+
+    @Override
+    public String fingerprint() {
+        return createSql();
+    }
+
+    @Override
+    public String text() {
+        return createSql() + ";";
+    }
+
+    /**
+     * このテーブルに同じ名前の INVALID なインデックスがあれば削除する。
+     *
+     * @return 削除したインデックスの名前、なければ null
+     */
+    private @Nullable String dropIfInvalid(Connection conn) throws SQLException {
+        String invalid = null;
+        try (PreparedStatement ps =
+                conn.prepareStatement(
+                        "SELECT i.indexrelid::regclass::text FROM pg_index i"
+                                + " JOIN pg_class c ON c.oid = i.indexrelid"
+                                + " WHERE i.indrelid = to_regclass(?) AND c.relname = ?"
+                                + " AND NOT i.indisvalid")) {
+            ps.setString(1, table);
+            ps.setString(2, SqlIdentifiers.catalogName(name));
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    invalid = rs.getString(1);
+                }
+            }
+        }
+        if (invalid != null) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP INDEX CONCURRENTLY IF EXISTS " + invalid);
+            }
+        }
+        return invalid;
+    }
+
+    private String indexSize(Connection conn) throws SQLException {
+        try (PreparedStatement ps =
+                conn.prepareStatement(
+                        "SELECT pg_size_pretty(pg_relation_size(i.indexrelid)) FROM pg_index i"
+                                + " JOIN pg_class c ON c.oid = i.indexrelid"
+                                + " WHERE i.indrelid = to_regclass(?) AND c.relname = ?")) {
+            ps.setString(1, table);
+            ps.setString(2, SqlIdentifiers.catalogName(name));
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : "unknown size";
+            }
+        }
+    }
+
+    /** スキーマとテーブル名を区切るドットの位置。 引用符付き識別子の中のドットは無視する。 */
+    private static int schemaSeparator(String qualified) {
+        boolean quoted = false;
+        for (int i = 0; i < qualified.length(); i++) {
+            char ch = qualified.charAt(i);
+            if (ch == '"') {
+                quoted = !quoted;
+            } else if (ch == '.' && !quoted) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,190 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import io.github.kakusuke.migraphe.api.task.ImpactFinding;
+import io.github.kakusuke.migraphe.api.task.ImpactOptions;
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * UP マイグレーションの DML を {@code EXPLAIN (FORMAT JSON)} にかけて、処理する行数とコストを見積もる。
+ *
+ * <p>EXPLAIN は ANALYZE を付けないため、ステートメントは実行されない。 念のため読み取り専用のトランザクションで実行し、
+ * ステートメントごとにロールバックする。 同じマイグレーションの前のステートメントで作るテーブルを参照する DML は、まだテーブルが
+ * ないため見積もれない。
+ *
+ * <p>バックフィルは最初の範囲の SQL を見積もる。 範囲ごとにコミットするため、しきい値とは範囲ごとの見積もりを比べる。
+ */
+final class ExplainImpactAnalyzer {
+
+    /** EXPLAIN の対象にする DML の先頭のキーワード。 */
+    private static final Set<String> DML_KEYWORDS = Set.of("INSERT", "UPDATE", "DELETE", "MERGE");
+
+    private ExplainImpactAnalyzer() {}
+
+    /** 見積もる DML と、表示に添える説明。 */
+    private record Dml(String sql, String note) {}
+
+    /**
+     * UP マイグレーションの DML の行数とコストを見積もる。
+     *
+     * @param environment EXPLAIN を実行する接続先
+     * @param source UP マイグレーション
+     * @param options 影響が大きいとみなすしきい値
+     * @return DML ごとの見積もりと、2つ以上あればその合計
+     */
+    static List<ImpactFinding> analyze(
+            PostgreSQLEnvironment environment, SqlSource source, ImpactOptions options) {
+        List<ImpactFinding> findings = new ArrayList<>();
+        List<ExplainPlan> plans = new ArrayList<>();
+        try (Connection conn = environment.createConnection()) {
+            conn.setAutoCommit(false);
+            conn.setReadOnly(true);
+            for (Dml dml : statements(conn, source)) {
+                try {
+                    ExplainPlan plan = explain(conn, dml.sql());
+                    plans.add(plan);
+                    findings.add(
+                            new ImpactFinding(
+                                    exceeds(plan.rows(), plan.cost(), options),
+                                    describe(plan)
+                                            + dml.note()
+                                            + thresholds(plan.rows(), plan.cost(), options)
+                                            + ": "
+                                            + LockImpactAnalyzer.excerpt(dml.sql())));
+                } catch (SQLException | PostgreSQLException e) {
+                    findings.add(
+                            ImpactFinding.of(
+                                    "Could not explain ("
+                                            + firstLine(e.getMessage())
+                                            + "): "
+                                            + LockImpactAnalyzer.excerpt(dml.sql())));
+                } finally {
+                    conn.rollback();
+                }
+            }
+        } catch (SQLException e) {
+            findings.add(ImpactFinding.of("Could not explain DML: " + firstLine(e.getMessage())));
+        } catch (IOException e) {
+            findings.add(ImpactFinding.of("Could not read SQL: " + e.getMessage()));
+        }
+
+        if (plans.size() > 1) {
+            double rows = plans.stream().mapToDouble(ExplainPlan::rows).sum();
+            double cost = plans.stream().mapToDouble(ExplainPlan::cost).sum();
+            findings.add(
+                    new ImpactFinding(
+                            exceeds(rows, cost, options),
+                            String.format(
+                                    Locale.ROOT,
+                                    "Total of %d DML statements: ~%.0f rows, cost %.0f%s",
+                                    plans.size(),
+                                    rows,
+                                    cost,
+                                    thresholds(rows, cost, options))));
+        }
+        return findings;
+    }
+
+    /** EXPLAIN の対象にするステートメント。 COPY とインデックスの作成は対象にしない。 */
+    private static List<Dml> statements(Connection conn, SqlSource source)
+            throws IOException, SQLException {
+        return switch (source) {
+            case SqlSource.Inline inline ->
+                    dml(LockImpactAnalyzer.split(new StringReader(inline.sql())));
+            case SqlFile file -> dml(LockImpactAnalyzer.split(file.open()));
+            case CopyLoad copy -> List.of();
+            case CreateIndex index -> List.of();
+            case Backfill backfill -> firstBatch(conn, backfill);
+        };
+    }
+
+    private static List<Dml> dml(List<String> statements) {
+        List<Dml> dml = new ArrayList<>();
+        for (String statement : statements) {
+            if (isDml(statement)) {
+                dml.add(new Dml(statement, ""));
+            }
+        }
+        return dml;
+    }
+
+    /** バックフィルの最初の範囲。 テーブルが空なら見積もらない。 */
+    private static List<Dml> firstBatch(Connection conn, Backfill backfill) throws SQLException {
+        long[] bounds = backfill.bounds(conn);
+        if (bounds == null) {
+            return List.of();
+        }
+        long min = bounds[0];
+        long max = bounds[1];
+        int batchSize = backfill.batchSize();
+        long end = max - min < batchSize ? max : min + batchSize - 1;
+        long batches = (max - min) / batchSize + 1;
+        return List.of(
+                new Dml(
+                        backfill.bind(min, end),
+                        " per batch (first of " + batches + " batches)"));
+    }
+
+    /** データを変更するステートメント（データを変更する WITH を含む）かどうか。 */
+    static boolean isDml(String sql) {
+        List<String> tokens = LockClassifier.tokens(sql);
+        if (tokens.isEmpty()) {
+            return false;
+        }
+        String first = tokens.get(0).toUpperCase(Locale.ROOT);
+        if (first.equals("WITH")) {
+            // データを変更する WITH は、本体かいずれかの WITH 句が DML になる
+            return tokens.stream()
+                    .anyMatch(token -> DML_KEYWORDS.contains(token.toUpperCase(Locale.ROOT)));
+        }
+        return DML_KEYWORDS.contains(first);
+    }
+
+    private static ExplainPlan explain(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("EXPLAIN (FORMAT JSON) " + sql)) {
+            if (!rs.next()) {
+                throw new SQLException("EXPLAIN returned no plan");
+            }
+            return ExplainPlan.parse(rs.getString(1));
+        }
+    }
+
+    /** PostgreSQL のエラーメッセージから、Position などの続く行を除く。 */
+    private static String firstLine(@Nullable String message) {
+        return message == null ? "" : message.lines().findFirst().orElse("").strip();
+    }
+
+    private static boolean exceeds(double rows, double cost, ImpactOptions options) {
+        return rows > options.maxRows() || cost > options.maxCost();
+    }
+
+    private static String describe(ExplainPlan plan) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "~%.0f rows, cost %.0f", plan.rows(), plan.cost()));
+        for (String table : plan.seqScans()) {
+            sb.append(", seq scan on ").append(table);
+        }
+        return sb.toString();
+    }
+
+    private static String thresholds(double rows, double cost, ImpactOptions options) {
+        List<String> over = new ArrayList<>();
+        if (rows > options.maxRows()) {
+            over.add("rows over " + options.maxRows());
+        }
+        if (cost > options.maxCost()) {
+            over.add(String.format(Locale.ROOT, "cost over %.0f", options.maxCost()));
+        }
+        return over.isEmpty() ? "" : " (" + String.join(", ", over) + ")";
+    }
+}
@@ -0,0 +1,243 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * {@code EXPLAIN (FORMAT JSON)} の出力から読み取った、1つのステートメントの見積もり。
+ *
+ * @param rows 処理する行数の見積もり。 INSERT / UPDATE / DELETE / MERGE は書き込む行ではなく、対象として読む行の数
+ * @param cost プランナーの見積もった全体のコスト
+ * @param seqScans シーケンシャルスキャンするテーブル（プランに現れる順、重複なし）
+ */
+record ExplainPlan(double rows, double cost, List<String> seqScans) {
+
+    ExplainPlan {
+        Objects.requireNonNull(seqScans, "seqScans must not be null");
+        seqScans = List.copyOf(seqScans);
+    }
+
+    /**
+     * {@code EXPLAIN (FORMAT JSON)} の出力を読む。
+     *
+     * @param json EXPLAIN の出力
+     * @return 見積もり
+     * @throws PostgreSQLException 出力の形式が想定と違う場合
+     */
+    static ExplainPlan parse(String json) {
+        Object root = new JsonReader(json).read();
+        if (!(root instanceof List<?> list)
+                || list.isEmpty()
+                || !(list.get(0) instanceof Map<?, ?> explain)
+                || !(explain.get("Plan") instanceof Map<?, ?> plan)) {
+            throw new PostgreSQLException("Unexpected EXPLAIN output: " + json);
+        }
+        // ModifyTable 自体は RETURNING がなければ 0 行と見積もられるため、対象を読む子ノードの行数を使う
+        Map<?, ?> source = plan;
+        if ("ModifyTable".equals(plan.get("Node Type"))) {
+            List<Map<?, ?>> children = children(plan);
+            source =
+                    children.stream()
+                            .filter(child -> "Outer".equals(child.get("Parent Relationship")))
+                            .findFirst()
+                            .orElse(children.isEmpty() ? plan : children.get(0));
+        }
+        Set<String> seqScans = new LinkedHashSet<>();
+        collectSeqScans(plan, seqScans);
+        return new ExplainPlan(
+                number(source, "Plan Rows"), number(plan, "Total Cost"), List.copyOf(seqScans));
+    }
+
+    private static List<Map<?, ?>> children(Map<?, ?> node) {
+        List<Map<?, ?>> children = new ArrayList<>();
+        if (node.get("Plans") instanceof List<?> plans) {
+            for (Object plan : plans) {
+                if (plan instanceof Map<?, ?> child) {
+                    children.add(child);
+                }
+            }
+        }
+        return children;
+    }
+
+    private static void collectSeqScans(Map<?, ?> node, Set<String> seqScans) {
+        if ("Seq Scan".equals(node.get("Node Type"))
+                && node.get("Relation Name") instanceof String relation) {
+            seqScans.add(relation);
+        }
+        for (Map<?, ?> child : children(node)) {
+            collectSeqScans(child, seqScans);
+        }
+    }
+
+    private static double number(Map<?, ?> node, String key) {
+        if (!(node.get(key) instanceof Double value)) {
+            throw new PostgreSQLException("EXPLAIN output has no " + key);
+        }
+        return value;
+    }
+
+    /** EXPLAIN の出力を読むための最小限の JSON リーダー。 数値はすべて Double にする。 */
+    private static final class JsonReader {
+
+        private final String json;
+        private int pos;
+
+        JsonReader(String json) {
+            this.json = json;
+        }
+
+        @Nullable Object read() {
+            Object value = value();
+            skipWhitespace();
+            if (pos != json.length()) {
+                throw error("trailing characters");
+            }
+            return value;
+        }
+
+        private @Nullable Object value() {
+            skipWhitespace();
+            if (pos >= json.length()) {
+                throw error("unexpected end");
+            }
+            char c = json.charAt(pos);
+            return switch (c) {
+                case '{' -> object();
+                case '[' -> array();
+                case '"' -> string();
+                case 't' -> literal("true", Boolean.TRUE);
+                case 'f' -> literal("false", Boolean.FALSE);
+                case 'n' -> literal("null", null);
+                default -> number();
+            };
+        }
+
+        private Map<String, @Nullable Object> object() {
+            Map<String, @Nullable Object> map = new LinkedHashMap<>();
+            pos++;
+            skipWhitespace();
+            if (peek('}')) {
+                pos++;
+                return map;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = string();
+                skipWhitespace();
+                expect(':');
+                map.put(key, value());
+                skipWhitespace();
+                if (peek(',')) {
+                    pos++;
+                } else {
+                    expect('}');
+                    return map;
+                }
+            }
+        }
+
+        private List<@Nullable Object> array() {
+            List<@Nullable Object> list = new ArrayList<>();
+            pos++;
+            skipWhitespace();
+            if (peek(']')) {
+                pos++;
+                return list;
+            }
+            while (true) {
+                list.add(value());
+                skipWhitespace();
+                if (peek(',')) {
+                    pos++;
+                } else {
+                    expect(']');
+                    return list;
+                }
+            }
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (pos < json.length()) {
+                char c = json.charAt(pos++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos >= json.length()) {
+                    break;
+                }
+                char escaped = json.charAt(pos++);
+                switch (escaped) {
+                    case 'n' -> sb.append('\n');
+                    case 't' -> sb.append('\t');
+                    case 'r' -> sb.append('\r');
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'u' -> {
+                        if (pos + 4 > json.length()) {
+                            throw error("invalid unicode escape");
+                        }
+                        sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                        pos += 4;
+                    }
+                    default -> sb.append(escaped);
+                }
+            }
+            throw error("unterminated string");
+        }
+
+        private Double number() {
+            int start = pos;
+            while (pos < json.length() && "+-0123456789.eE".indexOf(json.charAt(pos)) >= 0) {
+                pos++;
+            }
+            try {
+                return Double.valueOf(json.substring(start, pos));
+            } catch (NumberFormatException e) {
+                throw error("invalid value");
+            }
+        }
+
+        private @Nullable Object literal(String text, @Nullable Object value) {
+            if (!json.startsWith(text, pos)) {
+                throw error("invalid value");
+            }
+            pos += text.length();
+            return value;
+        }
+
+        private void skipWhitespace() {
+            while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private boolean peek(char c) {
+            return pos < json.length() && json.charAt(pos) == c;
+        }
+
+        private void expect(char c) {
+            if (!peek(c)) {
+                throw error("expected '" + c + "'");
+            }
+            pos++;
+        }
+
+        private PostgreSQLException error(String reason) {
+            return new PostgreSQLException(
+                    "Unexpected EXPLAIN output (" + reason + " at " + pos + ")");
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import java.util.Locale;
+
+/**
+ * 履歴テーブル（migraphe_history）の id 列の型。
+ *
+ * <p>ターゲット設定の {@code history_id_type} で指定する。 列の型はテーブルを新しく作成するときにだけ使われ、
+ * 既存のテーブルの型は変更しない。
+ */
+public enum HistoryIdType {
+    /** TEXT 型（既定）。 任意の文字列の ID を保存できる。 */
+    TEXT("TEXT"),
+
+    /** ネイティブの uuid 型。 16 バイトで保存され、インデックスが TEXT の半分以下の大きさになる。 */
+    UUID("UUID");
+
+    private final String columnType;
+
+    HistoryIdType(String columnType) {
+        this.columnType = columnType;
+    }
+
+    /** CREATE TABLE で使う列の型名を返す。 */
+    String columnType() {
+        return columnType;
+    }
+
+    /**
+     * 設定値から型を決定する。
+     *
+     * @param value 設定値（"text" または "uuid"、大文字小文字は区別しない）
+     * @return 対応する型
+     * @throws PostgreSQLException 未知の値の場合
+     */
+    public static HistoryIdType parse(String value) {
+        return switch (value.toLowerCase(Locale.ROOT)) {
+            case "text" -> TEXT;
+            case "uuid" -> UUID;
+            default ->
+                    throw new PostgreSQLException(
+                            "Unknown history_id_type: " + value + " (expected text or uuid)");
+        };
+    }
+}
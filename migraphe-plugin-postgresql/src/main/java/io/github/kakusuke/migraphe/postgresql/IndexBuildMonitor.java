@@ -0,0 +1,175 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * 別の接続から {@code pg_stat_progress_create_index} を定期的に読み、インデックス作成の進捗を通知する。
+ *
+ * <p>インデックスを作成している接続は CREATE INDEX の実行中に使えないため、監視用に接続をもう1本開く。 監視用の接続が
+ * 開けない場合や読み取りに失敗した場合は、進捗の通知をやめるだけでインデックスの作成には影響しない。
+ */
+final class IndexBuildMonitor implements AutoCloseable {
+
+    private static final String PROGRESS_SQL =
+            "SELECT phase, blocks_done, blocks_total, tuples_done, tuples_total"
+                    + " FROM pg_stat_progress_create_index WHERE pid = ?";
+
+    private final @Nullable Connection connection;
+    private final @Nullable ScheduledExecutorService scheduler;
+    private final int pid;
+    private final Consumer<String> listener;
+    private @Nullable String lastMessage;
+    private boolean failed;
+
+    private IndexBuildMonitor(
+            @Nullable Connection connection,
+            int pid,
+            Duration interval,
+            Consumer<String> listener) {
+        this.connection = connection;
+        this.pid = pid;
+        this.listener = Objects.requireNonNull(listener, "listener must not be null");
+        if (connection == null) {
+            this.scheduler = null;
+            return;
+        }
+        ScheduledExecutorService scheduler =
+                Executors.newSingleThreadScheduledExecutor(
+                        r -> {
+                            Thread thread = new Thread(r, "migraphe-index-progress");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        long millis = Math.max(1, interval.toMillis());
+        scheduler.scheduleWithFixedDelay(this::poll, millis, millis, TimeUnit.MILLISECONDS);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * 監視を始める。
+     *
+     * @param environment 監視用の接続を開く接続先
+     * @param pid インデックスを作成している接続のバックエンドプロセス ID
+     * @param interval 進捗を読む間隔
+     * @param listener 進捗が変わったときに呼ばれる（監視用のスレッドから呼ばれる）
+     * @return 監視（{@link #close()} で止める）
+     */
+    static IndexBuildMonitor start(
+            PostgreSQLEnvironment environment,
+            int pid,
+            Duration interval,
+            Consumer<String> listener) {
+        Connection connection;
+        try {
+            connection = environment.createConnection();
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            connection = null;
+        }
+        return new IndexBuildMonitor(connection, pid, interval, listener);
+    }
+
+    /**
+     * 接続のバックエンドプロセス ID を取得する。
+     *
+     * @param conn 接続
+     * @return pg_backend_pid()
+     * @throws SQLException 取得に失敗した場合
+     */
+    static int backendPid(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT pg_backend_pid()");
+                ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * 進捗を表すメッセージを作る。 ブロック数が分かるフェーズではブロック数、タプル数が分かるフェーズではタプル数で割合を示す。
+     *
+     * @param phase pg_stat_progress_create_index の phase（"building index: scanning table" など）
+     * @return メッセージ
+     */
+    static String format(
+            String phase, long blocksDone, long blocksTotal, long tuplesDone, long tuplesTotal) {
+        StringBuilder message = new StringBuilder(phase);
+        if (blocksTotal > 0) {
+            message.append(
+                    String.format(
+                            Locale.ROOT,
+                            " (%d%%, %d/%d blocks)",
+                            blocksDone * 100 / blocksTotal,
+                            blocksDone,
+                            blocksTotal));
+        } else if (tuplesTotal > 0) {
+            message.append(
+                    String.format(
+                            Locale.ROOT,
+                            " (%d%%, %d/%d tuples)",
+                            tuplesDone * 100 / tuplesTotal,
+                            tuplesDone,
+                            tuplesTotal));
+        }
+        return message.toString();
+    }
+
+    /** 監視用のスレッドだけが呼び出す。 */
+    private void poll() {
+        Connection conn = connection;
+        if (conn == null || failed) {
+            return;
+        }
+        try (PreparedStatement ps = conn.prepareStatement(PROGRESS_SQL)) {
+            ps.setInt(1, pid);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return;
+                }
+                String message =
+                        format(
+                                rs.getString("phase"),
+                                rs.getLong("blocks_done"),
+                                rs.getLong("blocks_total"),
+                                rs.getLong("tuples_done"),
+                                rs.getLong("tuples_total"));
+                if (!message.equals(lastMessage)) {
+                    lastMessage = message;
+                    listener.accept(message);
+                }
+            }
+        } catch (SQLException e) {
+            // 進捗の監視をやめる（インデックスの作成は続ける）
+            failed = true;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            try {
+                scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // close failed, ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,553 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * DDL などのステートメントが既存のテーブルに取るロックの強さと、テーブルを書き直すかどうかを見積もる。
+ *
+ * <p>PostgreSQL のドキュメントにあるコマンドごとのロックレベルに従って、ステートメントの先頭のキーワードと対象の名前から判断する。
+ * 新しいオブジェクトを作るだけのステートメントや、行ロックしか取らない DML は対象にしない。 完全な構文解析はしないため、
+ * 見積もりは目安にとどまる。
+ */
+final class LockClassifier {
+
+    /** テーブルレベルのロックモード（弱い順）。 */
+    enum Mode {
+        ACCESS_SHARE,
+        ROW_SHARE,
+        ROW_EXCLUSIVE,
+        SHARE_UPDATE_EXCLUSIVE,
+        SHARE,
+        SHARE_ROW_EXCLUSIVE,
+        EXCLUSIVE,
+        ACCESS_EXCLUSIVE;
+
+        /** INSERT・UPDATE・DELETE を待たせるかどうか。 */
+        boolean blocksWrites() {
+            return compareTo(SHARE) >= 0;
+        }
+
+        String label() {
+            return name().replace('_', ' ');
+        }
+
+        static Mode strongest(Mode a, Mode b) {
+            return a.compareTo(b) >= 0 ? a : b;
+        }
+    }
+
+    /** ロックを持っている間にテーブルに対して行う処理（軽い順）。 */
+    enum Effect {
+        /** カタログの変更だけで、すぐに終わる。 */
+        NONE,
+        /** 制約の検証やインデックスの作成のため、テーブル全体を読む。 */
+        SCAN,
+        /** テーブル全体を書き直す。 */
+        REWRITE;
+
+        static Effect heaviest(Effect a, Effect b) {
+            return a.compareTo(b) >= 0 ? a : b;
+        }
+    }
+
+    /**
+     * 1つの対象に取るロック。
+     *
+     * @param relation 対象のテーブルなど（書かれたとおりの名前）
+     * @param mode ロックモード
+     * @param effect ロックを持っている間の処理
+     */
+    record Lock(String relation, Mode mode, Effect effect) {}
+
+    /** DEFAULT に使うと ADD COLUMN でテーブルを書き直す関数（行ごとに値が変わる）。 */
+    private static final Set<String> VOLATILE_FUNCTIONS =
+            Set.of(
+                    "RANDOM",
+                    "CLOCK_TIMESTAMP",
+                    "TIMEOFDAY",
+                    "NEXTVAL",
+                    "GEN_RANDOM_UUID",
+                    "UUID_GENERATE_V1",
+                    "UUID_GENERATE_V4",
+                    "TXID_CURRENT");
+
+    /** 値を連番で埋めるため、ADD COLUMN でテーブルを書き直す型。 */
+    private static final Set<String> SERIAL_TYPES = Set.of("SMALLSERIAL", "SERIAL", "BIGSERIAL");
+
+    /** ADD の後に続くと、列ではなく制約の追加になるキーワード。 */
+    private static final Set<String> CONSTRAINT_KEYWORDS =
+            Set.of("CONSTRAINT", "PRIMARY", "UNIQUE", "CHECK", "FOREIGN", "EXCLUDE");
+
+    private LockClassifier() {}
+
+    /**
+     * ステートメントが既存のテーブルに取るロックを見積もる。
+     *
+     * @param sql 1つのステートメント
+     * @return 対象ごとのロック、対象にしないステートメントの場合は空
+     */
+    static List<Lock> classify(String sql) {
+        List<String> t = tokens(sql);
+        if (t.isEmpty()) {
+            return List.of();
+        }
+        return switch (upper(t.get(0))) {
+            case "ALTER" -> alter(t);
+            case "CREATE" -> create(t);
+            case "DROP" -> drop(t);
+            case "TRUNCATE" -> names(t, skip(t, 1, "TABLE", "ONLY"), Mode.ACCESS_EXCLUSIVE);
+            case "LOCK" -> lock(t);
+            case "VACUUM" -> vacuum(t);
+            case "CLUSTER" ->
+                    single(t, skip(t, 1, "VERBOSE"), Mode.ACCESS_EXCLUSIVE, Effect.REWRITE);
+            case "REINDEX" -> reindex(t);
+            case "REFRESH" -> refresh(t);
+            default -> List.of();
+        };
+    }
+
+    private static List<Lock> alter(List<String> t) {
+        if (is(t, 1, "TABLE")) {
+            int i = skip(t, 2, "IF", "EXISTS", "ONLY");
+            Name name = name(t, i);
+            if (name == null) {
+                return List.of();
+            }
+            Mode mode = Mode.ACCESS_SHARE;
+            Effect effect = Effect.NONE;
+            for (List<String> action : actions(t, name.next())) {
+                Lock lock = alterAction(name.value(), action);
+                mode = Mode.strongest(mode, lock.mode());
+                effect = Effect.heaviest(effect, lock.effect());
+            }
+            return List.of(new Lock(name.value(), mode, effect));
+        }
+        if (is(t, 1, "INDEX")) {
+            // SET TABLESPACE はインデックスを書き直す
+            int i = skip(t, 2, "IF", "EXISTS");
+            boolean tablespace = indexOf(t, "TABLESPACE") >= 0;
+            return single(
+                    t,
+                    i,
+                    tablespace ? Mode.ACCESS_EXCLUSIVE : Mode.SHARE_UPDATE_EXCLUSIVE,
+                    tablespace ? Effect.REWRITE : Effect.NONE);
+        }
+        return List.of();
+    }
+
+    /** ALTER TABLE の1つの操作が取るロック。 */
+    private static Lock alterAction(String table, List<String> a) {
+        String first = upper(a.get(0));
+        if (first.equals("ADD")) {
+            if (a.size() > 1 && CONSTRAINT_KEYWORDS.contains(upper(a.get(1)))) {
+                return addConstraint(table, a);
+            }
+            return new Lock(table, Mode.ACCESS_EXCLUSIVE, addColumnEffect(a));
+        }
+        if (first.equals("ALTER")) {
+            int i = skip(a, 1, "COLUMN") + 1;
+            if (is(a, i, "TYPE") || (is(a, i, "SET") && is(a, i + 1, "DATA"))) {
+                return new Lock(table, Mode.ACCESS_EXCLUSIVE, Effect.REWRITE);
+            }
+            if (is(a, i, "SET") && is(a, i + 1, "NOT")) {
+                return new Lock(table, Mode.ACCESS_EXCLUSIVE, Effect.SCAN);
+            }
+            if (is(a, i, "SET") && is(a, i + 1, "STATISTICS")) {
+                return new Lock(table, Mode.SHARE_UPDATE_EXCLUSIVE, Effect.NONE);
+            }
+            return new Lock(table, Mode.ACCESS_EXCLUSIVE, Effect.NONE);
+        }
+        if (first.equals("VALIDATE")) {
+            return new Lock(table, Mode.SHARE_UPDATE_EXCLUSIVE, Effect.SCAN);
+        }
+        if (first.equals("SET")) {
+            if (is(a, 1, "TABLESPACE")
+                    || is(a, 1, "LOGGED")
+                    || is(a, 1, "UNLOGGED")
+                    || is(a, 1, "ACCESS")) {
+                return new Lock(table, Mode.ACCESS_EXCLUSIVE, Effect.REWRITE);
+            }
+            if (is(a, 1, "(") || (is(a, 1, "WITHOUT") && is(a, 2, "CLUSTER"))) {
+                return new Lock(table, Mode.SHARE_UPDATE_EXCLUSIVE, Effect.NONE);
+            }
+            return new Lock(table, Mode.ACCESS_EXCLUSIVE, Effect.NONE);
+        }
+        if (first.equals("RESET") || first.equals("CLUSTER")) {
+            return new Lock(table, Mode.SHARE_UPDATE_EXCLUSIVE, Effect.NONE);
+        }
+        if (first.equals("ENABLE") || first.equals("DISABLE")) {
+            return new Lock(
+                    table,
+                    is(a, 1, "TRIGGER") ? Mode.SHARE_ROW_EXCLUSIVE : Mode.ACCESS_EXCLUSIVE,
+                    Effect.NONE);
+        }
+        if (first.equals("ATTACH")) {
+            // 親テーブルのロックは SHARE UPDATE EXCLUSIVE、追加するパーティションは制約の検証のため読む
+            return new Lock(table, Mode.SHARE_UPDATE_EXCLUSIVE, Effect.SCAN);
+        }
+        if (first.equals("DETACH")) {
+            return new Lock(
+                    table,
+                    indexOf(a, "CONCURRENTLY") >= 0
+                            ? Mode.SHARE_UPDATE_EXCLUSIVE
+                            : Mode.ACCESS_EXCLUSIVE,
+                    Effect.NONE);
+        }
+        return new Lock(table, Mode.ACCESS_EXCLUSIVE, Effect.NONE);
+    }
+
+    private static Lock addConstraint(String table, List<String> a) {
+        boolean notValid = containsSequence(a, "NOT", "VALID");
+        boolean usingIndex = containsSequence(a, "USING", "INDEX");
+        Mode mode =
+                indexOf(a, "FOREIGN") >= 0 ? Mode.SHARE_ROW_EXCLUSIVE : Mode.ACCESS_EXCLUSIVE;
+        return new Lock(table, mode, notValid || usingIndex ? Effect.NONE : Effect.SCAN);
+    }
+
+    /** ADD COLUMN が既存の行を書き直すかどうか。 揮発性のデフォルト値・生成列・連番の列は書き直す。 */
+    private static Effect addColumnEffect(List<String> a) {
+        int defaultAt = indexOf(a, "DEFAULT");
+        for (int i = 0; i < a.size(); i++) {
+            String token = upper(a.get(i));
+            if (SERIAL_TYPES.contains(token)
+                    || token.equals("GENERATED")
+                    || (defaultAt >= 0
+                            && i > defaultAt
+                            && VOLATILE_FUNCTIONS.contains(token)
+                            && is(a, i + 1, "("))) {
+                return Effect.REWRITE;
+            }
+        }
+        if (indexOf(a, "PRIMARY") >= 0 || indexOf(a, "UNIQUE") >= 0) {
+            return Effect.SCAN;
+        }
+        return Effect.NONE;
+    }
+
+    private static List<Lock> create(List<String> t) {
+        int i = skip(t, 1, "OR", "REPLACE", "UNIQUE", "CONSTRAINT");
+        if (is(t, i, "INDEX")) {
+            int on = indexOf(t, "ON");
+            if (on < 0) {
+                return List.of();
+            }
+            boolean concurrently = indexOf(t, "CONCURRENTLY") >= 0;
+            return single(
+                    t,
+                    skip(t, on + 1, "ONLY"),
+                    concurrently ? Mode.SHARE_UPDATE_EXCLUSIVE : Mode.SHARE,
+                    Effect.SCAN);
+        }
+        if (is(t, i, "TRIGGER")) {
+            int on = indexOf(t, "ON");
+            return on < 0 ? List.of() : single(t, on + 1, Mode.SHARE_ROW_EXCLUSIVE, Effect.NONE);
+        }
+        return List.of();
+    }
+
+    private static List<Lock> drop(List<String> t) {
+        if (is(t, 1, "TABLE")) {
+            return names(t, skip(t, 2, "IF", "EXISTS"), Mode.ACCESS_EXCLUSIVE);
+        }
+        if (is(t, 1, "INDEX")) {
+            boolean concurrently = is(t, 2, "CONCURRENTLY");
+            return names(
+                    t,
+                    skip(t, 2, "CONCURRENTLY", "IF", "EXISTS"),
+                    concurrently ? Mode.SHARE_UPDATE_EXCLUSIVE : Mode.ACCESS_EXCLUSIVE);
+        }
+        return List.of();
+    }
+
+    private static List<Lock> lock(List<String> t) {
+        int i = skip(t, 1, "TABLE", "ONLY");
+        int in = indexOf(t, "IN");
+        Mode mode = Mode.ACCESS_EXCLUSIVE;
+        if (in >= 0) {
+            int modeAt = indexOf(t, "MODE");
+            if (modeAt > in + 1) {
+                String words = String.join("_", t.subList(in + 1, modeAt));
+                try {
+                    mode = Mode.valueOf(words.toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    // 知らないモードは最も強いものとして扱う
+                }
+            }
+        }
+        return names(t, i, mode);
+    }
+
+    private static List<Lock> vacuum(List<String> t) {
+        // VACUUM FULL t、または VACUUM (FULL) t
+        boolean full = false;
+        for (String token : t) {
+            if (upper(token).equals("FULL")) {
+                full = true;
+            }
+        }
+        if (!full) {
+            return List.of();
+        }
+        int start = skip(t, 1, "FULL", "FREEZE", "VERBOSE", "ANALYZE");
+        if (is(t, start, "(")) {
+            start = indexOf(t, ")") + 1;
+        }
+        return names(t, start, Mode.ACCESS_EXCLUSIVE, Effect.REWRITE);
+    }
+
+    private static List<Lock> reindex(List<String> t) {
+        int i = 1;
+        if (is(t, i, "(")) {
+            i = indexOf(t, ")") + 1;
+        }
+        boolean table = is(t, i, "TABLE");
+        if (!table && !is(t, i, "INDEX")) {
+            return List.of();
+        }
+        boolean concurrently = is(t, i + 1, "CONCURRENTLY");
+        Mode mode =
+                concurrently
+                        ? Mode.SHARE_UPDATE_EXCLUSIVE
+                        : table ? Mode.SHARE : Mode.ACCESS_EXCLUSIVE;
+        return single(t, skip(t, i + 1, "CONCURRENTLY"), mode, Effect.REWRITE);
+    }
+
+    private static List<Lock> refresh(List<String> t) {
+        if (!is(t, 1, "MATERIALIZED")) {
+            return List.of();
+        }
+        boolean concurrently = is(t, 3, "CONCURRENTLY");
+        return single(
+                t,
+                skip(t, 3, "CONCURRENTLY"),
+                concurrently ? Mode.EXCLUSIVE : Mode.ACCESS_EXCLUSIVE,
+                Effect.REWRITE);
+    }
+
+    private static List<Lock> single(List<String> t, int i, Mode mode, Effect effect) {
+        Name name = name(t, i);
+        return name == null ? List.of() : List.of(new Lock(name.value(), mode, effect));
+    }
+
+    /** カンマ区切りの名前のそれぞれに同じロックを取る（DROP TABLE a, b など）。 */
+    private static List<Lock> names(List<String> t, int i, Mode mode) {
+        return names(t, i, mode, Effect.NONE);
+    }
+
+    private static List<Lock> names(List<String> t, int i, Mode mode, Effect effect) {
+        List<Lock> locks = new ArrayList<>();
+        Name name = name(t, i);
+        while (name != null) {
+            locks.add(new Lock(name.value(), mode, effect));
+            int next = name.next();
+            if (!is(t, next, ",")) {
+                break;
+            }
+            name = name(t, skip(t, next + 1, "ONLY"));
+        }
+        return locks;
+    }
+
+    /** 読み取った名前と、その次のトークンの位置。 */
+    private record Name(String value, int next) {}
+
+    /** i から始まる（スキーマ修飾可の）名前を読む。 */
+    private static @Nullable Name name(List<String> t, int i) {
+        if (i >= t.size() || !isName(t.get(i))) {
+            return null;
+        }
+        StringBuilder value = new StringBuilder(t.get(i));
+        int next = i + 1;
+        while (is(t, next, ".") && next + 1 < t.size() && isName(t.get(next + 1))) {
+            value.append('.').append(t.get(next + 1));
+            next += 2;
+        }
+        return new Name(value.toString(), next);
+    }
+
+    /** ALTER TABLE の操作をトップレベルのカンマで分ける。 */
+    private static List<List<String>> actions(List<String> t, int from) {
+        List<List<String>> actions = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        int depth = 0;
+        for (int i = from; i < t.size(); i++) {
+            String token = t.get(i);
+            if (token.equals("(")) {
+                depth++;
+            } else if (token.equals(")")) {
+                depth--;
+            } else if (token.equals(",") && depth == 0) {
+                if (!current.isEmpty()) {
+                    actions.add(current);
+                }
+                current = new ArrayList<>();
+                continue;
+            }
+            current.add(token);
+        }
+        if (!current.isEmpty()) {
+            actions.add(current);
+        }
+        return actions;
+    }
+
+    /** i から、指定したキーワードが続く間読み飛ばした位置を返す。 */
+    private static int skip(List<String> t, int i, String... keywords) {
+        int pos = i;
+        outer:
+        while (pos < t.size()) {
+            for (String keyword : keywords) {
+                if (upper(t.get(pos)).equals(keyword)) {
+                    pos++;
+                    continue outer;
+                }
+            }
+            break;
+        }
+        return pos;
+    }
+
+    private static boolean is(List<String> t, int i, String keyword) {
+        return i >= 0 && i < t.size() && upper(t.get(i)).equals(keyword);
+    }
+
+    private static int indexOf(List<String> t, String keyword) {
+        for (int i = 0; i < t.size(); i++) {
+            if (upper(t.get(i)).equals(keyword)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean containsSequence(List<String> t, String first, String second) {
+        for (int i = 0; i + 1 < t.size(); i++) {
+            if (is(t, i, first) && is(t, i + 1, second)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isName(String token) {
+        char first = token.charAt(0);
+        return first == '"' || first == '_' || Character.isLetter(first);
+    }
+
+    private static String upper(String token) {
+        return token.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * ステートメントをトークンに分ける。 コメントは捨て、文字列リテラルとドル引用は {@code '} 1文字のトークンにする。
+     * 引用符付き識別子は引用符ごと1つのトークンにする。
+     */
+    static List<String> tokens(String sql) {
+        List<String> tokens = new ArrayList<>();
+        int n = sql.length();
+        int i = 0;
+        while (i < n) {
+            char ch = sql.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                i++;
+            } else if (ch == '-' && i + 1 < n && sql.charAt(i + 1) == '-') {
+                while (i < n && sql.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (ch == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+                int depth = 1;
+                i += 2;
+                while (i < n && depth > 0) {
+                    if (sql.startsWith("/*", i)) {
+                        depth++;
+                        i += 2;
+                    } else if (sql.startsWith("*/", i)) {
+                        depth--;
+                        i += 2;
+                    } else {
+                        i++;
+                    }
+                }
+            } else if (ch == '\'') {
+                // E'...' の E は直前の識別子として読んでいるので取り除く
+                boolean escapes =
+                        !tokens.isEmpty()
+                                && tokens.get(tokens.size() - 1).equalsIgnoreCase("E")
+                                && i > 0
+                                && !Character.isWhitespace(sql.charAt(i - 1));
+                if (escapes) {
+                    tokens.remove(tokens.size() - 1);
+                }
+                i++;
+                while (i < n) {
+                    char c = sql.charAt(i);
+                    if (escapes && c == '\\') {
+                        i += 2;
+                    } else if (c == '\'' && i + 1 < n && sql.charAt(i + 1) == '\'') {
+                        i += 2;
+                    } else if (c == '\'') {
+                        i++;
+                        break;
+                    } else {
+                        i++;
+                    }
+                }
+                tokens.add("'");
+            } else if (ch == '"') {
+                int start = i++;
+                while (i < n) {
+                    if (sql.charAt(i) == '"' && i + 1 < n && sql.charAt(i + 1) == '"') {
+                        i += 2;
+                    } else if (sql.charAt(i++) == '"') {
+                        break;
+                    }
+                }
+                tokens.add(sql.substring(start, i));
+            } else if (ch == '$') {
+                String tag = dollarTag(sql, i);
+                if (tag == null) {
+                    tokens.add("$");
+                    i++;
+                } else {
+                    int end = sql.indexOf(tag, i + tag.length());
+                    i = end < 0 ? n : end + tag.length();
+                    tokens.add("'");
+                }
+            } else if (Character.isLetterOrDigit(ch) || ch == '_') {
+                int start = i;
+                while (i < n
+                        && (Character.isLetterOrDigit(sql.charAt(i))
+                                || sql.charAt(i) == '_'
+                                || sql.charAt(i) == '$')) {
+                    i++;
+                }
+                tokens.add(sql.substring(start, i));
+            } else {
+                tokens.add(String.valueOf(ch));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    /** i から始まるドル引用の開始タグ（{@code $$} や {@code $tag$}）、なければ null。 */
+    private static @Nullable String dollarTag(String sql, int i) {
+        int j = i + 1;
+        while (j < sql.length()
+                && (Character.isLetterOrDigit(sql.charAt(j)) || sql.charAt(j) == '_')) {
+            j++;
+        }
+        if (j < sql.length() && sql.charAt(j) == '$' && (j == i + 1 || !isDigit(sql, i + 1))) {
+            return sql.substring(i, j + 1);
+        }
+        return null;
+    }
+
+    private static boolean isDigit(String sql, int i) {
+        return Character.isDigit(sql.charAt(i));
+    }
+}
@@ -0,0 +1,171 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import io.github.kakusuke.migraphe.api.task.ImpactFinding;
+import io.github.kakusuke.migraphe.postgresql.PostgreSQLScriptReader.ScriptStatement;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * UP マイグレーションのステートメントごとに、既存のテーブルに取るロックとテーブルの大きさから影響を見積もる。
+ *
+ * <p>テーブルの大きさは {@code pg_class} から読む。 書き込みを止めるロック（SHARE 以上）を取ったままテーブル全体を読むか
+ * 書き直すステートメントのうち、対象のテーブルが {@link #LARGE_TABLE_BYTES} 以上のものを影響が大きいとする。
+ */
+final class LockImpactAnalyzer {
+
+    /** 影響が大きいとみなすテーブルの大きさ（インデックスと TOAST を含む）。 */
+    static final long LARGE_TABLE_BYTES = 100L * 1024 * 1024;
+
+    /** 表示するステートメントの最大文字数。 */
+    private static final int EXCERPT_LENGTH = 60;
+
+    private LockImpactAnalyzer() {}
+
+    /** ロックを取るステートメントと、その対象。 */
+    private record StatementLock(String statement, LockClassifier.Lock lock) {}
+
+    /** pg_class から読んだテーブルの大きさ。 */
+    private record TableSize(long bytes, String pretty, long rows) {}
+
+    static List<ImpactFinding> analyze(PostgreSQLEnvironment environment, SqlSource source) {
+        return analyze(environment, source, LARGE_TABLE_BYTES);
+    }
+
+    /**
+     * UP マイグレーションの影響を見積もる。
+     *
+     * @param environment テーブルの大きさを読む接続先
+     * @param source UP マイグレーション
+     * @param largeTableBytes 影響が大きいとみなすテーブルの大きさ
+     * @return ロックを取るステートメントごとの影響
+     */
+    static List<ImpactFinding> analyze(
+            PostgreSQLEnvironment environment, SqlSource source, long largeTableBytes) {
+        List<ImpactFinding> findings = new ArrayList<>();
+        List<StatementLock> locks = new ArrayList<>();
+        try {
+            for (String statement : statements(source)) {
+                for (LockClassifier.Lock lock : LockClassifier.classify(statement)) {
+                    locks.add(new StatementLock(statement, lock));
+                }
+            }
+        } catch (IOException e) {
+            findings.add(ImpactFinding.of("Could not read SQL: " + e.getMessage()));
+        }
+        if (locks.isEmpty()) {
+            return findings;
+        }
+
+        Map<String, @Nullable TableSize> sizes = new HashMap<>();
+        boolean sizesKnown = true;
+        try (Connection conn = environment.createConnection()) {
+            for (StatementLock lock : locks) {
+                String relation = lock.lock().relation();
+                if (!sizes.containsKey(relation)) {
+                    sizes.put(relation, tableSize(conn, relation));
+                }
+            }
+        } catch (SQLException e) {
+            sizesKnown = false;
+            findings.add(ImpactFinding.of("Could not look up table sizes: " + e.getMessage()));
+        }
+
+        for (StatementLock lock : locks) {
+            LockClassifier.Lock l = lock.lock();
+            TableSize size = sizes.get(l.relation());
+            StringBuilder message = new StringBuilder(l.mode().label());
+            message.append(" on ").append(l.relation());
+            switch (l.effect()) {
+                case SCAN -> message.append(", scans table");
+                case REWRITE -> message.append(", rewrites table");
+                case NONE -> {}
+            }
+            message.append(" (").append(describe(size, sizesKnown)).append("): ");
+            message.append(excerpt(lock.statement()));
+            boolean high =
+                    l.mode().blocksWrites()
+                            && l.effect() != LockClassifier.Effect.NONE
+                            && size != null
+                            && size.bytes() >= largeTableBytes;
+            findings.add(new ImpactFinding(high, message.toString()));
+        }
+        return findings;
+    }
+
+    /** 見積もりの対象にするステートメント。 COPY とバックフィルは行ロックしか取らない。 */
+    private static List<String> statements(SqlSource source) throws IOException {
+        return switch (source) {
+            case SqlSource.Inline inline -> split(new StringReader(inline.sql()));
+            case SqlFile file -> split(file.open());
+            case CopyLoad copy -> copy.truncate() ? List.of("TRUNCATE " + copy.table()) : List.of();
+            case CreateIndex index -> List.of(index.createSql());
+            case Backfill backfill -> List.of();
+        };
+    }
+
+    /** スクリプトをステートメントに分ける。 */
+    static List<String> split(Reader reader) throws IOException {
+        List<String> statements = new ArrayList<>();
+        try (PostgreSQLScriptReader script = PostgreSQLScriptReader.of(reader)) {
+            ScriptStatement statement;
+            while ((statement = script.next()) != null) {
+                statements.add(statement.sql());
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * テーブルの大きさを読む。
+     *
+     * @return テーブルの大きさ、まだ存在しない場合は null
+     */
+    private static @Nullable TableSize tableSize(Connection conn, String relation)
+            throws SQLException {
+        String sql =
+                """
+                SELECT pg_total_relation_size(c.oid),
+                       pg_size_pretty(pg_total_relation_size(c.oid)),
+                       c.reltuples::bigint
+                FROM pg_class c WHERE c.oid = to_regclass(?)
+                """;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, relation);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new TableSize(rs.getLong(1), rs.getString(2), rs.getLong(3));
+            }
+        }
+    }
+
+    private static String describe(@Nullable TableSize size, boolean sizesKnown) {
+        if (!sizesKnown) {
+            return "size unknown";
+        }
+        if (size == null) {
+            return "not yet created";
+        }
+        // reltuples は一度も ANALYZE されていないテーブルでは -1
+        return size.rows() >= 0 ? size.pretty() + ", ~" + size.rows() + " rows" : size.pretty();
+    }
+
+    /** ステートメントを1行に縮めて、長ければ切り詰める。 */
+    static String excerpt(String statement) {
+        String line = statement.strip().replaceAll("\\s+", " ");
+        return line.length() <= EXCERPT_LENGTH
+                ? line
+                : line.substring(0, EXCERPT_LENGTH - 3) + "...";
+    }
+}
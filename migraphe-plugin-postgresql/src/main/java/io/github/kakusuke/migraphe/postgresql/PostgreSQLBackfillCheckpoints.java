@@ -0,0 +1,107 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * migraphe_backfill_checkpoint テーブルでバックフィルのチェックポイントを管理する。
+ *
+ * <p>チェックポイントはバックフィルの定義のハッシュと一緒に保存し、定義が変わった場合は無視して最初からやり直す。
+ * いずれの操作も呼び出し側の接続とトランザクションで行う。
+ */
+final class PostgreSQLBackfillCheckpoints {
+
+    private static final String SCHEMA_RESOURCE =
+            "/io/github/kakusuke/migraphe/postgresql/schema/init_backfill_checkpoint_table.sql";
+
+    private PostgreSQLBackfillCheckpoints() {}
+
+    /** テーブルがなければ作成する。 */
+    static void applySchema(Connection conn) throws SQLException {
+        try (InputStream is =
+                PostgreSQLBackfillCheckpoints.class.getResourceAsStream(SCHEMA_RESOURCE)) {
+            if (is == null) {
+                throw new IOException("Schema resource not found: " + SCHEMA_RESOURCE);
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(new String(is.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            throw new PostgreSQLException("Failed to load schema resource", e);
+        }
+    }
+
+    /**
+     * 処理済みの最後のキーを返す。
+     *
+     * @return 同じ定義で保存されたチェックポイントのキー、なければ null
+     */
+    static @Nullable Long find(
+            Connection conn, NodeId nodeId, EnvironmentId environmentId, String contentHash)
+            throws SQLException {
+        String sql =
+                """
+                SELECT content_hash, last_key FROM migraphe_backfill_checkpoint
+                WHERE node_id = ? AND environment_id = ?
+                """;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, nodeId.value());
+            pstmt.setString(2, environmentId.value());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next() && contentHash.equals(rs.getString("content_hash"))) {
+                    return rs.getLong("last_key");
+                }
+                return null;
+            }
+        }
+    }
+
+    /** 処理済みの最後のキーを保存する。 */
+    static void save(
+            Connection conn,
+            NodeId nodeId,
+            EnvironmentId environmentId,
+            String contentHash,
+            long lastKey)
+            throws SQLException {
+        String sql =
+                """
+                INSERT INTO migraphe_backfill_checkpoint
+                    (node_id, environment_id, content_hash, last_key)
+                VALUES (?, ?, ?, ?)
+                ON CONFLICT (node_id, environment_id) DO UPDATE
+                SET content_hash = EXCLUDED.content_hash,
+                    last_key = EXCLUDED.last_key,
+                    updated_at = LOCALTIMESTAMP
+                """;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, nodeId.value());
+            pstmt.setString(2, environmentId.value());
+            pstmt.setString(3, contentHash);
+            pstmt.setLong(4, lastKey);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /** 完了したバックフィルのチェックポイントを破棄する。 */
+    static void clear(Connection conn, NodeId nodeId, EnvironmentId environmentId)
+            throws SQLException {
+        try (PreparedStatement pstmt =
+                conn.prepareStatement(
+                        "DELETE FROM migraphe_backfill_checkpoint"
+                                + " WHERE node_id = ? AND environment_id = ?")) {
+            pstmt.setString(1, nodeId.value());
+            pstmt.setString(2, environmentId.value());
+            pstmt.executeUpdate();
+        }
+    }
+}
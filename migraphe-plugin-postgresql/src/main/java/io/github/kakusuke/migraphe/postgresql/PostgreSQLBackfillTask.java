@@ -0,0 +1,216 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import io.github.kakusuke.migraphe.api.common.Result;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.task.ImpactAnalyzer;
+import io.github.kakusuke.migraphe.api.task.ImpactFinding;
+import io.github.kakusuke.migraphe.api.task.ImpactOptions;
+import io.github.kakusuke.migraphe.api.task.SqlContentProvider;
+import io.github.kakusuke.migraphe.api.task.Task;
+import io.github.kakusuke.migraphe.api.task.TaskExecutionContext;
+import io.github.kakusuke.migraphe.api.task.TaskResult;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Objects;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * キーの範囲ごとにコミットしながらバックフィルを実行するタスク。
+ *
+ * <p>範囲ごとに処理済みの最後のキーを migraphe_backfill_checkpoint テーブルに保存し、途中で失敗・中断した場合は
+ * 次の実行でその次のキーから再開する。 チェックポイントは履歴と同じ PostgreSQL に保存する。 履歴が接続先と同じデータベース
+ * にあれば範囲と同じトランザクションで保存し、別のデータベースにあれば範囲のコミット後に保存する。 履歴が PostgreSQL
+ * でなければ接続先のデータベースに保存する。
+ */
+public final class PostgreSQLBackfillTask implements Task, SqlContentProvider, ImpactAnalyzer {
+
+    private final PostgreSQLEnvironment environment;
+    private final NodeId nodeId;
+    private final Backfill backfill;
+    private final @Nullable SqlSource downSql;
+    private final SessionProfile session;
+
+    private PostgreSQLBackfillTask(
+            PostgreSQLEnvironment environment,
+            NodeId nodeId,
+            Backfill backfill,
+            @Nullable SqlSource downSql,
+            SessionProfile session) {
+        this.environment = Objects.requireNonNull(environment, "environment must not be null");
+        this.nodeId = Objects.requireNonNull(nodeId, "nodeId must not be null");
+        this.backfill = Objects.requireNonNull(backfill, "backfill must not be null");
+        this.downSql = downSql;
+        this.session = Objects.requireNonNull(session, "session must not be null");
+    }
+
+    /**
+     * バックフィルのタスクを作成する。
+     *
+     * @param environment PostgreSQL 環境
+     * @param nodeId チェックポイントのキーにするノード ID
+     * @param backfill 実行するバックフィル
+     * @param downSql DOWN SQL（ロールバック用、null 許容）
+     * @param session 範囲を実行する接続に設定するセッションの設定
+     * @return バックフィルのタスク
+     */
+    static PostgreSQLBackfillTask create(
+            PostgreSQLEnvironment environment,
+            NodeId nodeId,
+            Backfill backfill,
+            @Nullable SqlSource downSql,
+            SessionProfile session) {
+        return new PostgreSQLBackfillTask(environment, nodeId, backfill, downSql, session);
+    }
+
+    @Override
+    public Result<TaskResult, String> execute() {
+        long startTime = System.currentTimeMillis();
+        try (Connection conn = environment.createConnection()) {
+            session.apply(conn);
+            return execute(conn, conn, null, startTime);
+        } catch (SQLException e) {
+            return Result.err("Failed to establish database connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>範囲の実行には実行の間共有する接続を使う。 履歴が接続先と同じデータベースにあれば、成功記録を最後のチェックポイントの
+     * 削除と同じトランザクションで書き込む。
+     */
+    @Override
+    public Result<TaskResult, String> execute(TaskExecutionContext context) {
+        long startTime = System.currentTimeMillis();
+        try {
+            Connection conn = PostgreSQLSession.acquire(context, environment, session);
+            if (context.historyRepository() instanceof PostgreSQLHistoryRepository history
+                    && !history.sharesDatabaseWith(environment)) {
+                try (Connection checkpointConn = history.environment().createConnection()) {
+                    return execute(conn, checkpointConn, context, startTime);
+                }
+            }
+            return execute(conn, conn, context, startTime);
+        } catch (SQLException e) {
+            return Result.err("Failed to establish database connection: " + e.getMessage());
+        }
+    }
+
+    private Result<TaskResult, String> execute(
+            Connection conn,
+            Connection checkpointConn,
+            @Nullable TaskExecutionContext context,
+            long startTime) {
+        boolean sameDatabase = conn == checkpointConn;
+        String hash = backfill.checkpointHash();
+        try {
+            checkpointConn.setAutoCommit(true);
+            PostgreSQLBackfillCheckpoints.applySchema(checkpointConn);
+            Long lastKey =
+                    PostgreSQLBackfillCheckpoints.find(
+                            checkpointConn, nodeId, environment.id(), hash);
+
+            // 同じデータベースなら範囲と一緒にコミットし、別のデータベースならコミットの後に保存する
+            Backfill.Checkpoint checkpoint =
+                    sameDatabase
+                            ? new Backfill.Checkpoint() {
+                                @Override
+                                public void beforeCommit(Connection c, long key)
+                                        throws SQLException {
+                                    PostgreSQLBackfillCheckpoints.save(
+                                            c, nodeId, environment.id(), hash, key);
+                                }
+                            }
+                            : new Backfill.Checkpoint() {
+                                @Override
+                                public void afterCommit(long key) throws SQLException {
+                                    PostgreSQLBackfillCheckpoints.save(
+                                            checkpointConn, nodeId, environment.id(), hash, key);
+                                }
+                            };
+            String detail =
+                    backfill.run(
+                            conn,
+                            lastKey,
+                            checkpoint,
+                            context != null ? context::progress : message -> {},
+                            context != null ? context::throttle : () -> {});
+
+            long durationMs = System.currentTimeMillis() - startTime;
+            TaskResult result =
+                    result("Backfill executed in " + durationMs + "ms: " + detail, detail);
+            PostgreSQLHistoryRepository sharedHistory = sharedHistory(context);
+            if (sameDatabase) {
+                // 成功記録とチェックポイントの削除を一緒にコミットする
+                PostgreSQLBackfillCheckpoints.clear(conn, nodeId, environment.id());
+                if (context != null && sharedHistory != null) {
+                    sharedHistory.record(conn, context.successRecord(result, durationMs));
+                }
+                conn.commit();
+                if (context != null && sharedHistory != null) {
+                    context.markRecorded();
+                }
+            } else {
+                PostgreSQLBackfillCheckpoints.clear(checkpointConn, nodeId, environment.id());
+            }
+            return Result.ok(result);
+        } catch (SQLException e) {
+            rollbackQuietly(conn);
+            return Result.err("Failed to backfill " + backfill.table() + ": " + e.getMessage());
+        }
+    }
+
+    /** 処理した行数などの要約は、同じトランザクションで書く履歴にも残るよう TaskResult に含める。 */
+    private TaskResult result(String message, String detail) {
+        TaskResult result =
+                downSql != null
+                        ? TaskResult.withDownTask(message, downSql.text())
+                        : TaskResult.withoutDownTask(message);
+        return result.withDetail(detail);
+    }
+
+    /** 履歴の保存先がこのタスクと同じデータベースであれば、その HistoryRepository を返す。 */
+    private @Nullable PostgreSQLHistoryRepository sharedHistory(
+            @Nullable TaskExecutionContext context) {
+        if (context != null
+                && context.historyRepository() instanceof PostgreSQLHistoryRepository history
+                && history.sharesDatabaseWith(environment)) {
+            return history;
+        }
+        return null;
+    }
+
+    private static void rollbackQuietly(Connection conn) {
+        try {
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+            }
+        } catch (SQLException rollbackEx) {
+            // rollback failed, ignore
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>範囲ごとに行ロックしか取らないため、{@link ImpactOptions#explain()} が true の場合だけ、最初の範囲の行数と
+     * コストを EXPLAIN で見積もる。
+     */
+    @Override
+    public List<ImpactFinding> analyzeImpact(ImpactOptions options) {
+        return options.explain()
+                ? ExplainImpactAnalyzer.analyze(environment, backfill, options)
+                : List.of();
+    }
+
+    @Override
+    public String description() {
+        return "PostgreSQL backfill (batches of " + backfill.batchSize() + " keys)";
+    }
+
+    @Override
+    public String sqlContent() {
+        return backfill.text();
+    }
+}
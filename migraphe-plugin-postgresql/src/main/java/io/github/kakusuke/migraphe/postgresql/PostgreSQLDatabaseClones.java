@@ -0,0 +1,166 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * {@code CREATE DATABASE ... TEMPLATE} でデータベースを複製する。
+ *
+ * <p>複製したデータベースにはテンプレート名を含むコメントを付け、一覧と削除はそのコメントを持つデータベースに限る。 複製と
+ * 削除はテンプレート以外のデータベース（{@value #MAINTENANCE_DATABASE}）に接続して行う。 テンプレートに他のセッションが
+ * 接続している間は複製できない。
+ */
+final class PostgreSQLDatabaseClones {
+
+    /** 複製と削除のために接続するデータベース。 */
+    static final String MAINTENANCE_DATABASE = "postgres";
+
+    private static final String JDBC_PREFIX = "jdbc:postgresql:";
+
+    /** 複製の名前。 引用符なしで書ける小文字の識別子に限る。 */
+    private static final Pattern NAME = Pattern.compile("[a-z_][a-z0-9_$]{0,62}");
+
+    private PostgreSQLDatabaseClones() {}
+
+    /**
+     * テンプレートを複製する。 同じ名前の複製が既にあれば削除してから作り直す。
+     *
+     * @param conn テンプレート以外のデータベースへの接続
+     * @param template テンプレートのデータベース名
+     * @param name 複製のデータベース名
+     * @throws PostgreSQLException 名前が不正な場合、同じ名前の複製でないデータベースがある場合
+     * @throws SQLException 複製に失敗した場合
+     */
+    static void create(Connection conn, String template, String name) throws SQLException {
+        if (!NAME.matcher(name).matches()) {
+            throw new PostgreSQLException("Invalid clone database name: " + name);
+        }
+        if (exists(conn, name)) {
+            drop(conn, template, name);
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(
+                    "CREATE DATABASE " + quoteIdent(name) + " TEMPLATE " + quoteIdent(template));
+            stmt.execute(
+                    "COMMENT ON DATABASE "
+                            + quoteIdent(name)
+                            + " IS "
+                            + quoteLiteral(marker(template)));
+        }
+    }
+
+    /**
+     * テンプレートから作成した複製の名前を返す。
+     *
+     * @param conn テンプレート以外のデータベースへの接続
+     * @param template テンプレートのデータベース名
+     * @return 複製のデータベース名（名前順）
+     * @throws SQLException 読み取りに失敗した場合
+     */
+    static List<String> list(Connection conn, String template) throws SQLException {
+        List<String> names = new ArrayList<>();
+        try (PreparedStatement ps =
+                conn.prepareStatement(
+                        "SELECT datname FROM pg_database"
+                                + " WHERE shobj_description(oid, 'pg_database') = ?"
+                                + " ORDER BY datname")) {
+            ps.setString(1, marker(template));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    names.add(rs.getString(1));
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 複製を削除する。 接続中のセッションは切断する。
+     *
+     * @param conn テンプレート以外のデータベースへの接続
+     * @param template テンプレートのデータベース名
+     * @param name 複製のデータベース名
+     * @throws PostgreSQLException テンプレートの複製でない場合
+     * @throws SQLException 削除に失敗した場合
+     */
+    static void drop(Connection conn, String template, String name) throws SQLException {
+        if (!list(conn, template).contains(name)) {
+            throw new PostgreSQLException(
+                    "Database " + name + " is not a clone of " + template);
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP DATABASE " + quoteIdent(name) + " WITH (FORCE)");
+        }
+    }
+
+    /**
+     * JDBC URL のデータベース名を返す。
+     *
+     * @throws PostgreSQLException URL がデータベース名を含まない場合
+     */
+    static String databaseName(String jdbcUrl) {
+        int[] span = databaseSpan(jdbcUrl);
+        return jdbcUrl.substring(span[0], span[1]);
+    }
+
+    /**
+     * JDBC URL のデータベース名を置き換える。 ホスト、ポート、パラメーターはそのまま。
+     *
+     * @throws PostgreSQLException URL がデータベース名を含まない場合
+     */
+    static String withDatabase(String jdbcUrl, String database) {
+        int[] span = databaseSpan(jdbcUrl);
+        return jdbcUrl.substring(0, span[0]) + database + jdbcUrl.substring(span[1]);
+    }
+
+    /**
+     * {@code jdbc:postgresql://host:port/database?params} と {@code jdbc:postgresql:database} の
+     * データベース名の範囲。
+     */
+    private static int[] databaseSpan(String jdbcUrl) {
+        if (!jdbcUrl.startsWith(JDBC_PREFIX)) {
+            throw new PostgreSQLException("Unsupported JDBC URL: " + jdbcUrl);
+        }
+        int start = JDBC_PREFIX.length();
+        int end = jdbcUrl.indexOf('?', start);
+        if (end < 0) {
+            end = jdbcUrl.length();
+        }
+        if (jdbcUrl.startsWith("//", start)) {
+            int slash = jdbcUrl.indexOf('/', start + 2);
+            start = slash < 0 || slash > end ? end : slash + 1;
+        }
+        if (start == end) {
+            throw new PostgreSQLException("JDBC URL has no database name: " + jdbcUrl);
+        }
+        return new int[] {start, end};
+    }
+
+    private static boolean exists(Connection conn, String name) throws SQLException {
+        try (PreparedStatement ps =
+                conn.prepareStatement("SELECT 1 FROM pg_database WHERE datname = ?")) {
+            ps.setString(1, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static String marker(String template) {
+        return "migraphe clone of " + template;
+    }
+
+    private static String quoteIdent(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String quoteLiteral(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+}
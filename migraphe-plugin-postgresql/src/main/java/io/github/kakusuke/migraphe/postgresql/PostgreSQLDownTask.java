@@ -2,25 +2,34 @@ package io.github.kakusuke.migraphe.postgresql;
 
 import io.github.kakusuke.migraphe.api.common.Result;
 import io.github.kakusuke.migraphe.api.task.Task;
+import io.github.kakusuke.migraphe.api.task.TaskExecutionContext;
 import io.github.kakusuke.migraphe.api.task.TaskResult;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.Objects;
 
 /** PostgreSQL で DOWN マイグレーション（ロールバック）を実行するタスク。 */
 public final class PostgreSQLDownTask implements Task {
 
     private final PostgreSQLEnvironment environment;
-    private final String downSql;
+    private final SqlSource downSql;
     private final boolean autocommit;
+    private final int batchSize;
+    private final SessionProfile session;
 
     private PostgreSQLDownTask(
-            PostgreSQLEnvironment environment, String downSql, boolean autocommit) {
+            PostgreSQLEnvironment environment,
+            SqlSource downSql,
+            boolean autocommit,
+            int batchSize,
+            SessionProfile session) {
         this.environment = Objects.requireNonNull(environment, "environment must not be null");
         this.downSql = Objects.requireNonNull(downSql, "downSql must not be null");
         this.autocommit = autocommit;
-        if (downSql.isBlank()) {
+        this.batchSize = batchSize;
+        this.session = Objects.requireNonNull(session, "session must not be null");
+        if (downSql instanceof SqlSource.Inline inline && inline.sql().isBlank()) {
             throw new IllegalArgumentException("downSql must not be blank");
         }
     }
@@ -35,7 +44,31 @@ public final class PostgreSQLDownTask implements Task {
      */
     public static PostgreSQLDownTask create(
             PostgreSQLEnvironment environment, String downSql, boolean autocommit) {
-        return new PostgreSQLDownTask(environment, downSql, autocommit);
+        return new PostgreSQLDownTask(
+                environment,
+                new SqlSource.Inline(downSql),
+                autocommit,
+                1,
+                environment.sessionProfile());
+    }
+
+    /**
+     * SQL の取得元から DOWN タスクを作成する。
+     *
+     * @param environment PostgreSQL 環境
+     * @param downSql DOWN SQL
+     * @param autocommit autocommit モードで実行するかどうか
+     * @param batchSize 連続した DML を1回のバッチにまとめる最大数（1 ならまとめない）
+     * @param session 接続に設定するセッションの設定
+     * @return DOWN タスク
+     */
+    static PostgreSQLDownTask create(
+            PostgreSQLEnvironment environment,
+            SqlSource downSql,
+            boolean autocommit,
+            int batchSize,
+            SessionProfile session) {
+        return new PostgreSQLDownTask(environment, downSql, autocommit, batchSize, session);
     }
 
     @Override
@@ -43,64 +76,78 @@ public final class PostgreSQLDownTask implements Task {
         long startTime = System.currentTimeMillis();
 
         try (Connection conn = environment.createConnection()) {
-            if (autocommit) {
-                conn.setAutoCommit(true);
-                return executeWithAutocommit(conn, startTime);
-            } else {
-                conn.setAutoCommit(false);
-                return executeWithTransaction(conn, startTime);
-            }
+            session.apply(conn);
+            return execute(conn, startTime);
         } catch (SQLException e) {
             return Result.err("Failed to establish database connection: " + e.getMessage());
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>接続は実行の間、同じ接続先のタスクで使い回す。
+     */
+    @Override
+    public Result<TaskResult, String> execute(TaskExecutionContext context) {
+        long startTime = System.currentTimeMillis();
+
+        try {
+            return execute(PostgreSQLSession.acquire(context, environment, session), startTime);
+        } catch (SQLException e) {
+            return Result.err("Failed to establish database connection: " + e.getMessage());
+        }
+    }
+
+    private Result<TaskResult, String> execute(Connection conn, long startTime)
+            throws SQLException {
+        if (autocommit) {
+            conn.setAutoCommit(true);
+            return executeWithAutocommit(conn, startTime);
+        } else {
+            conn.setAutoCommit(false);
+            return executeWithTransaction(conn, startTime);
+        }
+    }
+
     private Result<TaskResult, String> executeWithAutocommit(Connection conn, long startTime) {
-        try (Statement stmt = conn.createStatement()) {
+        try {
             // autocommit モードでは各ステートメントを個別に実行
             // （DROP DATABASE などは暗黙的トランザクションでも実行不可のため）
-            for (String sql : splitStatements(downSql)) {
-                stmt.execute(sql);
-            }
+            downSql.execute(conn, true, batchSize);
             long durationMs = System.currentTimeMillis() - startTime;
             return Result.ok(
                     TaskResult.withoutDownTask(
                             "DOWN migration executed in " + durationMs + "ms (autocommit)"));
         } catch (SQLException e) {
             return Result.err("Failed to execute DOWN migration: " + e.getMessage());
+        } catch (IOException e) {
+            return Result.err("Failed to read DOWN migration SQL: " + e.getMessage());
         }
     }
 
-    /**
-     * SQL テキストをステートメントに分割する。
-     *
-     * <p>セミコロン + 空白/コメント + 改行 のパターンで分割。 文字列リテラル内のセミコロンで誤分割しないよう、行末のみを対象とする。
-     */
-    private static String[] splitStatements(String sql) {
-        // セミコロン + 空白/コメント(optional) + 改行 で分割
-        String[] parts = sql.split(";\\s*?(--[^\\n]*)?\\r?\\n");
-        return java.util.Arrays.stream(parts)
-                .map(String::trim)
-                .map(s -> s.endsWith(";") ? s.substring(0, s.length() - 1).trim() : s)
-                .filter(s -> !s.isEmpty())
-                .toArray(String[]::new);
-    }
-
     private Result<TaskResult, String> executeWithTransaction(Connection conn, long startTime) {
-        try (Statement stmt = conn.createStatement()) {
-            stmt.execute(downSql);
+        try {
+            downSql.execute(conn, false, batchSize);
             conn.commit();
 
             long durationMs = System.currentTimeMillis() - startTime;
             return Result.ok(
                     TaskResult.withoutDownTask("DOWN migration executed in " + durationMs + "ms"));
         } catch (SQLException e) {
-            try {
-                conn.rollback();
-            } catch (SQLException rollbackEx) {
-                // rollback failed, ignore
-            }
+            rollbackQuietly(conn);
             return Result.err("Failed to execute DOWN migration: " + e.getMessage());
+        } catch (IOException e) {
+            rollbackQuietly(conn);
+            return Result.err("Failed to read DOWN migration SQL: " + e.getMessage());
+        }
+    }
+
+    private static void rollbackQuietly(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException rollbackEx) {
+            // rollback failed, ignore
         }
     }
 
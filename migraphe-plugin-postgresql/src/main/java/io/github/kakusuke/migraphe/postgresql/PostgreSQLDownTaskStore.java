@@ -0,0 +1,99 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HexFormat;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * DOWN タスクの内容を migraphe_down_task テーブルに内容アドレス方式で保存する。
+ *
+ * <p>内容は SHA-256 ハッシュをキーに gzip 圧縮して1度だけ保存し、 履歴テーブルにはハッシュだけを記録する。
+ * 同じノードを何度も適用しても、DOWN タスクの内容は重複して保存されない。
+ */
+final class PostgreSQLDownTaskStore {
+
+    private PostgreSQLDownTaskStore() {}
+
+    /**
+     * DOWN タスクの内容を保存する。 同じ内容が既に保存されている場合は何もしない。
+     *
+     * @param conn データベース接続（呼び出し側のトランザクションに参加する）
+     * @param serializedDownTask DOWN タスクの内容
+     * @return 内容のハッシュ
+     */
+    static String store(Connection conn, String serializedDownTask) throws SQLException {
+        byte[] content = serializedDownTask.getBytes(StandardCharsets.UTF_8);
+        String hash = hash(content);
+
+        String sql =
+                """
+                INSERT INTO migraphe_down_task (hash, payload) VALUES (?, ?)
+                ON CONFLICT (hash) DO NOTHING
+                """;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, hash);
+            pstmt.setBytes(2, compress(content));
+            pstmt.executeUpdate();
+        }
+        return hash;
+    }
+
+    /**
+     * どの履歴レコードからも参照されなくなった内容を削除する。
+     *
+     * @return 削除した件数
+     */
+    static long deleteUnreferenced(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            return stmt.executeUpdate(
+                    """
+                    DELETE FROM migraphe_down_task d
+                    WHERE NOT EXISTS (
+                        SELECT 1 FROM migraphe_history h WHERE h.down_task_hash = d.hash
+                    )
+                    """);
+        }
+    }
+
+    /** 保存された圧縮済みの内容を文字列に戻す。 */
+    static String decompress(byte[] payload) {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new PostgreSQLException("Failed to decompress down task", e);
+        }
+    }
+
+    /** 内容を gzip 圧縮する。 */
+    static byte[] compress(byte[] content) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(content);
+        } catch (IOException e) {
+            throw new PostgreSQLException("Failed to compress down task", e);
+        }
+        return buffer.toByteArray();
+    }
+
+    /** 内容の SHA-256 ハッシュを16進数で返す。 */
+    static String hash(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 は全ての Java 実装で利用可能
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,28 +1,67 @@
 package io.github.kakusuke.migraphe.postgresql;
 
+import io.github.kakusuke.migraphe.api.environment.DatabaseCloning;
 import io.github.kakusuke.migraphe.api.environment.Environment;
 import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.environment.ReplicationLag;
+import io.github.kakusuke.migraphe.api.environment.SchemaSnapshots;
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
-/** PostgreSQL 環境の実装。 JDBC 接続情報を保持し、データベース接続を提供する。 */
-public final class PostgreSQLEnvironment implements Environment {
+/**
+ * PostgreSQL 環境の実装。 JDBC 接続情報を保持し、データベース接続を提供する。
+ *
+ * <p>スキーマのスナップショットは {@link PostgreSQLSchemaSnapshot} でシステムカタログから作る。 データベースの複製は
+ * {@link PostgreSQLDatabaseClones} で {@code CREATE DATABASE ... TEMPLATE} を使って作り、複製した履歴のテーブルに
+ * この環境の履歴を取り込む。 レプリカの遅延は、秒数を1つ返すクエリ（デフォルトは {@code pg_stat_replication} の
+ * {@code replay_lag} の最大値）で取得する。
+ */
+public final class PostgreSQLEnvironment
+        implements Environment, SchemaSnapshots, DatabaseCloning, ReplicationLag {
+
+    /** レプリカの遅延（秒）を取得するデフォルトのクエリ。 レプリカがない場合と追いついている場合は 0。 */
+    public static final String DEFAULT_REPLICATION_LAG_QUERY =
+            "SELECT COALESCE(EXTRACT(EPOCH FROM max(replay_lag)), 0) FROM pg_stat_replication";
 
     private final EnvironmentId id;
     private final String name;
     private final String jdbcUrl;
     private final String username;
     private final String password;
+    private final HistoryIdType historyIdType;
+    private final SessionProfile sessionProfile;
+    private final String replicationLagQuery;
 
     private PostgreSQLEnvironment(
-            EnvironmentId id, String name, String jdbcUrl, String username, String password) {
+            EnvironmentId id,
+            String name,
+            String jdbcUrl,
+            String username,
+            String password,
+            HistoryIdType historyIdType,
+            SessionProfile sessionProfile,
+            String replicationLagQuery) {
         this.id = Objects.requireNonNull(id, "id must not be null");
         this.name = Objects.requireNonNull(name, "name must not be null");
         this.jdbcUrl = Objects.requireNonNull(jdbcUrl, "jdbcUrl must not be null");
         this.username = Objects.requireNonNull(username, "username must not be null");
         this.password = Objects.requireNonNull(password, "password must not be null");
+        this.historyIdType =
+                Objects.requireNonNull(historyIdType, "historyIdType must not be null");
+        this.sessionProfile =
+                Objects.requireNonNull(sessionProfile, "sessionProfile must not be null");
+        this.replicationLagQuery =
+                Objects.requireNonNull(replicationLagQuery, "replicationLagQuery must not be null");
     }
 
     /**
@@ -36,8 +75,88 @@ public final class PostgreSQLEnvironment implements Environment {
      */
     public static PostgreSQLEnvironment create(
             String name, String jdbcUrl, String username, String password) {
+        return create(name, jdbcUrl, username, password, HistoryIdType.TEXT);
+    }
+
+    /**
+     * JDBC 接続情報と履歴テーブルの id 列の型から PostgreSQL 環境を作成する。
+     *
+     * @param name 環境名（環境IDとしても使用される）
+     * @param jdbcUrl JDBC 接続 URL
+     * @param username データベースユーザー名
+     * @param password データベースパスワード
+     * @param historyIdType 履歴テーブルを新しく作成するときの id 列の型
+     * @return PostgreSQL 環境
+     */
+    public static PostgreSQLEnvironment create(
+            String name,
+            String jdbcUrl,
+            String username,
+            String password,
+            HistoryIdType historyIdType) {
+        return create(name, jdbcUrl, username, password, historyIdType, Map.of());
+    }
+
+    /**
+     * JDBC 接続情報、履歴テーブルの id 列の型、タスクの接続に設定するセッションの設定から PostgreSQL 環境を作成する。
+     *
+     * @param name 環境名（環境IDとしても使用される）
+     * @param jdbcUrl JDBC 接続 URL
+     * @param username データベースユーザー名
+     * @param password データベースパスワード
+     * @param historyIdType 履歴テーブルを新しく作成するときの id 列の型
+     * @param sessionSettings タスクの実行に使う接続に設定するセッションの設定（設定名と値）
+     * @return PostgreSQL 環境
+     * @throws PostgreSQLException 設定名が不正な場合
+     */
+    public static PostgreSQLEnvironment create(
+            String name,
+            String jdbcUrl,
+            String username,
+            String password,
+            HistoryIdType historyIdType,
+            Map<String, String> sessionSettings) {
+        return create(
+                name,
+                jdbcUrl,
+                username,
+                password,
+                historyIdType,
+                sessionSettings,
+                DEFAULT_REPLICATION_LAG_QUERY);
+    }
+
+    /**
+     * JDBC 接続情報、履歴テーブルの id 列の型、セッションの設定、レプリカの遅延を取得するクエリから PostgreSQL 環境を作成する。
+     *
+     * @param name 環境名（環境IDとしても使用される）
+     * @param jdbcUrl JDBC 接続 URL
+     * @param username データベースユーザー名
+     * @param password データベースパスワード
+     * @param historyIdType 履歴テーブルを新しく作成するときの id 列の型
+     * @param sessionSettings タスクの実行に使う接続に設定するセッションの設定（設定名と値）
+     * @param replicationLagQuery レプリカの遅延を秒数で1つ返すクエリ
+     * @return PostgreSQL 環境
+     * @throws PostgreSQLException 設定名が不正な場合
+     */
+    public static PostgreSQLEnvironment create(
+            String name,
+            String jdbcUrl,
+            String username,
+            String password,
+            HistoryIdType historyIdType,
+            Map<String, String> sessionSettings,
+            String replicationLagQuery) {
         EnvironmentId id = EnvironmentId.of(name);
-        return new PostgreSQLEnvironment(id, name, jdbcUrl, username, password);
+        return new PostgreSQLEnvironment(
+                id,
+                name,
+                jdbcUrl,
+                username,
+                password,
+                historyIdType,
+                SessionProfile.of(sessionSettings),
+                replicationLagQuery);
     }
 
     @Override
@@ -65,6 +184,148 @@ public final class PostgreSQLEnvironment implements Environment {
         return password;
     }
 
+    /** 履歴テーブルの id 列の型を取得する。 */
+    public HistoryIdType getHistoryIdType() {
+        return historyIdType;
+    }
+
+    /** タスクの実行に使う接続に設定するセッションの設定を取得する。 */
+    public Map<String, String> getSessionSettings() {
+        return sessionProfile.settings();
+    }
+
+    SessionProfile sessionProfile() {
+        return sessionProfile;
+    }
+
+    /** レプリカの遅延を取得するクエリを取得する。 */
+    public String getReplicationLagQuery() {
+        return replicationLagQuery;
+    }
+
+    @Override
+    public String captureSchema() {
+        try (Connection conn = createConnection()) {
+            // 読み取りの途中で変更されても、1つのスナップショットから読む
+            conn.setAutoCommit(false);
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            conn.setReadOnly(true);
+            String schema = PostgreSQLSchemaSnapshot.capture(conn);
+            conn.rollback();
+            return schema;
+        } catch (SQLException e) {
+            throw new PostgreSQLException(
+                    "Failed to capture schema of target " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean isSchemaEmpty() {
+        try (Connection conn = createConnection()) {
+            return PostgreSQLSchemaSnapshot.isEmpty(conn);
+        } catch (SQLException e) {
+            throw new PostgreSQLException(
+                    "Failed to read schema of target " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void applySchema(String schema) {
+        try (Connection conn = createConnection()) {
+            PostgreSQLSchemaSnapshot.apply(conn, schema);
+        } catch (SQLException e) {
+            throw new PostgreSQLException(
+                    "Failed to apply schema to target " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String createClone(String name, Supplier<? extends Stream<ExecutionRecord>> history) {
+        String template = PostgreSQLDatabaseClones.databaseName(jdbcUrl);
+        try (Connection conn = createMaintenanceConnection()) {
+            PostgreSQLDatabaseClones.create(conn, template, name);
+        } catch (SQLException e) {
+            throw new PostgreSQLException(
+                    "Failed to clone target " + this.name + " into " + name + ": " + e.getMessage(),
+                    e);
+        }
+
+        // 履歴が別の場所にある場合も、複製の履歴のテーブルにこの環境の履歴を揃える（同じIDのレコードは読み飛ばす）
+        PostgreSQLEnvironment clone =
+                new PostgreSQLEnvironment(
+                        id,
+                        this.name,
+                        PostgreSQLDatabaseClones.withDatabase(jdbcUrl, name),
+                        username,
+                        password,
+                        historyIdType,
+                        sessionProfile,
+                        replicationLagQuery);
+        PostgreSQLHistoryRepository cloneHistory = new PostgreSQLHistoryRepository(clone);
+        cloneHistory.initialize();
+        try (Stream<ExecutionRecord> records = history.get()) {
+            cloneHistory.importRecords(records.iterator());
+        }
+        return clone.getJdbcUrl();
+    }
+
+    @Override
+    public List<String> clones() {
+        try (Connection conn = createMaintenanceConnection()) {
+            return PostgreSQLDatabaseClones.list(
+                    conn, PostgreSQLDatabaseClones.databaseName(jdbcUrl));
+        } catch (SQLException e) {
+            throw new PostgreSQLException(
+                    "Failed to list clones of target " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void dropClone(String name) {
+        try (Connection conn = createMaintenanceConnection()) {
+            PostgreSQLDatabaseClones.drop(
+                    conn, PostgreSQLDatabaseClones.databaseName(jdbcUrl), name);
+        } catch (SQLException e) {
+            throw new PostgreSQLException(
+                    "Failed to drop clone "
+                            + name
+                            + " of target "
+                            + this.name
+                            + ": "
+                            + e.getMessage(),
+                    e);
+        }
+    }
+
+    @Override
+    public Duration replicationLag() {
+        try (Connection conn = createConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(replicationLagQuery)) {
+            if (!rs.next()) {
+                return Duration.ZERO;
+            }
+            double seconds = rs.getDouble(1);
+            return rs.wasNull() || seconds <= 0
+                    ? Duration.ZERO
+                    : Duration.ofMillis(Math.round(seconds * 1000));
+        } catch (SQLException e) {
+            throw new PostgreSQLException(
+                    "Failed to read replication lag of target " + name + ": " + e.getMessage(),
+                    e);
+        }
+    }
+
+    /** テンプレートにしているデータベース以外（{@code postgres}）への接続を作成する。 */
+    private Connection createMaintenanceConnection() throws SQLException {
+        ensureDriverLoaded();
+        return DriverManager.getConnection(
+                PostgreSQLDatabaseClones.withDatabase(
+                        jdbcUrl, PostgreSQLDatabaseClones.MAINTENANCE_DATABASE),
+                username,
+                password);
+    }
+
     /**
      * データベース接続を作成する。
      *
@@ -3,6 +3,8 @@ package io.github.kakusuke.migraphe.postgresql;
 import io.github.kakusuke.migraphe.api.spi.EnvironmentDefinition;
 import io.smallrye.config.ConfigMapping;
 import io.smallrye.config.WithName;
+import java.util.Map;
+import java.util.Optional;
 
 /**
  * PostgreSQL 用の EnvironmentDefinition サブタイプ。
@@ -16,6 +18,11 @@ import io.smallrye.config.WithName;
  * jdbc_url: jdbc:postgresql://localhost:5432/mydb
  * username: dbuser
  * password: secret
+ * history_id_type: uuid  # 省略時は text
+ * session:               # タスクの実行に使う接続に設定する
+ *   maintenance_work_mem: 1GB
+ *   max_parallel_maintenance_workers: 4
+ * replication_lag_query: SELECT ...  # 省略時は pg_stat_replication の replay_lag
  * }</pre>
  */
 @ConfigMapping(prefix = "")
@@ -30,4 +37,17 @@ public interface PostgreSQLEnvironmentDefinition extends EnvironmentDefinition {
     String username();
 
     String password();
+
+    /** 履歴テーブルを新しく作成するときの id 列の型（"text" または "uuid"）。 */
+    @WithName("history_id_type")
+    Optional<String> historyIdType();
+
+    /**
+     * タスクの実行に使う接続を取得したときに設定するセッションの設定（設定名と値）。 タスクの {@code session} で上書きできる。
+     */
+    Map<String, String> session();
+
+    /** レプリカの遅延を秒数で1つ返すクエリ。 up --max-replication-lag で使う。 */
+    @WithName("replication_lag_query")
+    Optional<String> replicationLagQuery();
 }
@@ -15,7 +15,16 @@ public final class PostgreSQLEnvironmentProvider implements EnvironmentProvider
                             + definition.getClass().getName());
         }
 
+        HistoryIdType historyIdType =
+                pgDef.historyIdType().map(HistoryIdType::parse).orElse(HistoryIdType.TEXT);
         return PostgreSQLEnvironment.create(
-                name, pgDef.jdbcUrl(), pgDef.username(), pgDef.password());
+                name,
+                pgDef.jdbcUrl(),
+                pgDef.username(),
+                pgDef.password(),
+                historyIdType,
+                pgDef.session(),
+                pgDef.replicationLagQuery()
+                        .orElse(PostgreSQLEnvironment.DEFAULT_REPLICATION_LAG_QUERY));
     }
 }
@@ -0,0 +1,106 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * migraphe_graph_fingerprint テーブルでグラフのフィンガープリントを管理する。
+ *
+ * <p>読み出しは up の度に最初に行うため、1度の問い合わせで済ませ、スキーマの作成も行わない。 テーブルがまだない場合は
+ * 保存されたフィンガープリントがないものとして扱う。
+ */
+final class PostgreSQLGraphFingerprints {
+
+    /** テーブルが存在しない場合の SQLSTATE（undefined_table）。 */
+    private static final String UNDEFINED_TABLE = "42P01";
+
+    private final PostgreSQLEnvironment environment;
+
+    PostgreSQLGraphFingerprints(PostgreSQLEnvironment environment) {
+        this.environment = Objects.requireNonNull(environment, "environment must not be null");
+    }
+
+    Map<EnvironmentId, String> find(Collection<EnvironmentId> environmentIds) {
+        Map<EnvironmentId, String> fingerprints = new HashMap<>();
+        if (environmentIds.isEmpty()) {
+            return fingerprints;
+        }
+
+        String sql =
+                """
+                SELECT environment_id, fingerprint FROM migraphe_graph_fingerprint
+                WHERE environment_id = ANY (?)
+                """;
+        try (Connection conn = environment.createConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setArray(
+                    1,
+                    conn.createArrayOf(
+                            "text",
+                            environmentIds.stream().map(EnvironmentId::value).toArray()));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    fingerprints.put(
+                            EnvironmentId.of(rs.getString("environment_id")),
+                            rs.getString("fingerprint"));
+                }
+            }
+            return fingerprints;
+        } catch (SQLException e) {
+            if (UNDEFINED_TABLE.equals(e.getSQLState())) {
+                return fingerprints;
+            }
+            throw new PostgreSQLException("Failed to read graph fingerprints", e);
+        }
+    }
+
+    void save(Map<EnvironmentId, String> fingerprints) {
+        if (fingerprints.isEmpty()) {
+            return;
+        }
+
+        String sql =
+                """
+                INSERT INTO migraphe_graph_fingerprint (environment_id, fingerprint)
+                VALUES (?, ?)
+                ON CONFLICT (environment_id) DO UPDATE
+                SET fingerprint = EXCLUDED.fingerprint, recorded_at = LOCALTIMESTAMP
+                """;
+        try (Connection conn = environment.createConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (Map.Entry<EnvironmentId, String> entry : fingerprints.entrySet()) {
+                pstmt.setString(1, entry.getKey().value());
+                pstmt.setString(2, entry.getValue());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        } catch (SQLException e) {
+            throw new PostgreSQLException("Failed to save graph fingerprints", e);
+        }
+    }
+
+    /** 指定した環境のフィンガープリントを呼び出し側のトランザクション内で破棄する。 */
+    static void clear(Connection conn, EnvironmentId environmentId) throws SQLException {
+        try (PreparedStatement pstmt =
+                conn.prepareStatement(
+                        "DELETE FROM migraphe_graph_fingerprint WHERE environment_id = ?")) {
+            pstmt.setString(1, environmentId.value());
+            pstmt.executeUpdate();
+        }
+    }
+
+    /** 全環境のフィンガープリントを呼び出し側のトランザクション内で破棄する。 */
+    static void clearAll(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM migraphe_graph_fingerprint");
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import org.jspecify.annotations.Nullable;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+/**
+ * migraphe_history への実行記録の一括取り込み。
+ *
+ * <p>レコードは COPY で一時テーブルに流し込み、 最後に1つの INSERT ... SELECT で migraphe_history に移す。
+ * 既にあるIDは ON CONFLICT で読み飛ばすため、同じファイルを2度取り込んでも重複しない。 DOWN タスクの内容はハッシュと圧縮を
+ * Java 側で済ませ、内容ごとに1度だけ保存する。
+ */
+final class PostgreSQLHistoryImport {
+
+    private static final String STAGING_TABLE = "migraphe_history_import";
+
+    /** COPY に1度に書き込むバイト数の目安。 */
+    private static final int COPY_CHUNK_BYTES = 1 << 16;
+
+    private static final String COLUMNS =
+            "id, node_id, environment_id, direction, status,"
+                    + " executed_at, description, down_task_hash, duration_ms, error_message";
+
+    private final PostgreSQLEnvironment environment;
+
+    PostgreSQLHistoryImport(PostgreSQLEnvironment environment) {
+        this.environment = Objects.requireNonNull(environment, "environment must not be null");
+    }
+
+    /** 実行記録を1つのトランザクションで取り込み、取り込んだ件数を返す。 */
+    long importRecords(Iterator<ExecutionRecord> records) {
+        Objects.requireNonNull(records, "records must not be null");
+
+        try (Connection conn = environment.createConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                long imported = importRecords(conn, records);
+                conn.commit();
+                return imported;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new PostgreSQLException("Failed to import execution history", e);
+        }
+    }
+
+    private static long importRecords(Connection conn, Iterator<ExecutionRecord> records)
+            throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            // id 列の型（TEXT / UUID）は取り込み先のテーブルに合わせる
+            stmt.execute(
+                    "CREATE TEMP TABLE "
+                            + STAGING_TABLE
+                            + " (LIKE migraphe_history) ON COMMIT DROP");
+        }
+
+        Map<String, byte[]> downTasks = new LinkedHashMap<>();
+        copyRecords(conn, records, downTasks);
+        storeDownTasks(conn, downTasks);
+
+        // 取り込んだ DOWN のレコードで適用済みでなくなったノードがあり得る
+        PostgreSQLGraphFingerprints.clearAll(conn);
+
+        try (Statement stmt = conn.createStatement()) {
+            return stmt.executeUpdate(
+                    "INSERT INTO migraphe_history ("
+                            + COLUMNS
+                            + ") SELECT "
+                            + COLUMNS
+                            + " FROM "
+                            + STAGING_TABLE
+                            + " ON CONFLICT DO NOTHING");
+        }
+    }
+
+    /** レコードを CSV にして一時テーブルへ COPY する。 DOWN タスクの内容はハッシュごとに downTasks に集める。 */
+    private static void copyRecords(
+            Connection conn, Iterator<ExecutionRecord> records, Map<String, byte[]> downTasks)
+            throws SQLException {
+        CopyIn copyIn =
+                conn.unwrap(PGConnection.class)
+                        .getCopyAPI()
+                        .copyIn(
+                                "COPY "
+                                        + STAGING_TABLE
+                                        + " ("
+                                        + COLUMNS
+                                        + ") FROM STDIN WITH (FORMAT csv)");
+        try {
+            StringBuilder chunk = new StringBuilder(COPY_CHUNK_BYTES + 1024);
+            while (records.hasNext()) {
+                ExecutionRecord record = records.next();
+                String downTaskHash = null;
+                String downTask = record.serializedDownTask();
+                if (downTask != null) {
+                    byte[] content = downTask.getBytes(StandardCharsets.UTF_8);
+                    downTaskHash = PostgreSQLDownTaskStore.hash(content);
+                    if (!downTasks.containsKey(downTaskHash)) {
+                        downTasks.put(downTaskHash, PostgreSQLDownTaskStore.compress(content));
+                    }
+                }
+                appendRow(chunk, record, downTaskHash);
+                if (chunk.length() >= COPY_CHUNK_BYTES) {
+                    writeChunk(copyIn, chunk);
+                }
+            }
+            writeChunk(copyIn, chunk);
+            copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    private static void storeDownTasks(Connection conn, Map<String, byte[]> downTasks)
+            throws SQLException {
+        if (downTasks.isEmpty()) {
+            return;
+        }
+        String sql =
+                """
+                INSERT INTO migraphe_down_task (hash, payload) VALUES (?, ?)
+                ON CONFLICT (hash) DO NOTHING
+                """;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (Map.Entry<String, byte[]> entry : downTasks.entrySet()) {
+                pstmt.setString(1, entry.getKey());
+                pstmt.setBytes(2, entry.getValue());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private static void appendRow(
+            StringBuilder chunk, ExecutionRecord record, @Nullable String downTaskHash) {
+        appendField(chunk, record.id()).append(',');
+        appendField(chunk, record.nodeId().value()).append(',');
+        appendField(chunk, record.environmentId().value()).append(',');
+        chunk.append(record.direction().name()).append(',');
+        chunk.append(record.status().name()).append(',');
+        // executed_at は setTimestamp と同じく JVM のタイムゾーンでのローカル日時として保存する
+        chunk.append(Timestamp.from(record.executedAt())).append(',');
+        appendField(chunk, record.description()).append(',');
+        appendField(chunk, downTaskHash).append(',');
+        chunk.append(record.durationMs()).append(',');
+        appendField(chunk, record.errorMessage()).append('\n');
+    }
+
+    /** CSV のフィールドを追加する。 NULL は空のまま、文字列は常に引用符で囲んで空文字列と区別する。 */
+    private static StringBuilder appendField(StringBuilder chunk, @Nullable String value) {
+        if (value == null) {
+            return chunk;
+        }
+        chunk.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                chunk.append('"');
+            }
+            chunk.append(c);
+        }
+        return chunk.append('"');
+    }
+
+    private static void writeChunk(CopyIn copyIn, StringBuilder chunk) throws SQLException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        byte[] bytes = chunk.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        chunk.setLength(0);
+    }
+}
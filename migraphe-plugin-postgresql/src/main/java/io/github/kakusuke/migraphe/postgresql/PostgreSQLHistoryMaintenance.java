@@ -0,0 +1,472 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+import org.jspecify.annotations.Nullable;
+import org.postgresql.PGConnection;
+
+/**
+ * migraphe_history の保守処理（パーティション化・コンパクション・アーカイブ）。
+ *
+ * <p>パーティションは executed_at による月単位の範囲パーティションで、{@code migraphe_history_pYYYYMM} という名前で作成する。
+ * どのパーティションにも入らないレコードは {@code migraphe_history_default} に入る。
+ */
+final class PostgreSQLHistoryMaintenance {
+
+    private static final String TABLE = "migraphe_history";
+    private static final String DEFAULT_PARTITION = TABLE + "_default";
+    private static final Pattern PARTITION_NAME = Pattern.compile(TABLE + "_p(\\d{6})");
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final DateTimeFormatter ARCHIVE_SUFFIX =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+
+    /** アーカイブの列。 serialized_down_task には、ハッシュで保存した DOWN タスクの内容も入れる。 */
+    private static final String ARCHIVE_COLUMNS =
+            "h.id, h.node_id, h.environment_id, h.direction, h.status, h.executed_at,"
+                    + " h.description,"
+                    + " COALESCE(h.serialized_down_task, a.content) AS serialized_down_task,"
+                    + " h.duration_ms, h.error_message, h.down_task_hash";
+
+    private final PostgreSQLEnvironment environment;
+
+    PostgreSQLHistoryMaintenance(PostgreSQLEnvironment environment) {
+        this.environment = Objects.requireNonNull(environment, "environment must not be null");
+    }
+
+    /** (環境, ノード) ごとに最新 keepLatest 件を残して削除する。 */
+    long compact(int keepLatest) {
+        if (keepLatest < 1) {
+            throw new IllegalArgumentException("keepLatest must be positive: " + keepLatest);
+        }
+
+        String sql =
+                """
+                DELETE FROM migraphe_history h
+                USING (
+                    SELECT id, executed_at FROM (
+                        SELECT id, executed_at,
+                               ROW_NUMBER() OVER (
+                                   PARTITION BY environment_id, node_id
+                                   ORDER BY executed_at DESC, id DESC) AS rn
+                        FROM migraphe_history
+                    ) ranked
+                    WHERE rn > ?
+                ) old
+                WHERE h.id = old.id AND h.executed_at = old.executed_at
+                """;
+
+        try (Connection conn = environment.createConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, keepLatest);
+                long removed = pstmt.executeUpdate();
+                // 削除したレコードだけが参照していた DOWN タスクも削除する
+                PostgreSQLDownTaskStore.deleteUnreferenced(conn);
+                conn.commit();
+                return removed;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new PostgreSQLException("Failed to compact history", e);
+        }
+    }
+
+    /** パーティション化し、当月から monthsAhead か月先までのパーティションを用意する。 */
+    List<String> ensurePartitions(int monthsAhead) {
+        if (monthsAhead < 0) {
+            throw new IllegalArgumentException("monthsAhead must not be negative: " + monthsAhead);
+        }
+
+        try (Connection conn = environment.createConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                YearMonth current = YearMonth.now();
+                List<String> created = new ArrayList<>();
+                if (!isPartitioned(conn)) {
+                    created.addAll(convertToPartitioned(conn, current.plusMonths(monthsAhead)));
+                } else {
+                    for (int i = 0; i <= monthsAhead; i++) {
+                        String name = createPartitionIfMissing(conn, current.plusMonths(i));
+                        if (name != null) {
+                            created.add(name);
+                        }
+                    }
+                }
+                conn.commit();
+                return created;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new PostgreSQLException("Failed to partition history table", e);
+        }
+    }
+
+    /**
+     * before より前の、各 (環境, ノード) の最新ではないレコードを gzip 圧縮した CSV に書き出して削除する。
+     *
+     * <p>パーティション化されている場合はパーティションごとにファイルを作成し、空になった古いパーティションは切り離して削除する。
+     * ファイルは一時ファイルに書き出し、レコードの削除をコミットしてから最終的な名前に移す。 ロールバックした場合は一時ファイルを
+     * 削除する。
+     */
+    List<Path> archive(Instant before, Path outputDir) {
+        Objects.requireNonNull(before, "before must not be null");
+        Objects.requireNonNull(outputDir, "outputDir must not be null");
+
+        // executed_at は JDBC ドライバによりローカル時刻で保存されるため、同じ基準で比較する
+        LocalDateTime cutoff = LocalDateTime.ofInstant(before, ZoneId.systemDefault());
+
+        List<ArchiveFile> written = new ArrayList<>();
+        try (Connection conn = environment.createConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Files.createDirectories(outputDir);
+
+                // 実行済み判定に使う最新レコードはアーカイブ対象から除外する
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(
+                            """
+                            CREATE TEMP TABLE migraphe_latest ON COMMIT DROP AS
+                            SELECT DISTINCT ON (environment_id, node_id) id
+                            FROM migraphe_history
+                            ORDER BY environment_id, node_id, executed_at DESC, id DESC
+                            """);
+                    // アーカイブしたレコードの DOWN タスクはコンパクションで消えうるため、内容ごと書き出す
+                    stmt.execute(
+                            """
+                            CREATE TEMP TABLE migraphe_archived_down_task (
+                                hash TEXT PRIMARY KEY, content TEXT NOT NULL
+                            ) ON COMMIT DROP
+                            """);
+                }
+
+                if (isPartitioned(conn)) {
+                    for (String partition : listPartitions(conn)) {
+                        YearMonth month = partitionMonth(partition);
+                        if (month != null && !month.atDay(1).atStartOfDay().isBefore(cutoff)) {
+                            continue;
+                        }
+                        ArchiveFile file = archiveRows(conn, partition, cutoff, outputDir);
+                        if (file != null) {
+                            written.add(file);
+                        }
+                        if (month != null
+                                && !month.plusMonths(1).atDay(1).atStartOfDay().isAfter(cutoff)
+                                && isEmpty(conn, partition)) {
+                            dropPartition(conn, partition);
+                        }
+                    }
+                } else {
+                    ArchiveFile file = archiveRows(conn, TABLE, cutoff, outputDir);
+                    if (file != null) {
+                        written.add(file);
+                    }
+                }
+
+                conn.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                // 削除しなかったレコードのファイルは残さない
+                discard(written, e);
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new PostgreSQLException("Failed to archive history", e);
+        } catch (IOException e) {
+            throw new PostgreSQLException("Failed to write history archive", e);
+        }
+        // レコードの削除をコミットしてから、ファイルを置く
+        return publish(written);
+    }
+
+    private static boolean isPartitioned(Connection conn) throws SQLException {
+        String sql = "SELECT c.relkind FROM pg_class c WHERE c.oid = to_regclass(?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, TABLE);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() && "p".equals(rs.getString(1));
+            }
+        }
+    }
+
+    /** 既存のテーブルを、レコードを保ったままパーティションテーブルに置き換える。 */
+    private List<String> convertToPartitioned(Connection conn, YearMonth lastMonth)
+            throws SQLException {
+        List<String> created = new ArrayList<>();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("LOCK TABLE migraphe_history IN ACCESS EXCLUSIVE MODE");
+            stmt.execute(
+                    """
+                    CREATE TABLE migraphe_history_partitioned (
+                        LIKE migraphe_history INCLUDING DEFAULTS INCLUDING CONSTRAINTS
+                    ) PARTITION BY RANGE (executed_at)
+                    """);
+            // パーティションキーを含む主キーにする必要がある
+            stmt.execute(
+                    "ALTER TABLE migraphe_history_partitioned ADD PRIMARY KEY (id, executed_at)");
+            stmt.execute(
+                    "CREATE TABLE "
+                            + DEFAULT_PARTITION
+                            + " PARTITION OF migraphe_history_partitioned DEFAULT");
+            created.add(DEFAULT_PARTITION);
+
+            // 既存レコードの最古の月から lastMonth までのパーティションを作成
+            YearMonth month = YearMonth.now();
+            try (ResultSet rs =
+                    stmt.executeQuery("SELECT min(executed_at) FROM migraphe_history")) {
+                if (rs.next() && rs.getTimestamp(1) != null) {
+                    month = YearMonth.from(rs.getTimestamp(1).toLocalDateTime());
+                }
+            }
+            for (; !month.isAfter(lastMonth); month = month.plusMonths(1)) {
+                String name = partitionName(month);
+                stmt.execute(
+                        "CREATE TABLE "
+                                + name
+                                + " PARTITION OF migraphe_history_partitioned"
+                                + " FOR VALUES FROM ('"
+                                + month.atDay(1).atStartOfDay()
+                                + "') TO ('"
+                                + month.plusMonths(1).atDay(1).atStartOfDay()
+                                + "')");
+                created.add(name);
+            }
+
+            stmt.execute("INSERT INTO migraphe_history_partitioned SELECT * FROM migraphe_history");
+            stmt.execute("DROP TABLE migraphe_history");
+            stmt.execute("ALTER TABLE migraphe_history_partitioned RENAME TO migraphe_history");
+        }
+        // インデックスはスキーマ初期化スクリプトと同じ名前で作り直す
+        PostgreSQLHistoryRepository.applySchema(conn, environment.getHistoryIdType());
+        return created;
+    }
+
+    /**
+     * 指定月のパーティションがなければ作成する。
+     *
+     * <p>デフォルトパーティションに該当月のレコードがあると直接作成できないため、 独立したテーブルに移してからアタッチする。
+     *
+     * @return 作成したパーティション名（既に存在する場合は null）
+     */
+    private static @Nullable String createPartitionIfMissing(Connection conn, YearMonth month)
+            throws SQLException {
+        String name = partitionName(month);
+        if (listPartitions(conn).contains(name)) {
+            return null;
+        }
+
+        String from = month.atDay(1).atStartOfDay().toString();
+        String to = month.plusMonths(1).atDay(1).atStartOfDay().toString();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(
+                    "CREATE TABLE "
+                            + name
+                            + " (LIKE migraphe_history INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+            stmt.execute(
+                    "WITH moved AS (DELETE FROM "
+                            + DEFAULT_PARTITION
+                            + " WHERE executed_at >= '"
+                            + from
+                            + "' AND executed_at < '"
+                            + to
+                            + "' RETURNING *) INSERT INTO "
+                            + name
+                            + " SELECT * FROM moved");
+            stmt.execute(
+                    "ALTER TABLE migraphe_history ATTACH PARTITION "
+                            + name
+                            + " FOR VALUES FROM ('"
+                            + from
+                            + "') TO ('"
+                            + to
+                            + "')");
+        }
+        return name;
+    }
+
+    /** パーティション名を古い順に取得する（デフォルトパーティションは末尾）。 */
+    private static List<String> listPartitions(Connection conn) throws SQLException {
+        String sql =
+                """
+                SELECT c.relname FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = to_regclass(?)
+                ORDER BY c.relname = ?, c.relname
+                """;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, TABLE);
+            pstmt.setString(2, DEFAULT_PARTITION);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                List<String> partitions = new ArrayList<>();
+                while (rs.next()) {
+                    partitions.add(rs.getString(1));
+                }
+                return partitions;
+            }
+        }
+    }
+
+    /**
+     * 対象テーブルから cutoff より前で最新ではないレコードを一時ファイルに書き出して削除する。
+     *
+     * @return 書き出したファイル（対象がない場合は null）
+     */
+    private static @Nullable ArchiveFile archiveRows(
+            Connection conn, String table, LocalDateTime cutoff, Path outputDir)
+            throws SQLException, IOException {
+        // COPY はバインドパラメータを使えないため、日時はリテラルとして埋め込む
+        String condition =
+                "executed_at < '"
+                        + Timestamp.valueOf(cutoff)
+                        + "' AND id NOT IN (SELECT id FROM migraphe_latest)";
+
+        loadDownTasks(conn, table, condition);
+
+        Path target =
+                outputDir.resolve(table + "_before_" + ARCHIVE_SUFFIX.format(cutoff) + ".csv.gz");
+        // 移動するときに上書きしないよう、レコードを削除する前に確かめる
+        if (Files.exists(target)) {
+            throw new FileAlreadyExistsException(target.toString());
+        }
+        Path temp = Files.createTempFile(outputDir, target.getFileName() + ".", ".tmp");
+        try {
+            long copied;
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+                copied =
+                        conn.unwrap(PGConnection.class)
+                                .getCopyAPI()
+                                .copyOut(
+                                        "COPY (SELECT "
+                                                + ARCHIVE_COLUMNS
+                                                + " FROM "
+                                                + table
+                                                + " h LEFT JOIN migraphe_archived_down_task a"
+                                                + " ON a.hash = h.down_task_hash WHERE "
+                                                + condition
+                                                + " ORDER BY executed_at, id)"
+                                                + " TO STDOUT WITH (FORMAT csv, HEADER)",
+                                        out);
+            }
+
+            if (copied == 0) {
+                Files.delete(temp);
+                return null;
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("DELETE FROM " + table + " WHERE " + condition);
+            }
+            return new ArchiveFile(temp, target);
+        } catch (SQLException | IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /** コミットしたアーカイブの一時ファイルを、最終的な名前に移す。 */
+    private static List<Path> publish(List<ArchiveFile> written) {
+        List<Path> files = new ArrayList<>();
+        for (ArchiveFile file : written) {
+            try {
+                Files.move(file.temp(), file.target(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new PostgreSQLException(
+                        "Archived records were deleted but "
+                                + file.temp()
+                                + " could not be moved to "
+                                + file.target(),
+                        e);
+            }
+            files.add(file.target());
+        }
+        return files;
+    }
+
+    /** ロールバックするアーカイブの一時ファイルを削除する。 */
+    private static void discard(List<ArchiveFile> written, Exception failure) {
+        for (ArchiveFile file : written) {
+            try {
+                Files.deleteIfExists(file.temp());
+            } catch (IOException e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    /** 書き出すレコードが参照する DOWN タスクを展開し、まだ読んでいないものを一時テーブルに入れる。 */
+    private static void loadDownTasks(Connection conn, String table, String condition)
+            throws SQLException {
+        String select =
+                "SELECT d.hash, d.payload FROM migraphe_down_task d"
+                        + " WHERE d.hash IN (SELECT down_task_hash FROM "
+                        + table
+                        + " WHERE "
+                        + condition
+                        + ") AND d.hash NOT IN (SELECT hash FROM migraphe_archived_down_task)";
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(select);
+                PreparedStatement insert =
+                        conn.prepareStatement(
+                                "INSERT INTO migraphe_archived_down_task (hash, content)"
+                                        + " VALUES (?, ?)")) {
+            while (rs.next()) {
+                insert.setString(1, rs.getString(1));
+                insert.setString(2, PostgreSQLDownTaskStore.decompress(rs.getBytes(2)));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    private static boolean isEmpty(Connection conn, String table) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT 1 FROM " + table + " LIMIT 1")) {
+            return !rs.next();
+        }
+    }
+
+    private static void dropPartition(Connection conn, String partition) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE migraphe_history DETACH PARTITION " + partition);
+            stmt.execute("DROP TABLE " + partition);
+        }
+    }
+
+    private static String partitionName(YearMonth month) {
+        return TABLE + "_p" + PARTITION_SUFFIX.format(month);
+    }
+
+    private static @Nullable YearMonth partitionMonth(String partition) {
+        Matcher matcher = PARTITION_NAME.matcher(partition);
+        if (!matcher.matches()) {
+            return null;
+        }
+        return YearMonth.parse(matcher.group(1), PARTITION_SUFFIX);
+    }
+
+    /** コミット前に書き出した一時ファイルと、コミット後に移す先。 */
+    private record ArchiveFile(Path temp, Path target) {}
+}
@@ -4,76 +4,204 @@ import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
 import io.github.kakusuke.migraphe.api.graph.NodeId;
 import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
 import io.github.kakusuke.migraphe.api.history.ExecutionStatus;
+import io.github.kakusuke.migraphe.api.history.GraphFingerprintStore;
+import io.github.kakusuke.migraphe.api.history.HistoryAnalytics;
+import io.github.kakusuke.migraphe.api.history.HistoryBulkImport;
+import io.github.kakusuke.migraphe.api.history.HistoryCursor;
+import io.github.kakusuke.migraphe.api.history.HistoryMaintenance;
+import io.github.kakusuke.migraphe.api.history.HistoryPage;
+import io.github.kakusuke.migraphe.api.history.HistoryPartitioning;
+import io.github.kakusuke.migraphe.api.history.HistoryQuery;
 import io.github.kakusuke.migraphe.api.history.HistoryRepository;
+import io.github.kakusuke.migraphe.api.history.NodeDurationStats;
+import io.github.kakusuke.migraphe.api.history.NodeLeaseRepository;
 import io.github.kakusuke.migraphe.api.task.ExecutionDirection;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.sql.*;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.jspecify.annotations.Nullable;
 
 /** PostgreSQL でマイグレーション履歴を永続化する実装。 */
-public final class PostgreSQLHistoryRepository implements HistoryRepository {
+public final class PostgreSQLHistoryRepository
+        implements HistoryRepository,
+                HistoryMaintenance,
+                HistoryPartitioning,
+                HistoryAnalytics,
+                HistoryBulkImport,
+                GraphFingerprintStore,
+                NodeLeaseRepository {
 
     private static final String SCHEMA_RESOURCE =
             "/io/github/kakusuke/migraphe/postgresql/schema/init_history_table.sql";
 
+    /** streamRecords でサーバーサイドカーソルから一度に取得する行数。 */
+    static final int STREAM_FETCH_SIZE = 500;
+
     private final PostgreSQLEnvironment environment;
+    private final PostgreSQLHistoryMaintenance maintenance;
+    private final PostgreSQLNodeLeases leases;
+    private final PostgreSQLHistoryImport bulkImport;
+    private final PostgreSQLGraphFingerprints fingerprints;
 
     public PostgreSQLHistoryRepository(PostgreSQLEnvironment environment) {
         this.environment = Objects.requireNonNull(environment, "environment must not be null");
+        this.maintenance = new PostgreSQLHistoryMaintenance(environment);
+        this.leases = new PostgreSQLNodeLeases(environment);
+        this.bulkImport = new PostgreSQLHistoryImport(environment);
+        this.fingerprints = new PostgreSQLGraphFingerprints(environment);
     }
 
     @Override
     public void initialize() {
-        try (Connection conn = environment.createConnection();
-                Statement stmt = conn.createStatement()) {
-            String schemaSql = loadSchemaResource();
-            stmt.execute(schemaSql);
+        try (Connection conn = environment.createConnection()) {
+            applySchema(conn, environment.getHistoryIdType());
         } catch (SQLException e) {
             throw new PostgreSQLException("Failed to initialize history schema", e);
-        } catch (IOException e) {
-            throw new PostgreSQLException("Failed to load schema resource", e);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>DOWN タスクの内容は migraphe_down_task テーブルに1度だけ保存し、履歴レコードにはそのハッシュを記録する。
+     */
     @Override
     public void record(ExecutionRecord record) {
         Objects.requireNonNull(record, "record must not be null");
 
+        try (Connection conn = environment.createConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                record(conn, record);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new PostgreSQLException("Failed to record execution history", e);
+        }
+    }
+
+    /**
+     * 呼び出し側のトランザクション内で実行記録を保存する。 コミットとロールバックは呼び出し側が行う。
+     *
+     * <p>マイグレーションと履歴を1つのトランザクションでコミットするために使う。 接続先は {@link #sharesDatabaseWith}
+     * で履歴と同じデータベースであることを確認しておくこと。
+     *
+     * <p>マイグレーションが search_path やロールを変更していても履歴のテーブルに書き込めるよう、書き込みの間だけ接続時の
+     * search_path に戻してロールを解除し、書き込んだ後に元の設定へ戻す。 書き込みに失敗した場合は、呼び出し側のロールバックで
+     * 設定も戻る。
+     *
+     * @param conn 履歴と同じデータベースへの接続（autocommit 無効）
+     * @param record 実行記録
+     * @throws SQLException 書き込みに失敗した場合
+     */
+    public void record(Connection conn, ExecutionRecord record) throws SQLException {
+        Objects.requireNonNull(record, "record must not be null");
+
+        SessionSettings previous = useHistorySettings(conn);
+        write(conn, record);
+        restoreSettings(conn, previous);
+    }
+
+    /**
+     * 現在の search_path とロールを返し、トランザクションの中だけ接続時の search_path に戻してロールを解除する。
+     * sharesDatabaseWith により接続先とユーザーは履歴と同じであるため、接続時の値は履歴の環境の値と一致する。
+     */
+    private static SessionSettings useHistorySettings(Connection conn) throws SQLException {
+        SessionSettings previous;
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs =
+                    stmt.executeQuery(
+                            "SELECT current_setting('search_path'), current_setting('role')")) {
+                rs.next();
+                previous = new SessionSettings(rs.getString(1), rs.getString(2));
+            }
+            stmt.execute("SET LOCAL ROLE NONE");
+            stmt.execute(
+                    "SELECT set_config('search_path', reset_val, true)"
+                            + " FROM pg_settings WHERE name = 'search_path'");
+        }
+        return previous;
+    }
+
+    /** {@link #useHistorySettings} で変更した search_path とロールを元に戻す。 */
+    private static void restoreSettings(Connection conn, SessionSettings previous)
+            throws SQLException {
+        try (PreparedStatement pstmt =
+                conn.prepareStatement(
+                        "SELECT set_config('search_path', ?, true), set_config('role', ?, true)")) {
+            pstmt.setString(1, previous.searchPath());
+            pstmt.setString(2, previous.role());
+            pstmt.execute();
+        }
+    }
+
+    /** 履歴を書き込む前の接続の search_path とロール（ロールがない場合は none）。 */
+    private record SessionSettings(String searchPath, String role) {}
+
+    private static void write(Connection conn, ExecutionRecord record) throws SQLException {
         String sql =
                 """
                 INSERT INTO migraphe_history (
                     id, node_id, environment_id, direction, status,
-                    executed_at, description, serialized_down_task, duration_ms, error_message
+                    executed_at, description, down_task_hash, duration_ms, error_message
                 ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
                 """;
 
-        try (Connection conn = environment.createConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        String downTask = record.serializedDownTask();
+        String downTaskHash =
+                downTask != null ? PostgreSQLDownTaskStore.store(conn, downTask) : null;
 
-            pstmt.setString(1, record.id());
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            bindId(pstmt, 1, record.id());
             pstmt.setString(2, record.nodeId().value());
             pstmt.setString(3, record.environmentId().value());
             pstmt.setString(4, record.direction().name());
             pstmt.setString(5, record.status().name());
             pstmt.setTimestamp(6, Timestamp.from(record.executedAt()));
             pstmt.setString(7, record.description());
-            pstmt.setString(8, record.serializedDownTask());
+            pstmt.setString(8, downTaskHash);
             pstmt.setLong(9, record.durationMs());
             pstmt.setString(10, record.errorMessage());
-
             pstmt.executeUpdate();
-        } catch (SQLException e) {
-            throw new PostgreSQLException("Failed to record execution history", e);
+        }
+
+        // 適用済みでなくなったノードがあり得るため、フィンガープリントによる判定を無効にする
+        if (record.direction() != ExecutionDirection.UP
+                || record.status() != ExecutionStatus.SUCCESS) {
+            PostgreSQLGraphFingerprints.clear(conn, record.environmentId());
         }
     }
 
+    /**
+     * 指定した環境が履歴と同じデータベースに同じユーザーで接続するかどうかを返す。
+     *
+     * @param other 比較する環境
+     * @return JDBC URL とユーザー名が一致する場合は true
+     */
+    public boolean sharesDatabaseWith(PostgreSQLEnvironment other) {
+        return environment.getJdbcUrl().equals(other.getJdbcUrl())
+                && environment.getUsername().equals(other.getUsername());
+    }
+
+    /** 履歴の保存先。 履歴と同じデータベースに保存するもの（バックフィルのチェックポイントなど）に使う。 */
+    PostgreSQLEnvironment environment() {
+        return environment;
+    }
+
     @Override
     public boolean wasExecuted(NodeId nodeId, EnvironmentId environmentId) {
         Objects.requireNonNull(nodeId, "nodeId must not be null");
@@ -115,12 +243,12 @@ public final class PostgreSQLHistoryRepository implements HistoryRepository {
         String sql =
                 """
                 SELECT node_id FROM (
-                    SELECT node_id, direction, status,
-                           ROW_NUMBER() OVER (PARTITION BY node_id ORDER BY executed_at DESC) as rn
+                    SELECT DISTINCT ON (node_id) node_id, direction, status
                     FROM migraphe_history
                     WHERE environment_id = ?
+                    ORDER BY node_id, executed_at DESC
                 ) AS latest
-                WHERE rn = 1 AND direction = 'UP' AND status = 'SUCCESS'
+                WHERE direction = 'UP' AND status = 'SUCCESS'
                 ORDER BY node_id
                 """;
 
@@ -171,15 +299,53 @@ public final class PostgreSQLHistoryRepository implements HistoryRepository {
         }
     }
 
+    @Override
+    public @Nullable String findSerializedDownTask(NodeId nodeId, EnvironmentId environmentId) {
+        Objects.requireNonNull(nodeId, "nodeId must not be null");
+        Objects.requireNonNull(environmentId, "environmentId must not be null");
+
+        // serialized_down_task はハッシュ化される前に記録されたレコード用
+        String sql =
+                """
+                SELECT h.serialized_down_task, d.payload
+                FROM migraphe_history h
+                LEFT JOIN migraphe_down_task d ON d.hash = h.down_task_hash
+                WHERE h.node_id = ? AND h.environment_id = ?
+                ORDER BY h.executed_at DESC
+                LIMIT 1
+                """;
+
+        try (Connection conn = environment.createConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setString(1, nodeId.value());
+            pstmt.setString(2, environmentId.value());
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                byte[] payload = rs.getBytes("payload");
+                return payload != null
+                        ? PostgreSQLDownTaskStore.decompress(payload)
+                        : rs.getString("serialized_down_task");
+            }
+        } catch (SQLException e) {
+            throw new PostgreSQLException("Failed to find down task", e);
+        }
+    }
+
     @Override
     public List<ExecutionRecord> allRecords(EnvironmentId environmentId) {
         Objects.requireNonNull(environmentId, "environmentId must not be null");
 
         String sql =
                 """
-                SELECT * FROM migraphe_history
-                WHERE environment_id = ?
-                ORDER BY executed_at
+                SELECT h.*, d.payload AS down_task_payload
+                FROM migraphe_history h
+                LEFT JOIN migraphe_down_task d ON d.hash = h.down_task_hash
+                WHERE h.environment_id = ?
+                ORDER BY h.executed_at
                 """;
 
         try (Connection conn = environment.createConnection();
@@ -190,7 +356,7 @@ public final class PostgreSQLHistoryRepository implements HistoryRepository {
             try (ResultSet rs = pstmt.executeQuery()) {
                 List<ExecutionRecord> records = new ArrayList<>();
                 while (rs.next()) {
-                    records.add(mapToExecutionRecord(rs));
+                    records.add(mapWithDownTask(rs));
                 }
                 return records;
             }
@@ -199,7 +365,321 @@ public final class PostgreSQLHistoryRepository implements HistoryRepository {
         }
     }
 
-    private ExecutionRecord mapToExecutionRecord(ResultSet rs) throws SQLException {
+    /**
+     * {@inheritDoc}
+     *
+     * <p>サーバーサイドカーソルで {@value #STREAM_FETCH_SIZE} 行ずつ読み出すため、履歴の件数によらずメモリ使用量は一定になる。
+     * Stream をクローズするまで接続を保持する。
+     */
+    @Override
+    public Stream<ExecutionRecord> streamRecords(HistoryQuery query) {
+        Objects.requireNonNull(query, "query must not be null");
+
+        Connection conn = null;
+        try {
+            conn = environment.createConnection();
+            // PostgreSQL JDBC ドライバはトランザクション内でのみ fetchSize 単位でカーソルから読み出す
+            conn.setAutoCommit(false);
+            PreparedStatement pstmt = prepareQuery(conn, query, null, 0);
+            pstmt.setFetchSize(STREAM_FETCH_SIZE);
+            ResultSet rs = pstmt.executeQuery();
+
+            Connection streamConn = conn;
+            return StreamSupport.stream(new ResultSetSpliterator(rs), false)
+                    .onClose(() -> closeStreamConnection(streamConn));
+        } catch (SQLException e) {
+            if (conn != null) {
+                closeStreamConnection(conn);
+            }
+            throw new PostgreSQLException("Failed to stream history records", e);
+        }
+    }
+
+    @Override
+    public HistoryPage findPage(HistoryQuery query, @Nullable HistoryCursor after, int limit) {
+        Objects.requireNonNull(query, "query must not be null");
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+
+        // 次のページの有無を判定するため1件多く読み出す
+        try (Connection conn = environment.createConnection();
+                PreparedStatement pstmt = prepareQuery(conn, query, after, limit + 1);
+                ResultSet rs = pstmt.executeQuery()) {
+            List<ExecutionRecord> records = new ArrayList<>();
+            while (rs.next()) {
+                records.add(mapWithDownTask(rs));
+            }
+            return HistoryPage.of(records, limit);
+        } catch (SQLException e) {
+            throw new PostgreSQLException("Failed to read history page", e);
+        }
+    }
+
+    /** 集計は percentile_cont などの集約関数でデータベース側で行い、ノードごとに1行だけを読み出す。 */
+    @Override
+    public List<NodeDurationStats> durationStats(HistoryQuery query) {
+        Objects.requireNonNull(query, "query must not be null");
+
+        StringBuilder sql =
+                new StringBuilder(
+                        """
+                        SELECT node_id,
+                            count(*) AS runs,
+                            count(*) FILTER (WHERE status = 'FAILURE') AS failures,
+                            percentile_cont(0.5) WITHIN GROUP (ORDER BY duration_ms)
+                                FILTER (WHERE status = 'SUCCESS') AS p50,
+                            percentile_cont(0.95) WITHIN GROUP (ORDER BY duration_ms)
+                                FILTER (WHERE status = 'SUCCESS') AS p95,
+                            max(duration_ms) FILTER (WHERE status = 'SUCCESS') AS max_ms,
+                            avg(duration_ms)
+                                FILTER (WHERE status = 'SUCCESS' AND executed_at < ?) AS earlier,
+                            avg(duration_ms)
+                                FILTER (WHERE status = 'SUCCESS' AND executed_at >= ?) AS recent
+                        FROM migraphe_history
+                        WHERE environment_id = ?
+                          AND direction = 'UP' AND status IN ('SUCCESS', 'FAILURE')
+                        """);
+        if (query.from() != null) {
+            sql.append(" AND executed_at >= ?");
+        }
+        if (query.until() != null) {
+            sql.append(" AND executed_at < ?");
+        }
+        if (!query.nodeIds().isEmpty()) {
+            sql.append(" AND node_id = ANY (?)");
+        }
+        sql.append(" GROUP BY node_id ORDER BY node_id");
+
+        try (Connection conn = environment.createConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            // 期間が指定されていなければ前半・後半の平均は求めない（NULL との比較は常に偽）
+            Instant midpoint = query.midpoint();
+            Timestamp midpointTimestamp = midpoint != null ? Timestamp.from(midpoint) : null;
+            pstmt.setTimestamp(index++, midpointTimestamp);
+            pstmt.setTimestamp(index++, midpointTimestamp);
+            pstmt.setString(index++, query.environmentId().value());
+            if (query.from() != null) {
+                pstmt.setTimestamp(index++, Timestamp.from(query.from()));
+            }
+            if (query.until() != null) {
+                pstmt.setTimestamp(index++, Timestamp.from(query.until()));
+            }
+            if (!query.nodeIds().isEmpty()) {
+                Object[] nodeIds = query.nodeIds().stream().map(NodeId::value).toArray();
+                pstmt.setArray(index, conn.createArrayOf("text", nodeIds));
+            }
+
+            List<NodeDurationStats> stats = new ArrayList<>();
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    stats.add(
+                            new NodeDurationStats(
+                                    NodeId.of(rs.getString("node_id")),
+                                    query.environmentId(),
+                                    rs.getLong("runs"),
+                                    rs.getLong("failures"),
+                                    rs.getDouble("p50"),
+                                    rs.getDouble("p95"),
+                                    rs.getLong("max_ms"),
+                                    NodeDurationStats.trendOf(
+                                            nullableDouble(rs, "earlier"),
+                                            nullableDouble(rs, "recent"))));
+                }
+            }
+            return stats;
+        } catch (SQLException e) {
+            throw new PostgreSQLException("Failed to aggregate execution history", e);
+        }
+    }
+
+    @Override
+    public long compact(int keepLatest) {
+        return maintenance.compact(keepLatest);
+    }
+
+    @Override
+    public List<Path> archive(Instant before, Path outputDir) {
+        return maintenance.archive(before, outputDir);
+    }
+
+    @Override
+    public List<String> ensurePartitions(int monthsAhead) {
+        return maintenance.ensurePartitions(monthsAhead);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>COPY で一時テーブルに流し込んでから、1つの INSERT で履歴テーブルに移す。
+     */
+    @Override
+    public long importRecords(Iterator<ExecutionRecord> records) {
+        return bulkImport.importRecords(records);
+    }
+
+    @Override
+    public Map<EnvironmentId, String> findFingerprints(Collection<EnvironmentId> environmentIds) {
+        return fingerprints.find(environmentIds);
+    }
+
+    @Override
+    public void saveFingerprints(Map<EnvironmentId, String> fingerprints) {
+        this.fingerprints.save(fingerprints);
+    }
+
+    @Override
+    public void registerNodes(String runId, Collection<NodeId> nodeIds) {
+        leases.registerNodes(runId, nodeIds);
+    }
+
+    @Override
+    public @Nullable NodeId tryClaim(
+            String runId, String owner, Collection<NodeId> candidates, Duration leaseDuration) {
+        return leases.tryClaim(runId, owner, candidates, leaseDuration);
+    }
+
+    @Override
+    public boolean renew(String runId, String owner, NodeId nodeId, Duration leaseDuration) {
+        return leases.renew(runId, owner, nodeId, leaseDuration);
+    }
+
+    @Override
+    public void complete(String runId, String owner, NodeId nodeId) {
+        leases.finish(runId, owner, nodeId, "DONE");
+    }
+
+    @Override
+    public void fail(String runId, String owner, NodeId nodeId) {
+        leases.finish(runId, owner, nodeId, "FAILED");
+    }
+
+    @Override
+    public boolean hasFailures(String runId) {
+        return leases.hasFailures(runId);
+    }
+
+    /**
+     * 履歴テーブルのスキーマ（テーブル・インデックス）を作成する。 既に存在するものはそのまま残す。
+     *
+     * @param conn データベース接続
+     * @param idType テーブルを新しく作成する場合の id 列の型
+     * @throws SQLException スキーマの作成に失敗した場合
+     */
+    static void applySchema(Connection conn, HistoryIdType idType) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(loadSchemaResource().replace("${id_type}", idType.columnType()));
+        } catch (IOException e) {
+            throw new PostgreSQLException("Failed to load schema resource", e);
+        }
+    }
+
+    /**
+     * 条件に一致するレコードを (executed_at, id) の順に取得する文を作成する。
+     *
+     * <p>結果の行は DOWN タスクの内容を含むため、 {@link #mapWithDownTask} で変換すること。
+     *
+     * @param after この位置より後ろのレコードに絞る（null の場合は先頭から）
+     * @param limit 最大件数（0 の場合は制限なし）
+     */
+    private static PreparedStatement prepareQuery(
+            Connection conn, HistoryQuery query, @Nullable HistoryCursor after, int limit)
+            throws SQLException {
+        // エクスポートなどで DOWN タスクが失われないよう、 migraphe_down_task の内容も読み出す
+        StringBuilder sql =
+                new StringBuilder(
+                        "SELECT h.*, d.payload AS down_task_payload FROM migraphe_history h"
+                                + " LEFT JOIN migraphe_down_task d ON d.hash = h.down_task_hash"
+                                + " WHERE h.environment_id = ?");
+        if (query.from() != null) {
+            sql.append(" AND h.executed_at >= ?");
+        }
+        if (query.until() != null) {
+            sql.append(" AND h.executed_at < ?");
+        }
+        if (!query.nodeIds().isEmpty()) {
+            sql.append(" AND h.node_id = ANY (?)");
+        }
+        if (after != null) {
+            sql.append(" AND (h.executed_at, h.id) > (?, ?)");
+        }
+        sql.append(" ORDER BY h.executed_at, h.id");
+        if (limit > 0) {
+            sql.append(" LIMIT ?");
+        }
+
+        PreparedStatement pstmt = conn.prepareStatement(sql.toString());
+        try {
+            int index = 1;
+            pstmt.setString(index++, query.environmentId().value());
+            if (query.from() != null) {
+                pstmt.setTimestamp(index++, Timestamp.from(query.from()));
+            }
+            if (query.until() != null) {
+                pstmt.setTimestamp(index++, Timestamp.from(query.until()));
+            }
+            if (!query.nodeIds().isEmpty()) {
+                Object[] nodeIds = query.nodeIds().stream().map(NodeId::value).toArray();
+                pstmt.setArray(index++, conn.createArrayOf("text", nodeIds));
+            }
+            if (after != null) {
+                pstmt.setTimestamp(index++, Timestamp.from(after.executedAt()));
+                bindId(pstmt, index++, after.id());
+            }
+            if (limit > 0) {
+                pstmt.setInt(index, limit);
+            }
+            return pstmt;
+        } catch (SQLException e) {
+            pstmt.close();
+            throw e;
+        }
+    }
+
+    /**
+     * id をパラメータに設定する。
+     *
+     * <p>型を指定せずに送り、サーバー側で列の型（TEXT または UUID）に合わせて解釈させる。
+     */
+    static void bindId(PreparedStatement pstmt, int index, String id) throws SQLException {
+        pstmt.setObject(index, id, Types.OTHER);
+    }
+
+    private static @Nullable Double nullableDouble(ResultSet rs, String column)
+            throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    /** streamRecords の読み出し用トランザクションを終了して接続を閉じる。 */
+    private static void closeStreamConnection(Connection conn) {
+        try (conn) {
+            conn.rollback();
+        } catch (SQLException e) {
+            throw new PostgreSQLException("Failed to close history stream", e);
+        }
+    }
+
+    private static ExecutionRecord mapToExecutionRecord(ResultSet rs) throws SQLException {
+        return mapToExecutionRecord(rs, rs.getString("serialized_down_task"));
+    }
+
+    /**
+     * down_task_payload 列を含む行を変換する。 DOWN タスクは migraphe_down_task の内容を使い、
+     * ない場合は旧形式の serialized_down_task 列を使う。
+     */
+    private static ExecutionRecord mapWithDownTask(ResultSet rs) throws SQLException {
+        byte[] payload = rs.getBytes("down_task_payload");
+        return mapToExecutionRecord(
+                rs,
+                payload != null
+                        ? PostgreSQLDownTaskStore.decompress(payload)
+                        : rs.getString("serialized_down_task"));
+    }
+
+    private static ExecutionRecord mapToExecutionRecord(
+            ResultSet rs, @Nullable String serializedDownTask) throws SQLException {
         String id = rs.getString("id");
         NodeId nodeId = NodeId.of(rs.getString("node_id"));
         EnvironmentId envId = EnvironmentId.of(rs.getString("environment_id"));
@@ -207,7 +687,6 @@ public final class PostgreSQLHistoryRepository implements HistoryRepository {
         ExecutionStatus status = ExecutionStatus.valueOf(rs.getString("status"));
         Instant executedAt = rs.getTimestamp("executed_at").toInstant();
         String description = rs.getString("description");
-        String serializedDownTask = rs.getString("serialized_down_task");
         long durationMs = rs.getLong("duration_ms");
         String errorMessage = rs.getString("error_message");
 
@@ -224,8 +703,9 @@ public final class PostgreSQLHistoryRepository implements HistoryRepository {
                 errorMessage);
     }
 
-    private String loadSchemaResource() throws IOException {
-        try (InputStream is = getClass().getResourceAsStream(SCHEMA_RESOURCE)) {
+    private static String loadSchemaResource() throws IOException {
+        try (InputStream is =
+                PostgreSQLHistoryRepository.class.getResourceAsStream(SCHEMA_RESOURCE)) {
             if (is == null) {
                 throw new IOException("Schema resource not found: " + SCHEMA_RESOURCE);
             }
@@ -235,4 +715,29 @@ public final class PostgreSQLHistoryRepository implements HistoryRepository {
             }
         }
     }
+
+    /** ResultSet を1行ずつ ExecutionRecord に変換する Spliterator。 */
+    private static final class ResultSetSpliterator
+            extends Spliterators.AbstractSpliterator<ExecutionRecord> {
+
+        private final ResultSet rs;
+
+        ResultSetSpliterator(ResultSet rs) {
+            super(Long.MAX_VALUE, ORDERED | NONNULL);
+            this.rs = rs;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super ExecutionRecord> action) {
+            try {
+                if (!rs.next()) {
+                    return false;
+                }
+                action.accept(mapWithDownTask(rs));
+                return true;
+            } catch (SQLException e) {
+                throw new PostgreSQLException("Failed to read history record", e);
+            }
+        }
+    }
 }
@@ -0,0 +1,146 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import io.github.kakusuke.migraphe.api.common.Result;
+import io.github.kakusuke.migraphe.api.task.ImpactAnalyzer;
+import io.github.kakusuke.migraphe.api.task.ImpactFinding;
+import io.github.kakusuke.migraphe.api.task.ImpactOptions;
+import io.github.kakusuke.migraphe.api.task.SqlContentProvider;
+import io.github.kakusuke.migraphe.api.task.Task;
+import io.github.kakusuke.migraphe.api.task.TaskExecutionContext;
+import io.github.kakusuke.migraphe.api.task.TaskResult;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * {@code CREATE INDEX CONCURRENTLY} でインデックスをオンラインで作成するタスク。
+ *
+ * <p>トランザクションを使わずに実行し、作成中は別の接続から {@code pg_stat_progress_create_index} を読んで、
+ * {@link TaskExecutionContext#progress} で進捗を通知する。 失敗した場合は残った INVALID なインデックスを削除する。
+ */
+public final class PostgreSQLIndexTask implements Task, SqlContentProvider, ImpactAnalyzer {
+
+    /** 進捗を読む間隔のデフォルト。 */
+    static final Duration DEFAULT_PROGRESS_INTERVAL = Duration.ofSeconds(2);
+
+    private final PostgreSQLEnvironment environment;
+    private final CreateIndex index;
+    private final @Nullable SqlSource downSql;
+    private final Duration progressInterval;
+    private final SessionProfile session;
+
+    private PostgreSQLIndexTask(
+            PostgreSQLEnvironment environment,
+            CreateIndex index,
+            @Nullable SqlSource downSql,
+            Duration progressInterval,
+            SessionProfile session) {
+        this.environment = Objects.requireNonNull(environment, "environment must not be null");
+        this.index = Objects.requireNonNull(index, "index must not be null");
+        this.downSql = downSql;
+        this.progressInterval =
+                Objects.requireNonNull(progressInterval, "progressInterval must not be null");
+        this.session = Objects.requireNonNull(session, "session must not be null");
+    }
+
+    /**
+     * インデックス作成タスクを作成する。
+     *
+     * @param environment PostgreSQL 環境
+     * @param index 作成するインデックス
+     * @param downSql DOWN SQL（ロールバック用、null 許容）
+     * @param progressInterval 進捗を読む間隔
+     * @param session 接続に設定するセッションの設定
+     * @return インデックス作成タスク
+     */
+    static PostgreSQLIndexTask create(
+            PostgreSQLEnvironment environment,
+            CreateIndex index,
+            @Nullable SqlSource downSql,
+            Duration progressInterval,
+            SessionProfile session) {
+        return new PostgreSQLIndexTask(environment, index, downSql, progressInterval, session);
+    }
+
+    @Override
+    public Result<TaskResult, String> execute() {
+        long startTime = System.currentTimeMillis();
+        try (Connection conn = environment.createConnection()) {
+            session.apply(conn);
+            return execute(conn, startTime, message -> {});
+        } catch (SQLException e) {
+            return Result.err("Failed to establish database connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>インデックスの作成には実行の間共有する接続を使い、進捗の監視には別の接続を開く。
+     */
+    @Override
+    public Result<TaskResult, String> execute(TaskExecutionContext context) {
+        long startTime = System.currentTimeMillis();
+        try {
+            return execute(
+                    PostgreSQLSession.acquire(context, environment, session),
+                    startTime,
+                    context::progress);
+        } catch (SQLException e) {
+            return Result.err("Failed to establish database connection: " + e.getMessage());
+        }
+    }
+
+    private Result<TaskResult, String> execute(
+            Connection conn, long startTime, Consumer<String> progress) {
+        try {
+            // CREATE INDEX CONCURRENTLY はトランザクション内で実行できない
+            conn.setAutoCommit(true);
+            String detail;
+            try (IndexBuildMonitor monitor =
+                    IndexBuildMonitor.start(
+                            environment,
+                            IndexBuildMonitor.backendPid(conn),
+                            progressInterval,
+                            progress)) {
+                detail = index.execute(conn, true, 1);
+            }
+            long durationMs = System.currentTimeMillis() - startTime;
+            String message = "Index build executed in " + durationMs + "ms";
+            if (detail != null) {
+                message += ": " + detail;
+            }
+            TaskResult result =
+                    downSql != null
+                            ? TaskResult.withDownTask(message, downSql.text())
+                            : TaskResult.withoutDownTask(message);
+            return Result.ok(result.withDetail(detail));
+        } catch (SQLException e) {
+            return Result.err("Failed to build index " + index.name() + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String description() {
+        return "PostgreSQL index build (concurrently)";
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>ステートメントごとに既存のテーブルに取るロックを見積もり、{@code pg_class} から読んだテーブルの大きさと一緒に返す。
+     */
+    @Override
+    public List<ImpactFinding> analyzeImpact(ImpactOptions options) {
+        return LockImpactAnalyzer.analyze(environment, index);
+    }
+
+    @Override
+    public String sqlContent() {
+        return index.text();
+    }
+}
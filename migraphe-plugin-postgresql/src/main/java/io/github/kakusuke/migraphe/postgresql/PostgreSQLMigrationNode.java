@@ -9,6 +9,7 @@ import io.github.kakusuke.migraphe.api.task.Task;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
 import org.jspecify.annotations.Nullable;
 
@@ -20,9 +21,12 @@ public final class PostgreSQLMigrationNode implements MigrationNode {
     private final @Nullable String description;
     private final PostgreSQLEnvironment environment;
     private final Set<NodeId> dependencies;
-    private final String upSql;
-    private final @Nullable String downSql;
+    private final SqlSource upSql;
+    private final @Nullable SqlSource downSql;
     private final boolean autocommit;
+    private final int batchSize;
+    private final Duration progressInterval;
+    private final SessionProfile session;
 
     private PostgreSQLMigrationNode(Builder builder) {
         this.id = Objects.requireNonNull(builder.id, "id must not be null");
@@ -32,10 +36,17 @@ public final class PostgreSQLMigrationNode implements MigrationNode {
                 Objects.requireNonNull(builder.environment, "environment must not be null");
         this.dependencies = Set.copyOf(builder.dependencies);
         this.upSql = Objects.requireNonNull(builder.upSql, "upSql must not be null");
-        this.downSql = builder.downSql;
+        // インデックスの作成は、DOWN SQL がなければインデックスの削除で戻す
+        this.downSql =
+                builder.downSql == null && upSql instanceof CreateIndex index
+                        ? new SqlSource.Inline(index.dropSql())
+                        : builder.downSql;
         this.autocommit = builder.autocommit;
+        this.batchSize = builder.batchSize;
+        this.progressInterval = builder.progressInterval;
+        this.session = environment.sessionProfile().with(builder.sessionSettings);
 
-        if (upSql.isBlank()) {
+        if (upSql instanceof SqlSource.Inline inline && inline.sql().isBlank()) {
             throw new IllegalArgumentException("upSql must not be blank");
         }
     }
@@ -67,17 +78,39 @@ public final class PostgreSQLMigrationNode implements MigrationNode {
 
     @Override
     public Task upTask() {
-        return PostgreSQLUpTask.create(environment, upSql, downSql, autocommit);
+        if (upSql instanceof CreateIndex index) {
+            return PostgreSQLIndexTask.create(
+                    environment, index, downSql, progressInterval, session);
+        }
+        if (upSql instanceof Backfill backfill) {
+            return PostgreSQLBackfillTask.create(environment, id, backfill, downSql, session);
+        }
+        return PostgreSQLUpTask.create(environment, upSql, downSql, autocommit, batchSize, session);
     }
 
     @Override
     public @Nullable Task downTask() {
         if (downSql != null) {
-            return PostgreSQLDownTask.create(environment, downSql, autocommit);
+            return PostgreSQLDownTask.create(
+                    environment, downSql, autocommit, batchSize, session);
         }
         return null;
     }
 
+    /**
+     * UP・DOWN の SQL と autocommit の設定から求めた SHA-256 ハッシュ。 SQL ファイルは読み込み時に求めたチェックサムを使う。
+     */
+    @Override
+    public String contentHash() {
+        String content =
+                upSql.fingerprint()
+                        + '\0'
+                        + (downSql != null ? downSql.fingerprint() : "")
+                        + '\0'
+                        + autocommit;
+        return PostgreSQLDownTaskStore.hash(content.getBytes(UTF_8));
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -88,9 +121,12 @@ public final class PostgreSQLMigrationNode implements MigrationNode {
         private @Nullable String description;
         private @Nullable PostgreSQLEnvironment environment;
         private Set<NodeId> dependencies = Set.of();
-        private @Nullable String upSql;
-        private @Nullable String downSql;
+        private @Nullable SqlSource upSql;
+        private @Nullable SqlSource downSql;
         private boolean autocommit = false;
+        private int batchSize = 1;
+        private Duration progressInterval = PostgreSQLIndexTask.DEFAULT_PROGRESS_INTERVAL;
+        private Map<String, String> sessionSettings = Map.of();
 
         public Builder id(String id) {
             this.id = NodeId.of(id);
@@ -134,7 +170,71 @@ public final class PostgreSQLMigrationNode implements MigrationNode {
          * @return Builder
          */
         public Builder upSql(String sql) {
-            this.upSql = sql;
+            this.upSql = new SqlSource.Inline(sql);
+            return this;
+        }
+
+        /**
+         * UP SQL を実行時にファイルから読み込むよう設定する。
+         *
+         * <p>ここではチェックサムだけを求め、内容はタスクの実行時にストリームで読み込む。 巨大なデータ投入スクリプト向け。
+         *
+         * @param path SQL ファイルのパス
+         * @return Builder
+         * @throws IOException ファイル読み込みに失敗した場合
+         */
+        public Builder upSqlFile(Path path) throws IOException {
+            this.upSql = SqlFile.load(path);
+            return this;
+        }
+
+        /**
+         * UP マイグレーションとして、データファイルを COPY でテーブルに読み込むよう設定する。
+         *
+         * @param copy COPY のマイグレーション
+         * @return Builder
+         */
+        Builder copy(CopyLoad copy) {
+            this.upSql = copy;
+            return this;
+        }
+
+        /**
+         * UP マイグレーションとして、インデックスを CREATE INDEX CONCURRENTLY で作成するよう設定する。
+         *
+         * <p>トランザクション内では実行できないため、autocommit も有効にする。 DOWN SQL を設定しなければ、 インデックスを
+         * DROP INDEX CONCURRENTLY で削除する DOWN マイグレーションになる。
+         *
+         * @param index 作成するインデックス
+         * @return Builder
+         */
+        Builder createIndex(CreateIndex index) {
+            this.upSql = index;
+            this.autocommit = true;
+            return this;
+        }
+
+        /**
+         * UP マイグレーションとして、キーの範囲ごとにコミットしながら SQL を実行するバックフィルを設定する。
+         *
+         * <p>範囲ごとにチェックポイントを保存するため、途中で失敗しても次の実行で続きから再開する。
+         *
+         * @param backfill バックフィル
+         * @return Builder
+         */
+        Builder backfill(Backfill backfill) {
+            this.upSql = backfill;
+            return this;
+        }
+
+        /**
+         * インデックスの作成中に進捗を読む間隔を設定する。
+         *
+         * @param progressInterval 進捗を読む間隔
+         * @return Builder
+         */
+        Builder progressInterval(Duration progressInterval) {
+            this.progressInterval = progressInterval;
             return this;
         }
 
@@ -146,7 +246,7 @@ public final class PostgreSQLMigrationNode implements MigrationNode {
          * @throws IOException ファイル読み込みに失敗した場合
          */
         public Builder upSqlFromFile(Path path) throws IOException {
-            this.upSql = Files.readString(path);
+            this.upSql = new SqlSource.Inline(Files.readString(path));
             return this;
         }
 
@@ -158,7 +258,7 @@ public final class PostgreSQLMigrationNode implements MigrationNode {
          * @throws IOException リソース読み込みに失敗した場合
          */
         public Builder upSqlFromResource(String resourcePath) throws IOException {
-            this.upSql = loadResource(resourcePath);
+            this.upSql = new SqlSource.Inline(loadResource(resourcePath));
             return this;
         }
 
@@ -169,7 +269,20 @@ public final class PostgreSQLMigrationNode implements MigrationNode {
          * @return Builder
          */
         public Builder downSql(@Nullable String sql) {
-            this.downSql = sql;
+            this.downSql = sql != null ? new SqlSource.Inline(sql) : null;
+            return this;
+        }
+
+        /**
+         * DOWN SQL を実行時にファイルから読み込むよう設定する。
+         *
+         * @param path SQL ファイルのパス
+         * @return Builder
+         * @throws IOException ファイル読み込みに失敗した場合
+         * @see #upSqlFile(Path)
+         */
+        public Builder downSqlFile(Path path) throws IOException {
+            this.downSql = SqlFile.load(path);
             return this;
         }
 
@@ -181,7 +294,7 @@ public final class PostgreSQLMigrationNode implements MigrationNode {
          * @throws IOException ファイル読み込みに失敗した場合
          */
         public Builder downSqlFromFile(Path path) throws IOException {
-            this.downSql = Files.readString(path);
+            this.downSql = new SqlSource.Inline(Files.readString(path));
             return this;
         }
 
@@ -193,7 +306,7 @@ public final class PostgreSQLMigrationNode implements MigrationNode {
          * @throws IOException リソース読み込みに失敗した場合
          */
         public Builder downSqlFromResource(String resourcePath) throws IOException {
-            this.downSql = loadResource(resourcePath);
+            this.downSql = new SqlSource.Inline(loadResource(resourcePath));
             return this;
         }
 
@@ -210,6 +323,37 @@ public final class PostgreSQLMigrationNode implements MigrationNode {
             return this;
         }
 
+        /**
+         * ステートメントごとに分けて実行するときに、連続した INSERT・UPDATE・DELETE・MERGE を JDBC のバッチにまとめる最大数を設定する。
+         *
+         * <p>autocommit モードのスクリプトと SQL ファイルに適用される。 バッチは1つの暗黙のトランザクションで実行されるため、
+         * autocommit モードでもバッチ内のステートメントはまとめてコミットされる。 デフォルトは 1（まとめない）。
+         *
+         * @param batchSize 1回のバッチにまとめる最大のステートメント数
+         * @return Builder
+         * @throws IllegalArgumentException batchSize が1未満の場合
+         */
+        public Builder batchSize(int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * タスクの実行に使う接続に設定するセッションの設定を、ターゲットの設定に上書きして設定する。
+         *
+         * <p>maintenance_work_mem や synchronous_commit など、実行の速さだけを変える設定向け。 content hash には含めない。
+         *
+         * @param sessionSettings 設定名と値
+         * @return Builder
+         */
+        public Builder sessionSettings(Map<String, String> sessionSettings) {
+            this.sessionSettings = Map.copyOf(sessionSettings);
+            return this;
+        }
+
         public PostgreSQLMigrationNode build() {
             return new PostgreSQLMigrationNode(this);
         }
@@ -5,12 +5,20 @@ import io.github.kakusuke.migraphe.api.graph.MigrationNode;
 import io.github.kakusuke.migraphe.api.graph.NodeId;
 import io.github.kakusuke.migraphe.api.spi.MigrationNodeProvider;
 import io.github.kakusuke.migraphe.api.spi.TaskDefinition;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 /**
  * PostgreSQL MigrationNode を生成する Provider。
  *
- * <p>TaskDefinition の UP/DOWN は SQL 文字列（String）。
+ * <p>TaskDefinition の UP/DOWN は SQL 文字列（String）。 up_file/down_file を指定した場合は、ファイルのチェックサムだけを求め、
+ * 内容はタスクの実行時に読み込む。 copy を指定した場合は、データファイルを COPY で読み込む UP マイグレーションになる。 index
+ * を指定した場合は、CREATE INDEX CONCURRENTLY でインデックスを作成する UP マイグレーションになり、autocommit で実行する。
+ * backfill を指定した場合は、キーの範囲ごとにコミットするバックフィルの UP マイグレーションになる。
  */
 public final class PostgreSQLMigrationNodeProvider implements MigrationNodeProvider<String> {
 
@@ -32,9 +40,6 @@ public final class PostgreSQLMigrationNodeProvider implements MigrationNodeProvi
                     "TaskDefinition must be SqlTaskDefinition, got: " + task.getClass().getName());
         }
 
-        // UP SQL を取得
-        String upSql = task.up();
-
         // autocommit を取得（デフォルト false）
         boolean autocommit = sqlTask.autocommit().orElse(false);
 
@@ -45,15 +50,112 @@ public final class PostgreSQLMigrationNodeProvider implements MigrationNodeProvi
                         .name(task.name())
                         .environment(pgEnv)
                         .dependencies(dependencies)
-                        .upSql(upSql)
                         .autocommit(autocommit);
 
+        // batch_size（オプション、デフォルトはまとめない）
+        if (sqlTask.batchSize().isPresent()) {
+            int batchSize = sqlTask.batchSize().get();
+            if (batchSize < 1) {
+                throw new PostgreSQLException(
+                        "Task " + nodeId.value() + " batch_size must be positive: " + batchSize);
+            }
+            builder.batchSize(batchSize);
+        }
+
+        // session（オプション、ターゲットの session を上書きする）
+        builder.sessionSettings(sqlTask.session());
+
         // description（オプション）
         task.description().ifPresent(builder::description);
 
-        // DOWN SQL（オプション）
-        task.down().filter(sql -> !sql.isBlank()).ifPresent(builder::downSql);
+        // UP SQL（up、up_file、copy、index、backfill のいずれか1つ）
+        Optional<String> up = sqlTask.up();
+        int upSources =
+                (up.isPresent() ? 1 : 0)
+                        + (sqlTask.upFile().isPresent() ? 1 : 0)
+                        + (sqlTask.copy().isPresent() ? 1 : 0)
+                        + (sqlTask.index().isPresent() ? 1 : 0)
+                        + (sqlTask.backfill().isPresent() ? 1 : 0);
+        if (upSources == 0) {
+            throw new PostgreSQLException(
+                    "Task "
+                            + nodeId.value()
+                            + " must specify one of up, up_file, copy, index and backfill");
+        }
+        if (upSources > 1) {
+            throw new PostgreSQLException(
+                    "Task "
+                            + nodeId.value()
+                            + " must specify only one of up, up_file, copy, index and backfill");
+        }
+        if (sqlTask.backfill().isPresent()) {
+            SqlTaskDefinition.Backfill backfill = sqlTask.backfill().get();
+            builder.backfill(
+                    new Backfill(
+                            backfill.table(),
+                            backfill.key(),
+                            backfill.sql(),
+                            backfill.batchSize(),
+                            Duration.ofMillis(backfill.sleepMs())));
+        } else if (sqlTask.index().isPresent()) {
+            SqlTaskDefinition.Index index = sqlTask.index().get();
+            builder.createIndex(
+                    new CreateIndex(
+                            index.name(),
+                            index.table(),
+                            index.columns(),
+                            index.unique(),
+                            index.method().orElse(null),
+                            index.where().orElse(null)));
+        } else if (sqlTask.copy().isPresent()) {
+            SqlTaskDefinition.Copy copy = sqlTask.copy().get();
+            Path file = resolve(sqlTask, copy.file());
+            try {
+                builder.copy(
+                        CopyLoad.of(
+                                copy.table(),
+                                copy.columns().orElse(List.of()),
+                                CopyLoad.Format.parse(copy.format()),
+                                copy.header(),
+                                copy.truncate(),
+                                file));
+            } catch (IOException e) {
+                throw new PostgreSQLException("Failed to read copy file: " + file, e);
+            }
+        } else if (sqlTask.upFile().isPresent()) {
+            Path upFile = resolve(sqlTask, sqlTask.upFile().get());
+            try {
+                builder.upSqlFile(upFile);
+            } catch (IOException e) {
+                throw new PostgreSQLException("Failed to read up_file: " + upFile, e);
+            }
+        } else {
+            builder.upSql(up.orElseThrow());
+        }
+
+        // DOWN SQL（オプション、down と down_file のどちらか一方）
+        Optional<String> down = task.down().filter(sql -> !sql.isBlank());
+        if (sqlTask.downFile().isPresent()) {
+            if (down.isPresent()) {
+                throw new PostgreSQLException(
+                        "Task " + nodeId.value() + " must not specify both down and down_file");
+            }
+            Path downFile = resolve(sqlTask, sqlTask.downFile().get());
+            try {
+                builder.downSqlFile(downFile);
+            } catch (IOException e) {
+                throw new PostgreSQLException("Failed to read down_file: " + downFile, e);
+            }
+        } else {
+            down.ifPresent(builder::downSql);
+        }
 
         return builder.build();
     }
+
+    /** up_file/down_file/copy.file のパスを、タスクファイルのディレクトリを基準に解決する。 */
+    private static Path resolve(SqlTaskDefinition task, String file) {
+        Path path = Path.of(file);
+        return task.taskDir().map(dir -> Path.of(dir).resolve(path)).orElse(path);
+    }
 }
@@ -0,0 +1,172 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Objects;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * migraphe_node_lease テーブルでノードのリースを管理する。
+ *
+ * <p>リースの取得は {@code FOR UPDATE SKIP LOCKED} で行うため、複数のランナーが同時に取得しようとしても互いを待たずに別のノードを取得する。
+ * 期限はデータベースの時刻（{@code now()}）で判定するため、ランナー間の時刻のずれの影響を受けない。
+ */
+final class PostgreSQLNodeLeases {
+
+    private static final String SCHEMA_RESOURCE =
+            "/io/github/kakusuke/migraphe/postgresql/schema/init_lease_table.sql";
+
+    private final PostgreSQLEnvironment environment;
+
+    PostgreSQLNodeLeases(PostgreSQLEnvironment environment) {
+        this.environment = Objects.requireNonNull(environment, "environment must not be null");
+    }
+
+    void registerNodes(String runId, Collection<NodeId> nodeIds) {
+        String sql =
+                """
+                INSERT INTO migraphe_node_lease (run_id, node_id)
+                SELECT ?, unnest(?::text[])
+                ON CONFLICT (run_id, node_id) DO NOTHING
+                """;
+
+        try (Connection conn = environment.createConnection()) {
+            applySchema(conn);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, runId);
+                pstmt.setArray(2, conn.createArrayOf("text", toValues(nodeIds)));
+                pstmt.executeUpdate();
+            }
+        } catch (SQLException e) {
+            throw new PostgreSQLException("Failed to register nodes for run: " + runId, e);
+        }
+    }
+
+    @Nullable NodeId tryClaim(
+            String runId, String owner, Collection<NodeId> candidates, Duration leaseDuration) {
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        // ロック中の行は読み飛ばすため、他のランナーが取得処理中のノードを待たない
+        String sql =
+                """
+                UPDATE migraphe_node_lease l
+                SET status = 'RUNNING',
+                    owner = ?,
+                    expires_at = now() + make_interval(secs => ?),
+                    attempts = l.attempts + 1
+                FROM (
+                    SELECT node_id FROM migraphe_node_lease
+                    WHERE run_id = ?
+                      AND node_id = ANY (?)
+                      AND (status = 'PENDING' OR (status = 'RUNNING' AND expires_at < now()))
+                    ORDER BY node_id
+                    LIMIT 1
+                    FOR UPDATE SKIP LOCKED
+                ) claimable
+                WHERE l.run_id = ? AND l.node_id = claimable.node_id
+                RETURNING l.node_id
+                """;
+
+        try (Connection conn = environment.createConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, owner);
+            pstmt.setDouble(2, seconds(leaseDuration));
+            pstmt.setString(3, runId);
+            pstmt.setArray(4, conn.createArrayOf("text", toValues(candidates)));
+            pstmt.setString(5, runId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? NodeId.of(rs.getString("node_id")) : null;
+            }
+        } catch (SQLException e) {
+            throw new PostgreSQLException("Failed to claim node for run: " + runId, e);
+        }
+    }
+
+    boolean renew(String runId, String owner, NodeId nodeId, Duration leaseDuration) {
+        String sql =
+                """
+                UPDATE migraphe_node_lease
+                SET expires_at = now() + make_interval(secs => ?)
+                WHERE run_id = ? AND node_id = ? AND owner = ? AND status = 'RUNNING'
+                """;
+
+        try (Connection conn = environment.createConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setDouble(1, seconds(leaseDuration));
+            pstmt.setString(2, runId);
+            pstmt.setString(3, nodeId.value());
+            pstmt.setString(4, owner);
+            return pstmt.executeUpdate() == 1;
+        } catch (SQLException e) {
+            throw new PostgreSQLException("Failed to renew lease: " + nodeId.value(), e);
+        }
+    }
+
+    void finish(String runId, String owner, NodeId nodeId, String status) {
+        String sql =
+                """
+                UPDATE migraphe_node_lease
+                SET status = ?, expires_at = NULL
+                WHERE run_id = ? AND node_id = ? AND owner = ? AND status = 'RUNNING'
+                """;
+
+        try (Connection conn = environment.createConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, status);
+            pstmt.setString(2, runId);
+            pstmt.setString(3, nodeId.value());
+            pstmt.setString(4, owner);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            throw new PostgreSQLException("Failed to release lease: " + nodeId.value(), e);
+        }
+    }
+
+    boolean hasFailures(String runId) {
+        String sql =
+                "SELECT EXISTS (SELECT 1 FROM migraphe_node_lease"
+                        + " WHERE run_id = ? AND status = 'FAILED')";
+
+        try (Connection conn = environment.createConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, runId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        } catch (SQLException e) {
+            throw new PostgreSQLException("Failed to check failures for run: " + runId, e);
+        }
+    }
+
+    private static void applySchema(Connection conn) throws SQLException {
+        try (InputStream is = PostgreSQLNodeLeases.class.getResourceAsStream(SCHEMA_RESOURCE)) {
+            if (is == null) {
+                throw new IOException("Schema resource not found: " + SCHEMA_RESOURCE);
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(new String(is.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            throw new PostgreSQLException("Failed to load schema resource", e);
+        }
+    }
+
+    private static Object[] toValues(Collection<NodeId> nodeIds) {
+        return nodeIds.stream().map(NodeId::value).toArray();
+    }
+
+    private static double seconds(Duration duration) {
+        return duration.toMillis() / 1000.0;
+    }
+}
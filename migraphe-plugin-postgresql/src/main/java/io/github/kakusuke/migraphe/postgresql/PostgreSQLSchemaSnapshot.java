@@ -0,0 +1,677 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * システムカタログから、{@code pg_dump --schema-only --no-owner --no-privileges} に相当するスキーマの SQL を作る。
+ *
+ * <p>pg_dump のバイナリを必要としないよう、{@code pg_get_functiondef}・{@code pg_get_constraintdef}・
+ * {@code pg_get_indexdef} などの関数で定義を組み立てる。 対象はスキーマ・拡張・列挙型・ドメイン・複合型・関数と
+ * プロシージャ・シーケンス・テーブル（パーティションを含む）・ビュー・マテリアライズドビュー（データなし）・制約・インデックス・
+ * トリガー・テーブルと列のコメント。 migraphe_ で始まる migraphe 自身のテーブルと、拡張が作ったオブジェクトは含めない。
+ *
+ * <p>行セキュリティ（ポリシーと {@code ENABLE ROW LEVEL SECURITY}）・ビュー以外のルール・集約・演算子は再現できないため、
+ * これらがある場合は一部だけのスキーマを作らずに失敗する。
+ *
+ * <p>関数は本体を検証せずにテーブルより先に作る。 ただし、テーブルやビューの行型を引数・戻り値に使う関数はビューの後に
+ * 作る。 制約・インデックス・トリガーはすべてのテーブルとビューの後に作り、外部キーは制約の最後に作る。
+ */
+final class PostgreSQLSchemaSnapshot {
+
+    /** ユーザーのスキーマに絞り込む条件（n は pg_namespace）。 */
+    private static final String USER_SCHEMA =
+            "n.nspname <> 'information_schema' AND n.nspname NOT LIKE 'pg\\_%'";
+
+    /** migraphe 自身のテーブルを除く条件（c は pg_class）。 */
+    private static final String NOT_MIGRAPHE = "c.relname NOT LIKE 'migraphe\\_%'";
+
+    private PostgreSQLSchemaSnapshot() {}
+
+    /**
+     * 接続先の現在のスキーマを SQL として取り出す。
+     *
+     * @param conn 読み取る接続
+     * @return スキーマを作る SQL
+     * @throws SQLException カタログの読み取りに失敗した場合
+     * @throws PostgreSQLException スナップショットで再現できないオブジェクトがある場合
+     */
+    static String capture(Connection conn) throws SQLException {
+        StringBuilder sql = new StringBuilder();
+        sql.append("SET LOCAL check_function_bodies = false;\n");
+        try (Statement stmt = conn.createStatement()) {
+            List<String> unsupported = unsupportedObjects(stmt);
+            if (!unsupported.isEmpty()) {
+                throw new PostgreSQLException(
+                        "Schema has object(s) a baseline cannot reproduce: "
+                                + String.join(", ", unsupported));
+            }
+
+            section(sql, "Schemas");
+            for (List<String> row :
+                    rows(
+                            stmt,
+                            "SELECT quote_ident(n.nspname) FROM pg_namespace n"
+                                    + " WHERE n.nspname <> 'public' AND "
+                                    + USER_SCHEMA
+                                    + " AND "
+                                    + notExtension("pg_namespace", "n.oid")
+                                    + " ORDER BY n.nspname")) {
+                sql.append("CREATE SCHEMA IF NOT EXISTS ").append(row.get(0)).append(";\n");
+            }
+
+            section(sql, "Extensions");
+            for (List<String> row :
+                    rows(
+                            stmt,
+                            """
+                            SELECT quote_ident(e.extname), quote_ident(n.nspname)
+                            FROM pg_extension e JOIN pg_namespace n ON n.oid = e.extnamespace
+                            WHERE e.extname <> 'plpgsql' ORDER BY e.extname
+                            """)) {
+                sql.append("CREATE EXTENSION IF NOT EXISTS ")
+                        .append(row.get(0))
+                        .append(" WITH SCHEMA ")
+                        .append(row.get(1))
+                        .append(";\n");
+            }
+
+            section(sql, "Types");
+            appendTypes(stmt, sql);
+
+            // テーブルやビューの行型を引数・戻り値に使う関数は、ビューの後に作る
+            List<String> functions = new ArrayList<>();
+            List<String> relationFunctions = new ArrayList<>();
+            for (List<String> row :
+                    rows(
+                            stmt,
+                            "SELECT pg_get_functiondef(p.oid), EXISTS (SELECT 1 FROM pg_depend d"
+                                    + " JOIN pg_type t ON t.oid = d.refobjid"
+                                    + " JOIN pg_class r ON r.oid = t.typrelid"
+                                    + " WHERE d.classid = 'pg_proc'::regclass AND d.objid = p.oid"
+                                    + " AND d.refclassid = 'pg_type'::regclass"
+                                    + " AND r.relkind IN ('r', 'p', 'v', 'm'))::text"
+                                    + " FROM pg_proc p"
+                                    + " JOIN pg_namespace n ON n.oid = p.pronamespace"
+                                    + " WHERE p.prokind IN ('f', 'p') AND "
+                                    + USER_SCHEMA
+                                    + " AND "
+                                    + notExtension("pg_proc", "p.oid")
+                                    + " ORDER BY n.nspname, p.proname,"
+                                    + " pg_get_function_identity_arguments(p.oid)")) {
+                (row.get(1).equals("true") ? relationFunctions : functions)
+                        .add(row.get(0).strip() + ";\n\n");
+            }
+            section(sql, "Functions");
+            functions.forEach(sql::append);
+
+            section(sql, "Sequences");
+            appendSequences(stmt, sql);
+
+            section(sql, "Tables");
+            appendTables(stmt, sql);
+            for (List<String> row :
+                    rows(
+                            stmt,
+                            "SELECT quote_ident(sn.nspname) || '.' || quote_ident(s.relname),"
+                                    + " quote_ident(n.nspname) || '.' || quote_ident(c.relname)"
+                                    + " || '.' || quote_ident(a.attname)"
+                                    + " FROM pg_depend d"
+                                    + " JOIN pg_class s ON s.oid = d.objid AND s.relkind = 'S'"
+                                    + " JOIN pg_namespace sn ON sn.oid = s.relnamespace"
+                                    + " JOIN pg_class c ON c.oid = d.refobjid"
+                                    + " JOIN pg_namespace n ON n.oid = c.relnamespace"
+                                    + " JOIN pg_attribute a"
+                                    + " ON a.attrelid = c.oid AND a.attnum = d.refobjsubid"
+                                    + " WHERE d.classid = 'pg_class'::regclass"
+                                    + " AND d.refclassid = 'pg_class'::regclass"
+                                    + " AND d.deptype = 'a' AND "
+                                    + USER_SCHEMA
+                                    + " AND "
+                                    + NOT_MIGRAPHE
+                                    + " ORDER BY 1")) {
+                sql.append("ALTER SEQUENCE ")
+                        .append(row.get(0))
+                        .append(" OWNED BY ")
+                        .append(row.get(1))
+                        .append(";\n");
+            }
+
+            section(sql, "Views");
+            appendViews(stmt, sql);
+
+            section(sql, "Functions using row types");
+            relationFunctions.forEach(sql::append);
+
+            section(sql, "Constraints");
+            for (List<String> row :
+                    rows(
+                            stmt,
+                            "SELECT quote_ident(n.nspname) || '.' || quote_ident(c.relname),"
+                                    + " quote_ident(co.conname), pg_get_constraintdef(co.oid)"
+                                    + " FROM pg_constraint co"
+                                    + " JOIN pg_class c ON c.oid = co.conrelid"
+                                    + " JOIN pg_namespace n ON n.oid = c.relnamespace"
+                                    + " WHERE co.contype IN ('p', 'u', 'x', 'c', 'f')"
+                                    + " AND co.conislocal AND co.conparentid = 0"
+                                    + " AND c.relkind IN ('r', 'p') AND "
+                                    + USER_SCHEMA
+                                    + " AND "
+                                    + NOT_MIGRAPHE
+                                    + " AND "
+                                    + notExtension("pg_class", "c.oid")
+                                    // 外部キーは参照先の主キー・一意制約の後に作る
+                                    + " ORDER BY co.contype = 'f', 1, 2")) {
+                sql.append("ALTER TABLE ")
+                        .append(row.get(0))
+                        .append(" ADD CONSTRAINT ")
+                        .append(row.get(1))
+                        .append(' ')
+                        .append(row.get(2))
+                        .append(";\n");
+            }
+
+            section(sql, "Indexes");
+            for (List<String> row :
+                    rows(
+                            stmt,
+                            "SELECT pg_get_indexdef(i.indexrelid), c.relkind FROM pg_index i"
+                                    + " JOIN pg_class ic ON ic.oid = i.indexrelid"
+                                    + " JOIN pg_class c ON c.oid = i.indrelid"
+                                    + " JOIN pg_namespace n ON n.oid = c.relnamespace"
+                                    + " WHERE c.relkind IN ('r', 'p', 'm') AND "
+                                    + USER_SCHEMA
+                                    + " AND "
+                                    + NOT_MIGRAPHE
+                                    + " AND "
+                                    + notExtension("pg_class", "c.oid")
+                                    // 制約のインデックスは制約と一緒に作られる
+                                    + " AND NOT EXISTS (SELECT 1 FROM pg_constraint co"
+                                    + " WHERE co.conindid = i.indexrelid"
+                                    + " AND co.contype IN ('p', 'u', 'x'))"
+                                    // パーティションのインデックスは親のインデックスと一緒に作られる
+                                    + " AND NOT EXISTS (SELECT 1 FROM pg_inherits h"
+                                    + " WHERE h.inhrelid = i.indexrelid)"
+                                    + " ORDER BY n.nspname, ic.relname")) {
+                String definition = row.get(0);
+                if (row.get(1).equals("p")) {
+                    // ON ONLY では各パーティションにインデックスが作られない
+                    definition = definition.replaceFirst(" ON ONLY ", " ON ");
+                }
+                sql.append(definition).append(";\n");
+            }
+
+            section(sql, "Triggers");
+            for (List<String> row :
+                    rows(
+                            stmt,
+                            "SELECT pg_get_triggerdef(t.oid) FROM pg_trigger t"
+                                    + " JOIN pg_class c ON c.oid = t.tgrelid"
+                                    + " JOIN pg_namespace n ON n.oid = c.relnamespace"
+                                    + " WHERE NOT t.tgisinternal AND t.tgparentid = 0 AND "
+                                    + USER_SCHEMA
+                                    + " AND "
+                                    + NOT_MIGRAPHE
+                                    + " AND "
+                                    + notExtension("pg_class", "c.oid")
+                                    + " ORDER BY n.nspname, c.relname, t.tgname")) {
+                sql.append(row.get(0)).append(";\n");
+            }
+
+            section(sql, "Comments");
+            for (List<String> row :
+                    rows(
+                            stmt,
+                            "SELECT CASE WHEN d.objsubid = 0 THEN CASE c.relkind"
+                                    + " WHEN 'v' THEN 'VIEW ' WHEN 'm' THEN 'MATERIALIZED VIEW '"
+                                    + " ELSE 'TABLE ' END"
+                                    + " || quote_ident(n.nspname) || '.' || quote_ident(c.relname)"
+                                    + " ELSE 'COLUMN ' || quote_ident(n.nspname) || '.'"
+                                    + " || quote_ident(c.relname) || '.' || quote_ident(a.attname)"
+                                    + " END, quote_literal(d.description)"
+                                    + " FROM pg_description d"
+                                    + " JOIN pg_class c"
+                                    + " ON d.classoid = 'pg_class'::regclass AND d.objoid = c.oid"
+                                    + " JOIN pg_namespace n ON n.oid = c.relnamespace"
+                                    + " LEFT JOIN pg_attribute a"
+                                    + " ON a.attrelid = c.oid AND a.attnum = d.objsubid"
+                                    + " WHERE c.relkind IN ('r', 'p', 'v', 'm') AND "
+                                    + USER_SCHEMA
+                                    + " AND "
+                                    + NOT_MIGRAPHE
+                                    + " AND "
+                                    + notExtension("pg_class", "c.oid")
+                                    + " ORDER BY 1")) {
+                sql.append("COMMENT ON ")
+                        .append(row.get(0))
+                        .append(" IS ")
+                        .append(row.get(1))
+                        .append(";\n");
+            }
+        }
+        return sql.toString();
+    }
+
+    /**
+     * 接続先に、migraphe 自身のもの以外のテーブル・ビュー・シーケンス・関数がないかどうかを返す。
+     *
+     * @param conn 読み取る接続
+     * @return 空であれば true
+     * @throws SQLException カタログの読み取りに失敗した場合
+     */
+    static boolean isEmpty(Connection conn) throws SQLException {
+        String sql =
+                "SELECT (SELECT count(*) FROM pg_class c"
+                        + " JOIN pg_namespace n ON n.oid = c.relnamespace"
+                        + " WHERE c.relkind IN ('r', 'p', 'v', 'm', 'S', 'f') AND "
+                        + USER_SCHEMA
+                        + " AND "
+                        + NOT_MIGRAPHE
+                        + " AND "
+                        + notExtension("pg_class", "c.oid")
+                        + ") + (SELECT count(*) FROM pg_proc p"
+                        + " JOIN pg_namespace n ON n.oid = p.pronamespace WHERE "
+                        + USER_SCHEMA
+                        + " AND "
+                        + notExtension("pg_proc", "p.oid")
+                        + ")";
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1) == 0;
+        }
+    }
+
+    /**
+     * {@link #capture} で取り出した SQL を1つのトランザクションで実行する。
+     *
+     * @param conn 実行する接続
+     * @param schema スキーマを作る SQL
+     * @throws SQLException 実行に失敗した場合（何も適用されない）
+     */
+    static void apply(Connection conn, String schema) throws SQLException {
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(schema);
+            conn.commit();
+        } catch (SQLException e) {
+            try {
+                conn.rollback();
+            } catch (SQLException rollbackEx) {
+                // rollback failed, ignore
+            }
+            throw e;
+        }
+    }
+
+    private static void appendTypes(Statement stmt, StringBuilder sql) throws SQLException {
+        String type =
+                " FROM pg_type t JOIN pg_namespace n ON n.oid = t.typnamespace WHERE "
+                        + USER_SCHEMA
+                        + " AND "
+                        + notExtension("pg_type", "t.oid");
+        for (List<String> row :
+                rows(
+                        stmt,
+                        "SELECT quote_ident(n.nspname) || '.' || quote_ident(t.typname),"
+                                + " (SELECT string_agg(quote_literal(e.enumlabel), ', '"
+                                + " ORDER BY e.enumsortorder) FROM pg_enum e"
+                                + " WHERE e.enumtypid = t.oid)"
+                                + type
+                                + " AND t.typtype = 'e' ORDER BY 1")) {
+            sql.append("CREATE TYPE ")
+                    .append(row.get(0))
+                    .append(" AS ENUM (")
+                    .append(row.get(1) != null ? row.get(1) : "")
+                    .append(");\n");
+        }
+        for (List<String> row :
+                rows(
+                        stmt,
+                        "SELECT quote_ident(n.nspname) || '.' || quote_ident(t.typname),"
+                                + " format_type(t.typbasetype, t.typtypmod),"
+                                + " t.typdefault, t.typnotnull::text,"
+                                + " (SELECT string_agg(' CONSTRAINT ' || quote_ident(co.conname)"
+                                + " || ' ' || pg_get_constraintdef(co.oid), '' ORDER BY co.conname)"
+                                + " FROM pg_constraint co"
+                                + " WHERE co.contypid = t.oid AND co.contype = 'c')"
+                                + type
+                                + " AND t.typtype = 'd' ORDER BY 1")) {
+            sql.append("CREATE DOMAIN ").append(row.get(0)).append(" AS ").append(row.get(1));
+            if (row.get(2) != null) {
+                sql.append(" DEFAULT ").append(row.get(2));
+            }
+            if (row.get(3).equals("true")) {
+                sql.append(" NOT NULL");
+            }
+            if (row.get(4) != null) {
+                sql.append(row.get(4));
+            }
+            sql.append(";\n");
+        }
+        for (List<String> row :
+                rows(
+                        stmt,
+                        "SELECT quote_ident(n.nspname) || '.' || quote_ident(t.typname),"
+                                + " (SELECT string_agg(quote_ident(a.attname) || ' '"
+                                + " || format_type(a.atttypid, a.atttypmod), ', '"
+                                + " ORDER BY a.attnum) FROM pg_attribute a"
+                                + " WHERE a.attrelid = t.typrelid"
+                                + " AND a.attnum > 0 AND NOT a.attisdropped)"
+                                + type
+                                + " AND t.typtype = 'c' AND EXISTS (SELECT 1 FROM pg_class c"
+                                + " WHERE c.oid = t.typrelid AND c.relkind = 'c') ORDER BY 1")) {
+            sql.append("CREATE TYPE ")
+                    .append(row.get(0))
+                    .append(" AS (")
+                    .append(row.get(1) != null ? row.get(1) : "")
+                    .append(");\n");
+        }
+    }
+
+    private static void appendSequences(Statement stmt, StringBuilder sql) throws SQLException {
+        for (List<String> row :
+                rows(
+                        stmt,
+                        "SELECT quote_ident(n.nspname) || '.' || quote_ident(c.relname),"
+                                + " format_type(s.seqtypid, NULL), s.seqincrement::text,"
+                                + " s.seqmin::text, s.seqmax::text, s.seqstart::text,"
+                                + " s.seqcache::text, s.seqcycle::text"
+                                + " FROM pg_sequence s JOIN pg_class c ON c.oid = s.seqrelid"
+                                + " JOIN pg_namespace n ON n.oid = c.relnamespace WHERE "
+                                + USER_SCHEMA
+                                + " AND "
+                                + NOT_MIGRAPHE
+                                + " AND "
+                                + notExtension("pg_class", "c.oid")
+                                // 識別列のシーケンスは列と一緒に作られる
+                                + " AND NOT EXISTS (SELECT 1 FROM pg_depend d"
+                                + " WHERE d.classid = 'pg_class'::regclass AND d.objid = c.oid"
+                                + " AND d.deptype = 'i')"
+                                + " ORDER BY 1")) {
+            sql.append("CREATE SEQUENCE ")
+                    .append(row.get(0))
+                    .append(" AS ")
+                    .append(row.get(1))
+                    .append(" INCREMENT BY ")
+                    .append(row.get(2))
+                    .append(" MINVALUE ")
+                    .append(row.get(3))
+                    .append(" MAXVALUE ")
+                    .append(row.get(4))
+                    .append(" START WITH ")
+                    .append(row.get(5))
+                    .append(" CACHE ")
+                    .append(row.get(6))
+                    .append(row.get(7).equals("true") ? " CYCLE" : " NO CYCLE")
+                    .append(";\n");
+        }
+    }
+
+    private static void appendTables(Statement stmt, StringBuilder sql) throws SQLException {
+        String tables =
+                " FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace"
+                        + " WHERE c.relkind IN ('r', 'p') AND "
+                        + USER_SCHEMA
+                        + " AND "
+                        + NOT_MIGRAPHE
+                        + " AND "
+                        + notExtension("pg_class", "c.oid");
+
+        Map<String, List<String>> columns = new HashMap<>();
+        for (List<String> row :
+                rows(
+                        stmt,
+                        "SELECT c.oid::text, quote_ident(a.attname),"
+                                + " format_type(a.atttypid, a.atttypmod),"
+                                + " (SELECT quote_ident(cn.nspname) || '.'"
+                                + " || quote_ident(co.collname)"
+                                + " FROM pg_collation co"
+                                + " JOIN pg_namespace cn ON cn.oid = co.collnamespace"
+                                + " WHERE co.oid = a.attcollation"
+                                + " AND a.attcollation <> t.typcollation),"
+                                + " a.attnotnull::text, a.attidentity::text, a.attgenerated::text,"
+                                + " pg_get_expr(d.adbin, d.adrelid)"
+                                + " FROM pg_attribute a"
+                                + " JOIN pg_class c ON c.oid = a.attrelid"
+                                + " JOIN pg_namespace n ON n.oid = c.relnamespace"
+                                + " JOIN pg_type t ON t.oid = a.atttypid"
+                                + " LEFT JOIN pg_attrdef d"
+                                + " ON d.adrelid = a.attrelid AND d.adnum = a.attnum"
+                                + " WHERE a.attnum > 0 AND NOT a.attisdropped"
+                                + " AND c.relkind IN ('r', 'p') AND NOT c.relispartition AND "
+                                + USER_SCHEMA
+                                + " AND "
+                                + NOT_MIGRAPHE
+                                + " ORDER BY c.oid, a.attnum")) {
+            columns.computeIfAbsent(row.get(0), oid -> new ArrayList<>()).add(column(row));
+        }
+
+        // パーティションは親の後に作る
+        for (List<String> row :
+                rows(
+                        stmt,
+                        "SELECT c.oid::text,"
+                                + " quote_ident(n.nspname) || '.' || quote_ident(c.relname),"
+                                + " c.relpersistence::text, c.relispartition::text,"
+                                + " (SELECT quote_ident(pn.nspname) || '.'"
+                                + " || quote_ident(pc.relname)"
+                                + " FROM pg_inherits h JOIN pg_class pc ON pc.oid = h.inhparent"
+                                + " JOIN pg_namespace pn ON pn.oid = pc.relnamespace"
+                                + " WHERE h.inhrelid = c.oid AND c.relispartition),"
+                                + " CASE WHEN c.relispartition"
+                                + " THEN pg_get_expr(c.relpartbound, c.oid) END,"
+                                + " CASE WHEN c.relkind = 'p' THEN pg_get_partkeydef(c.oid) END"
+                                + tables
+                                + " ORDER BY c.relispartition,"
+                                + " CASE WHEN c.relispartition THEN c.oid::bigint ELSE 0 END, 2")) {
+            sql.append(row.get(2).equals("u") ? "CREATE UNLOGGED TABLE " : "CREATE TABLE ");
+            sql.append(row.get(1));
+            if (row.get(3).equals("true")) {
+                sql.append(" PARTITION OF ").append(row.get(4)).append(' ').append(row.get(5));
+            } else {
+                List<String> tableColumns = columns.getOrDefault(row.get(0), List.of());
+                sql.append(" (");
+                for (int i = 0; i < tableColumns.size(); i++) {
+                    sql.append(i == 0 ? "\n    " : ",\n    ").append(tableColumns.get(i));
+                }
+                sql.append(tableColumns.isEmpty() ? ")" : "\n)");
+            }
+            if (row.get(6) != null) {
+                sql.append(" PARTITION BY ").append(row.get(6));
+            }
+            sql.append(";\n\n");
+        }
+    }
+
+    /** 列の定義。 row は appendTables の列の問い合わせの1行。 */
+    private static String column(List<String> row) {
+        StringBuilder column = new StringBuilder(row.get(1)).append(' ').append(row.get(2));
+        if (row.get(3) != null) {
+            column.append(" COLLATE ").append(row.get(3));
+        }
+        String identity = row.get(5);
+        String generated = row.get(6);
+        String expression = row.get(7);
+        if (identity.equals("a")) {
+            column.append(" GENERATED ALWAYS AS IDENTITY");
+        } else if (identity.equals("d")) {
+            column.append(" GENERATED BY DEFAULT AS IDENTITY");
+        } else if (!generated.isEmpty() && expression != null) {
+            column.append(" GENERATED ALWAYS AS (").append(expression).append(')');
+            if (generated.equals("s")) {
+                column.append(" STORED");
+            }
+        } else if (expression != null) {
+            column.append(" DEFAULT ").append(expression);
+        }
+        if (row.get(4).equals("true")) {
+            column.append(" NOT NULL");
+        }
+        return column.toString();
+    }
+
+    /** ビューとマテリアライズドビューを、参照するビューの後に作る順に並べて書き出す。 */
+    private static void appendViews(Statement stmt, StringBuilder sql) throws SQLException {
+        Map<String, List<String>> views = new LinkedHashMap<>();
+        for (List<String> row :
+                rows(
+                        stmt,
+                        "SELECT c.oid::text,"
+                                + " quote_ident(n.nspname) || '.' || quote_ident(c.relname),"
+                                + " c.relkind::text, pg_get_viewdef(c.oid)"
+                                + " FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace"
+                                + " WHERE c.relkind IN ('v', 'm') AND "
+                                + USER_SCHEMA
+                                + " AND "
+                                + NOT_MIGRAPHE
+                                + " AND "
+                                + notExtension("pg_class", "c.oid")
+                                + " ORDER BY 2")) {
+            views.put(row.get(0), row);
+        }
+        if (views.isEmpty()) {
+            return;
+        }
+
+        Map<String, Set<String>> references = new HashMap<>();
+        for (List<String> row :
+                rows(
+                        stmt,
+                        """
+                        SELECT DISTINCT r.ev_class::text, d.refobjid::text
+                        FROM pg_rewrite r
+                        JOIN pg_depend d ON d.classid = 'pg_rewrite'::regclass
+                            AND d.objid = r.oid AND d.refclassid = 'pg_class'::regclass
+                        WHERE d.refobjid <> r.ev_class
+                        """)) {
+            if (views.containsKey(row.get(0)) && views.containsKey(row.get(1))) {
+                references.computeIfAbsent(row.get(0), oid -> new HashSet<>()).add(row.get(1));
+            }
+        }
+
+        Set<String> written = new HashSet<>();
+        for (String oid : views.keySet()) {
+            appendView(oid, views, references, written, new HashSet<>(), sql);
+        }
+    }
+
+    private static void appendView(
+            String oid,
+            Map<String, List<String>> views,
+            Map<String, Set<String>> references,
+            Set<String> written,
+            Set<String> visiting,
+            StringBuilder sql) {
+        if (written.contains(oid) || !visiting.add(oid)) {
+            return;
+        }
+        for (String referenced : references.getOrDefault(oid, Set.of())) {
+            appendView(referenced, views, references, written, visiting, sql);
+        }
+        List<String> view = views.get(oid);
+        String query = view.get(3).strip();
+        if (query.endsWith(";")) {
+            query = query.substring(0, query.length() - 1);
+        }
+        if (view.get(2).equals("m")) {
+            sql.append("CREATE MATERIALIZED VIEW ")
+                    .append(view.get(1))
+                    .append(" AS\n")
+                    .append(query)
+                    .append("\nWITH NO DATA;\n\n");
+        } else {
+            sql.append("CREATE VIEW ")
+                    .append(view.get(1))
+                    .append(" AS\n")
+                    .append(query)
+                    .append(";\n\n");
+        }
+        written.add(oid);
+    }
+
+    private static void section(StringBuilder sql, String title) {
+        sql.append("\n-- ").append(title).append('\n');
+    }
+
+    /** スナップショットで再現できないオブジェクトを、読める名前で返す。 */
+    private static List<String> unsupportedObjects(Statement stmt) throws SQLException {
+        List<String> objects = new ArrayList<>();
+        for (List<String> row :
+                rows(
+                        stmt,
+                        "SELECT 'row level security policy ' || quote_ident(p.polname)"
+                                + " || ' on ' || c.oid::regclass"
+                                + " FROM pg_policy p JOIN pg_class c ON c.oid = p.polrelid"
+                                + " JOIN pg_namespace n ON n.oid = c.relnamespace WHERE "
+                                + USER_SCHEMA
+                                + " AND "
+                                + NOT_MIGRAPHE
+                                + " UNION ALL SELECT 'row level security on ' || c.oid::regclass"
+                                + " FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace"
+                                + " WHERE (c.relrowsecurity OR c.relforcerowsecurity) AND "
+                                + USER_SCHEMA
+                                + " AND "
+                                + NOT_MIGRAPHE
+                                + " UNION ALL SELECT 'rule ' || quote_ident(r.rulename)"
+                                + " || ' on ' || c.oid::regclass"
+                                + " FROM pg_rewrite r JOIN pg_class c ON c.oid = r.ev_class"
+                                + " JOIN pg_namespace n ON n.oid = c.relnamespace"
+                                + " WHERE r.rulename <> '_RETURN' AND "
+                                + USER_SCHEMA
+                                + " AND "
+                                + NOT_MIGRAPHE
+                                + " AND "
+                                + notExtension("pg_class", "c.oid")
+                                + " UNION ALL SELECT 'aggregate ' || p.oid::regprocedure"
+                                + " FROM pg_proc p JOIN pg_namespace n ON n.oid = p.pronamespace"
+                                + " WHERE p.prokind = 'a' AND "
+                                + USER_SCHEMA
+                                + " AND "
+                                + notExtension("pg_proc", "p.oid")
+                                + " UNION ALL SELECT 'operator ' || o.oid::regoperator"
+                                + " FROM pg_operator o"
+                                + " JOIN pg_namespace n ON n.oid = o.oprnamespace WHERE "
+                                + USER_SCHEMA
+                                + " AND "
+                                + notExtension("pg_operator", "o.oid")
+                                + " ORDER BY 1")) {
+            objects.add(row.get(0));
+        }
+        return objects;
+    }
+
+    /** 拡張が作ったオブジェクトを除く条件。 */
+    private static String notExtension(String catalog, String oid) {
+        return "NOT EXISTS (SELECT 1 FROM pg_depend e WHERE e.classid = '"
+                + catalog
+                + "'::regclass AND e.objid = "
+                + oid
+                + " AND e.deptype = 'e')";
+    }
+
+    /** 問い合わせの結果を、文字列の行のリストとして読む。 */
+    private static List<List<String>> rows(Statement stmt, String query) throws SQLException {
+        List<List<String>> rows = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery(query)) {
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                List<String> row = new ArrayList<>(columns);
+                for (int i = 1; i <= columns; i++) {
+                    row.add(rs.getString(i));
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,460 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import org.jspecify.annotations.Nullable;
+import org.postgresql.PGConnection;
+
+/**
+ * PostgreSQL の SQL スクリプトを先頭から読み進め、ステートメントを1つずつ取り出す字句解析器。
+ *
+ * <p>psql と同じ規則でステートメントの終わりを判定する。 文字列リテラル（{@code E'...'} のバックスラッシュエスケープを含む）、
+ * 引用符付き識別子、ドル引用符、入れ子のブロックコメント、行コメント、括弧の中、 {@code CREATE FUNCTION ... BEGIN ATOMIC
+ * ... END} の本体にあるセミコロンでは区切らない。 {@code COPY ... FROM STDIN} に続くデータ行は、{@code \.} の行までを
+ * {@link #copyData()} から読み出せる。
+ *
+ * <p>入力は {@link Reader} から少しずつ読み込み、保持するのは読み取り中のステートメント1つ分だけなので、 巨大なスクリプトでも
+ * 全体をメモリに載せずに実行できる。
+ */
+final class PostgreSQLScriptReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final Pattern COPY_FROM_STDIN =
+            Pattern.compile("(?is)COPY\\b.*\\bFROM\\s+STDIN\\b.*");
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    /** 直前に返した COPY ステートメントのデータ行をまだ読み終えていないかどうか。 */
+    private boolean copyDataPending;
+
+    private final StringBuilder copyLine = new StringBuilder();
+    private int copyLinePosition;
+
+    private PostgreSQLScriptReader(Reader in) {
+        this.in = Objects.requireNonNull(in, "in must not be null");
+    }
+
+    /**
+     * スクリプトを読み込むリーダーを作成する。
+     *
+     * @param in SQL スクリプト（{@link #close()} で閉じる）
+     * @return スクリプトリーダー
+     */
+    static PostgreSQLScriptReader of(Reader in) {
+        return new PostgreSQLScriptReader(in);
+    }
+
+    /**
+     * スクリプトのステートメントを先頭から順に1つずつ実行する。 {@code COPY ... FROM STDIN} はスクリプト中のデータ行を
+     * そのまま COPY で送る。
+     *
+     * @param conn 実行する接続
+     * @param script SQL スクリプト（このメソッドが閉じる）
+     * @throws SQLException ステートメントの実行に失敗した場合
+     * @throws IOException スクリプトの読み込みに失敗した場合
+     */
+    static void execute(Connection conn, Reader script) throws SQLException, IOException {
+        execute(conn, script, 1);
+    }
+
+    /**
+     * スクリプトのステートメントを先頭から順に実行する。 連続した DML は最大 batchSize 個ずつ JDBC のバッチにまとめて送り、
+     * それ以外のステートメントは単独で実行する。
+     *
+     * @param conn 実行する接続
+     * @param script SQL スクリプト（このメソッドが閉じる）
+     * @param batchSize 1回のバッチにまとめる最大のステートメント数（1 ならまとめない）
+     * @throws SQLException ステートメントの実行に失敗した場合。 メッセージに失敗したステートメントの番号を含む
+     * @throws IOException スクリプトの読み込みに失敗した場合
+     * @see StatementBatch
+     */
+    static void execute(Connection conn, Reader script, int batchSize)
+            throws SQLException, IOException {
+        try (PostgreSQLScriptReader reader = of(script);
+                Statement stmt = conn.createStatement()) {
+            StatementBatch batch = StatementBatch.of(stmt, batchSize);
+            ScriptStatement statement;
+            int index = 0;
+            while ((statement = reader.next()) != null) {
+                index++;
+                if (batch.accepts(statement.sql())) {
+                    batch.add(index, statement.sql());
+                    continue;
+                }
+                // 順序を保つため、単独で実行する前にためているバッチを送る
+                batch.flush();
+                try {
+                    if (statement.copyFromStdin()) {
+                        conn.unwrap(PGConnection.class)
+                                .getCopyAPI()
+                                .copyIn(statement.sql(), reader.copyData());
+                    } else {
+                        stmt.execute(statement.sql());
+                    }
+                } catch (SQLException e) {
+                    throw new SQLException(
+                            "Statement " + index + " failed: " + e.getMessage(),
+                            e.getSQLState(),
+                            e);
+                }
+            }
+            batch.flush();
+        }
+    }
+
+    /**
+     * 次のステートメントを読み込む。
+     *
+     * <p>前のステートメントが {@code COPY ... FROM STDIN} で、そのデータ行を読まずに呼び出した場合は、データ行を読み飛ばす。
+     * 空のステートメントやコメントだけのステートメントは返さない。
+     *
+     * @return 末尾のセミコロンと前後の空白・先頭のコメントを除いたステートメント、スクリプトの終わりに達した場合は null
+     * @throws IOException 読み込みに失敗した場合
+     */
+    @Nullable ScriptStatement next() throws IOException {
+        while (copyDataPending) {
+            readCopyLine();
+        }
+
+        StringBuilder sql = new StringBuilder();
+        int contentStart = -1;
+        int parenDepth = 0;
+        int beginDepth = 0;
+        String[] leadingWords = new String[4];
+        int wordCount = 0;
+
+        int c;
+        while ((c = read()) >= 0) {
+            char ch = (char) c;
+            if (ch == '-' && peek() == '-') {
+                sql.append(ch);
+                readLineComment(sql);
+                continue;
+            }
+            if (ch == '/' && peek() == '*') {
+                sql.append(ch);
+                readBlockComment(sql);
+                continue;
+            }
+            if (Character.isWhitespace(ch)) {
+                sql.append(ch);
+                continue;
+            }
+            if (ch == ';' && parenDepth == 0 && beginDepth == 0) {
+                if (contentStart < 0) {
+                    // 空のステートメントは読み飛ばす
+                    sql.setLength(0);
+                    continue;
+                }
+                return finish(sql, contentStart);
+            }
+
+            if (contentStart < 0) {
+                contentStart = sql.length();
+            }
+            if (isIdentifierStart(ch)) {
+                String word = readWord(sql, ch);
+                if (wordCount < leadingWords.length) {
+                    leadingWords[wordCount++] = word;
+                }
+                if (word.equals("begin") || word.equals("case")) {
+                    if (isRoutineDefinition(leadingWords)) {
+                        beginDepth++;
+                    }
+                } else if (word.equals("end") && beginDepth > 0) {
+                    beginDepth--;
+                }
+                continue;
+            }
+
+            boolean escapeString = ch == '\'' && isEscapeStringPrefix(sql, contentStart);
+            sql.append(ch);
+            switch (ch) {
+                case '\'' -> readQuoted(sql, '\'', escapeString);
+                case '"' -> readQuoted(sql, '"', false);
+                case '$' -> readDollarQuoted(sql);
+                case '(' -> parenDepth++;
+                case ')' -> parenDepth = Math.max(0, parenDepth - 1);
+                default -> {}
+            }
+        }
+
+        // 最後のステートメントはセミコロンで終わっていなくてもよい
+        return contentStart >= 0 ? finish(sql, contentStart) : null;
+    }
+
+    /**
+     * 直前に返した {@code COPY ... FROM STDIN} のデータ行を読み出す。 データ行は {@code \.} の行またはスクリプトの終わりまでで、
+     * 終端の行は含まない。 返すリーダーを閉じてもスクリプトは閉じない。
+     *
+     * @return データ行のリーダー
+     * @throws IllegalStateException 直前のステートメントが COPY FROM STDIN でない場合
+     */
+    Reader copyData() {
+        if (!copyDataPending) {
+            throw new IllegalStateException("No COPY data to read");
+        }
+        return new CopyDataReader();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private ScriptStatement finish(StringBuilder sql, int contentStart) throws IOException {
+        String statement = sql.substring(contentStart).strip();
+        boolean copyFromStdin = COPY_FROM_STDIN.matcher(statement).matches();
+        if (copyFromStdin) {
+            // データ行は COPY の次の行から始まる
+            int c;
+            while ((c = read()) >= 0 && c != '\n') {
+                // 同じ行の残りは読み捨てる
+            }
+            copyDataPending = true;
+            copyLine.setLength(0);
+            copyLinePosition = 0;
+        }
+        return new ScriptStatement(statement, copyFromStdin);
+    }
+
+    private void readLineComment(StringBuilder sql) throws IOException {
+        int c;
+        while ((c = read()) >= 0) {
+            sql.append((char) c);
+            if (c == '\n') {
+                return;
+            }
+        }
+    }
+
+    /** ブロックコメントを読む。 PostgreSQL のブロックコメントは入れ子にできる。 */
+    private void readBlockComment(StringBuilder sql) throws IOException {
+        sql.append((char) read());
+        int depth = 1;
+        int c;
+        while (depth > 0 && (c = read()) >= 0) {
+            sql.append((char) c);
+            if (c == '/' && peek() == '*') {
+                sql.append((char) read());
+                depth++;
+            } else if (c == '*' && peek() == '/') {
+                sql.append((char) read());
+                depth--;
+            }
+        }
+    }
+
+    /** 文字列リテラルまたは引用符付き識別子の残りを読む。 引用符の2連続はエスケープとして扱う。 */
+    private void readQuoted(StringBuilder sql, char quote, boolean backslashEscapes)
+            throws IOException {
+        int c;
+        while ((c = read()) >= 0) {
+            sql.append((char) c);
+            if (backslashEscapes && c == '\\') {
+                int escaped = read();
+                if (escaped >= 0) {
+                    sql.append((char) escaped);
+                }
+            } else if (c == quote) {
+                if (peek() != quote) {
+                    return;
+                }
+                sql.append((char) read());
+            }
+        }
+    }
+
+    /**
+     * {@code $} の後を読む。 {@code $tag$} の形であれば、同じタグが現れるまでをドル引用符の本体として読む。
+     * {@code $1} のようなパラメータや識別子の一部であれば何もしない。
+     */
+    private void readDollarQuoted(StringBuilder sql) throws IOException {
+        int dollar = sql.length() - 1;
+        if (dollar > 0 && isIdentifierPart(sql.charAt(dollar - 1))) {
+            return;
+        }
+        int next = peek();
+        if (next >= 0 && Character.isDigit((char) next)) {
+            return;
+        }
+        while ((next = peek()) >= 0 && next != '$' && isIdentifierPart((char) next)) {
+            sql.append((char) read());
+        }
+        if (next != '$') {
+            return;
+        }
+        sql.append((char) read());
+        String tag = sql.substring(dollar);
+        int bodyStart = sql.length();
+
+        int c;
+        while ((c = read()) >= 0) {
+            sql.append((char) c);
+            if (c == '$' && sql.length() - bodyStart >= tag.length() && endsWith(sql, tag)) {
+                return;
+            }
+        }
+    }
+
+    /** 識別子またはキーワードを読み、小文字にして返す。 */
+    private String readWord(StringBuilder sql, char first) throws IOException {
+        int start = sql.length();
+        sql.append(first);
+        int next;
+        while ((next = peek()) >= 0 && isIdentifierPart((char) next)) {
+            sql.append((char) read());
+        }
+        return sql.substring(start).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * {@code CREATE [OR REPLACE] FUNCTION|PROCEDURE} で始まるかどうか。 SQL 標準形式の本体
+     * （{@code BEGIN ATOMIC ... END}）の中のセミコロンで区切らないために使う。
+     */
+    private static boolean isRoutineDefinition(@Nullable String[] words) {
+        if (!"create".equals(words[0])) {
+            return false;
+        }
+        if (isRoutineKeyword(words[1])) {
+            return true;
+        }
+        return "or".equals(words[1]) && "replace".equals(words[2]) && isRoutineKeyword(words[3]);
+    }
+
+    private static boolean isRoutineKeyword(@Nullable String word) {
+        return "function".equals(word) || "procedure".equals(word);
+    }
+
+    /** 直前が単独の {@code E} であれば、続く文字列はバックスラッシュエスケープを解釈する。 */
+    private static boolean isEscapeStringPrefix(StringBuilder sql, int contentStart) {
+        int last = sql.length() - 1;
+        if (last < contentStart) {
+            return false;
+        }
+        char prefix = sql.charAt(last);
+        if (prefix != 'E' && prefix != 'e') {
+            return false;
+        }
+        return last == contentStart || !isIdentifierPart(sql.charAt(last - 1));
+    }
+
+    private static boolean isIdentifierStart(char ch) {
+        return Character.isLetter(ch) || ch == '_';
+    }
+
+    private static boolean isIdentifierPart(char ch) {
+        return Character.isLetterOrDigit(ch) || ch == '_' || ch == '$';
+    }
+
+    private static boolean endsWith(StringBuilder sql, String suffix) {
+        int offset = sql.length() - suffix.length();
+        for (int i = 0; i < suffix.length(); i++) {
+            if (sql.charAt(offset + i) != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * COPY データを1行読み、{@link #copyLine} に入れる。
+     *
+     * @return 行を読んだ場合は true、終端の行またはスクリプトの終わりに達した場合は false
+     */
+    private boolean readCopyLine() throws IOException {
+        copyLine.setLength(0);
+        copyLinePosition = 0;
+        int c;
+        while ((c = read()) >= 0) {
+            copyLine.append((char) c);
+            if (c == '\n') {
+                break;
+            }
+        }
+        if (copyLine.isEmpty() || isEndOfCopyData(copyLine)) {
+            copyLine.setLength(0);
+            copyDataPending = false;
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean isEndOfCopyData(StringBuilder line) {
+        int end = line.length();
+        if (end > 0 && line.charAt(end - 1) == '\n') {
+            end--;
+        }
+        if (end > 0 && line.charAt(end - 1) == '\r') {
+            end--;
+        }
+        return end == 2 && line.charAt(0) == '\\' && line.charAt(1) == '.';
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            int n = in.read(buffer, 0, buffer.length);
+            if (n <= 0) {
+                position = 0;
+                limit = 0;
+                return -1;
+            }
+            position = 0;
+            limit = n;
+        }
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        int c = read();
+        if (c >= 0) {
+            position--;
+        }
+        return c;
+    }
+
+    /**
+     * スクリプトから取り出したステートメント。
+     *
+     * @param sql ステートメント（末尾のセミコロンを含まない）
+     * @param copyFromStdin {@code COPY ... FROM STDIN} で、続くデータ行を
+     *     {@link PostgreSQLScriptReader#copyData()} から読めるかどうか
+     */
+    record ScriptStatement(String sql, boolean copyFromStdin) {}
+
+    /** 現在の COPY ステートメントのデータ行を1行ずつ読み出すリーダー。 */
+    private final class CopyDataReader extends Reader {
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (copyLinePosition == copyLine.length()) {
+                if (!copyDataPending || !readCopyLine()) {
+                    return -1;
+                }
+            }
+            int n = Math.min(len, copyLine.length() - copyLinePosition);
+            copyLine.getChars(copyLinePosition, copyLinePosition + n, cbuf, off);
+            copyLinePosition += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // スクリプト本体は PostgreSQLScriptReader が閉じる
+        }
+    }
+}
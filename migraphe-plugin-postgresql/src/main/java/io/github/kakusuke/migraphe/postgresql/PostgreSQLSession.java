@@ -0,0 +1,195 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import io.github.kakusuke.migraphe.api.task.TaskExecutionContext;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Objects;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * 1回の実行の間、同じ接続先のタスクで使い回す接続。
+ *
+ * <p>タスクごとに接続を開き直す代わりに、接続先（JDBC URL とユーザー名）ごとに1本の接続を使い回す。 2つ目以降のタスクに
+ * 渡す前に、残っているトランザクションをロールバックして {@code DISCARD ALL} を実行し、前のタスクが変更した search_path・
+ * ロール・設定・一時テーブル・プリペアドステートメントなどを接続直後の状態に戻す。 接続が切れていた場合は開き直す。
+ *
+ * <p>接続を渡すときには、タスクのセッションの設定（{@link SessionProfile}）を設定する。 設定は次のタスクに渡す前の
+ * {@code DISCARD ALL} で戻る。
+ *
+ * <p>実行側が連続したタスクを1つのトランザクションにまとめている間は、{@link #acquireForGroup} で取得したタスクに
+ * 同じトランザクションの接続を渡し、{@link #commitGroup} でまとめてコミットする。 トランザクションの中では
+ * {@code DISCARD ALL} を実行できないため、タスクの間では設定とロールだけを戻す。
+ */
+final class PostgreSQLSession implements AutoCloseable {
+
+    private final PostgreSQLEnvironment environment;
+    private @Nullable Connection connection;
+    private boolean used;
+    private boolean groupOpen;
+
+    private PostgreSQLSession(PostgreSQLEnvironment environment) {
+        this.environment = Objects.requireNonNull(environment, "environment must not be null");
+    }
+
+    /**
+     * 実行の間共有する接続を、接続先のセッションの設定をして取得する。 接続は実行側が実行の終わりに閉じるため、呼び出し側は
+     * 閉じてはならない。
+     *
+     * @param context タスクの実行コンテキスト
+     * @param environment 接続先
+     * @return 前のタスクの状態を引き継がない接続
+     * @throws SQLException 接続、状態のリセット、セッションの設定のいずれかに失敗した場合
+     */
+    static Connection acquire(TaskExecutionContext context, PostgreSQLEnvironment environment)
+            throws SQLException {
+        return acquire(context, environment, environment.sessionProfile());
+    }
+
+    /**
+     * 実行の間共有する接続を、タスクのセッションの設定をして取得する。 接続は実行側が実行の終わりに閉じるため、呼び出し側は
+     * 閉じてはならない。
+     *
+     * @param context タスクの実行コンテキスト
+     * @param environment 接続先
+     * @param profile 接続に設定するセッションの設定
+     * @return 前のタスクの状態を引き継がない接続
+     * @throws SQLException 接続、状態のリセット、セッションの設定のいずれかに失敗した場合
+     */
+    static Connection acquire(
+            TaskExecutionContext context, PostgreSQLEnvironment environment, SessionProfile profile)
+            throws SQLException {
+        return session(context, environment).acquire(profile);
+    }
+
+    /**
+     * 実行側がまとめているトランザクションの接続を取得する。 グループの最初のタスクでは接続をリセットしてトランザクションを
+     * 始め、以降のタスクには同じトランザクションのまま渡す。 セッションの設定はしないため、タスクが自分のセーブポイントの中で
+     * {@link SessionProfile#apply} する。
+     *
+     * @param context グループの中で実行するタスクの実行コンテキスト
+     * @param environment 接続先
+     * @return autocommit を無効にした、グループのトランザクションの接続
+     * @throws SQLException 接続または状態のリセットに失敗した場合
+     */
+    static Connection acquireForGroup(
+            TaskExecutionContext context, PostgreSQLEnvironment environment) throws SQLException {
+        return session(context, environment).acquireForGroup();
+    }
+
+    /**
+     * まとめているトランザクションをコミットする。 グループを始めていなければ何もしない。
+     *
+     * @throws SQLException コミットに失敗した場合（トランザクションの変更はすべて取り消される）
+     */
+    static void commitGroup(TaskExecutionContext context, PostgreSQLEnvironment environment)
+            throws SQLException {
+        session(context, environment).commitGroup();
+    }
+
+    /** 接続先ごとにセッションを共有する単位。 同じ値の接続先のタスクは、トランザクションもまとめられる。 */
+    static String key(PostgreSQLEnvironment environment) {
+        return "postgresql:" + environment.getJdbcUrl() + "\u0000" + environment.getUsername();
+    }
+
+    private static PostgreSQLSession session(
+            TaskExecutionContext context, PostgreSQLEnvironment environment) {
+        return context.session(
+                key(environment),
+                PostgreSQLSession.class,
+                () -> new PostgreSQLSession(environment));
+    }
+
+    synchronized Connection acquire(SessionProfile profile) throws SQLException {
+        // まとめていたトランザクションが残っていれば、リセットでロールバックされる
+        groupOpen = false;
+        Connection conn = connection;
+        if (conn != null && used && !reset(conn)) {
+            closeQuietly(conn);
+            conn = null;
+        }
+        if (conn == null) {
+            conn = environment.createConnection();
+            connection = conn;
+        }
+        used = true;
+        profile.apply(conn);
+        return conn;
+    }
+
+    synchronized Connection acquireForGroup() throws SQLException {
+        Connection conn = connection;
+        if (groupOpen && conn != null) {
+            // DISCARD ALL はトランザクションの中で実行できないため、前のタスクが変更した設定とロールだけを戻す
+            // （前のタスクのセッションの設定もここで戻る）
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("RESET ALL");
+                stmt.execute("RESET ROLE");
+            }
+            return conn;
+        }
+        conn = acquire(SessionProfile.EMPTY);
+        conn.setAutoCommit(false);
+        groupOpen = true;
+        return conn;
+    }
+
+    synchronized void commitGroup() throws SQLException {
+        Connection conn = connection;
+        if (!groupOpen || conn == null) {
+            return;
+        }
+        groupOpen = false;
+        try {
+            conn.commit();
+        } catch (SQLException e) {
+            try {
+                conn.rollback();
+            } catch (SQLException rollbackEx) {
+                // 次に取得するときのリセットで接続ごと捨てる
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws SQLException {
+        Connection conn = connection;
+        connection = null;
+        if (conn != null) {
+            conn.close();
+        }
+    }
+
+    /**
+     * 前のタスクが残した状態を消す。
+     *
+     * @return 接続を使い続けられる場合は true
+     */
+    private static boolean reset(Connection conn) {
+        try {
+            if (conn.isClosed()) {
+                return false;
+            }
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+            // DISCARD ALL はトランザクションの外でしか実行できない
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DISCARD ALL");
+            }
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            // 壊れた接続を捨てるだけなので無視する
+        }
+    }
+}
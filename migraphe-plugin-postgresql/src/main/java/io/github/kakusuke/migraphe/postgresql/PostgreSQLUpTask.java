@@ -1,34 +1,52 @@
 package io.github.kakusuke.migraphe.postgresql;
 
 import io.github.kakusuke.migraphe.api.common.Result;
+import io.github.kakusuke.migraphe.api.task.ImpactAnalyzer;
+import io.github.kakusuke.migraphe.api.task.ImpactFinding;
+import io.github.kakusuke.migraphe.api.task.ImpactOptions;
 import io.github.kakusuke.migraphe.api.task.SqlContentProvider;
 import io.github.kakusuke.migraphe.api.task.Task;
+import io.github.kakusuke.migraphe.api.task.TaskExecutionContext;
 import io.github.kakusuke.migraphe.api.task.TaskResult;
+import io.github.kakusuke.migraphe.api.task.TransactionGroupable;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import org.jspecify.annotations.Nullable;
 
 /** PostgreSQL で UP マイグレーション（前進）を実行するタスク。 */
-public final class PostgreSQLUpTask implements Task, SqlContentProvider {
+public final class PostgreSQLUpTask
+        implements Task, SqlContentProvider, ImpactAnalyzer, TransactionGroupable {
+
+    /** トランザクションをまとめて実行するときに、タスクごとに作るセーブポイントの名前。 */
+    private static final String SAVEPOINT = "migraphe_node";
 
     private final PostgreSQLEnvironment environment;
-    private final String upSql;
-    private final @Nullable String downSql;
+    private final SqlSource upSql;
+    private final @Nullable SqlSource downSql;
     private final boolean autocommit;
+    private final int batchSize;
+    private final SessionProfile session;
 
     private PostgreSQLUpTask(
             PostgreSQLEnvironment environment,
-            String upSql,
-            @Nullable String downSql,
-            boolean autocommit) {
+            SqlSource upSql,
+            @Nullable SqlSource downSql,
+            boolean autocommit,
+            int batchSize,
+            SessionProfile session) {
         this.environment = Objects.requireNonNull(environment, "environment must not be null");
         this.upSql = Objects.requireNonNull(upSql, "upSql must not be null");
         this.downSql = downSql;
         this.autocommit = autocommit;
+        this.batchSize = batchSize;
+        this.session = Objects.requireNonNull(session, "session must not be null");
 
-        if (upSql.isBlank()) {
+        if (upSql instanceof SqlSource.Inline inline && inline.sql().isBlank()) {
             throw new IllegalArgumentException("upSql must not be blank");
         }
     }
@@ -47,103 +65,256 @@ public final class PostgreSQLUpTask implements Task, SqlContentProvider {
             String upSql,
             @Nullable String downSql,
             boolean autocommit) {
-        return new PostgreSQLUpTask(environment, upSql, downSql, autocommit);
+        return new PostgreSQLUpTask(
+                environment,
+                new SqlSource.Inline(upSql),
+                downSql != null ? new SqlSource.Inline(downSql) : null,
+                autocommit,
+                1,
+                environment.sessionProfile());
+    }
+
+    /**
+     * SQL の取得元から UP タスクを作成する。
+     *
+     * @param environment PostgreSQL 環境
+     * @param upSql UP SQL
+     * @param downSql DOWN SQL（ロールバック用、null 許容）
+     * @param autocommit autocommit モードで実行するかどうか
+     * @param batchSize 連続した DML を1回のバッチにまとめる最大数（1 ならまとめない）
+     * @param session 接続に設定するセッションの設定
+     * @return UP タスク
+     */
+    static PostgreSQLUpTask create(
+            PostgreSQLEnvironment environment,
+            SqlSource upSql,
+            @Nullable SqlSource downSql,
+            boolean autocommit,
+            int batchSize,
+            SessionProfile session) {
+        return new PostgreSQLUpTask(environment, upSql, downSql, autocommit, batchSize, session);
     }
 
     @Override
     public Result<TaskResult, String> execute() {
-        long startTime = System.currentTimeMillis();
-
-        try (Connection conn = environment.createConnection()) {
-            if (autocommit) {
-                conn.setAutoCommit(true);
-                return executeWithAutocommit(conn, startTime);
-            } else {
-                conn.setAutoCommit(false);
-                return executeWithTransaction(conn, startTime);
+        return execute(null, System.currentTimeMillis());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>接続は実行の間、同じ接続先のタスクで使い回す。 トランザクションモードで、履歴の保存先がこのタスクと同じデータベースの場合は、
+     * 成功記録をマイグレーションと同じトランザクションで書き込む。 実行側がトランザクションをまとめている場合は、セーブポイント
+     * の中で実行してコミットしない。
+     */
+    @Override
+    public Result<TaskResult, String> execute(TaskExecutionContext context) {
+        return execute(context, System.currentTimeMillis());
+    }
+
+    private Result<TaskResult, String> execute(
+            @Nullable TaskExecutionContext context, long startTime) {
+        if (context == null) {
+            try (Connection conn = environment.createConnection()) {
+                session.apply(conn);
+                return execute(conn, startTime, null);
+            } catch (SQLException e) {
+                return Result.err("Failed to establish database connection: " + e.getMessage());
             }
+        }
+        if (context.inTransactionGroup() && !autocommit) {
+            return executeInGroup(context, startTime);
+        }
+        try {
+            Connection conn = PostgreSQLSession.acquire(context, environment, session);
+            return execute(conn, startTime, context);
         } catch (SQLException e) {
             return Result.err("Failed to establish database connection: " + e.getMessage());
         }
     }
 
+    private Result<TaskResult, String> execute(
+            Connection conn, long startTime, @Nullable TaskExecutionContext context)
+            throws SQLException {
+        if (autocommit) {
+            conn.setAutoCommit(true);
+            return executeWithAutocommit(conn, startTime);
+        } else {
+            conn.setAutoCommit(false);
+            return executeWithTransaction(conn, startTime, context);
+        }
+    }
+
     private Result<TaskResult, String> executeWithAutocommit(Connection conn, long startTime) {
-        try (Statement stmt = conn.createStatement()) {
+        try {
             // autocommit モードでは各ステートメントを個別に実行
             // （CREATE DATABASE などは暗黙的トランザクションでも実行不可のため）
-            for (String sql : splitStatements(upSql)) {
-                stmt.execute(sql);
-            }
+            // batch_size を指定した場合、連続した DML だけをバッチにまとめる
+            String detail = upSql.execute(conn, true, batchSize);
             long durationMs = System.currentTimeMillis() - startTime;
+            return Result.ok(result(message(durationMs, detail), detail));
+        } catch (SQLException e) {
+            return Result.err("Failed to execute UP migration: " + e.getMessage());
+        } catch (IOException e) {
+            return Result.err("Failed to read UP migration SQL: " + e.getMessage());
+        }
+    }
+
+    private Result<TaskResult, String> executeWithTransaction(
+            Connection conn, long startTime, @Nullable TaskExecutionContext context) {
+        try {
+            String detail = upSql.execute(conn, false, batchSize);
 
-            if (downSql != null) {
-                return Result.ok(
-                        TaskResult.withDownTask(
-                                "UP migration executed in " + durationMs + "ms (autocommit)",
-                                downSql));
-            } else {
-                return Result.ok(
-                        TaskResult.withoutDownTask(
-                                "UP migration executed in " + durationMs + "ms (autocommit)"));
+            long durationMs = System.currentTimeMillis() - startTime;
+            TaskResult result = result(message(durationMs, detail), detail);
+
+            // 履歴が同じデータベースにあれば、マイグレーションと一緒にコミットする
+            PostgreSQLHistoryRepository sharedHistory = sharedHistory(context);
+            if (context != null && sharedHistory != null) {
+                sharedHistory.record(conn, context.successRecord(result, durationMs));
             }
+            conn.commit();
+            if (context != null && sharedHistory != null) {
+                context.markRecorded();
+            }
+            return Result.ok(result);
         } catch (SQLException e) {
+            rollbackQuietly(conn);
             return Result.err("Failed to execute UP migration: " + e.getMessage());
+        } catch (IOException e) {
+            rollbackQuietly(conn);
+            return Result.err("Failed to read UP migration SQL: " + e.getMessage());
         }
     }
 
     /**
-     * SQL テキストをステートメントに分割する。
-     *
-     * <p>セミコロン + 空白/コメント + 改行 のパターンで分割。 文字列リテラル内のセミコロンで誤分割しないよう、行末のみを対象とする。
+     * 実行側がまとめているトランザクションの中で、このタスクのセーブポイントを作って実行する。 失敗した場合はセーブポイント
+     * まで戻し、それまでのタスクの変更はトランザクションに残す。
      */
-    private static String[] splitStatements(String sql) {
-        // セミコロン + 空白/コメント(optional) + 改行 で分割
-        String[] parts = sql.split(";\\s*?(--[^\\n]*)?\\r?\\n");
-        return java.util.Arrays.stream(parts)
-                .map(String::trim)
-                .map(s -> s.endsWith(";") ? s.substring(0, s.length() - 1).trim() : s)
-                .filter(s -> !s.isEmpty())
-                .toArray(String[]::new);
-    }
-
-    private Result<TaskResult, String> executeWithTransaction(Connection conn, long startTime) {
+    private Result<TaskResult, String> executeInGroup(
+            TaskExecutionContext context, long startTime) {
+        Connection conn;
+        try {
+            conn = PostgreSQLSession.acquireForGroup(context, environment);
+        } catch (SQLException e) {
+            return Result.err("Failed to establish database connection: " + e.getMessage());
+        }
         try (Statement stmt = conn.createStatement()) {
-            stmt.execute(upSql);
-            conn.commit();
+            stmt.execute("SAVEPOINT " + SAVEPOINT);
+            try {
+                // 設定に失敗しても、セーブポイントまで戻せばそれまでのタスクに影響しない
+                session.apply(conn);
+                String detail = upSql.execute(conn, false, batchSize);
 
-            long durationMs = System.currentTimeMillis() - startTime;
+                long durationMs = System.currentTimeMillis() - startTime;
+                TaskResult result = result(message(durationMs, detail), detail);
 
-            if (downSql != null) {
-                return Result.ok(
-                        TaskResult.withDownTask(
-                                "UP migration executed in " + durationMs + "ms", downSql));
-            } else {
-                return Result.ok(
-                        TaskResult.withoutDownTask(
-                                "UP migration executed in " + durationMs + "ms"));
+                // 履歴が同じデータベースにあれば、グループのトランザクションと一緒にコミットされる
+                PostgreSQLHistoryRepository sharedHistory = sharedHistory(context);
+                if (sharedHistory != null) {
+                    sharedHistory.record(conn, context.successRecord(result, durationMs));
+                }
+                stmt.execute("RELEASE SAVEPOINT " + SAVEPOINT);
+                if (sharedHistory != null) {
+                    context.markRecorded();
+                }
+                return Result.ok(result);
+            } catch (SQLException e) {
+                stmt.execute("ROLLBACK TO SAVEPOINT " + SAVEPOINT);
+                return Result.err("Failed to execute UP migration: " + e.getMessage());
+            } catch (IOException e) {
+                stmt.execute("ROLLBACK TO SAVEPOINT " + SAVEPOINT);
+                return Result.err("Failed to read UP migration SQL: " + e.getMessage());
             }
         } catch (SQLException e) {
-            try {
-                conn.rollback();
-            } catch (SQLException rollbackEx) {
-                // rollback failed, ignore
-            }
             return Result.err("Failed to execute UP migration: " + e.getMessage());
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>同じ接続先（JDBC URL とユーザー名）のトランザクションモードのタスクをまとめる。 autocommit モードのタスクは
+     * まとめない。
+     */
+    @Override
+    public @Nullable String transactionGroupKey() {
+        return autocommit ? null : PostgreSQLSession.key(environment);
+    }
+
+    @Override
+    public void commitTransactionGroup(TaskExecutionContext context) {
+        try {
+            PostgreSQLSession.commitGroup(context, environment);
+        } catch (SQLException e) {
+            throw new PostgreSQLException("COMMIT failed: " + e.getMessage(), e);
+        }
+    }
+
+    private String message(long durationMs, @Nullable String detail) {
+        String message = "UP migration executed in " + durationMs + "ms";
+        if (autocommit) {
+            message += " (autocommit)";
+        }
+        return detail != null ? message + ": " + detail : message;
+    }
+
+    /** COPY の行数などの実行結果の要約は、履歴にも残るよう TaskResult に含める。 */
+    private TaskResult result(String message, @Nullable String detail) {
+        TaskResult result =
+                downSql != null
+                        ? TaskResult.withDownTask(message, downSql.text())
+                        : TaskResult.withoutDownTask(message);
+        return result.withDetail(detail);
+    }
+
+    private static void rollbackQuietly(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException rollbackEx) {
+            // rollback failed, ignore
+        }
+    }
+
+    /** 履歴の保存先がこのタスクと同じデータベースであれば、その HistoryRepository を返す。 */
+    private @Nullable PostgreSQLHistoryRepository sharedHistory(
+            @Nullable TaskExecutionContext context) {
+        if (context != null
+                && context.historyRepository() instanceof PostgreSQLHistoryRepository history
+                && history.sharesDatabaseWith(environment)) {
+            return history;
+        }
+        return null;
+    }
+
     @Override
     public String description() {
         return autocommit ? "PostgreSQL UP migration (autocommit)" : "PostgreSQL UP migration";
     }
 
-    /** UP SQL を取得する（失敗時の詳細表示用）。 */
+    /** UP SQL を取得する（失敗時の詳細表示用）。 SQL ファイルの場合はファイルのパスを示すコメント。 */
     public String upSql() {
-        return upSql;
+        return upSql.text();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>ステートメントごとに既存のテーブルに取るロックを見積もり、{@code pg_class} から読んだテーブルの大きさと一緒に返す。
+     * {@link ImpactOptions#explain()} が true であれば、続けて DML の行数とコストを EXPLAIN で見積もる。
+     */
+    @Override
+    public List<ImpactFinding> analyzeImpact(ImpactOptions options) {
+        List<ImpactFinding> findings =
+                new ArrayList<>(LockImpactAnalyzer.analyze(environment, upSql));
+        if (options.explain()) {
+            findings.addAll(ExplainImpactAnalyzer.analyze(environment, upSql, options));
+        }
+        return findings;
     }
 
     @Override
     public String sqlContent() {
-        return upSql;
+        return upSql.text();
     }
 }
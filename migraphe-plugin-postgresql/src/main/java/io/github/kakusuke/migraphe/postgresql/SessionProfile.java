@@ -0,0 +1,100 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * タスクの実行に使う接続を取得したときに設定する、セッションの設定（maintenance_work_mem など）。
+ *
+ * <p>ターゲットの {@code session} に書いた設定を、タスクの {@code session} の設定で上書きして使う。 値は
+ * {@code set_config} にバインドして設定するため、SQL の引用符を気にせずに書ける。 共有している接続は、次のタスクに渡す前の
+ * {@code DISCARD ALL}（トランザクションをまとめている間は {@code RESET ALL}）で接続直後の設定に戻る。
+ *
+ * @param settings 設定名と値
+ */
+record SessionProfile(Map<String, String> settings) {
+
+    /** 何も設定しないプロファイル。 */
+    static final SessionProfile EMPTY = new SessionProfile(Map.of());
+
+    /** 設定名。 拡張の設定（{@code auto_explain.log_min_duration} など）は1つのドットを含む。 */
+    private static final Pattern NAME =
+            Pattern.compile("[A-Za-z_][A-Za-z0-9_$]*(\\.[A-Za-z_][A-Za-z0-9_$]*)?");
+
+    SessionProfile {
+        Objects.requireNonNull(settings, "settings must not be null");
+        for (Map.Entry<String, String> entry : settings.entrySet()) {
+            if (!NAME.matcher(entry.getKey()).matches()) {
+                throw new PostgreSQLException("Invalid session setting name: " + entry.getKey());
+            }
+            Objects.requireNonNull(entry.getValue(), "session setting value must not be null");
+        }
+        // 設定する順を決めておく
+        settings = Collections.unmodifiableMap(new TreeMap<>(settings));
+    }
+
+    /**
+     * 設定からプロファイルを作成する。
+     *
+     * @param settings 設定名と値
+     * @return プロファイル
+     * @throws PostgreSQLException 設定名が不正な場合
+     */
+    static SessionProfile of(Map<String, String> settings) {
+        return settings.isEmpty() ? EMPTY : new SessionProfile(settings);
+    }
+
+    /**
+     * このプロファイルの設定を overrides で上書きしたプロファイルを返す。
+     *
+     * @param overrides 上書きする設定名と値
+     * @return 上書きしたプロファイル
+     */
+    SessionProfile with(Map<String, String> overrides) {
+        if (overrides.isEmpty()) {
+            return this;
+        }
+        Map<String, String> merged = new TreeMap<>(settings);
+        merged.putAll(overrides);
+        return new SessionProfile(merged);
+    }
+
+    boolean isEmpty() {
+        return settings.isEmpty();
+    }
+
+    /**
+     * 接続のセッションに設定する。 トランザクションの中で呼んだ場合、トランザクションをロールバックすると設定も戻る。
+     *
+     * @param conn 設定する接続
+     * @throws SQLException 設定名が未知の場合や、値が不正な場合
+     */
+    void apply(Connection conn) throws SQLException {
+        if (settings.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = conn.prepareStatement("SELECT set_config(?, ?, false)")) {
+            for (Map.Entry<String, String> entry : settings.entrySet()) {
+                ps.setString(1, entry.getKey());
+                ps.setString(2, entry.getValue());
+                try {
+                    ps.executeQuery().close();
+                } catch (SQLException e) {
+                    throw new SQLException(
+                            "Failed to apply session setting "
+                                    + entry.getKey()
+                                    + ": "
+                                    + e.getMessage(),
+                            e.getSQLState(),
+                            e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HexFormat;
+import java.util.Objects;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * 実行時にディスクから読み込む SQL ファイル。 COPY で読み込むデータファイルにも使う。
+ *
+ * <p>読み込み時にはチェックサムだけを求めて内容は保持せず、 タスクを実行するときに {@link #open()} でストリームとして読む。
+ * 実行時に読んだ内容のチェックサムが読み込み時と異なれば、最後まで読んだところで {@link IOException} を投げる。
+ * トランザクションモードではコミット前に失敗するため、変更されたファイルの内容がコミットされることはない。
+ */
+final class SqlFile implements SqlSource {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path path;
+    private final String sha256;
+
+    private SqlFile(Path path, String sha256) {
+        this.path = Objects.requireNonNull(path, "path must not be null");
+        this.sha256 = Objects.requireNonNull(sha256, "sha256 must not be null");
+    }
+
+    /**
+     * SQL ファイルのチェックサムを求めて読み込む。
+     *
+     * @param path SQL ファイルのパス
+     * @return SQL ファイル
+     * @throws IOException ファイルの読み込みに失敗した場合
+     */
+    static SqlFile load(Path path) throws IOException {
+        Path absolute = path.toAbsolutePath().normalize();
+        MessageDigest digest = sha256Digest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(absolute), digest)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (in.read(buffer) >= 0) {
+                // チェックサムを求めるだけ
+            }
+        }
+        return new SqlFile(absolute, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    /** SQL ファイルの絶対パス。 */
+    Path path() {
+        return path;
+    }
+
+    /** 読み込み時に求めた SHA-256 チェックサム（16進数）。 */
+    String sha256() {
+        return sha256;
+    }
+
+    /**
+     * SQL を先頭から読むリーダーを開く。
+     *
+     * @return UTF-8 で読むリーダー（呼び出し側が閉じる）
+     * @throws IOException 読み込みに失敗した場合
+     */
+    Reader open() throws IOException {
+        return new InputStreamReader(openStream(), UTF_8);
+    }
+
+    /**
+     * ファイルの内容をそのまま読むストリームを開く。 最後まで読んだところでチェックサムを確かめる。
+     *
+     * @return ファイルの内容（呼び出し側が閉じる）
+     * @throws IOException 読み込みに失敗した場合
+     */
+    InputStream openStream() throws IOException {
+        MessageDigest digest = sha256Digest();
+        InputStream in = new DigestInputStream(Files.newInputStream(path), digest);
+        return new FilterInputStream(in) {
+            private boolean verified;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b < 0) {
+                    verify();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n < 0) {
+                    verify();
+                }
+                return n;
+            }
+
+            private void verify() throws IOException {
+                if (verified) {
+                    return;
+                }
+                verified = true;
+                if (!sha256.equals(HexFormat.of().formatHex(digest.digest()))) {
+                    throw new IOException("File changed since it was loaded: " + path);
+                }
+            }
+        };
+    }
+
+    /** ステートメントごとにファイルから読み進めて実行する。 */
+    @Override
+    public @Nullable String execute(Connection conn, boolean autocommit, int batchSize)
+            throws SQLException, IOException {
+        PostgreSQLScriptReader.execute(conn, open(), batchSize);
+        return null;
+    }
+
+    /** パスに依存しないよう、チェックサムだけを使う。 */
+    @Override
+    public String fingerprint() {
+        return "sha256:" + sha256;
+    }
+
+    @Override
+    public String text() {
+        return "-- file: " + path + " (sha256:" + sha256 + ")";
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 は全ての Java 実装で利用可能
+            throw new IllegalStateException(e);
+        }
+    }
+}
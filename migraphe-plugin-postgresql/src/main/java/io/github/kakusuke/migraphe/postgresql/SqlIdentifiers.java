@@ -0,0 +1,41 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/** タスク定義から SQL に埋め込む識別子の検証。 */
+final class SqlIdentifiers {
+
+    /** 引用符なしの識別子か、引用符付きの識別子。 */
+    private static final Pattern IDENTIFIER =
+            Pattern.compile("[A-Za-z_][A-Za-z0-9_$]*|\"(?:[^\"]|\"\")+\"");
+
+    /** スキーマ修飾を許可した識別子。 */
+    private static final Pattern QUALIFIED_IDENTIFIER =
+            Pattern.compile("(?:" + IDENTIFIER + ")(?:\\.(?:" + IDENTIFIER + "))?");
+
+    private SqlIdentifiers() {}
+
+    /** 引用符なしの識別子か、引用符付きの識別子かどうか。 */
+    static boolean isIdentifier(String value) {
+        return IDENTIFIER.matcher(value).matches();
+    }
+
+    /** スキーマ修飾を含めて、SQL にそのまま埋め込める名前かどうか。 */
+    static boolean isQualifiedIdentifier(String value) {
+        return QUALIFIED_IDENTIFIER.matcher(value).matches();
+    }
+
+    /**
+     * カタログ（pg_class.relname など）に格納される名前を返す。 引用符なしの識別子は小文字に畳み込む。
+     *
+     * @param identifier {@link #isIdentifier} を満たす識別子
+     * @return カタログ上の名前
+     */
+    static String catalogName(String identifier) {
+        if (identifier.startsWith("\"")) {
+            return identifier.substring(1, identifier.length() - 1).replace("\"\"", "\"");
+        }
+        return identifier.toLowerCase(Locale.ROOT);
+    }
+}
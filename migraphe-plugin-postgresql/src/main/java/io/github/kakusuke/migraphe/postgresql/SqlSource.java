@@ -0,0 +1,67 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Objects;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * マイグレーションの SQL の取得元。 タスク定義に直接書かれた SQL、実行時に読み込む SQL ファイル、 ファイルからの COPY による
+ * データ読み込み、インデックスのオンライン作成、またはキーの範囲ごとに分けて実行するバックフィル。
+ */
+sealed interface SqlSource permits SqlSource.Inline, SqlFile, CopyLoad, CreateIndex, Backfill {
+
+    /**
+     * 実行する。 autocommit モードでは、SQL は常にステートメントごとに分けて送る。
+     *
+     * @param conn 実行する接続
+     * @param autocommit autocommit モードで実行するかどうか
+     * @param batchSize ステートメントごとに分けて送るときに、連続した DML を1回のバッチにまとめる最大数
+     * @return 履歴に残す実行結果の要約、なければ null
+     * @throws SQLException ステートメントの実行に失敗した場合
+     * @throws IOException SQL やデータの読み込みに失敗した場合
+     */
+    @Nullable String execute(Connection conn, boolean autocommit, int batchSize)
+            throws SQLException, IOException;
+
+    /** ノードの contentHash に使う、内容を表す文字列。 */
+    String fingerprint();
+
+    /** 履歴の DOWN タスクや失敗時の表示に使うテキスト。 */
+    String text();
+
+    /** タスク定義に直接書かれた SQL。 */
+    record Inline(String sql) implements SqlSource {
+
+        public Inline {
+            Objects.requireNonNull(sql, "sql must not be null");
+        }
+
+        /** トランザクションモードでは、スクリプト全体を1回のラウンドトリップで送る。 */
+        @Override
+        public @Nullable String execute(Connection conn, boolean autocommit, int batchSize)
+                throws SQLException, IOException {
+            if (autocommit) {
+                PostgreSQLScriptReader.execute(conn, new StringReader(sql), batchSize);
+            } else {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(sql);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String fingerprint() {
+            return sql;
+        }
+
+        @Override
+        public String text() {
+            return sql;
+        }
+    }
+}
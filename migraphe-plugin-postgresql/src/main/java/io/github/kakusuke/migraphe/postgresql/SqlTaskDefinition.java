@@ -2,13 +2,19 @@ package io.github.kakusuke.migraphe.postgresql;
 
 import io.github.kakusuke.migraphe.api.spi.TaskDefinition;
 import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
+import io.smallrye.config.WithName;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
  * PostgreSQL 用の TaskDefinition サブタイプ。
  *
- * <p>YAML ファイルから直接マッピングされる。up/down は SQL 文字列。
+ * <p>YAML ファイルから直接マッピングされる。up/down は SQL 文字列。 代わりに up_file/down_file で SQL ファイルを指定すると、
+ * 読み込み時にはチェックサムだけを求め、タスクの実行時にファイルからストリームで読み込む。 up の代わりに copy を指定すると、
+ * データファイルを COPY でテーブルに読み込む。 index を指定すると、CREATE INDEX CONCURRENTLY でインデックスを作成する。
+ * backfill を指定すると、キーの範囲ごとにコミットしながら SQL を実行し、失敗した場合は次の実行で続きから再開する。
  *
  * <p>YAML 例:
  *
@@ -19,6 +25,46 @@ import java.util.Optional;
  * up: "CREATE DATABASE myapp;"
  * down: "DROP DATABASE myapp;"
  * }</pre>
+ *
+ * <pre>{@code
+ * name: seed_products
+ * target: db1
+ * up_file: sql/seed_products.sql    # タスクファイルのディレクトリからの相対パス
+ * down_file: sql/unseed_products.sql
+ * }</pre>
+ *
+ * <pre>{@code
+ * name: load_products
+ * target: db1
+ * copy:
+ *   table: products
+ *   file: data/products.csv
+ *   header: true
+ *   truncate: true
+ * }</pre>
+ *
+ * <pre>{@code
+ * name: index_orders_customer
+ * target: db1
+ * index:
+ *   name: idx_orders_customer_id
+ *   table: orders
+ *   columns: [customer_id]
+ * }</pre>
+ *
+ * <pre>{@code
+ * name: backfill_total_cents
+ * target: db1
+ * backfill:
+ *   table: orders
+ *   key: id
+ *   sql: "UPDATE orders SET total_cents = total * 100 WHERE id >= :start AND id < :end"
+ *   batch_size: 10000
+ *   sleep_ms: 100
+ * session:                 # ターゲットの session を上書きする
+ *   work_mem: 256MB
+ *   synchronous_commit: "off"
+ * }</pre>
  */
 @ConfigMapping(prefix = "")
 public interface SqlTaskDefinition extends TaskDefinition<String> {
@@ -35,12 +81,38 @@ public interface SqlTaskDefinition extends TaskDefinition<String> {
     @Override
     Optional<List<String>> dependencies();
 
+    /** UP SQL。 up、up_file、copy、index、backfill のうち、ちょうど1つを指定する。 */
     @Override
-    String up();
+    Optional<String> up();
 
     @Override
     Optional<String> down();
 
+    /** 実行時に読み込む UP SQL ファイルのパス（タスクファイルのディレクトリからの相対パス）。 */
+    @WithName("up_file")
+    Optional<String> upFile();
+
+    /** 実行時に読み込む DOWN SQL ファイルのパス（タスクファイルのディレクトリからの相対パス）。 */
+    @WithName("down_file")
+    Optional<String> downFile();
+
+    /** UP マイグレーションとしてデータファイルを COPY で読み込む設定。 */
+    Optional<Copy> copy();
+
+    /** UP マイグレーションとして、インデックスを CREATE INDEX CONCURRENTLY で作成する設定。 */
+    Optional<Index> index();
+
+    /** UP マイグレーションとして、キーの範囲ごとにコミットしながら SQL を実行する設定。 */
+    Optional<Backfill> backfill();
+
+    /**
+     * タスクファイルのあるディレクトリ。 up_file/down_file/copy.file の相対パスの基準で、ローダーが設定する。
+     *
+     * @return ディレクトリの絶対パス、ローダーを経由せずに読み込んだ場合は空
+     */
+    @WithName(TaskDefinition.TASK_DIR)
+    Optional<String> taskDir();
+
     /**
      * autocommit モードで実行するかどうか。
      *
@@ -49,4 +121,90 @@ public interface SqlTaskDefinition extends TaskDefinition<String> {
      * @return autocommit を有効にする場合は true を含む Optional、指定なしの場合は空
      */
     Optional<Boolean> autocommit();
+
+    /**
+     * ステートメントごとに分けて実行するときに、連続した INSERT・UPDATE・DELETE・MERGE を1回の JDBC バッチにまとめる最大数。
+     *
+     * <p>autocommit モードの up/down と、up_file/down_file に適用される。 指定なしの場合はまとめない。
+     *
+     * @return バッチサイズを含む Optional、指定なしの場合は空
+     */
+    @WithName("batch_size")
+    Optional<Integer> batchSize();
+
+    /**
+     * このタスクの実行に使う接続に設定するセッションの設定（設定名と値）。 ターゲットの {@code session} の同じ設定を上書きする。
+     */
+    Map<String, String> session();
+
+    /** COPY によるデータ読み込みの設定。 */
+    interface Copy {
+
+        /** 読み込み先のテーブル（スキーマ修飾可）。 */
+        String table();
+
+        /** データファイルのパス（タスクファイルのディレクトリからの相対パス）。 */
+        String file();
+
+        /** データファイルの形式（csv, text, binary）。 省略時は csv。 */
+        @WithDefault("csv")
+        String format();
+
+        /** 読み込む列。 省略時はテーブルの全列。 */
+        Optional<List<String>> columns();
+
+        /** 先頭行がヘッダーかどうか（csv のみ）。 */
+        @WithDefault("false")
+        boolean header();
+
+        /** 読み込む前にテーブルを TRUNCATE するかどうか。 */
+        @WithDefault("false")
+        boolean truncate();
+    }
+
+    /** CREATE INDEX CONCURRENTLY によるインデックス作成の設定。 */
+    interface Index {
+
+        /** インデックス名（テーブルと同じスキーマに作成される）。 */
+        String name();
+
+        /** 対象のテーブル（スキーマ修飾可）。 */
+        String table();
+
+        /** インデックスのキー（列名または式）。 */
+        List<String> columns();
+
+        /** 一意インデックスにするかどうか。 */
+        @WithDefault("false")
+        boolean unique();
+
+        /** インデックスの種類（btree, gin など）。 省略時は btree。 */
+        Optional<String> method();
+
+        /** 部分インデックスの条件。 */
+        Optional<String> where();
+    }
+
+    /** キーの範囲ごとに分けて実行するバックフィルの設定。 */
+    interface Backfill {
+
+        /** 対象のテーブル（スキーマ修飾可）。 */
+        String table();
+
+        /** 範囲に分けるキーの列（整数型）。 */
+        String key();
+
+        /** 範囲ごとに実行する SQL。 範囲の始まり（含む）を :start、終わり（含まない）を :end で参照する。 */
+        String sql();
+
+        /** 1回の範囲に含めるキーの数。 */
+        @WithName("batch_size")
+        @WithDefault("1000")
+        int batchSize();
+
+        /** 範囲の間に待つミリ秒。 */
+        @WithName("sleep_ms")
+        @WithDefault("0")
+        long sleepMs();
+    }
 }
@@ -0,0 +1,120 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * スクリプト中の連続した DML を JDBC のバッチにまとめて送る。
+ *
+ * <p>{@link #add} で最大 batchSize 個までためて、{@code executeBatch} の1回のラウンドトリップで実行する。 バッチは
+ * PostgreSQL の1つの暗黙のトランザクションで実行されるため、autocommit モードでもバッチ単位で全体が反映されるか、 全体が取り消されるかのどちらかになる。
+ * 失敗した場合は、失敗したステートメントのスクリプト中の番号を例外のメッセージに含める。
+ */
+final class StatementBatch {
+
+    /** 結果セットを返さず、トランザクション内で実行できるステートメント。 */
+    private static final Pattern BATCHABLE =
+            Pattern.compile("(?is)(?:INSERT|UPDATE|DELETE|MERGE)\\b.*");
+
+    private static final Pattern RETURNING = Pattern.compile("(?i)\\bRETURNING\\b");
+
+    private final Statement stmt;
+    private final int batchSize;
+    private int firstIndex;
+    private int size;
+
+    private StatementBatch(Statement stmt, int batchSize) {
+        this.stmt = Objects.requireNonNull(stmt, "stmt must not be null");
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * バッチを作成する。
+     *
+     * @param stmt バッチを実行するステートメント
+     * @param batchSize 1回のバッチにまとめる最大のステートメント数（1 ならまとめない）
+     * @return バッチ
+     */
+    static StatementBatch of(Statement stmt, int batchSize) {
+        return new StatementBatch(stmt, batchSize);
+    }
+
+    /**
+     * バッチにまとめられるステートメントかどうか。 INSERT・UPDATE・DELETE・MERGE のうち RETURNING を含まないものに限り、
+     * CREATE DATABASE などトランザクション内で実行できない DDL は常に単独で実行する。
+     *
+     * @param sql 先頭のコメントを除いたステートメント
+     * @return バッチにまとめられる場合は true
+     */
+    boolean accepts(String sql) {
+        return batchSize > 1
+                && BATCHABLE.matcher(sql).matches()
+                && !RETURNING.matcher(sql).find();
+    }
+
+    /**
+     * ステートメントをバッチに加え、batchSize に達したら実行する。
+     *
+     * @param index スクリプト中のステートメントの番号（1始まり）
+     * @param sql ステートメント
+     * @throws SQLException バッチの実行に失敗した場合
+     */
+    void add(int index, String sql) throws SQLException {
+        if (size == 0) {
+            firstIndex = index;
+        }
+        stmt.addBatch(sql);
+        size++;
+        if (size == batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * ためているステートメントを実行する。
+     *
+     * @throws SQLException バッチの実行に失敗した場合。 メッセージに失敗したステートメントの番号を含む
+     */
+    void flush() throws SQLException {
+        if (size == 0) {
+            return;
+        }
+        int first = firstIndex;
+        int count = size;
+        size = 0;
+        try {
+            stmt.executeBatch();
+        } catch (BatchUpdateException e) {
+            stmt.clearBatch();
+            int failed = first + failedOffset(e.getUpdateCounts(), count);
+            SQLException cause = e.getNextException() != null ? e.getNextException() : e;
+            throw new SQLException(
+                    "Statement "
+                            + failed
+                            + " failed (batch of statements "
+                            + first
+                            + "-"
+                            + (first + count - 1)
+                            + " was not applied): "
+                            + cause.getMessage(),
+                    cause.getSQLState(),
+                    e);
+        }
+    }
+
+    /** 失敗したステートメントのバッチ内の位置。 成功したものの件数しか返さないドライバーにも対応する。 */
+    private static int failedOffset(int[] updateCounts, int count) {
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] == Statement.EXECUTE_FAILED) {
+                return i;
+            }
+        }
+        return Math.min(updateCounts.length, count - 1);
+    }
+}
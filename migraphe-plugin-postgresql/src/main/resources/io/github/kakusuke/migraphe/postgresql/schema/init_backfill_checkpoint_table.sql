@@ -0,0 +1,10 @@
+-- 分割実行するバックフィルの進み具合（ノード・環境ごと）。再実行時にここから再開する
+CREATE TABLE IF NOT EXISTS migraphe_backfill_checkpoint (
+    node_id TEXT NOT NULL,
+    environment_id TEXT NOT NULL,
+    content_hash TEXT NOT NULL,
+    last_key BIGINT NOT NULL,
+    updated_at TIMESTAMP NOT NULL DEFAULT LOCALTIMESTAMP,
+
+    PRIMARY KEY (node_id, environment_id)
+);
@@ -1,5 +1,6 @@
+-- id 列の型（${id_type}）はターゲット設定の history_id_type で TEXT / UUID を選ぶ
 CREATE TABLE IF NOT EXISTS migraphe_history (
-    id TEXT PRIMARY KEY,
+    id ${id_type} PRIMARY KEY,
     node_id TEXT NOT NULL,
     environment_id TEXT NOT NULL,
     direction TEXT NOT NULL,
@@ -14,8 +15,50 @@ CREATE TABLE IF NOT EXISTS migraphe_history (
     CONSTRAINT check_direction CHECK (direction IN ('UP', 'DOWN'))
 );
 
+-- DOWN タスクの内容（gzip 圧縮）。内容の SHA-256 ハッシュをキーに1度だけ保存する
+CREATE TABLE IF NOT EXISTS migraphe_down_task (
+    hash TEXT PRIMARY KEY,
+    payload BYTEA NOT NULL
+);
+
+-- serialized_down_task はハッシュ化前に記録されたレコードのためだけに残す
+-- （列が既にある場合に ALTER TABLE のロックを取らないよう、存在を確認してから追加する）
+DO $$
+BEGIN
+    IF NOT EXISTS (
+        SELECT 1 FROM information_schema.columns
+        WHERE table_name = 'migraphe_history' AND column_name = 'down_task_hash'
+    ) THEN
+        ALTER TABLE migraphe_history ADD COLUMN down_task_hash TEXT;
+    END IF;
+END
+$$;
+
 CREATE INDEX IF NOT EXISTS idx_migraphe_history_node_env
     ON migraphe_history(node_id, environment_id);
 
 CREATE INDEX IF NOT EXISTS idx_migraphe_history_env
     ON migraphe_history(environment_id);
+
+-- 最新レコードの検索（実行済み判定・コンパクション）用
+CREATE INDEX IF NOT EXISTS idx_migraphe_history_env_node_time
+    ON migraphe_history(environment_id, node_id, executed_at DESC);
+
+-- 時間範囲での検索・アーカイブ用
+CREATE INDEX IF NOT EXISTS idx_migraphe_history_executed_at
+    ON migraphe_history(executed_at);
+
+-- 時系列での読み出し（キーセットページネーション）用
+CREATE INDEX IF NOT EXISTS idx_migraphe_history_env_time_id
+    ON migraphe_history(environment_id, executed_at, id);
+
+-- 参照されなくなった DOWN タスクの削除用
+CREATE INDEX IF NOT EXISTS idx_migraphe_history_down_task_hash
+    ON migraphe_history(down_task_hash) WHERE down_task_hash IS NOT NULL;
+
+-- 全ノードを適用し終えたグラフのフィンガープリント（環境ごと）。一致すれば up の計画を省略する
+CREATE TABLE IF NOT EXISTS migraphe_graph_fingerprint (
+    environment_id TEXT PRIMARY KEY,
+    fingerprint TEXT NOT NULL,
+    recorded_at TIMESTAMP NOT NULL DEFAULT LOCALTIMESTAMP
+);
@@ -0,0 +1,12 @@
+-- 分散実行でランナー間の実行権を調整するためのリース
+CREATE TABLE IF NOT EXISTS migraphe_node_lease (
+    run_id TEXT NOT NULL,
+    node_id TEXT NOT NULL,
+    status TEXT NOT NULL DEFAULT 'PENDING',
+    owner TEXT,
+    expires_at TIMESTAMPTZ,
+    attempts INTEGER NOT NULL DEFAULT 0,
+
+    PRIMARY KEY (run_id, node_id),
+    CONSTRAINT check_lease_status CHECK (status IN ('PENDING', 'RUNNING', 'DONE', 'FAILED'))
+);
@@ -0,0 +1,83 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class BackfillTest {
+
+    @Test
+    void shouldRequireBothRangePlaceholders() {
+        // when & then: キャストの :: はプレースホルダーではない
+        assertThatThrownBy(
+                        () ->
+                                new Backfill(
+                                        "t",
+                                        "id",
+                                        "UPDATE t SET a = b::text WHERE id >= :start",
+                                        100,
+                                        Duration.ZERO))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining("both :start and :end");
+    }
+
+    @Test
+    void shouldRejectInvalidSettings() {
+        // given
+        String sql = "UPDATE t SET a = 1 WHERE id >= :start AND id < :end";
+
+        // when & then
+        assertThatThrownBy(() -> new Backfill("t; DROP", "id", sql, 100, Duration.ZERO))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining("Invalid backfill table name");
+        assertThatThrownBy(() -> new Backfill("t", "id", sql, 0, Duration.ZERO))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining("batch_size must be positive");
+        assertThatThrownBy(() -> new Backfill("t", "id", sql, 100, Duration.ofMillis(-1)))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining("must not be negative");
+    }
+
+    @Test
+    void shouldKeepCheckpointHashWhenOnlyThrottlingChanges() {
+        // given
+        String sql = "UPDATE t SET a = 1 WHERE id >= :start AND id < :end";
+        Backfill original = new Backfill("t", "id", sql, 100, Duration.ZERO);
+
+        // when & then
+        assertThat(new Backfill("t", "id", sql, 500, Duration.ofMillis(50)).checkpointHash())
+                .isEqualTo(original.checkpointHash());
+        assertThat(new Backfill("t", "id", sql + " AND a IS NULL", 100, Duration.ZERO))
+                .extracting(Backfill::checkpointHash)
+                .isNotEqualTo(original.checkpointHash());
+    }
+
+    @Test
+    void shouldBindRangeAsLiteralsForExplain() {
+        // given
+        Backfill backfill =
+                new Backfill(
+                        "t",
+                        "id",
+                        "UPDATE t SET a = b::int WHERE id >= :start AND id < :end",
+                        100,
+                        Duration.ZERO);
+
+        // when & then: :end は範囲の最後のキーの次、負の値は括弧で囲む
+        assertThat(backfill.bind(1, 100))
+                .isEqualTo("UPDATE t SET a = b::int WHERE id >= 1 AND id < 101");
+        assertThat(backfill.bind(-5, 94))
+                .isEqualTo("UPDATE t SET a = b::int WHERE id >= (-5) AND id < 95");
+    }
+
+    @Test
+    void shouldFormatProgress() {
+        // when & then
+        assertThat(Backfill.progressMessage(3, 300, 1, 1000, 250))
+                .isEqualTo("batch 3: keys up to 300 of 1000 (30%), 250 rows");
+        assertThat(Backfill.progressMessage(1, 7, 7, 7, 1))
+                .isEqualTo("batch 1: keys up to 7 of 7 (100%), 1 rows");
+    }
+}
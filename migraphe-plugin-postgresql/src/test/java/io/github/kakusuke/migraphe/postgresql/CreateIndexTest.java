@@ -0,0 +1,68 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class CreateIndexTest {
+
+    @Test
+    void shouldBuildCreateIndexConcurrentlyStatement() {
+        // given
+        CreateIndex index =
+                new CreateIndex(
+                        "idx_users_email",
+                        "app.users",
+                        List.of("lower(email)", "created_at DESC"),
+                        true,
+                        "btree",
+                        "deleted_at IS NULL");
+
+        // when & then
+        assertThat(index.createSql())
+                .isEqualTo(
+                        "CREATE UNIQUE INDEX CONCURRENTLY idx_users_email ON app.users"
+                                + " USING btree (lower(email), created_at DESC)"
+                                + " WHERE deleted_at IS NULL");
+    }
+
+    @Test
+    void shouldQualifyDropWithTableSchema() {
+        // given: 引用符付きのスキーマ名の中のドットはスキーマの区切りではない
+        CreateIndex qualified =
+                new CreateIndex("idx_a", "\"My.Schema\".t", List.of("a"), false, null, null);
+        CreateIndex unqualified = new CreateIndex("idx_a", "t", List.of("a"), false, null, null);
+
+        // when & then
+        assertThat(qualified.dropSql())
+                .isEqualTo("DROP INDEX CONCURRENTLY IF EXISTS \"My.Schema\".idx_a;");
+        assertThat(unqualified.dropSql()).isEqualTo("DROP INDEX CONCURRENTLY IF EXISTS idx_a;");
+    }
+
+    @Test
+    void shouldRejectInvalidNamesAndEmptyColumns() {
+        // when & then
+        assertThatThrownBy(() -> new CreateIndex("idx; DROP", "t", List.of("a"), false, null, null))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining("Invalid index name");
+        assertThatThrownBy(() -> new CreateIndex("idx", "a.b.c", List.of("a"), false, null, null))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining("Invalid index table name");
+        assertThatThrownBy(() -> new CreateIndex("idx", "t", List.of(), false, null, null))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining("at least one column");
+    }
+
+    @Test
+    void shouldFormatProgressWithBlocksOrTuples() {
+        // when & then
+        assertThat(IndexBuildMonitor.format("building index: scanning table", 50, 200, 0, 0))
+                .isEqualTo("building index: scanning table (25%, 50/200 blocks)");
+        assertThat(IndexBuildMonitor.format("building index: loading tuples in tree", 0, 0, 3, 4))
+                .isEqualTo("building index: loading tuples in tree (75%, 3/4 tuples)");
+        assertThat(IndexBuildMonitor.format("waiting for writers before build", 0, 0, 0, 0))
+                .isEqualTo("waiting for writers before build");
+    }
+}
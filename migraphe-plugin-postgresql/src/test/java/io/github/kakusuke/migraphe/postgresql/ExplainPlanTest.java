@@ -0,0 +1,84 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ExplainPlanTest {
+
+    @Test
+    void shouldUseRowsOfScanUnderModifyTable() {
+        // given: RETURNING のない UPDATE は ModifyTable が 0 行と見積もられる
+        String json =
+                """
+                [
+                  {
+                    "Plan": {
+                      "Node Type": "ModifyTable",
+                      "Operation": "Update",
+                      "Relation Name": "users",
+                      "Startup Cost": 0.00,
+                      "Total Cost": 35.50,
+                      "Plan Rows": 0,
+                      "Plan Width": 0,
+                      "Plans": [
+                        {
+                          "Node Type": "Seq Scan",
+                          "Parent Relationship": "Outer",
+                          "Relation Name": "users",
+                          "Alias": "users",
+                          "Startup Cost": 0.00,
+                          "Total Cost": 35.50,
+                          "Plan Rows": 2550,
+                          "Plan Width": 10
+                        }
+                      ]
+                    }
+                  }
+                ]
+                """;
+
+        // when
+        ExplainPlan plan = ExplainPlan.parse(json);
+
+        // then
+        assertThat(plan).isEqualTo(new ExplainPlan(2550, 35.5, List.of("users")));
+    }
+
+    @Test
+    void shouldCollectSeqScansOfJoinedTables() {
+        // given
+        String json =
+                """
+                [{"Plan": {"Node Type": "Hash Join", "Total Cost": 120.5, "Plan Rows": 1e3,
+                  "Plans": [
+                    {"Node Type": "Seq Scan", "Relation Name": "orders", "Plan Rows": 1000},
+                    {"Node Type": "Hash", "Plans": [
+                      {"Node Type": "Seq Scan", "Relation Name": "users", "Plan Rows": 10},
+                      {"Node Type": "Seq Scan", "Relation Name": "orders", "Plan Rows": 1}
+                    ]}
+                  ]}}]
+                """;
+
+        // when
+        ExplainPlan plan = ExplainPlan.parse(json);
+
+        // then: 重複は除き、プランに現れる順に並べる
+        assertThat(plan.rows()).isEqualTo(1000);
+        assertThat(plan.cost()).isEqualTo(120.5);
+        assertThat(plan.seqScans()).containsExactly("orders", "users");
+    }
+
+    @Test
+    void shouldRejectUnexpectedOutput() {
+        // when & then
+        assertThatThrownBy(() -> ExplainPlan.parse("[{\"Plan\": {\"Plan Rows\": 1}}]"))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining("no Total Cost");
+        assertThatThrownBy(() -> ExplainPlan.parse("[{\"Plan\": "))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageStartingWith("Unexpected EXPLAIN output");
+    }
+}
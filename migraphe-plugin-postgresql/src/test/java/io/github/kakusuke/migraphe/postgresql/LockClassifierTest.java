@@ -0,0 +1,71 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.kakusuke.migraphe.postgresql.LockClassifier.Effect;
+import io.github.kakusuke.migraphe.postgresql.LockClassifier.Lock;
+import io.github.kakusuke.migraphe.postgresql.LockClassifier.Mode;
+import org.junit.jupiter.api.Test;
+
+class LockClassifierTest {
+
+    @Test
+    void shouldDetectAlterTableRewrites() {
+        // when & then: 揮発性のデフォルト値と型の変更は書き直し、定数のデフォルト値は書き直さない
+        assertThat(LockClassifier.classify("ALTER TABLE orders ADD COLUMN note text DEFAULT 'x'"))
+                .containsExactly(new Lock("orders", Mode.ACCESS_EXCLUSIVE, Effect.NONE));
+        assertThat(
+                        LockClassifier.classify(
+                                "ALTER TABLE public.orders ADD COLUMN uid uuid"
+                                        + " DEFAULT gen_random_uuid()"))
+                .containsExactly(new Lock("public.orders", Mode.ACCESS_EXCLUSIVE, Effect.REWRITE));
+        assertThat(
+                        LockClassifier.classify(
+                                "ALTER TABLE ONLY orders ADD COLUMN a int,"
+                                        + " ALTER COLUMN total TYPE numeric(12, 2)"))
+                .containsExactly(new Lock("orders", Mode.ACCESS_EXCLUSIVE, Effect.REWRITE));
+    }
+
+    @Test
+    void shouldDistinguishValidatedAndNotValidConstraints() {
+        // when & then
+        assertThat(
+                        LockClassifier.classify(
+                                "ALTER TABLE orders ADD CONSTRAINT fk FOREIGN KEY (c)"
+                                        + " REFERENCES customers (id) NOT VALID"))
+                .containsExactly(new Lock("orders", Mode.SHARE_ROW_EXCLUSIVE, Effect.NONE));
+        assertThat(LockClassifier.classify("ALTER TABLE orders VALIDATE CONSTRAINT fk"))
+                .containsExactly(new Lock("orders", Mode.SHARE_UPDATE_EXCLUSIVE, Effect.SCAN));
+        assertThat(LockClassifier.classify("ALTER TABLE orders ALTER total SET NOT NULL"))
+                .containsExactly(new Lock("orders", Mode.ACCESS_EXCLUSIVE, Effect.SCAN));
+    }
+
+    @Test
+    void shouldClassifyIndexBuildsAndTableCommands() {
+        // when & then
+        assertThat(LockClassifier.classify("CREATE INDEX i ON orders USING gin (tags)"))
+                .containsExactly(new Lock("orders", Mode.SHARE, Effect.SCAN));
+        assertThat(LockClassifier.classify("CREATE UNIQUE INDEX CONCURRENTLY i ON orders (a)"))
+                .containsExactly(new Lock("orders", Mode.SHARE_UPDATE_EXCLUSIVE, Effect.SCAN));
+        assertThat(LockClassifier.classify("DROP TABLE IF EXISTS a, s.b CASCADE"))
+                .containsExactly(
+                        new Lock("a", Mode.ACCESS_EXCLUSIVE, Effect.NONE),
+                        new Lock("s.b", Mode.ACCESS_EXCLUSIVE, Effect.NONE));
+        assertThat(LockClassifier.classify("LOCK TABLE orders IN SHARE ROW EXCLUSIVE MODE"))
+                .containsExactly(new Lock("orders", Mode.SHARE_ROW_EXCLUSIVE, Effect.NONE));
+        assertThat(LockClassifier.classify("VACUUM (FULL, VERBOSE) orders"))
+                .containsExactly(new Lock("orders", Mode.ACCESS_EXCLUSIVE, Effect.REWRITE));
+    }
+
+    @Test
+    void shouldIgnoreNewObjectsDmlAndCommentsOrLiterals() {
+        // when & then
+        assertThat(LockClassifier.classify("CREATE TABLE t (id int)")).isEmpty();
+        assertThat(LockClassifier.classify("UPDATE orders SET a = 1")).isEmpty();
+        assertThat(
+                        LockClassifier.classify(
+                                "/* ALTER TABLE x */ ALTER TABLE \"Odd\".\"T\" -- TYPE\n"
+                                        + " ADD COLUMN d text DEFAULT E'random(\\')'"))
+                .containsExactly(new Lock("\"Odd\".\"T\"", Mode.ACCESS_EXCLUSIVE, Effect.NONE));
+    }
+}
@@ -0,0 +1,50 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+class PostgreSQLDatabaseClonesTest {
+
+    @Test
+    void shouldReadDatabaseNameFromJdbcUrl() {
+        // when & then
+        assertThat(
+                        PostgreSQLDatabaseClones.databaseName(
+                                "jdbc:postgresql://localhost:5432/app?sslmode=require"))
+                .isEqualTo("app");
+        assertThat(PostgreSQLDatabaseClones.databaseName("jdbc:postgresql://db1,db2/app"))
+                .isEqualTo("app");
+        assertThat(PostgreSQLDatabaseClones.databaseName("jdbc:postgresql:app")).isEqualTo("app");
+    }
+
+    @Test
+    void shouldReplaceDatabaseNameAndKeepParameters() {
+        // when & then
+        assertThat(
+                        PostgreSQLDatabaseClones.withDatabase(
+                                "jdbc:postgresql://localhost:5432/app?sslmode=require", "shard_1"))
+                .isEqualTo("jdbc:postgresql://localhost:5432/shard_1?sslmode=require");
+        assertThat(PostgreSQLDatabaseClones.withDatabase("jdbc:postgresql:app", "postgres"))
+                .isEqualTo("jdbc:postgresql:postgres");
+    }
+
+    @Test
+    void shouldRejectUrlWithoutDatabaseName() {
+        // when & then
+        assertThatThrownBy(
+                        () -> PostgreSQLDatabaseClones.databaseName("jdbc:postgresql://localhost/"))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining("no database name");
+        assertThatThrownBy(
+                        () ->
+                                PostgreSQLDatabaseClones.databaseName(
+                                        "jdbc:postgresql://localhost?user=app"))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining("no database name");
+        assertThatThrownBy(() -> PostgreSQLDatabaseClones.databaseName("jdbc:mysql://localhost/a"))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining("Unsupported JDBC URL");
+    }
+}
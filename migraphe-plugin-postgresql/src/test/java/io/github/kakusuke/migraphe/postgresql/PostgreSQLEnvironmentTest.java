@@ -4,6 +4,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import java.util.Map;
 import org.junit.jupiter.api.Test;
 
 class PostgreSQLEnvironmentTest {
@@ -62,4 +63,76 @@ class PostgreSQLEnvironmentTest {
                 .isInstanceOf(NullPointerException.class)
                 .hasMessageContaining("password must not be null");
     }
+
+    @Test
+    void shouldUseTextHistoryIdTypeByDefault() {
+        // when
+        PostgreSQLEnvironment env =
+                PostgreSQLEnvironment.create(
+                        "test", "jdbc:postgresql://localhost:5432/db", "user", "pass");
+
+        // then
+        assertThat(env.getHistoryIdType()).isEqualTo(HistoryIdType.TEXT);
+    }
+
+    @Test
+    void shouldUsePgStatReplicationForReplicationLagByDefault() {
+        // when
+        PostgreSQLEnvironment env =
+                PostgreSQLEnvironment.create(
+                        "test", "jdbc:postgresql://localhost:5432/db", "user", "pass");
+
+        // then
+        assertThat(env.getReplicationLagQuery())
+                .isEqualTo(PostgreSQLEnvironment.DEFAULT_REPLICATION_LAG_QUERY)
+                .contains("pg_stat_replication");
+    }
+
+    @Test
+    void shouldOverrideTargetSessionSettingsWithTaskSettings() {
+        // given
+        PostgreSQLEnvironment env =
+                PostgreSQLEnvironment.create(
+                        "test",
+                        "jdbc:postgresql://localhost:5432/db",
+                        "user",
+                        "pass",
+                        HistoryIdType.TEXT,
+                        Map.of("work_mem", "64MB", "maintenance_work_mem", "1GB"));
+
+        // when
+        SessionProfile profile = env.sessionProfile().with(Map.of("work_mem", "256MB"));
+
+        // then
+        assertThat(env.getSessionSettings()).containsEntry("work_mem", "64MB");
+        assertThat(profile.settings())
+                .containsExactlyInAnyOrderEntriesOf(
+                        Map.of("work_mem", "256MB", "maintenance_work_mem", "1GB"));
+    }
+
+    @Test
+    void shouldRejectInvalidSessionSettingName() {
+        // when & then
+        assertThatThrownBy(
+                        () ->
+                                PostgreSQLEnvironment.create(
+                                        "test",
+                                        "jdbc:postgresql://localhost:5432/db",
+                                        "user",
+                                        "pass",
+                                        HistoryIdType.TEXT,
+                                        Map.of("work_mem = 1; --", "64MB")))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining("Invalid session setting name");
+    }
+
+    @Test
+    void shouldParseHistoryIdType() {
+        // when & then
+        assertThat(HistoryIdType.parse("uuid")).isEqualTo(HistoryIdType.UUID);
+        assertThat(HistoryIdType.parse("TEXT")).isEqualTo(HistoryIdType.TEXT);
+        assertThatThrownBy(() -> HistoryIdType.parse("bigint"))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining("Unknown history_id_type");
+    }
 }
@@ -0,0 +1,216 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.kakusuke.migraphe.api.common.TimeOrderedUuid;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.api.history.ExecutionStatus;
+import io.github.kakusuke.migraphe.api.history.HistoryPage;
+import io.github.kakusuke.migraphe.api.history.HistoryQuery;
+import io.github.kakusuke.migraphe.api.task.ExecutionDirection;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.wait.strategy.HostPortWaitStrategy;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+@Testcontainers
+class PostgreSQLHistoryIdTypeTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres =
+            new PostgreSQLContainer<>("postgres:16-alpine")
+                    .withDatabaseName("migraphe_test")
+                    .withUsername("test")
+                    .withPassword("test")
+                    .waitingFor(new HostPortWaitStrategy().forPorts(5432));
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Connection conn = createEnvironment(HistoryIdType.TEXT).createConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS migraphe_history");
+            stmt.execute("DROP TABLE IF EXISTS migraphe_down_task");
+        }
+    }
+
+    @Test
+    void shouldCreateUuidIdColumn() throws Exception {
+        // given
+        PostgreSQLEnvironment environment = createEnvironment(HistoryIdType.UUID);
+
+        // when
+        new PostgreSQLHistoryRepository(environment).initialize();
+
+        // then
+        assertThat(idColumnType(environment)).isEqualTo("uuid");
+    }
+
+    @Test
+    void shouldKeepExistingIdColumnType() throws Exception {
+        // given: TEXT でテーブルを作成済み
+        new PostgreSQLHistoryRepository(createEnvironment(HistoryIdType.TEXT)).initialize();
+        PostgreSQLEnvironment environment = createEnvironment(HistoryIdType.UUID);
+
+        // when
+        new PostgreSQLHistoryRepository(environment).initialize();
+
+        // then
+        assertThat(idColumnType(environment)).isEqualTo("text");
+    }
+
+    @Test
+    void shouldRecordAndPageWithUuidIdColumn() {
+        // given
+        PostgreSQLEnvironment environment = createEnvironment(HistoryIdType.UUID);
+        PostgreSQLHistoryRepository repository = new PostgreSQLHistoryRepository(environment);
+        repository.initialize();
+        NodeId nodeId = NodeId.of("V001");
+        for (int i = 0; i < 5; i++) {
+            repository.record(
+                    ExecutionRecord.upSuccess(nodeId, environment.id(), "Create", "DROP", i));
+        }
+
+        // when
+        HistoryQuery query = HistoryQuery.forEnvironment(environment.id());
+        HistoryPage first = repository.findPage(query, null, 3);
+        HistoryPage second = repository.findPage(query, first.next(), 3);
+
+        // then
+        assertThat(repository.wasExecuted(nodeId, environment.id())).isTrue();
+        assertThat(first.records()).hasSize(3);
+        assertThat(second.records()).hasSize(2);
+        assertThat(second.hasNext()).isFalse();
+        assertThat(repository.findLatestRecord(nodeId, environment.id()).durationMs())
+                .isEqualTo(4);
+    }
+
+    /**
+     * ランダムな UUIDv4 を TEXT 列に挿入する場合と、時刻順の UUID を uuid 列に挿入する場合とで、
+     * 挿入のスループットと主キーインデックスの大きさを比べる。
+     *
+     * <p>時間がかかるため、{@code -Dmigraphe.benchmark=true} を指定した場合だけ実行する。
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "migraphe.benchmark", matches = "true")
+    void benchmarkInsertThroughput() throws Exception {
+        int threads = 8;
+        int perThread = 5_000;
+
+        BenchmarkResult random =
+                runInsertBenchmark(
+                        HistoryIdType.TEXT, () -> UUID.randomUUID().toString(), threads, perThread);
+        tearDown();
+        BenchmarkResult ordered =
+                runInsertBenchmark(
+                        HistoryIdType.UUID, TimeOrderedUuid::nextString, threads, perThread);
+
+        System.out.printf("random v4 / TEXT : %s%n", random);
+        System.out.printf("ordered v7 / UUID: %s%n", ordered);
+        assertThat(ordered.records()).isEqualTo(random.records());
+    }
+
+    private BenchmarkResult runInsertBenchmark(
+            HistoryIdType idType, Supplier<String> idGenerator, int threads, int perThread)
+            throws Exception {
+        PostgreSQLEnvironment environment = createEnvironment(idType);
+        PostgreSQLHistoryRepository repository = new PostgreSQLHistoryRepository(environment);
+        repository.initialize();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                NodeId nodeId = NodeId.of("node-" + t);
+                futures.add(
+                        pool.submit(
+                                () -> {
+                                    for (int i = 0; i < perThread; i++) {
+                                        repository.record(
+                                                benchmarkRecord(
+                                                        idGenerator.get(), nodeId, environment, i));
+                                    }
+                                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs =
+                        stmt.executeQuery(
+                                "SELECT count(*), pg_relation_size('migraphe_history_pkey')"
+                                        + " FROM migraphe_history")) {
+            rs.next();
+            return new BenchmarkResult(rs.getLong(1), elapsedMs, rs.getLong(2));
+        }
+    }
+
+    private static ExecutionRecord benchmarkRecord(
+            String id, NodeId nodeId, PostgreSQLEnvironment environment, long durationMs) {
+        return new ExecutionRecord(
+                id,
+                nodeId,
+                environment.id(),
+                ExecutionDirection.UP,
+                ExecutionStatus.SUCCESS,
+                Instant.now(),
+                "bench",
+                null,
+                durationMs,
+                null);
+    }
+
+    private static String idColumnType(PostgreSQLEnvironment environment) throws Exception {
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs =
+                        stmt.executeQuery(
+                                "SELECT data_type FROM information_schema.columns"
+                                        + " WHERE table_name = 'migraphe_history'"
+                                        + " AND column_name = 'id'")) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    private static PostgreSQLEnvironment createEnvironment(HistoryIdType idType) {
+        return PostgreSQLEnvironment.create(
+                "test",
+                postgres.getJdbcUrl(),
+                postgres.getUsername(),
+                postgres.getPassword(),
+                idType);
+    }
+
+    private record BenchmarkResult(long records, long elapsedMs, long primaryKeyBytes) {
+
+        @Override
+        public String toString() {
+            long perSecond = elapsedMs > 0 ? records * 1000 / elapsedMs : records;
+            return String.format(
+                    "%d records in %d ms (%d records/s), pkey %d KB",
+                    records, elapsedMs, perSecond, primaryKeyBytes / 1024);
+        }
+    }
+}
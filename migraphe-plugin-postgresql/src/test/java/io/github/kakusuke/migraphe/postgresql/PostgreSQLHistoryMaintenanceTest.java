@@ -0,0 +1,216 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
+import io.github.kakusuke.migraphe.api.graph.NodeId;
+import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
+import io.github.kakusuke.migraphe.api.history.ExecutionStatus;
+import io.github.kakusuke.migraphe.api.task.ExecutionDirection;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.wait.strategy.HostPortWaitStrategy;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+@Testcontainers
+class PostgreSQLHistoryMaintenanceTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres =
+            new PostgreSQLContainer<>("postgres:16-alpine")
+                    .withDatabaseName("migraphe_test")
+                    .withUsername("test")
+                    .withPassword("test")
+                    .waitingFor(new HostPortWaitStrategy().forPorts(5432));
+
+    @TempDir Path tempDir;
+
+    private final NodeId node1 = NodeId.of("node-1");
+    private final NodeId node2 = NodeId.of("node-2");
+
+    private PostgreSQLEnvironment environment;
+    private PostgreSQLHistoryRepository historyRepo;
+
+    @BeforeEach
+    void setUp() {
+        environment =
+                PostgreSQLEnvironment.create(
+                        "test",
+                        postgres.getJdbcUrl(),
+                        postgres.getUsername(),
+                        postgres.getPassword());
+        historyRepo = new PostgreSQLHistoryRepository(environment);
+        historyRepo.initialize();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        // パーティション化でテーブル構造が変わるため、毎回作り直す
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS migraphe_history CASCADE");
+            stmt.execute("DROP TABLE IF EXISTS migraphe_down_task");
+        }
+    }
+
+    @Test
+    void shouldCompactKeepingLatestRecordsPerNode() {
+        // given
+        for (int i = 0; i < 5; i++) {
+            historyRepo.record(recordAt(node1, Instant.now().minusSeconds(100 - i)));
+        }
+        historyRepo.record(recordAt(node2, Instant.now()));
+
+        // when
+        long removed = historyRepo.compact(2);
+
+        // then
+        assertThat(removed).isEqualTo(3);
+        assertThat(historyRepo.allRecords(environment.id())).hasSize(3);
+        assertThat(historyRepo.executedNodes(environment.id()))
+                .containsExactlyInAnyOrder(node1, node2);
+    }
+
+    @Test
+    void shouldConvertToPartitionedTablePreservingRecords() {
+        // given
+        Instant twoMonthsAgo = Instant.now().minus(60, ChronoUnit.DAYS);
+        historyRepo.record(recordAt(node1, twoMonthsAgo));
+        historyRepo.record(recordAt(node2, Instant.now()));
+
+        // when
+        List<String> created = historyRepo.ensurePartitions(1);
+
+        // then
+        String suffix = YearMonth.now().plusMonths(1).format(DateTimeFormatter.ofPattern("yyyyMM"));
+        String nextMonth = "migraphe_history_p" + suffix;
+        assertThat(created).contains("migraphe_history_default", nextMonth);
+        assertThat(historyRepo.allRecords(environment.id())).hasSize(2);
+        assertThat(historyRepo.wasExecuted(node1, environment.id())).isTrue();
+
+        // 2回目は既存のパーティションを再作成しない
+        assertThat(historyRepo.ensurePartitions(1)).isEmpty();
+    }
+
+    @Test
+    void shouldArchiveOldRecordsButKeepLatestPerNode() {
+        // given
+        Instant old = Instant.now().minus(10, ChronoUnit.DAYS);
+        historyRepo.record(recordAt(node1, old.minusSeconds(10)));
+        historyRepo.record(recordAt(node1, old));
+        historyRepo.record(recordAt(node2, old));
+        historyRepo.record(recordAt(node1, Instant.now()));
+
+        // when
+        List<Path> files = historyRepo.archive(Instant.now().minus(1, ChronoUnit.DAYS), tempDir);
+
+        // then - node2 の唯一のレコードは最新なので残る
+        assertThat(files).hasSize(1);
+        assertThat(files.get(0)).exists();
+        assertThat(historyRepo.allRecords(environment.id())).hasSize(2);
+        assertThat(historyRepo.wasExecuted(node2, environment.id())).isTrue();
+    }
+
+    @Test
+    void shouldLeaveNoFilesWhenArchiveIsRolledBack() throws Exception {
+        // given: 2つの月パーティションの古いレコードと、2つ目の月のファイル名が既にある出力先
+        Instant now = Instant.now();
+        Instant older = now.minus(100, ChronoUnit.DAYS);
+        Instant old = now.minus(40, ChronoUnit.DAYS);
+        historyRepo.record(recordAt(node1, older));
+        historyRepo.record(recordAt(node1, old));
+        historyRepo.record(recordAt(node1, now));
+        historyRepo.ensurePartitions(0);
+
+        Instant before = now.minus(1, ChronoUnit.DAYS);
+        String suffix =
+                DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss")
+                        .format(LocalDateTime.ofInstant(before, ZoneId.systemDefault()));
+        String month =
+                DateTimeFormatter.ofPattern("yyyyMM")
+                        .format(LocalDateTime.ofInstant(old, ZoneId.systemDefault()));
+        Path blocker =
+                Files.createFile(
+                        tempDir.resolve(
+                                "migraphe_history_p" + month + "_before_" + suffix + ".csv.gz"));
+
+        // when
+        assertThatThrownBy(() -> historyRepo.archive(before, tempDir))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining("Failed to write history archive");
+
+        // then: 1つ目の月のファイルも残らず、レコードも削除されない
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertThat(files).containsExactly(blocker);
+        }
+        assertThat(historyRepo.allRecords(environment.id())).hasSize(3);
+    }
+
+    @Test
+    void shouldKeepArchivedDownTasksAfterCompaction() throws Exception {
+        // given: 古いレコードだけが参照する DOWN タスク
+        Instant old = Instant.now().minus(10, ChronoUnit.DAYS);
+        historyRepo.record(recordAt(node1, old, "DROP TABLE archived_only;"));
+        historyRepo.record(recordAt(node1, Instant.now()));
+
+        // when: アーカイブの後にコンパクションで参照されない DOWN タスクを削除する
+        List<Path> files = historyRepo.archive(Instant.now().minus(1, ChronoUnit.DAYS), tempDir);
+        historyRepo.compact(1);
+
+        // then: アーカイブから DOWN タスクの内容を読める
+        assertThat(files).hasSize(1);
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(files.get(0)))) {
+            String csv = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            assertThat(csv).contains("DROP TABLE archived_only;");
+        }
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT count(*) FROM migraphe_down_task")) {
+            rs.next();
+            assertThat(rs.getLong(1)).isZero();
+        }
+    }
+
+    private ExecutionRecord recordAt(NodeId nodeId, Instant executedAt) {
+        return recordAt(nodeId, executedAt, null);
+    }
+
+    private ExecutionRecord recordAt(
+            NodeId nodeId, Instant executedAt, @Nullable String serializedDownTask) {
+        EnvironmentId envId = environment.id();
+        return new ExecutionRecord(
+                UUID.randomUUID().toString(),
+                nodeId,
+                envId,
+                ExecutionDirection.UP,
+                ExecutionStatus.SUCCESS,
+                executedAt,
+                "Migration " + nodeId.value(),
+                serializedDownTask,
+                10,
+                null);
+    }
+}
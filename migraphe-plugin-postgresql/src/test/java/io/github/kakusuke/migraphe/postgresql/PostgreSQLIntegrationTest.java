@@ -1,22 +1,45 @@
 package io.github.kakusuke.migraphe.postgresql;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
 
 import io.github.kakusuke.migraphe.api.common.Result;
+import io.github.kakusuke.migraphe.api.environment.EnvironmentId;
 import io.github.kakusuke.migraphe.api.graph.NodeId;
 import io.github.kakusuke.migraphe.api.history.ExecutionRecord;
 import io.github.kakusuke.migraphe.api.history.ExecutionStatus;
+import io.github.kakusuke.migraphe.api.history.HistoryPage;
+import io.github.kakusuke.migraphe.api.history.HistoryQuery;
 import io.github.kakusuke.migraphe.api.history.HistoryRepository;
+import io.github.kakusuke.migraphe.api.history.NodeDurationStats;
 import io.github.kakusuke.migraphe.api.task.ExecutionDirection;
+import io.github.kakusuke.migraphe.api.task.ImpactFinding;
+import io.github.kakusuke.migraphe.api.task.ImpactOptions;
 import io.github.kakusuke.migraphe.api.task.Task;
+import io.github.kakusuke.migraphe.api.task.TaskExecutionContext;
 import io.github.kakusuke.migraphe.api.task.TaskResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.jspecify.annotations.Nullable;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.containers.wait.strategy.HostPortWaitStrategy;
 import org.testcontainers.junit.jupiter.Container;
@@ -36,6 +59,9 @@ class PostgreSQLIntegrationTest {
     private PostgreSQLEnvironment environment;
     private HistoryRepository historyRepo;
 
+    /** RecordingContext で開いたセッション（テストの終わりに閉じる）。 */
+    private final List<AutoCloseable> openedSessions = new ArrayList<>();
+
     @BeforeEach
     void setUp() {
         environment =
@@ -50,6 +76,11 @@ class PostgreSQLIntegrationTest {
 
     @AfterEach
     void tearDown() throws Exception {
+        for (AutoCloseable session : openedSessions) {
+            session.close();
+        }
+        openedSessions.clear();
+
         // Clean up database after each test
         try (Connection conn = environment.createConnection();
                 Statement stmt = conn.createStatement()) {
@@ -58,8 +89,14 @@ class PostgreSQLIntegrationTest {
             stmt.execute("DROP TABLE IF EXISTS users CASCADE");
             stmt.execute("DROP TABLE IF EXISTS autocommit_test CASCADE");
             stmt.execute("DROP TABLE IF EXISTS autocommit_down_test CASCADE");
+            stmt.execute("DROP FUNCTION IF EXISTS autocommit_label(INT)");
+            stmt.execute("DROP SCHEMA IF EXISTS app CASCADE");
             // Clear history
             stmt.execute("TRUNCATE TABLE migraphe_history");
+            stmt.execute("TRUNCATE TABLE migraphe_down_task");
+            stmt.execute("DROP TABLE IF EXISTS migraphe_node_lease");
+            stmt.execute("DROP TABLE IF EXISTS migraphe_graph_fingerprint");
+            stmt.execute("DROP TABLE IF EXISTS migraphe_backfill_checkpoint");
         }
     }
 
@@ -307,6 +344,165 @@ class PostgreSQLIntegrationTest {
         assertThat(allRecords.get(1).status()).isEqualTo(ExecutionStatus.SUCCESS);
     }
 
+    @Test
+    void shouldStoreDownTaskOncePerContent() throws Exception {
+        // given
+        historyRepo.initialize();
+
+        NodeId nodeId = NodeId.of("V001");
+        String downSql = "DROP TABLE users;";
+
+        // when - 同じ DOWN タスクで2回適用する
+        historyRepo.record(
+                ExecutionRecord.upSuccess(nodeId, environment.id(), "Create", downSql, 10));
+        historyRepo.record(
+                ExecutionRecord.upSuccess(nodeId, environment.id(), "Create", downSql, 10));
+
+        // then - 内容は1度だけ保存され、履歴レコードには含まれない
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT count(*) FROM migraphe_down_task")) {
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getInt(1)).isEqualTo(1);
+        }
+        ExecutionRecord latest = historyRepo.findLatestRecord(nodeId, environment.id());
+        assertThat(latest).isNotNull();
+        assertThat(latest.serializedDownTask()).isNull();
+        assertThat(historyRepo.findSerializedDownTask(nodeId, environment.id()))
+                .isEqualTo(downSql);
+    }
+
+    @Test
+    void shouldKeepDownTaskThroughExportAndImport() throws Exception {
+        // given - DOWN タスクは migraphe_down_task に保存され、履歴レコードにはハッシュだけが残る
+        historyRepo.initialize();
+        NodeId nodeId = NodeId.of("V001");
+        String downSql = "DROP TABLE users;";
+        historyRepo.record(
+                ExecutionRecord.upSuccess(nodeId, environment.id(), "Create", downSql, 10));
+
+        // when - エクスポートと同じく streamRecords で読み出し、空の履歴にインポートする
+        List<ExecutionRecord> exported;
+        try (Stream<ExecutionRecord> records =
+                historyRepo.streamRecords(HistoryQuery.forEnvironment(environment.id()))) {
+            exported = records.toList();
+        }
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("TRUNCATE TABLE migraphe_history");
+            stmt.execute("TRUNCATE TABLE migraphe_down_task");
+        }
+        PostgreSQLHistoryRepository repository = (PostgreSQLHistoryRepository) historyRepo;
+        long imported = repository.importRecords(exported.iterator());
+
+        // then
+        assertThat(exported)
+                .singleElement()
+                .extracting(ExecutionRecord::serializedDownTask)
+                .isEqualTo(downSql);
+        assertThat(imported).isEqualTo(1);
+        assertThat(historyRepo.findSerializedDownTask(nodeId, environment.id()))
+                .isEqualTo(downSql);
+    }
+
+    @Test
+    void shouldClaimEachNodeByOneRunnerOnly() throws Exception {
+        // given
+        historyRepo.initialize();
+        PostgreSQLHistoryRepository leases = (PostgreSQLHistoryRepository) historyRepo;
+        List<NodeId> nodes = List.of(NodeId.of("V001"), NodeId.of("V002"));
+        leases.registerNodes("run-1", nodes);
+
+        // when
+        NodeId first = leases.tryClaim("run-1", "runner-a", nodes, Duration.ofMinutes(1));
+        NodeId second = leases.tryClaim("run-1", "runner-b", nodes, Duration.ofMinutes(1));
+        NodeId third = leases.tryClaim("run-1", "runner-c", nodes, Duration.ofMinutes(1));
+
+        // then
+        assertThat(first).isNotNull();
+        assertThat(second).isNotNull().isNotEqualTo(first);
+        assertThat(third).isNull();
+        assertThat(leases.renew("run-1", "runner-b", first, Duration.ofMinutes(1))).isFalse();
+    }
+
+    @Test
+    void shouldReclaimExpiredLeaseAndTrackFailures() throws Exception {
+        // given
+        historyRepo.initialize();
+        PostgreSQLHistoryRepository leases = (PostgreSQLHistoryRepository) historyRepo;
+        List<NodeId> nodes = List.of(NodeId.of("V001"));
+        leases.registerNodes("run-1", nodes);
+        leases.tryClaim("run-1", "dead-runner", nodes, Duration.ofMillis(1));
+        Thread.sleep(50);
+
+        // when
+        NodeId reclaimed = leases.tryClaim("run-1", "runner-a", nodes, Duration.ofMinutes(1));
+        leases.fail("run-1", "runner-a", NodeId.of("V001"));
+
+        // then
+        assertThat(reclaimed).isEqualTo(NodeId.of("V001"));
+        assertThat(leases.hasFailures("run-1")).isTrue();
+        assertThat(leases.tryClaim("run-1", "runner-b", nodes, Duration.ofMinutes(1))).isNull();
+    }
+
+    @Test
+    void shouldStreamRecordsWithFilters() {
+        // given
+        historyRepo.initialize();
+
+        NodeId node1 = NodeId.of("V001");
+        NodeId node2 = NodeId.of("V002");
+        Instant base = Instant.parse("2024-01-01T00:00:00Z");
+        for (int i = 0; i < 10; i++) {
+            historyRepo.record(recordAt(i % 2 == 0 ? node1 : node2, base.plusSeconds(i)));
+        }
+
+        // when
+        HistoryQuery query =
+                HistoryQuery.forEnvironment(environment.id())
+                        .from(base.plusSeconds(2))
+                        .until(base.plusSeconds(8))
+                        .nodes(List.of(node1));
+        List<ExecutionRecord> records;
+        try (Stream<ExecutionRecord> stream = historyRepo.streamRecords(query)) {
+            records = stream.toList();
+        }
+
+        // then - 2, 4, 6 秒目の node1 のレコード
+        assertThat(records)
+                .extracting(ExecutionRecord::executedAt)
+                .containsExactly(base.plusSeconds(2), base.plusSeconds(4), base.plusSeconds(6));
+    }
+
+    @Test
+    void shouldPaginateRecordsWithKeyset() {
+        // given - 同じ実行日時のレコードも ID 順にページをまたいで読み出せる
+        historyRepo.initialize();
+
+        Instant executedAt = Instant.parse("2024-01-01T00:00:00Z");
+        for (int i = 0; i < 5; i++) {
+            historyRepo.record(recordAt(NodeId.of("V00" + i), executedAt));
+        }
+        HistoryQuery query = HistoryQuery.forEnvironment(environment.id());
+
+        // when
+        HistoryPage first = historyRepo.findPage(query, null, 2);
+        HistoryPage second = historyRepo.findPage(query, first.next(), 2);
+        HistoryPage last = historyRepo.findPage(query, second.next(), 2);
+
+        // then
+        assertThat(first.records()).hasSize(2);
+        assertThat(second.records()).hasSize(2);
+        assertThat(last.records()).hasSize(1);
+        assertThat(last.hasNext()).isFalse();
+        assertThat(
+                        Stream.of(first, second, last)
+                                .flatMap(page -> page.records().stream())
+                                .map(ExecutionRecord::id)
+                                .distinct())
+                .hasSize(5);
+    }
+
     @Test
     void shouldExecuteUpMigrationWithAutocommit() throws Exception {
         // given
@@ -341,6 +537,435 @@ class PostgreSQLIntegrationTest {
         }
     }
 
+    @Test
+    void shouldSplitAutocommitScriptWithFunctionBodyAndCopyData() throws Exception {
+        // given: 関数本体の中のセミコロン、改行のないセミコロン、COPY のデータ行を含むスクリプト
+        String upSql =
+                """
+                CREATE TABLE autocommit_test (id INT, label TEXT); CREATE FUNCTION
+                autocommit_label(n INT) RETURNS TEXT AS $$
+                BEGIN
+                    RETURN 'label;' || n;
+                END;
+                $$ LANGUAGE plpgsql;
+                COPY autocommit_test (id, label) FROM stdin;
+                1\tone
+                2\ttwo;
+                \\.
+                INSERT INTO autocommit_test SELECT 3, autocommit_label(3)""";
+        PostgreSQLMigrationNode node =
+                PostgreSQLMigrationNode.builder()
+                        .id("autocommit_script")
+                        .name("Autocommit script")
+                        .environment(environment)
+                        .upSql(upSql)
+                        .autocommit(true)
+                        .build();
+
+        // when
+        Result<TaskResult, String> result = node.upTask().execute();
+
+        // then
+        assertThat(result.isOk()).isTrue();
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs =
+                        stmt.executeQuery("SELECT label FROM autocommit_test ORDER BY id")) {
+            List<String> labels = new ArrayList<>();
+            while (rs.next()) {
+                labels.add(rs.getString(1));
+            }
+            assertThat(labels).containsExactly("one", "two;", "label;3");
+        }
+    }
+
+    @Test
+    void shouldBatchAutocommitDmlAndReportFailingStatement() throws Exception {
+        // given: 2件ずつのバッチ。 6番目のステートメントが主キー違反になる
+        String upSql =
+                """
+                CREATE TABLE autocommit_test (id INT PRIMARY KEY, label TEXT);
+                INSERT INTO autocommit_test VALUES (1, 'one');
+                INSERT INTO autocommit_test VALUES (2, 'two');
+                UPDATE autocommit_test SET label = 'uno' WHERE id = 1;
+                INSERT INTO autocommit_test VALUES (3, 'three');
+                INSERT INTO autocommit_test VALUES (1, 'duplicate');
+                INSERT INTO autocommit_test VALUES (4, 'four');
+                """;
+        PostgreSQLMigrationNode node =
+                PostgreSQLMigrationNode.builder()
+                        .id("batched")
+                        .name("Batched script")
+                        .environment(environment)
+                        .upSql(upSql)
+                        .autocommit(true)
+                        .batchSize(2)
+                        .build();
+
+        // when
+        Result<TaskResult, String> result = node.upTask().execute();
+
+        // then: 失敗したバッチ（6-7番目）だけが取り消され、それより前のバッチはコミットされている
+        assertThat(result.isErr()).isTrue();
+        assertThat(result.error()).contains("Statement 6 failed (batch of statements 6-7");
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs =
+                        stmt.executeQuery("SELECT label FROM autocommit_test ORDER BY id")) {
+            List<String> labels = new ArrayList<>();
+            while (rs.next()) {
+                labels.add(rs.getString(1));
+            }
+            assertThat(labels).containsExactly("uno", "two", "three");
+        }
+    }
+
+    @Test
+    void shouldStreamUpFileInTransaction(@TempDir Path dir) throws Exception {
+        // given: 関数本体と COPY のデータ行を含む SQL ファイル
+        Path upFile = dir.resolve("seed.sql");
+        Files.writeString(
+                upFile,
+                """
+                CREATE TABLE autocommit_test (id INT, label TEXT);
+                COPY autocommit_test (id, label) FROM stdin;
+                1\tone
+                2\ttwo
+                \\.
+                INSERT INTO autocommit_test VALUES (3, 'three');
+                """);
+        PostgreSQLMigrationNode node =
+                PostgreSQLMigrationNode.builder()
+                        .id("seed")
+                        .name("Seed from file")
+                        .environment(environment)
+                        .upSqlFile(upFile)
+                        .downSql("DROP TABLE autocommit_test;")
+                        .build();
+
+        // when
+        Result<TaskResult, String> result = node.upTask().execute();
+
+        // then
+        assertThat(result.isOk()).isTrue();
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT count(*) FROM autocommit_test")) {
+            rs.next();
+            assertThat(rs.getInt(1)).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void shouldRollBackWhenUpFileChangedAfterLoading(@TempDir Path dir) throws Exception {
+        // given: 読み込み後にファイルを書き換える
+        Path upFile = dir.resolve("create.sql");
+        Files.writeString(upFile, "CREATE TABLE autocommit_test (id INT);\n");
+        PostgreSQLMigrationNode node =
+                PostgreSQLMigrationNode.builder()
+                        .id("changed")
+                        .name("Changed file")
+                        .environment(environment)
+                        .upSqlFile(upFile)
+                        .build();
+        Files.writeString(upFile, "CREATE TABLE autocommit_test (id BIGINT);\n");
+
+        // when
+        Result<TaskResult, String> result = node.upTask().execute();
+
+        // then: チェックサムが合わないため、コミットせずに失敗する
+        assertThat(result.isOk()).isFalse();
+        assertThat(result.error()).contains("changed since it was loaded");
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs =
+                        stmt.executeQuery(
+                                "SELECT table_name FROM information_schema.tables "
+                                        + "WHERE table_name = 'autocommit_test'")) {
+            assertThat(rs.next()).isFalse();
+        }
+    }
+
+    @Test
+    void shouldCopyCsvFileAfterTruncatingTable(@TempDir Path dir) throws Exception {
+        // given: 既存の行があるテーブルと、ヘッダー付きの CSV
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE autocommit_test (id INT, label TEXT)");
+            stmt.execute("INSERT INTO autocommit_test VALUES (99, 'stale')");
+        }
+        Path csv = dir.resolve("labels.csv");
+        Files.writeString(csv, "id,label\n1,one\n2,\"two, quoted\"\n");
+        PostgreSQLMigrationNode node =
+                PostgreSQLMigrationNode.builder()
+                        .id("load")
+                        .name("Load labels")
+                        .environment(environment)
+                        .copy(
+                                CopyLoad.of(
+                                        "autocommit_test",
+                                        List.of("id", "label"),
+                                        CopyLoad.Format.CSV,
+                                        true,
+                                        true,
+                                        csv))
+                        .build();
+
+        // when
+        Result<TaskResult, String> result = node.upTask().execute();
+
+        // then: 行数が結果に含まれ、既存の行は消えている
+        assertThat(result.isOk()).isTrue();
+        assertThat(result.value().detail()).startsWith("2 rows copied into autocommit_test");
+        assertThat(result.value().message()).contains("2 rows copied");
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs =
+                        stmt.executeQuery("SELECT label FROM autocommit_test ORDER BY id")) {
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getString(1)).isEqualTo("one");
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getString(1)).isEqualTo("two, quoted");
+            assertThat(rs.next()).isFalse();
+        }
+    }
+
+    @Test
+    void shouldBuildIndexConcurrentlyAndDropItOnDown() throws Exception {
+        // given
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE autocommit_test (id INT, label TEXT)");
+            stmt.execute(
+                    "INSERT INTO autocommit_test SELECT n, 'label' || n"
+                            + " FROM generate_series(1, 10000) AS n");
+        }
+        PostgreSQLMigrationNode node =
+                PostgreSQLMigrationNode.builder()
+                        .id("index")
+                        .name("Index labels")
+                        .environment(environment)
+                        .createIndex(
+                                new CreateIndex(
+                                        "idx_autocommit_test_label",
+                                        "public.autocommit_test",
+                                        List.of("label"),
+                                        true,
+                                        null,
+                                        null))
+                        .progressInterval(Duration.ofMillis(10))
+                        .build();
+        RecordingContext context = new RecordingContext(historyRepo, node.id());
+
+        // when
+        Result<TaskResult, String> up = node.upTask().execute(context);
+
+        // then: 有効なインデックスができ、DOWN SQL はインデックスの削除になる
+        assertThat(up.isOk()).isTrue();
+        assertThat(up.value().detail()).startsWith("index idx_autocommit_test_label built");
+        assertThat(up.value().serializedDownTask())
+                .isEqualTo("DROP INDEX CONCURRENTLY IF EXISTS public.idx_autocommit_test_label;");
+        assertThat(indexValidity("idx_autocommit_test_label")).containsExactly(true);
+
+        // when
+        Result<TaskResult, String> down = Objects.requireNonNull(node.downTask()).execute();
+
+        // then
+        assertThat(down.isOk()).isTrue();
+        assertThat(indexValidity("idx_autocommit_test_label")).isEmpty();
+    }
+
+    @Test
+    void shouldDropInvalidIndexWhenConcurrentBuildFails() throws Exception {
+        // given: 一意インデックスを作れない重複した値
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE autocommit_test (id INT, label TEXT)");
+            stmt.execute("INSERT INTO autocommit_test VALUES (1, 'same'), (2, 'same')");
+        }
+        PostgreSQLMigrationNode node =
+                PostgreSQLMigrationNode.builder()
+                        .id("index")
+                        .name("Index labels")
+                        .environment(environment)
+                        .createIndex(
+                                new CreateIndex(
+                                        "idx_autocommit_test_label",
+                                        "autocommit_test",
+                                        List.of("label"),
+                                        true,
+                                        null,
+                                        null))
+                        .build();
+
+        // when
+        Result<TaskResult, String> failed = node.upTask().execute();
+
+        // then: INVALID なインデックスは残らない
+        assertThat(failed.isErr()).isTrue();
+        assertThat(failed.error()).contains("dropped INVALID index idx_autocommit_test_label");
+        assertThat(indexValidity("idx_autocommit_test_label")).isEmpty();
+
+        // when: 重複を解消して再実行する
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM autocommit_test WHERE id = 2");
+        }
+        Result<TaskResult, String> rerun = node.upTask().execute();
+
+        // then
+        assertThat(rerun.isOk()).isTrue();
+        assertThat(indexValidity("idx_autocommit_test_label")).containsExactly(true);
+    }
+
+    @Test
+    void shouldBackfillInBatchesAndResumeFromCheckpoint() throws Exception {
+        // given: id 17 の行で 0 除算になる
+        historyRepo.initialize();
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE autocommit_test (id INT PRIMARY KEY, v INT, doubled INT)");
+            stmt.execute(
+                    "INSERT INTO autocommit_test (id, v)"
+                            + " SELECT n, CASE WHEN n = 17 THEN 0 ELSE n END"
+                            + " FROM generate_series(1, 25) AS n");
+        }
+        PostgreSQLMigrationNode node =
+                PostgreSQLMigrationNode.builder()
+                        .id("backfill")
+                        .name("Backfill doubled")
+                        .environment(environment)
+                        .backfill(
+                                new Backfill(
+                                        "autocommit_test",
+                                        "id",
+                                        "UPDATE autocommit_test SET doubled = v * 2 + 0 / v"
+                                                + " WHERE id >= :start AND id < :end",
+                                        5,
+                                        Duration.ofMillis(1)))
+                        .build();
+
+        // when
+        RecordingContext failing = new RecordingContext(historyRepo, node.id());
+        Result<TaskResult, String> failed = node.upTask().execute(failing);
+
+        // then: 失敗した範囲より前の範囲はコミット済み
+        assertThat(failed.isErr()).isTrue();
+        assertThat(failed.error()).contains("Batch of keys 16-20 failed");
+        assertThat(failing.progressMessages)
+                .containsExactly(
+                        "batch 1: keys up to 5 of 25 (17%), 5 rows",
+                        "batch 2: keys up to 10 of 25 (38%), 10 rows",
+                        "batch 3: keys up to 15 of 25 (58%), 15 rows");
+        assertThat(countRows("SELECT count(*) FROM autocommit_test WHERE doubled IS NOT NULL"))
+                .isEqualTo(15);
+
+        // when: 値を直して再実行する
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("UPDATE autocommit_test SET v = 17 WHERE id = 17");
+        }
+        RecordingContext context = new RecordingContext(historyRepo, node.id());
+        Result<TaskResult, String> resumed = node.upTask().execute(context);
+
+        // then: チェックポイントの次のキーから再開し、成功記録と一緒にチェックポイントを消す
+        assertThat(resumed.isOk()).isTrue();
+        assertThat(resumed.value().detail())
+                .isEqualTo("10 rows in 2 batches (keys 1-25, resumed after key 15)");
+        assertThat(context.recorded).isTrue();
+        assertThat(Objects.requireNonNull(context.recordedResult).detail())
+                .isEqualTo(resumed.value().detail());
+        assertThat(countRows("SELECT count(*) FROM autocommit_test WHERE doubled = v * 2"))
+                .isEqualTo(25);
+        assertThat(countRows("SELECT count(*) FROM migraphe_backfill_checkpoint")).isZero();
+    }
+
+    @Test
+    void shouldFlagRewriteOfLargeTableInImpactAnalysis() throws Exception {
+        // given
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE autocommit_test (id INT, label TEXT)");
+            stmt.execute(
+                    "INSERT INTO autocommit_test SELECT n, 'label' || n"
+                            + " FROM generate_series(1, 1000) AS n");
+            stmt.execute("ANALYZE autocommit_test");
+        }
+        SqlSource up =
+                new SqlSource.Inline(
+                        """
+                        ALTER TABLE autocommit_test ALTER label TYPE varchar(20);
+                        CREATE INDEX idx_posts_title ON posts (title);
+                        UPDATE autocommit_test SET label = 'x';
+                        """);
+
+        // when: 大きさのしきい値を 1 バイトにして見積もる
+        List<ImpactFinding> findings = LockImpactAnalyzer.analyze(environment, up, 1);
+
+        // then: 既存のテーブルの書き直しだけが影響大、まだないテーブルは大きさなし、DML は対象外
+        assertThat(findings).hasSize(2);
+        assertThat(findings.get(0).highImpact()).isTrue();
+        assertThat(findings.get(0).message())
+                .startsWith("ACCESS EXCLUSIVE on autocommit_test, rewrites table (")
+                .contains("~1000 rows")
+                .endsWith("): ALTER TABLE autocommit_test ALTER label TYPE varchar(20)");
+        assertThat(findings.get(1))
+                .isEqualTo(
+                        ImpactFinding.of(
+                                "SHARE on posts, scans table (not yet created):"
+                                        + " CREATE INDEX idx_posts_title ON posts (title)"));
+    }
+
+    @Test
+    void shouldEstimateDmlWithExplainWithoutExecuting() throws Exception {
+        // given
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE autocommit_test (id INT, label TEXT)");
+            stmt.execute(
+                    "INSERT INTO autocommit_test SELECT n, 'label' || n"
+                            + " FROM generate_series(1, 1000) AS n");
+            stmt.execute("ANALYZE autocommit_test");
+        }
+        SqlSource up =
+                new SqlSource.Inline(
+                        """
+                        CREATE INDEX idx_autocommit_test_id ON autocommit_test (id);
+                        UPDATE autocommit_test SET label = 'x';
+                        DELETE FROM autocommit_test WHERE id = 1;
+                        INSERT INTO missing_table VALUES (1);
+                        """);
+
+        // when: 行数のしきい値を 100 にして見積もる
+        List<ImpactFinding> findings =
+                ExplainImpactAnalyzer.analyze(environment, up, ImpactOptions.explain(100, 1e9));
+
+        // then: DML ごとの見積もりと合計が返り、まだないテーブルへの DML は見積もれない
+        assertThat(findings).hasSize(4);
+        assertThat(findings.get(0).highImpact()).isTrue();
+        assertThat(findings.get(0).message())
+                .startsWith("~1000 rows, cost ")
+                .endsWith(
+                        ", seq scan on autocommit_test (rows over 100):"
+                                + " UPDATE autocommit_test SET label = 'x'");
+        assertThat(findings.get(1).highImpact()).isFalse();
+        assertThat(findings.get(1).message())
+                .startsWith("~1 rows, cost ")
+                .endsWith(": DELETE FROM autocommit_test WHERE id = 1");
+        assertThat(findings.get(2).highImpact()).isFalse();
+        assertThat(findings.get(2).message())
+                .startsWith("Could not explain (ERROR: relation \"missing_table\" does not exist")
+                .endsWith("): INSERT INTO missing_table VALUES (1)");
+        assertThat(findings.get(3).highImpact()).isTrue();
+        assertThat(findings.get(3).message())
+                .startsWith("Total of 2 DML statements: ~1001 rows, cost ")
+                .endsWith(" (rows over 100)");
+
+        // then: EXPLAIN はステートメントを実行しない
+        assertThat(countRows("SELECT count(*) FROM autocommit_test")).isEqualTo(1000);
+        assertThat(countRows("SELECT count(*) FROM autocommit_test WHERE label = 'x'")).isZero();
+    }
+
     @Test
     void shouldExecuteDownMigrationWithAutocommit() throws Exception {
         // given
@@ -376,4 +1001,762 @@ class PostgreSQLIntegrationTest {
             assertThat(rs.next()).isFalse();
         }
     }
+
+    @Test
+    void shouldRecordHistoryInMigrationTransactionWhenDatabaseIsShared() throws Exception {
+        // given: 履歴とマイグレーションが同じデータベース
+        historyRepo.initialize();
+        PostgreSQLMigrationNode node =
+                PostgreSQLMigrationNode.builder()
+                        .id("V001")
+                        .name("Create users table")
+                        .environment(environment)
+                        .upSql("CREATE TABLE users (id SERIAL PRIMARY KEY);")
+                        .downSql("DROP TABLE IF EXISTS users;")
+                        .build();
+        RecordingContext context = new RecordingContext(historyRepo, node.id());
+
+        // when
+        Result<TaskResult, String> result = node.upTask().execute(context);
+
+        // then: タスク側で記録され、DOWN タスクも保存されている
+        assertThat(result.isOk()).isTrue();
+        assertThat(context.recorded).isTrue();
+        assertThat(historyRepo.allRecords(environment.id())).hasSize(1);
+        assertThat(historyRepo.findSerializedDownTask(node.id(), environment.id()))
+                .isEqualTo("DROP TABLE IF EXISTS users;");
+    }
+
+    @Test
+    void shouldRecordSharedHistoryWhenMigrationChangesSearchPath() throws Exception {
+        // given: 履歴のテーブルがない schema に search_path を切り替えるマイグレーション
+        historyRepo.initialize();
+        PostgreSQLMigrationNode node =
+                PostgreSQLMigrationNode.builder()
+                        .id("V001")
+                        .name("Create users table in app schema")
+                        .environment(environment)
+                        .upSql(
+                                "CREATE SCHEMA app; SET search_path TO app;"
+                                        + " CREATE TABLE users (id SERIAL PRIMARY KEY);")
+                        .downSql("DROP SCHEMA IF EXISTS app CASCADE;")
+                        .build();
+        RecordingContext context = new RecordingContext(historyRepo, node.id());
+
+        // when
+        Result<TaskResult, String> result = node.upTask().execute(context);
+
+        // then: 履歴は接続時の search_path のテーブルに記録され、マイグレーションは app に適用されている
+        assertThat(result.isOk()).isTrue();
+        assertThat(context.recorded).isTrue();
+        assertThat(historyRepo.wasExecuted(node.id(), environment.id())).isTrue();
+        assertThat(historyRepo.findSerializedDownTask(node.id(), environment.id()))
+                .isEqualTo("DROP SCHEMA IF EXISTS app CASCADE;");
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT to_regclass('app.users') IS NOT NULL")) {
+            rs.next();
+            assertThat(rs.getBoolean(1)).isTrue();
+        }
+    }
+
+    @Test
+    void shouldNotRecordHistoryWhenSharedTransactionFails() {
+        // given
+        historyRepo.initialize();
+        PostgreSQLMigrationNode node =
+                PostgreSQLMigrationNode.builder()
+                        .id("V001")
+                        .name("Broken migration")
+                        .environment(environment)
+                        .upSql("CREATE TABLE users (id SERIAL PRIMARY KEY); SELECT * FROM missing;")
+                        .build();
+        RecordingContext context = new RecordingContext(historyRepo, node.id());
+
+        // when
+        Result<TaskResult, String> result = node.upTask().execute(context);
+
+        // then
+        assertThat(result.isErr()).isTrue();
+        assertThat(context.recorded).isFalse();
+        assertThat(historyRepo.allRecords(environment.id())).isEmpty();
+    }
+
+    @Test
+    void shouldLeaveHistoryToExecutorWhenDatabaseDiffers() {
+        // given: 別の接続先を指す履歴リポジトリ
+        historyRepo.initialize();
+        String jdbcUrl = postgres.getJdbcUrl();
+        PostgreSQLEnvironment otherEnvironment =
+                PostgreSQLEnvironment.create(
+                        "other",
+                        jdbcUrl + (jdbcUrl.contains("?") ? "&" : "?") + "ApplicationName=other",
+                        postgres.getUsername(),
+                        postgres.getPassword());
+        RecordingContext context =
+                new RecordingContext(
+                        new PostgreSQLHistoryRepository(otherEnvironment), NodeId.of("V001"));
+        PostgreSQLMigrationNode node =
+                PostgreSQLMigrationNode.builder()
+                        .id("V001")
+                        .name("Create users table")
+                        .environment(environment)
+                        .upSql("CREATE TABLE users (id SERIAL PRIMARY KEY);")
+                        .build();
+
+        // when
+        Result<TaskResult, String> result = node.upTask().execute(context);
+
+        // then
+        assertThat(result.isOk()).isTrue();
+        assertThat(context.recorded).isFalse();
+        assertThat(historyRepo.allRecords(environment.id())).isEmpty();
+    }
+
+    @Test
+    void shouldAggregateDurationStatsInDatabase() {
+        // given: 前半 (10ms, 30ms)、後半 (20ms, 40ms) と失敗1件
+        historyRepo.initialize();
+        NodeId nodeId = NodeId.of("V001");
+        Instant base = Instant.parse("2026-01-01T00:00:00Z");
+        long[][] runs = {{10, 10}, {30, 20}, {20, 60}, {40, 70}};
+        for (long[] run : runs) {
+            historyRepo.record(
+                    new ExecutionRecord(
+                            UUID.randomUUID().toString(),
+                            nodeId,
+                            environment.id(),
+                            ExecutionDirection.UP,
+                            ExecutionStatus.SUCCESS,
+                            base.plusSeconds(run[1]),
+                            "Migration",
+                            null,
+                            run[0],
+                            null));
+        }
+        historyRepo.record(
+                new ExecutionRecord(
+                        UUID.randomUUID().toString(),
+                        nodeId,
+                        environment.id(),
+                        ExecutionDirection.UP,
+                        ExecutionStatus.FAILURE,
+                        base.plusSeconds(80),
+                        "Migration",
+                        null,
+                        0,
+                        "boom"));
+        HistoryQuery query =
+                HistoryQuery.forEnvironment(environment.id())
+                        .from(base)
+                        .until(base.plusSeconds(100));
+
+        // when
+        List<NodeDurationStats> stats =
+                ((PostgreSQLHistoryRepository) historyRepo).durationStats(query);
+
+        // then
+        assertThat(stats).hasSize(1);
+        NodeDurationStats s = stats.get(0);
+        assertThat(s.count()).isEqualTo(5);
+        assertThat(s.failureCount()).isEqualTo(1);
+        assertThat(s.p50Ms()).isEqualTo(25.0);
+        assertThat(s.p95Ms()).isCloseTo(38.5, within(1e-9));
+        assertThat(s.maxMs()).isEqualTo(40);
+        assertThat(s.trend()).isCloseTo(0.5, within(1e-9));
+    }
+
+    @Test
+    void shouldBulkImportRecordsWithCopy() throws Exception {
+        // given: CSV で引用が必要な値と、同じ内容の DOWN タスクを含むレコード
+        historyRepo.initialize();
+        Instant base = Instant.parse("2026-01-01T00:00:00.123456Z");
+        List<ExecutionRecord> records =
+                List.of(
+                        new ExecutionRecord(
+                                UUID.randomUUID().toString(),
+                                NodeId.of("V001"),
+                                environment.id(),
+                                ExecutionDirection.UP,
+                                ExecutionStatus.SUCCESS,
+                                base,
+                                "Create \"users\", posts\nand more",
+                                "DROP TABLE users;",
+                                10,
+                                null),
+                        new ExecutionRecord(
+                                UUID.randomUUID().toString(),
+                                NodeId.of("V002"),
+                                environment.id(),
+                                ExecutionDirection.UP,
+                                ExecutionStatus.FAILURE,
+                                base.plusSeconds(1),
+                                "",
+                                "DROP TABLE users;",
+                                20,
+                                ""));
+        PostgreSQLHistoryRepository repository = (PostgreSQLHistoryRepository) historyRepo;
+
+        // when
+        long first = repository.importRecords(records.iterator());
+        long second = repository.importRecords(records.iterator());
+
+        // then - 2回目は既にあるIDとして読み飛ばされる
+        assertThat(first).isEqualTo(2);
+        assertThat(second).isZero();
+        assertThat(historyRepo.allRecords(environment.id()))
+                .containsExactlyInAnyOrderElementsOf(records);
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT count(*) FROM migraphe_down_task")) {
+            rs.next();
+            assertThat(rs.getLong(1)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void shouldReuseSessionAcrossTasksAndResetState() throws Exception {
+        // given: 同じコンテキスト（= 同じ実行）で続けて実行する2つのタスク
+        historyRepo.initialize();
+        RecordingContext context = new RecordingContext(historyRepo, NodeId.of("V001"));
+        PostgreSQLMigrationNode first =
+                PostgreSQLMigrationNode.builder()
+                        .id("V001")
+                        .name("Change session state")
+                        .environment(environment)
+                        .upSql(
+                                """
+                                CREATE SCHEMA session_other;
+                                CREATE TABLE public.session_pids AS SELECT pg_backend_pid() AS pid;
+                                SET search_path TO session_other;
+                                """)
+                        .build();
+        PostgreSQLMigrationNode second =
+                PostgreSQLMigrationNode.builder()
+                        .id("V002")
+                        .name("Use default session state")
+                        .environment(environment)
+                        .upSql(
+                                """
+                                CREATE TABLE session_check (id INT);
+                                INSERT INTO public.session_pids SELECT pg_backend_pid();
+                                """)
+                        .build();
+
+        // when
+        Result<TaskResult, String> firstResult = first.upTask().execute(context);
+        Result<TaskResult, String> secondResult = second.upTask().execute(context);
+
+        // then - 同じ接続を使い、search_path は元に戻っている
+        assertThat(firstResult.isOk()).isTrue();
+        assertThat(secondResult.isOk()).isTrue();
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement()) {
+            try (ResultSet rs =
+                    stmt.executeQuery("SELECT count(DISTINCT pid) FROM public.session_pids")) {
+                rs.next();
+                assertThat(rs.getInt(1)).isEqualTo(1);
+            }
+            try (ResultSet rs =
+                    stmt.executeQuery(
+                            "SELECT table_schema FROM information_schema.tables"
+                                    + " WHERE table_name = 'session_check'")) {
+                rs.next();
+                assertThat(rs.getString(1)).isEqualTo("public");
+            }
+            stmt.execute("DROP TABLE public.session_check");
+            stmt.execute("DROP TABLE public.session_pids");
+            stmt.execute("DROP SCHEMA session_other");
+        }
+    }
+
+    @Test
+    void shouldApplySessionProfileAndResetItBeforeReuse() throws Exception {
+        // given: ターゲットの設定と、それを上書きするタスクの設定
+        historyRepo.initialize();
+        PostgreSQLEnvironment tuned =
+                PostgreSQLEnvironment.create(
+                        "test",
+                        postgres.getJdbcUrl(),
+                        postgres.getUsername(),
+                        postgres.getPassword(),
+                        HistoryIdType.TEXT,
+                        Map.of("work_mem", "64MB", "application_name", "migraphe_tuned"));
+        RecordingContext context = new RecordingContext(historyRepo, NodeId.of("V001"));
+        PostgreSQLMigrationNode overriding =
+                PostgreSQLMigrationNode.builder()
+                        .id("V001")
+                        .name("Override work_mem")
+                        .environment(tuned)
+                        .sessionSettings(Map.of("work_mem", "128MB"))
+                        .upSql(
+                                """
+                                CREATE TABLE users AS SELECT 1 AS id,
+                                    current_setting('work_mem') AS work_mem,
+                                    current_setting('application_name') AS app;
+                                """)
+                        .build();
+        PostgreSQLMigrationNode plain =
+                PostgreSQLMigrationNode.builder()
+                        .id("V002")
+                        .name("Use target settings")
+                        .environment(tuned)
+                        .upSql(
+                                """
+                                INSERT INTO users SELECT 2,
+                                    current_setting('work_mem'),
+                                    current_setting('application_name');
+                                """)
+                        .build();
+
+        // when
+        Result<TaskResult, String> firstResult = overriding.upTask().execute(context);
+        Result<TaskResult, String> secondResult = plain.upTask().execute(context);
+
+        // then: タスクの設定は次のタスクに渡す前に戻り、ターゲットの設定がかかり直す
+        assertThat(firstResult.isOk()).isTrue();
+        assertThat(secondResult.isOk()).isTrue();
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT work_mem, app FROM users ORDER BY id")) {
+            rs.next();
+            assertThat(rs.getString(1)).isEqualTo("128MB");
+            assertThat(rs.getString(2)).isEqualTo("migraphe_tuned");
+            rs.next();
+            assertThat(rs.getString(1)).isEqualTo("64MB");
+            assertThat(rs.getString(2)).isEqualTo("migraphe_tuned");
+        }
+    }
+
+    @Test
+    void shouldFailTaskWithUnknownSessionSetting() {
+        // given
+        PostgreSQLMigrationNode node =
+                PostgreSQLMigrationNode.builder()
+                        .id("V001")
+                        .name("Unknown setting")
+                        .environment(environment)
+                        .sessionSettings(Map.of("no_such_setting", "1"))
+                        .upSql("CREATE TABLE users (id INT)")
+                        .build();
+
+        // when
+        Result<TaskResult, String> result = node.upTask().execute();
+
+        // then
+        assertThat(result.isErr()).isTrue();
+        assertThat(result.error()).contains("Failed to apply session setting no_such_setting");
+    }
+
+    @Test
+    void shouldRunGroupedTasksInOneTransactionAndRollBackFailedTaskToSavepoint()
+            throws Exception {
+        // given: 実行側がトランザクションをまとめている
+        historyRepo.initialize();
+        RecordingContext context = new RecordingContext(historyRepo, NodeId.of("V001"));
+        context.inTransactionGroup = true;
+        PostgreSQLUpTask first =
+                PostgreSQLUpTask.create(
+                        environment,
+                        "CREATE TABLE users (id INT); INSERT INTO users VALUES (1);",
+                        null,
+                        false);
+        PostgreSQLUpTask second =
+                PostgreSQLUpTask.create(
+                        environment,
+                        "INSERT INTO users VALUES (2); INSERT INTO missing_table VALUES (1);",
+                        null,
+                        false);
+
+        // when
+        Result<TaskResult, String> firstResult = first.execute(context);
+        Result<TaskResult, String> secondResult = second.execute(context);
+
+        // then: コミットするまで他の接続からは見えない
+        assertThat(firstResult.isOk()).isTrue();
+        assertThat(secondResult.isErr()).isTrue();
+        assertThat(countRows("SELECT count(*) FROM pg_class WHERE relname = 'users'")).isZero();
+
+        // when
+        first.commitTransactionGroup(context);
+
+        // then: 失敗したタスクはセーブポイントまで戻り、前のタスクと成功記録はコミットされる
+        assertThat(countRows("SELECT count(*) FROM users")).isEqualTo(1);
+        assertThat(context.recorded).isTrue();
+        assertThat(historyRepo.wasExecuted(NodeId.of("V001"), environment.id())).isTrue();
+    }
+
+    @Test
+    void shouldNotGroupAutocommitTasks() {
+        // when & then
+        assertThat(PostgreSQLUpTask.create(environment, "SELECT 1", null, true))
+                .extracting(PostgreSQLUpTask::transactionGroupKey)
+                .isNull();
+        assertThat(PostgreSQLUpTask.create(environment, "SELECT 1", null, false))
+                .extracting(PostgreSQLUpTask::transactionGroupKey)
+                .isEqualTo(PostgreSQLSession.key(environment));
+    }
+
+    @Test
+    void shouldSaveAndFindGraphFingerprints() {
+        // given
+        historyRepo.initialize();
+        PostgreSQLHistoryRepository repository = (PostgreSQLHistoryRepository) historyRepo;
+        EnvironmentId other = EnvironmentId.of("other");
+
+        // when
+        repository.saveFingerprints(Map.of(environment.id(), "fp-1", other, "fp-2"));
+        repository.saveFingerprints(Map.of(environment.id(), "fp-3"));
+
+        // then
+        assertThat(repository.findFingerprints(List.of(environment.id(), other)))
+                .containsExactlyInAnyOrderEntriesOf(
+                        Map.of(environment.id(), "fp-3", other, "fp-2"));
+        assertThat(repository.findFingerprints(List.of(EnvironmentId.of("unknown")))).isEmpty();
+    }
+
+    @Test
+    void shouldReturnNoFingerprintsBeforeSchemaExists() throws Exception {
+        // given: 古いバージョンで作成された履歴（フィンガープリントのテーブルがない）
+        historyRepo.initialize();
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE migraphe_graph_fingerprint");
+        }
+        PostgreSQLHistoryRepository repository = (PostgreSQLHistoryRepository) historyRepo;
+
+        // when & then
+        assertThat(repository.findFingerprints(List.of(environment.id()))).isEmpty();
+    }
+
+    @Test
+    void shouldClearFingerprintWhenDownIsRecorded() {
+        // given
+        historyRepo.initialize();
+        PostgreSQLHistoryRepository repository = (PostgreSQLHistoryRepository) historyRepo;
+        NodeId nodeId = NodeId.of("V001");
+        historyRepo.record(
+                ExecutionRecord.upSuccess(nodeId, environment.id(), "Create", "DROP", 1));
+        repository.saveFingerprints(Map.of(environment.id(), "fp-1"));
+
+        // when
+        historyRepo.record(ExecutionRecord.downSuccess(nodeId, environment.id(), "Drop", 1));
+
+        // then
+        assertThat(repository.findFingerprints(List.of(environment.id()))).isEmpty();
+    }
+
+    @Test
+    void shouldCaptureSchemaAndRecreateItInEmptyDatabase() throws Exception {
+        // given: 型、シーケンス、外部キー、インデックス、ビュー、コメントを含むスキーマ
+        historyRepo.initialize();
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TYPE user_status AS ENUM ('active', 'banned')");
+            stmt.execute(
+                    "CREATE TABLE users (id SERIAL PRIMARY KEY, email TEXT NOT NULL UNIQUE,"
+                            + " status user_status NOT NULL DEFAULT 'active')");
+            stmt.execute(
+                    "CREATE TABLE posts (id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,"
+                            + " user_id INT NOT NULL REFERENCES users(id) ON DELETE CASCADE,"
+                            + " title TEXT CHECK (length(title) > 0))");
+            stmt.execute("CREATE INDEX idx_posts_user ON posts (user_id)");
+            stmt.execute(
+                    "CREATE VIEW active_users AS SELECT * FROM users WHERE status = 'active'");
+            stmt.execute("COMMENT ON TABLE users IS 'アプリのユーザー'");
+        }
+        String freshUrl = postgres.getJdbcUrl().replace("/migraphe_test", "/migraphe_baseline");
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE DATABASE migraphe_baseline");
+        }
+
+        try {
+            PostgreSQLEnvironment fresh =
+                    PostgreSQLEnvironment.create(
+                            "fresh", freshUrl, postgres.getUsername(), postgres.getPassword());
+            new PostgreSQLHistoryRepository(fresh).initialize();
+            String schema = environment.captureSchema();
+
+            // when
+            boolean emptyBefore = fresh.isSchemaEmpty();
+            fresh.applySchema(schema);
+
+            // then: 同じスキーマになり、制約も効いている
+            assertThat(emptyBefore).isTrue();
+            assertThat(environment.isSchemaEmpty()).isFalse();
+            assertThat(fresh.captureSchema()).isEqualTo(schema);
+            assertThat(schema).doesNotContain("migraphe_history");
+            try (Connection conn = fresh.createConnection();
+                    Statement stmt = conn.createStatement()) {
+                stmt.execute("INSERT INTO users (email) VALUES ('a@example.com')");
+                stmt.execute("INSERT INTO posts (user_id, title) VALUES (1, 'hello')");
+                assertThatThrownBy(
+                                () ->
+                                        stmt.execute(
+                                                "INSERT INTO posts (user_id, title)"
+                                                        + " VALUES (2, 'x')"))
+                        .isInstanceOf(SQLException.class);
+            }
+        } finally {
+            try (Connection conn = environment.createConnection();
+                    Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP DATABASE IF EXISTS migraphe_baseline WITH (FORCE)");
+                stmt.execute("DROP VIEW IF EXISTS active_users");
+                stmt.execute("DROP TABLE IF EXISTS posts, users");
+                stmt.execute("DROP TYPE IF EXISTS user_status");
+            }
+        }
+    }
+
+    @Test
+    void shouldRefuseToCaptureSchemaWithObjectsItCannotReproduce() throws Exception {
+        // given: 行セキュリティのポリシーとルールを持つテーブル
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE users (id INT PRIMARY KEY, owner TEXT)");
+            stmt.execute("ALTER TABLE users ENABLE ROW LEVEL SECURITY");
+            stmt.execute("CREATE POLICY own_rows ON users USING (owner = current_user)");
+            stmt.execute("CREATE RULE no_delete AS ON DELETE TO users DO INSTEAD NOTHING");
+        }
+
+        try {
+            // when & then: 一部だけのスキーマを返さない
+            assertThatThrownBy(() -> environment.captureSchema())
+                    .isInstanceOf(PostgreSQLException.class)
+                    .hasMessageContaining("cannot reproduce")
+                    .hasMessageContaining("row level security policy own_rows on users")
+                    .hasMessageContaining("row level security on users")
+                    .hasMessageContaining("rule no_delete on users");
+        } finally {
+            try (Connection conn = environment.createConnection();
+                    Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP TABLE IF EXISTS users");
+            }
+        }
+    }
+
+    @Test
+    void shouldLeaveTargetUntouchedWhenSchemaFailsToApply() throws Exception {
+        // given
+        String schema =
+                "CREATE TABLE users (id INT PRIMARY KEY);\n"
+                        + "CREATE TABLE posts (user_id INT REFERENCES missing(id));\n";
+
+        // when & then: 全体が1つのトランザクションで適用される
+        assertThatThrownBy(() -> environment.applySchema(schema))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining("Failed to apply schema to target test");
+        assertThat(countRows("SELECT count(*) FROM pg_class WHERE relname = 'users'")).isZero();
+    }
+
+    @Test
+    void shouldCloneDatabaseWithHistoryAndDropClones() throws Exception {
+        // given: テンプレートのスキーマと、テンプレートの外にある履歴
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE users (id INT PRIMARY KEY)");
+        }
+        NodeId nodeId = NodeId.of("V001");
+        List<ExecutionRecord> history =
+                List.of(
+                        ExecutionRecord.upSuccess(
+                                nodeId, environment.id(), "Create users", "DROP TABLE users", 5));
+
+        try {
+            // when
+            String url = environment.createClone("shard_1", history::stream);
+            environment.createClone("shard_2", history::stream);
+            // 作り直しても履歴は重複しない
+            environment.createClone("shard_1", history::stream);
+
+            // then
+            assertThat(url).isEqualTo(postgres.getJdbcUrl().replace("/migraphe_test", "/shard_1"));
+            assertThat(environment.clones()).containsExactly("shard_1", "shard_2");
+            PostgreSQLEnvironment clone =
+                    PostgreSQLEnvironment.create(
+                            "test", url, postgres.getUsername(), postgres.getPassword());
+            PostgreSQLHistoryRepository cloneHistory = new PostgreSQLHistoryRepository(clone);
+            assertThat(cloneHistory.executedNodes(environment.id())).containsExactly(nodeId);
+            assertThat(cloneHistory.allRecords(environment.id())).hasSize(1);
+            try (Connection conn = clone.createConnection();
+                    Statement stmt = conn.createStatement()) {
+                stmt.execute("INSERT INTO users VALUES (1)");
+            }
+            assertThat(countRows("SELECT count(*) FROM users")).isZero();
+            assertThatThrownBy(() -> environment.dropClone("postgres"))
+                    .isInstanceOf(PostgreSQLException.class)
+                    .hasMessageContaining("is not a clone of migraphe_test");
+        } finally {
+            for (String name : environment.clones()) {
+                environment.dropClone(name);
+            }
+        }
+        assertThat(environment.clones()).isEmpty();
+    }
+
+    @Test
+    void shouldCloneDatabaseWhoseHistoryLivesInTemplate() throws Exception {
+        // given: 履歴がテンプレートのデータベースにある
+        historyRepo.initialize();
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE users (id INT PRIMARY KEY)");
+        }
+        NodeId nodeId = NodeId.of("V001");
+        historyRepo.record(
+                ExecutionRecord.upSuccess(
+                        nodeId, environment.id(), "Create users", "DROP TABLE users", 5));
+
+        try {
+            // when: 履歴の読み出しはテンプレートへの接続を開く
+            String url =
+                    environment.createClone(
+                            "shard_1",
+                            () ->
+                                    historyRepo.streamRecords(
+                                            HistoryQuery.forEnvironment(environment.id())));
+
+            // then
+            PostgreSQLEnvironment clone =
+                    PostgreSQLEnvironment.create(
+                            "test", url, postgres.getUsername(), postgres.getPassword());
+            PostgreSQLHistoryRepository cloneHistory = new PostgreSQLHistoryRepository(clone);
+            assertThat(cloneHistory.executedNodes(environment.id())).containsExactly(nodeId);
+            assertThat(cloneHistory.allRecords(environment.id())).hasSize(1);
+        } finally {
+            for (String name : environment.clones()) {
+                environment.dropClone(name);
+            }
+        }
+    }
+
+    @Test
+    void shouldReadReplicationLagWithDefaultAndCustomQuery() {
+        // given: レプリカのないコンテナと、固定の遅延を返すクエリ
+        PostgreSQLEnvironment custom =
+                PostgreSQLEnvironment.create(
+                        "test",
+                        postgres.getJdbcUrl(),
+                        postgres.getUsername(),
+                        postgres.getPassword(),
+                        HistoryIdType.TEXT,
+                        Map.of(),
+                        "SELECT 42.5");
+        PostgreSQLEnvironment broken =
+                PostgreSQLEnvironment.create(
+                        "test",
+                        postgres.getJdbcUrl(),
+                        postgres.getUsername(),
+                        postgres.getPassword(),
+                        HistoryIdType.TEXT,
+                        Map.of(),
+                        "SELECT lag FROM missing_lag_table");
+
+        // when & then
+        assertThat(environment.replicationLag()).isEqualTo(Duration.ZERO);
+        assertThat(custom.replicationLag()).isEqualTo(Duration.ofMillis(42500));
+        assertThatThrownBy(broken::replicationLag)
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining("Failed to read replication lag of target test");
+    }
+
+    private long countRows(String sql) throws Exception {
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /** インデックスが存在すれば indisvalid の値を返す。 */
+    private List<Boolean> indexValidity(String indexName) throws Exception {
+        List<Boolean> validity = new ArrayList<>();
+        try (Connection conn = environment.createConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs =
+                        stmt.executeQuery(
+                                "SELECT i.indisvalid FROM pg_index i"
+                                        + " JOIN pg_class c ON c.oid = i.indexrelid"
+                                        + " WHERE c.relname = '"
+                                        + indexName
+                                        + "'")) {
+            while (rs.next()) {
+                validity.add(rs.getBoolean(1));
+            }
+        }
+        return validity;
+    }
+
+    private ExecutionRecord recordAt(NodeId nodeId, Instant executedAt) {
+        return new ExecutionRecord(
+                UUID.randomUUID().toString(),
+                nodeId,
+                environment.id(),
+                ExecutionDirection.UP,
+                ExecutionStatus.SUCCESS,
+                executedAt,
+                "Migration " + nodeId.value(),
+                null,
+                10,
+                null);
+    }
+
+    /** 成功記録をタスク側で記録したかどうかを覚えておく TaskExecutionContext。 */
+    private final class RecordingContext implements TaskExecutionContext {
+
+        private final HistoryRepository repository;
+        private final NodeId nodeId;
+        private final Map<String, AutoCloseable> sessions = new HashMap<>();
+        private final List<String> progressMessages = new ArrayList<>();
+        private boolean recorded;
+        private boolean inTransactionGroup;
+        private @Nullable TaskResult recordedResult;
+
+        RecordingContext(HistoryRepository repository, NodeId nodeId) {
+            this.repository = repository;
+            this.nodeId = nodeId;
+        }
+
+        @Override
+        public HistoryRepository historyRepository() {
+            return repository;
+        }
+
+        @Override
+        public ExecutionRecord successRecord(TaskResult result, long durationMs) {
+            recordedResult = result;
+            return ExecutionRecord.upSuccess(
+                    nodeId, environment.id(), "test", result.serializedDownTask(), durationMs);
+        }
+
+        @Override
+        public void markRecorded() {
+            recorded = true;
+        }
+
+        @Override
+        public void progress(String message) {
+            progressMessages.add(message);
+        }
+
+        @Override
+        public boolean inTransactionGroup() {
+            return inTransactionGroup;
+        }
+
+        @Override
+        public <S extends AutoCloseable> S session(
+                String key, Class<S> type, Supplier<? extends S> opener) {
+            return type.cast(
+                    sessions.computeIfAbsent(
+                            key,
+                            k -> {
+                                S session = opener.get();
+                                openedSessions.add(session);
+                                return session;
+                            }));
+        }
+    }
 }
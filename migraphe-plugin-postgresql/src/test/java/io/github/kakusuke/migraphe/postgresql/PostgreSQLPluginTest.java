@@ -10,15 +10,23 @@ import io.github.kakusuke.migraphe.api.history.HistoryRepository;
 import io.github.kakusuke.migraphe.api.spi.EnvironmentDefinition;
 import io.github.kakusuke.migraphe.api.spi.MigraphePlugin;
 import io.github.kakusuke.migraphe.api.spi.TaskDefinition;
+import io.smallrye.config.PropertiesConfigSource;
 import io.smallrye.config.SmallRyeConfig;
 import io.smallrye.config.SmallRyeConfigBuilder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.Set;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class PostgreSQLPluginTest {
 
+    @TempDir Path tempDir;
+
     @Test
     @SuppressWarnings("rawtypes")
     void shouldBeDiscoverableViaServiceLoader() {
@@ -172,6 +180,179 @@ class PostgreSQLPluginTest {
         assertThat(node.description()).isEqualTo("Initial schema");
     }
 
+    @Test
+    void migrationNodeProviderShouldResolveSqlFilesAgainstTaskDirectory() throws Exception {
+        // given
+        var provider = new PostgreSQLMigrationNodeProvider();
+        var env =
+                PostgreSQLEnvironment.create(
+                        "test", "jdbc:postgresql://localhost:5432/test", "user", "pass");
+        Files.createDirectories(tempDir.resolve("sql"));
+        Files.writeString(tempDir.resolve("sql/seed.sql"), "INSERT INTO t VALUES (1);");
+        Files.writeString(tempDir.resolve("sql/unseed.sql"), "DELETE FROM t;");
+        SqlTaskDefinition task =
+                createTaskDefinition(
+                        Map.of(
+                                "name", "Seed",
+                                "target", "test",
+                                "up_file", "sql/seed.sql",
+                                "down_file", "sql/unseed.sql",
+                                TaskDefinition.TASK_DIR, tempDir.toString()));
+
+        // when
+        MigrationNode node = provider.createNode(NodeId.of("V001"), task, Set.of(), env);
+
+        // then: 内容は保持せず、ファイルのパスを示す
+        assertThat(((PostgreSQLUpTask) node.upTask()).upSql())
+                .contains(tempDir.resolve("sql/seed.sql").toString());
+        assertThat(node.downTask()).isNotNull();
+    }
+
+    @Test
+    void migrationNodeProviderShouldRequireExactlyOneUpSource() {
+        // given
+        var provider = new PostgreSQLMigrationNodeProvider();
+        var env =
+                PostgreSQLEnvironment.create(
+                        "test", "jdbc:postgresql://localhost:5432/test", "user", "pass");
+        SqlTaskDefinition neither = createTaskDefinition("Seed", null, "test", null, null);
+        SqlTaskDefinition both =
+                createTaskDefinition(
+                        Map.of(
+                                "name", "Seed",
+                                "target", "test",
+                                "up", "SELECT 1;",
+                                "up_file", "seed.sql"));
+        // up の値に関係なく、up と up_file の両方の指定になる
+        SqlTaskDefinition commentAndFile =
+                createTaskDefinition(
+                        Map.of(
+                                "name", "Seed",
+                                "target", "test",
+                                "up", "-- up_file",
+                                "up_file", "seed.sql"));
+
+        // when & then
+        assertThatThrownBy(() -> provider.createNode(NodeId.of("V001"), neither, Set.of(), env))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining("must specify one of up, up_file, copy, index and backfill");
+        assertThatThrownBy(() -> provider.createNode(NodeId.of("V001"), both, Set.of(), env))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining(
+                        "must specify only one of up, up_file, copy, index and backfill");
+        assertThatThrownBy(
+                        () -> provider.createNode(NodeId.of("V001"), commentAndFile, Set.of(), env))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining(
+                        "must specify only one of up, up_file, copy, index and backfill");
+    }
+
+    @Test
+    void migrationNodeProviderShouldRejectNonPositiveBatchSize() {
+        // given
+        var provider = new PostgreSQLMigrationNodeProvider();
+        var env =
+                PostgreSQLEnvironment.create(
+                        "test", "jdbc:postgresql://localhost:5432/test", "user", "pass");
+        SqlTaskDefinition task =
+                createTaskDefinition(
+                        Map.of(
+                                "name", "Seed",
+                                "target", "test",
+                                "up", "INSERT INTO t VALUES (1);",
+                                "batch_size", "0"));
+
+        // when & then
+        assertThatThrownBy(() -> provider.createNode(NodeId.of("V001"), task, Set.of(), env))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining("batch_size must be positive");
+    }
+
+    @Test
+    void migrationNodeProviderShouldCreateCopyNode() throws Exception {
+        // given
+        var provider = new PostgreSQLMigrationNodeProvider();
+        var env =
+                PostgreSQLEnvironment.create(
+                        "test", "jdbc:postgresql://localhost:5432/test", "user", "pass");
+        Files.writeString(tempDir.resolve("products.csv"), "id,name\n1,apple\n");
+        SqlTaskDefinition task =
+                createTaskDefinition(
+                        Map.of(
+                                "name", "Load products",
+                                "target", "test",
+                                "copy.table", "public.products",
+                                "copy.file", "products.csv",
+                                "copy.columns", "id,name",
+                                "copy.header", "true",
+                                "copy.truncate", "true",
+                                TaskDefinition.TASK_DIR, tempDir.toString()));
+
+        // when
+        MigrationNode node = provider.createNode(NodeId.of("V001"), task, Set.of(), env);
+
+        // then
+        assertThat(((PostgreSQLUpTask) node.upTask()).upSql())
+                .startsWith("TRUNCATE public.products;\n")
+                .contains(
+                        "COPY public.products (id, name)"
+                                + " FROM STDIN WITH (FORMAT csv, HEADER true)")
+                .contains(tempDir.resolve("products.csv").toString());
+    }
+
+    @Test
+    void migrationNodeProviderShouldCreateBackfillNode() {
+        // given
+        var provider = new PostgreSQLMigrationNodeProvider();
+        var env =
+                PostgreSQLEnvironment.create(
+                        "test", "jdbc:postgresql://localhost:5432/test", "user", "pass");
+        SqlTaskDefinition task =
+                createTaskDefinition(
+                        Map.of(
+                                "name", "Backfill totals",
+                                "target", "test",
+                                "backfill.table", "orders",
+                                "backfill.key", "id",
+                                "backfill.sql",
+                                        "UPDATE orders SET total_cents = total * 100"
+                                                + " WHERE id >= :start AND id < :end",
+                                "backfill.batch_size", "500",
+                                "backfill.sleep_ms", "20"));
+
+        // when
+        MigrationNode node = provider.createNode(NodeId.of("V001"), task, Set.of(), env);
+
+        // then
+        assertThat(node.upTask()).isInstanceOf(PostgreSQLBackfillTask.class);
+        assertThat(node.upTask().description())
+                .isEqualTo("PostgreSQL backfill (batches of 500 keys)");
+        assertThat(node.downTask()).isNull();
+    }
+
+    @Test
+    void migrationNodeProviderShouldRejectInvalidCopyTable() throws Exception {
+        // given
+        var provider = new PostgreSQLMigrationNodeProvider();
+        var env =
+                PostgreSQLEnvironment.create(
+                        "test", "jdbc:postgresql://localhost:5432/test", "user", "pass");
+        Files.writeString(tempDir.resolve("products.csv"), "1,apple\n");
+        SqlTaskDefinition task =
+                createTaskDefinition(
+                        Map.of(
+                                "name", "Load products",
+                                "target", "test",
+                                "copy.table", "products; DROP TABLE users",
+                                "copy.file", "products.csv",
+                                TaskDefinition.TASK_DIR, tempDir.toString()));
+
+        // when & then
+        assertThatThrownBy(() -> provider.createNode(NodeId.of("V001"), task, Set.of(), env))
+                .isInstanceOf(PostgreSQLException.class)
+                .hasMessageContaining("Invalid COPY table name");
+    }
+
     @Test
     void migrationNodeProviderShouldThrowForNonPostgreSQLEnvironment() {
         // given
@@ -239,21 +420,28 @@ class PostgreSQLPluginTest {
     /** テスト用の SqlTaskDefinition を作成する。 */
     private SqlTaskDefinition createTaskDefinition(
             String name, String description, String target, String up, String down) {
-        SmallRyeConfigBuilder builder =
-                new SmallRyeConfigBuilder()
-                        .withMapping(SqlTaskDefinition.class)
-                        .withDefaultValue("name", name)
-                        .withDefaultValue("target", target)
-                        .withDefaultValue("up", up);
-
+        Map<String, String> properties = new HashMap<>();
+        properties.put("name", name);
+        properties.put("target", target);
+        if (up != null) {
+            properties.put("up", up);
+        }
         if (description != null) {
-            builder.withDefaultValue("description", description);
+            properties.put("description", description);
         }
         if (down != null) {
-            builder.withDefaultValue("down", down);
+            properties.put("down", down);
         }
+        return createTaskDefinition(properties);
+    }
 
-        SmallRyeConfig config = builder.build();
+    /** プロパティから SqlTaskDefinition を作成する。 */
+    private SqlTaskDefinition createTaskDefinition(Map<String, String> properties) {
+        SmallRyeConfig config =
+                new SmallRyeConfigBuilder()
+                        .withSources(new PropertiesConfigSource(properties, "test", 100))
+                        .withMapping(SqlTaskDefinition.class)
+                        .build();
         return config.getConfigMapping(SqlTaskDefinition.class);
     }
 
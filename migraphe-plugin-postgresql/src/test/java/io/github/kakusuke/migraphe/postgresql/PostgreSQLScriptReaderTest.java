@@ -0,0 +1,188 @@
+package io.github.kakusuke.migraphe.postgresql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.github.kakusuke.migraphe.postgresql.PostgreSQLScriptReader.ScriptStatement;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class PostgreSQLScriptReaderTest {
+
+    @Test
+    void shouldSplitOnSemicolonsWithoutTrailingNewline() throws Exception {
+        // when
+        List<String> statements = statements("SELECT 1; SELECT 2;SELECT 3");
+
+        // then
+        assertThat(statements).containsExactly("SELECT 1", "SELECT 2", "SELECT 3");
+    }
+
+    @Test
+    void shouldNotSplitInsideStringLiteralsAndQuotedIdentifiers() throws Exception {
+        // given
+        String sql =
+                """
+                INSERT INTO "odd;table" VALUES ('a;
+                b', 'it''s;', E'esc\\'; still');
+                SELECT 1;
+                """;
+
+        // when
+        List<String> statements = statements(sql);
+
+        // then
+        assertThat(statements)
+                .containsExactly(
+                        "INSERT INTO \"odd;table\" VALUES ('a;\nb', 'it''s;', E'esc\\'; still')",
+                        "SELECT 1");
+    }
+
+    @Test
+    void shouldNotSplitInsideDollarQuotedBody() throws Exception {
+        // given
+        String sql =
+                """
+                CREATE FUNCTION f() RETURNS int AS $fn$
+                BEGIN
+                    PERFORM $$nested; literal$$;
+                    RETURN 1;
+                END;
+                $fn$ LANGUAGE plpgsql;
+                SELECT f();
+                """;
+
+        // when
+        List<String> statements = statements(sql);
+
+        // then
+        assertThat(statements).hasSize(2);
+        assertThat(statements.get(0)).startsWith("CREATE FUNCTION").endsWith("LANGUAGE plpgsql");
+        assertThat(statements.get(1)).isEqualTo("SELECT f()");
+    }
+
+    @Test
+    void shouldTreatPositionalParameterAsPlainText() throws Exception {
+        // when
+        List<String> statements = statements("PREPARE q AS SELECT $1; EXECUTE q(1);");
+
+        // then
+        assertThat(statements).containsExactly("PREPARE q AS SELECT $1", "EXECUTE q(1)");
+    }
+
+    @Test
+    void shouldSkipNestedBlockCommentsAndEmptyStatements() throws Exception {
+        // given
+        String sql =
+                """
+                /* outer /* inner; */ still outer; */
+                ;;
+                -- only a comment;
+                SELECT 1 /* ; */;
+                """;
+
+        // when
+        List<String> statements = statements(sql);
+
+        // then
+        assertThat(statements).containsExactly("SELECT 1 /* ; */");
+    }
+
+    @Test
+    void shouldNotSplitInsideAtomicRoutineBody() throws Exception {
+        // given
+        String sql =
+                """
+                CREATE OR REPLACE PROCEDURE p() LANGUAGE SQL
+                BEGIN ATOMIC
+                    INSERT INTO t VALUES (1);
+                    SELECT CASE WHEN true THEN 1 END;
+                END;
+                BEGIN;
+                """;
+
+        // when
+        List<String> statements = statements(sql);
+
+        // then
+        assertThat(statements).hasSize(2);
+        assertThat(statements.get(0)).startsWith("CREATE OR REPLACE PROCEDURE").endsWith("END");
+        assertThat(statements.get(1)).isEqualTo("BEGIN");
+    }
+
+    @Test
+    void shouldReadCopyDataUntilTerminator() throws Exception {
+        // given
+        String sql =
+                """
+                COPY t (a, b) FROM stdin;
+                1\tx;y
+                2\t\\N
+                \\.
+                SELECT 1;
+                """;
+
+        try (PostgreSQLScriptReader reader = PostgreSQLScriptReader.of(new StringReader(sql))) {
+            // when
+            ScriptStatement copy = reader.next();
+            String data = readAll(reader.copyData());
+            ScriptStatement next = reader.next();
+
+            // then
+            assertThat(copy).isEqualTo(new ScriptStatement("COPY t (a, b) FROM stdin", true));
+            assertThat(data).isEqualTo("1\tx;y\n2\t\\N\n");
+            assertThat(next).isEqualTo(new ScriptStatement("SELECT 1", false));
+            assertThat(reader.next()).isNull();
+        }
+    }
+
+    @Test
+    void shouldSkipUnreadCopyData() throws Exception {
+        // given
+        String sql = "COPY t FROM STDIN;\nSELECT 'not a statement';\n\\.\nSELECT 2;\n";
+
+        // when
+        List<String> statements = statements(sql);
+
+        // then
+        assertThat(statements).containsExactly("COPY t FROM STDIN", "SELECT 2");
+    }
+
+    @Test
+    void shouldRejectCopyDataWithoutCopyStatement() throws Exception {
+        try (PostgreSQLScriptReader reader =
+                PostgreSQLScriptReader.of(new StringReader("SELECT 1;"))) {
+            reader.next();
+
+            // when & then
+            assertThatThrownBy(reader::copyData)
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("No COPY data");
+        }
+    }
+
+    private static List<String> statements(String sql) throws IOException {
+        List<String> statements = new ArrayList<>();
+        try (PostgreSQLScriptReader reader = PostgreSQLScriptReader.of(new StringReader(sql))) {
+            ScriptStatement statement;
+            while ((statement = reader.next()) != null) {
+                statements.add(statement.sql());
+            }
+        }
+        return statements;
+    }
+
+    private static String readAll(Reader reader) throws IOException {
+        StringBuilder result = new StringBuilder();
+        char[] buffer = new char[16];
+        int n;
+        while ((n = reader.read(buffer, 0, buffer.length)) >= 0) {
+            result.append(buffer, 0, n);
+        }
+        return result.toString();
+    }
+}
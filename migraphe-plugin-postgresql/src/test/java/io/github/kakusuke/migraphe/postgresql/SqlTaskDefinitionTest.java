@@ -64,6 +64,67 @@ class SqlTaskDefinitionTest {
         assertThat(taskDef.autocommit()).isEmpty();
     }
 
+    @Test
+    void shouldParseUpFileWithoutInlineUp() {
+        // Given: up の代わりに up_file/down_file を指定した YAML
+        String yaml =
+                """
+                name: seed_products
+                target: db1
+                up_file: sql/seed.sql
+                down_file: sql/unseed.sql
+                """;
+
+        // When
+        SqlTaskDefinition taskDef = parseYaml(yaml);
+
+        // Then
+        assertThat(taskDef.upFile()).contains("sql/seed.sql");
+        assertThat(taskDef.downFile()).contains("sql/unseed.sql");
+        assertThat(taskDef.up()).isEmpty();
+        assertThat(taskDef.taskDir()).isEmpty();
+    }
+
+    @Test
+    void shouldParseSessionSettings() {
+        // Given: session を指定した YAML
+        String yaml =
+                """
+                name: backfill_orders
+                target: db1
+                up: "UPDATE orders SET total_cents = total * 100;"
+                session:
+                  work_mem: 256MB
+                  synchronous_commit: "off"
+                """;
+
+        // When
+        SqlTaskDefinition taskDef = parseYaml(yaml);
+
+        // Then
+        assertThat(taskDef.session())
+                .containsEntry("work_mem", "256MB")
+                .containsEntry("synchronous_commit", "off")
+                .hasSize(2);
+    }
+
+    @Test
+    void shouldDefaultSessionSettingsToEmpty() {
+        // Given: session を含まない YAML
+        String yaml =
+                """
+                name: create_users
+                target: db1
+                up: "CREATE TABLE users (id SERIAL);"
+                """;
+
+        // When
+        SqlTaskDefinition taskDef = parseYaml(yaml);
+
+        // Then
+        assertThat(taskDef.session()).isEmpty();
+    }
+
     private SqlTaskDefinition parseYaml(String yaml) {
         YamlConfigSource source = new YamlConfigSource("test", yaml);
 